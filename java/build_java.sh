@@ -71,7 +71,7 @@ function compile {
 
     case $(uname -s) in
         Darwin*)    JDK_OS=darwin; LINKER_FLAGS="-l${DLPROG}_ddlog -dynamiclib";;
-        Linux*)     JDK_OS=linux; LINKER_FLAGS="-Wl,-static -l${DLPROG}_ddlog -Wl,-Bdynamic -shared" ;;
+        Linux*)     JDK_OS=linux; LINKER_FLAGS="-Wl,-static -l${DLPROG}_ddlog -Wl,-Bdynamic -ldl -shared" ;;
         *)          echo "Unsupported OS"; exit 1
     esac
 
@@ -81,6 +81,43 @@ function compile {
     ${CC} -Werror -std=gnu11 -fPIC -I${JAVA_HOME}/include -I${JAVA_HOME}/include/${JDK_OS} -I${DLDIR}/${DLPROG}_ddlog -I../../lib ../ddlogapi.c -L${DLDIR}/${DLPROG}_ddlog/target/${BUILD} ${LINKER_FLAGS} -o ${LIBNAME}
 }
 
+# Compile a DDlog program into a dynamic library ${DLPROG}_ddlog/target/${BUILD}/lib${DLPROG}_ddlog.*
+# that can be loaded with the DDlogAPI(Path, ...) constructor.
+function compile_dynlib {
+    local DLFILE=$1   # ddlog program that is being compiled
+    local BUILD=$2    # one of "debug" or "release"
+
+    local DLPROG
+    DLPROG=$(basename ${DLFILE} .dl)
+    local DLDIR
+    DLDIR=$(dirname ${DLFILE})
+    ddlog ${DDLFLAGS} -i ${DLFILE} -L../../lib --dynlib --no-staticlib
+    pushd ${DLDIR}/${DLPROG}_ddlog || exit 1
+    if [ "x${BUILD}" == "xrelease" ]; then
+        cargo build --release
+    else
+        cargo build
+    fi
+    popd || exit 1
+}
+
+# Compile the JNI library that is not linked with any DDlog program
+# and a Java program that loads programs compiled by compile_dynlib.
+function compile_jni {
+    local JAVAPROG=$1 # java test program that is being compiled
+
+    CLASSPATH=$(pwd)/../ddlogapi.jar:..:.:$CLASSPATH
+    make -C ..
+    javac -encoding utf8 -Xlint:unchecked ${JAVAPROG}
+
+    case $(uname -s) in
+        Darwin*)    JDK_OS=darwin; LIBJNI=libddlogjni.dylib; LINKER_FLAGS="-dynamiclib";;
+        Linux*)     JDK_OS=linux; LIBJNI=libddlogjni.so; LINKER_FLAGS="-ldl -shared" ;;
+        *)          echo "Unsupported OS"; exit 1
+    esac
+    ${CC} -Werror -std=gnu11 -fPIC -DDDLOG_DYNAMIC_ONLY -I${JAVA_HOME}/include -I${JAVA_HOME}/include/${JDK_OS} -I../../rust/template -I../../lib ../ddlogapi.c ${LINKER_FLAGS} -o ${LIBJNI}
+}
+
 function cleanup {
     local LIBNAME
     LIBNAME=$(libname)
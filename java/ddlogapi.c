@@ -9,11 +9,124 @@
 #include <fcntl.h>
 #include <unistd.h>
 
+#include <dlfcn.h>
+#include <pthread.h>
+
 #include "ddlogapi_DDlogAPI.h"
 #include "ddlogapi_DDlogAPI_DDlogCommandVector.h"
 #include "ddlog.h"
 #include "ddlog_log.h"
 
+/*
+ * Several DDlog programs can run in the same process.  Normally this file is
+ * linked with one program (the "linked" program), whose functions are called
+ * directly.  Other programs, compiled as dynamic libraries (`ddlog --dynlib`),
+ * are loaded with dlopen, and their functions are called through a table of
+ * function pointers.  Compiling this file with -DDDLOG_DYNAMIC_ONLY produces a
+ * library that is not linked with any program and can only load programs
+ * dynamically.
+ */
+
+// C API functions that every DDlog program library exports.
+#define DDLOG_REQUIRED_FUNCTIONS(F) \
+    F(ddlog_run) F(ddlog_stop) F(ddlog_record_commands) F(ddlog_dump_input_snapshot) \
+    F(ddlog_transaction_start) F(ddlog_transaction_commit) F(ddlog_transaction_rollback) \
+    F(ddlog_transaction_commit_dump_changes) F(ddlog_delta_enumerate) F(ddlog_free_delta) \
+    F(ddlog_transaction_commit_dump_changes_as_array) F(ddlog_free_record_updates) \
+    F(ddlog_apply_updates) F(ddlog_clear_relation) \
+    F(ddlog_get_table_id) F(ddlog_get_table_name) F(ddlog_get_index_id) F(ddlog_get_index_name) \
+    F(ddlog_dump_table) F(ddlog_dump_index) F(ddlog_query_index) \
+    F(ddlog_profile) F(ddlog_string_free) F(ddlog_enable_cpu_profiling) \
+    F(ddlog_log_set_callback) F(ddlog_log_set_default_callback) \
+    F(ddlog_free) F(ddlog_bool) F(ddlog_float) F(ddlog_double) F(ddlog_i64) F(ddlog_int) \
+    F(ddlog_string) F(ddlog_tuple) F(ddlog_vector) F(ddlog_set) F(ddlog_map) \
+    F(ddlog_pair) F(ddlog_struct) \
+    F(ddlog_is_bool) F(ddlog_get_bool) F(ddlog_is_float) F(ddlog_get_float) \
+    F(ddlog_is_double) F(ddlog_get_double) F(ddlog_is_int) F(ddlog_get_int) F(ddlog_get_i64) \
+    F(ddlog_is_string) F(ddlog_get_str_with_length) \
+    F(ddlog_is_tuple) F(ddlog_get_tuple_size) F(ddlog_get_tuple_field) \
+    F(ddlog_is_vector) F(ddlog_get_vector_size) F(ddlog_get_vector_elem) \
+    F(ddlog_is_set) F(ddlog_get_set_size) F(ddlog_get_set_elem) \
+    F(ddlog_is_map) F(ddlog_get_map_size) F(ddlog_get_map_key) F(ddlog_get_map_val) \
+    F(ddlog_is_struct) F(ddlog_get_constructor_with_length) F(ddlog_get_struct_field) \
+    F(ddlog_insert_cmd) F(ddlog_delete_val_cmd) F(ddlog_delete_key_cmd)
+
+// C API functions only exported by programs compiled with the flatbuf feature.
+#define DDLOG_OPTIONAL_FUNCTIONS(F) \
+    F(ddlog_transaction_commit_dump_changes_to_flatbuf) F(ddlog_flatbuf_free) \
+    F(ddlog_apply_updates_from_flatbuf) F(ddlog_query_index_from_flatbuf) \
+    F(ddlog_dump_index_to_flatbuf)
+
+#define DDLOG_DECLARE_FUNCTION(f) __typeof__(f)* f;
+
+// Entry points of a program loaded with dlopen.
+struct ddlog_api {
+    DDLOG_REQUIRED_FUNCTIONS(DDLOG_DECLARE_FUNCTION)
+    DDLOG_OPTIONAL_FUNCTIONS(DDLOG_DECLARE_FUNCTION)
+};
+
+// The handle of a running program, as seen by Java.
+struct DDlogProgram {
+    ddlog_prog prog;
+    // NULL for the linked program.
+    const struct ddlog_api* api;
+};
+
+#define PROG(h) ((struct DDlogProgram*)(h))
+
+#ifdef DDLOG_DYNAMIC_ONLY
+#define HAS_LINKED_PROGRAM 0
+#define DDLOG_FN(api, f) ((api)->f)
+#else
+#define HAS_LINKED_PROGRAM 1
+// Use the linked program when `api` is NULL.
+#define DDLOG_FN(api, f) ((api) ? (api)->f : f)
+#endif
+
+// Call C API function `f` of the program described by `api`.  Unlike DDLOG_FN,
+// this does not take the address of `f`, so that optional functions missing
+// from the linked program are only resolved when called.
+#define DDLOG(api, f, ...) (HAS_LINKED_PROGRAM && !(api) ? DDLOG_LINKED(f)(__VA_ARGS__) : (api)->f(__VA_ARGS__))
+// Call C API function `f` on the program with Java handle `h`.
+#define PROG_CALL(h, f, ...) DDLOG(PROG(h)->api, f, PROG(h)->prog, ##__VA_ARGS__)
+
+#ifdef DDLOG_DYNAMIC_ONLY
+#define DDLOG_LINKED(f) ((__typeof__(f)*)NULL)
+#else
+#define DDLOG_LINKED(f) f
+#endif
+
+// Programs loaded so far; libraries are never unloaded, since records and
+// threads created by a program may outlive it.
+struct LoadedProgram {
+    char* path;
+    struct ddlog_api api;
+    struct LoadedProgram* next;
+};
+
+static struct LoadedProgram* loaded_programs = NULL;
+static pthread_mutex_t loaded_programs_lock = PTHREAD_MUTEX_INITIALIZER;
+
+/*
+ * Functions that manipulate records and commands are not specific to a program,
+ * since all programs share the record representation of the DDlog runtime (the
+ * programs must be compiled with the same version of DDlog).  They are
+ * called in the linked program or, if there is none, in the first program loaded.
+ *
+ * DDLOG_RECORDS(api, ret) declares `api`, the entry points to use for records.
+ * It throws a `DDlogException` and returns `ret` from the enclosing function
+ * if no program has been loaded yet.
+ */
+#ifdef DDLOG_DYNAMIC_ONLY
+static const struct ddlog_api* first_loaded_program(JNIEnv* env);
+#define DDLOG_RECORDS(api, ...) \
+    const struct ddlog_api* api = first_loaded_program(env); \
+    if (api == NULL) \
+        return __VA_ARGS__
+#else
+#define DDLOG_RECORDS(api, ...) const struct ddlog_api* api = NULL
+#endif
+
 /* Error message returned by DDlog. */
 _Thread_local char* err_msg = NULL;
 
@@ -101,6 +214,171 @@ static void throwOutOfMemException(JNIEnv* env, const char * fmt, ...) {
 }
 
 
+/*
+ * Logging configuration.  Each program has its own logging state, so the
+ * configuration is applied to every program loaded so far and remembered for
+ * the programs loaded later.  Protected by `loaded_programs_lock`.
+ */
+typedef void (*log_callback_t)(uintptr_t arg, int level, const char* msg);
+
+struct LogConfig {
+    int module;
+    log_callback_t cb;
+    uintptr_t cb_arg;
+    int max_level;
+    struct LogConfig* next;
+};
+
+// Per-module configurations, at most one per module.
+static struct LogConfig* module_log_configs = NULL;
+// The default configuration; `default_log_configured` is false until it is set.
+static struct LogConfig default_log_config;
+static bool default_log_configured = false;
+
+static void apply_module_log_config(const struct ddlog_api* api, const struct LogConfig* c) {
+    DDLOG(api, ddlog_log_set_callback, c->module, c->cb, c->cb_arg, c->max_level);
+}
+
+static void apply_default_log_config(const struct ddlog_api* api, const struct LogConfig* c) {
+    DDLOG(api, ddlog_log_set_default_callback, c->cb, c->cb_arg, c->max_level);
+}
+
+// Apply the logging configuration to a newly loaded program.
+static void configure_logging(const struct ddlog_api* api) {
+    if (default_log_configured)
+        apply_default_log_config(api, &default_log_config);
+    for (struct LogConfig* c = module_log_configs; c != NULL; c = c->next)
+        apply_module_log_config(api, c);
+}
+
+// Apply `c` to the linked program, if any, and to all loaded programs.
+static void apply_log_config(const struct LogConfig* c,
+                             void (*apply)(const struct ddlog_api*, const struct LogConfig*)) {
+    if (HAS_LINKED_PROGRAM)
+        apply(NULL, c);
+    for (struct LoadedProgram* p = loaded_programs; p != NULL; p = p->next)
+        apply(&p->api, c);
+}
+
+/*
+ * Set the logging callback of `module` in all programs.  Returns false if the
+ * configuration could not be recorded.
+ */
+static bool set_module_log_config(int module, log_callback_t cb, uintptr_t cb_arg, int max_level) {
+    pthread_mutex_lock(&loaded_programs_lock);
+    struct LogConfig* config = NULL;
+    for (struct LogConfig* c = module_log_configs; c != NULL; c = c->next) {
+        if (c->module == module) {
+            config = c;
+            break;
+        }
+    }
+    if (config == NULL) {
+        config = calloc(1, sizeof(struct LogConfig));
+        if (config == NULL) {
+            pthread_mutex_unlock(&loaded_programs_lock);
+            return false;
+        }
+        config->module = module;
+        config->next = module_log_configs;
+        module_log_configs = config;
+    }
+    config->cb = cb;
+    config->cb_arg = cb_arg;
+    config->max_level = max_level;
+    apply_log_config(config, apply_module_log_config);
+    pthread_mutex_unlock(&loaded_programs_lock);
+    return true;
+}
+
+// Set the default logging callback in all programs.
+static void set_default_log_config(log_callback_t cb, uintptr_t cb_arg, int max_level) {
+    pthread_mutex_lock(&loaded_programs_lock);
+    default_log_config.cb = cb;
+    default_log_config.cb_arg = cb_arg;
+    default_log_config.max_level = max_level;
+    default_log_configured = true;
+    apply_log_config(&default_log_config, apply_default_log_config);
+    pthread_mutex_unlock(&loaded_programs_lock);
+}
+
+/*
+ * Load a DDlog program compiled as a dynamic library, or return the
+ * entry points of a program that was already loaded from the same path.
+ * Throws a `DDlogException` and returns NULL on failure.
+ */
+static const struct ddlog_api* load_program(JNIEnv* env, const char* path) {
+    pthread_mutex_lock(&loaded_programs_lock);
+    struct LoadedProgram** last = &loaded_programs;
+    for (struct LoadedProgram* p = loaded_programs; p != NULL; p = p->next) {
+        if (strcmp(p->path, path) == 0) {
+            pthread_mutex_unlock(&loaded_programs_lock);
+            return &p->api;
+        }
+        last = &p->next;
+    }
+
+    // All programs export the same symbols, so keep them out of the global namespace.
+    void* lib = dlopen(path, RTLD_NOW | RTLD_LOCAL);
+    if (lib == NULL) {
+        throwIOException(env, "Cannot load DDlog program %s: %s", path, dlerror());
+        pthread_mutex_unlock(&loaded_programs_lock);
+        return NULL;
+    }
+    struct LoadedProgram* result = calloc(1, sizeof(struct LoadedProgram));
+    if (result == NULL || (result->path = strdup(path)) == NULL) {
+        free(result);
+        dlclose(lib);
+        pthread_mutex_unlock(&loaded_programs_lock);
+        throwOutOfMemException(env, "Could not allocate program descriptor.");
+        return NULL;
+    }
+
+#define DDLOG_LOAD_FUNCTION(f) result->api.f = (__typeof__(f)*)dlsym(lib, #f);
+#define DDLOG_CHECK_FUNCTION(f) \
+    if (result->api.f == NULL) { \
+        throwIOException(env, "DDlog program %s does not export %s", path, #f); \
+        free(result->path); \
+        free(result); \
+        dlclose(lib); \
+        pthread_mutex_unlock(&loaded_programs_lock); \
+        return NULL; \
+    }
+    DDLOG_REQUIRED_FUNCTIONS(DDLOG_LOAD_FUNCTION)
+    DDLOG_OPTIONAL_FUNCTIONS(DDLOG_LOAD_FUNCTION)
+    DDLOG_REQUIRED_FUNCTIONS(DDLOG_CHECK_FUNCTION)
+
+    configure_logging(&result->api);
+    *last = result;
+    pthread_mutex_unlock(&loaded_programs_lock);
+    return &result->api;
+}
+
+#ifdef DDLOG_DYNAMIC_ONLY
+/*
+ * Entry points used for records: those of the first program loaded.  Throws a
+ * `DDlogException` and returns NULL if no program has been loaded yet.
+ */
+static const struct ddlog_api* first_loaded_program(JNIEnv* env) {
+    pthread_mutex_lock(&loaded_programs_lock);
+    struct LoadedProgram* first = loaded_programs;
+    pthread_mutex_unlock(&loaded_programs_lock);
+    if (first == NULL) {
+        throwDDlogException(env, "DDlog records used before loading a DDlog program");
+        return NULL;
+    }
+    return &first->api;
+}
+#endif
+
+/*
+ * Throw a `DDlogException` and return false if flatbuf function `f` is
+ * missing from the program described by `api`.
+ */
+#define CHECK_FLATBUF(env, api, f) \
+    (((api) == NULL || (api)->f != NULL) ? true : \
+     (throwDDlogException(env, "DDlog program was compiled without flatbuf support"), false))
+
 /* The _1 in all the function names below
    is the JNI translation of the _ character from Java */
 
@@ -189,37 +467,65 @@ void commit_callback(void* callbackInfo, table_id tableid, const ddlog_record* r
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1run(
-    JNIEnv *env, jobject obj, jboolean storeData, jint workers, jstring callback) {
-    jlong handle = 0;
+    JNIEnv *env, jobject obj, jstring library, jboolean storeData, jint workers, jstring callback) {
+    const struct ddlog_api* api = NULL;
 
     if (workers <= 0)
         workers = 1;
 
+    if (library != NULL) {
+        const char* path = (*env)->GetStringUTFChars(env, library, NULL);
+        if (path == NULL)
+            return 0;
+        api = load_program(env, path);
+        (*env)->ReleaseStringUTFChars(env, library, path);
+        if (api == NULL)
+            return 0;
+    } else if (!HAS_LINKED_PROGRAM) {
+        throwDDlogException(env, "No DDlog program is linked with this library");
+        return 0;
+    }
+
+    struct DDlogProgram* prog = malloc(sizeof(struct DDlogProgram));
+    if (prog == NULL) {
+        throwOutOfMemException(env, "Could not allocate program descriptor.");
+        return 0;
+    }
+    prog->api = api;
+
     if (callback == NULL) {
-        handle = (jlong)ddlog_run((unsigned)workers, storeData, NULL, 0, eprintln, NULL);
-        if (handle == 0) {
+        prog->prog = DDLOG(api, ddlog_run, (unsigned)workers, storeData, NULL, 0, eprintln, NULL);
+        if (prog->prog == NULL) {
+            free(prog);
             throwDDlogException(env, NULL);
+            return 0;
         }
-        return handle;
+        return (jlong)prog;
     }
 
     struct CallbackInfo* cbinfo = createCallback(env, obj, callback, "(IJJ)V");
-    if (cbinfo == NULL)
+    if (cbinfo == NULL) {
+        free(prog);
         return 0;
+    }
 
     // store the callback pointer in the parent Java object
     jclass thisClass = (*env)->GetObjectClass(env, obj);
     jfieldID callbackHandle = (*env)->GetFieldID(env, thisClass, "callbackHandle", "J");
-    if (callbackHandle == NULL)
+    if (callbackHandle == NULL) {
+        free(prog);
         return 0;
+    }
     (*env)->SetLongField(env, obj, callbackHandle, (jlong)cbinfo);
 
-    handle = (jlong)ddlog_run((unsigned)workers, storeData, commit_callback, (uintptr_t)cbinfo, eprintln, NULL);
-    if (handle == 0) {
+    prog->prog = DDLOG(api, ddlog_run, (unsigned)workers, storeData, commit_callback, (uintptr_t)cbinfo, eprintln, NULL);
+    if (prog->prog == NULL) {
+        free(prog);
         throwDDlogException(env, NULL);
+        return 0;
     }
 
-    return handle;
+    return (jlong)prog;
 }
 
 JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1record_1commands(
@@ -238,7 +544,7 @@ JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1record_1commands(
     if (fd < 0) {
         throwIOException(env, "Failed to open file %s. Error code: %d", c_filename, fd);
         return fd;
-    } else if ((ret = ddlog_record_commands((ddlog_prog)handle, fd))) {
+    } else if ((ret = PROG_CALL(handle, ddlog_record_commands, fd))) {
         close(fd);
         throwDDlogException(env, NULL);
         return ret;
@@ -249,7 +555,7 @@ JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1record_1commands(
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1stop_1recording(
     JNIEnv *env, jobject obj, jlong handle, jint fd) {
-    if (ddlog_record_commands((ddlog_prog)handle, -1) < 0) {
+    if (PROG_CALL(handle, ddlog_record_commands, -1) < 0) {
         throwDDlogException(env, NULL);
     }
     close(fd);
@@ -270,7 +576,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1dump_1input_1snapshot(
     if (fd < 0) {
         throwIOException(env, "Failed to open file %s. Error code: %d", c_filename, fd);
     } else {
-        if (ddlog_dump_input_snapshot((ddlog_prog)handle, fd) < 0) {
+        if (PROG_CALL(handle, ddlog_dump_input_snapshot, fd) < 0) {
             throwDDlogException(env, NULL);
         }
         close(fd);
@@ -283,14 +589,16 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1stop(
     JNIEnv *env, jobject obj, jlong handle, jlong callbackHandle) {
     // Delete the callback pointer stored in the parent Java object
     deleteCallback((void*)callbackHandle);
-    if (ddlog_stop((ddlog_prog)handle) < 0) {
+    int code = PROG_CALL(handle, ddlog_stop);
+    free(PROG(handle));
+    if (code < 0) {
         throwDDlogException(env, NULL);
     }
 }
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1start(
     JNIEnv * env, jobject obj, jlong handle) {
-    int code = ddlog_transaction_start((ddlog_prog)handle);
+    int code = PROG_CALL(handle, ddlog_transaction_start);
     if (code < 0) {
         throwDDlogException(env, NULL);
     }
@@ -298,7 +606,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1start(
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1commit(
     JNIEnv * env, jobject obj, jlong handle) {
-    if (ddlog_transaction_commit((ddlog_prog)handle) < 0) {
+    if (PROG_CALL(handle, ddlog_transaction_commit) < 0) {
         throwDDlogException(env, NULL);
     }
 }
@@ -317,7 +625,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1commit_1dump_1
     JNIEnv * env, jobject obj, jlong handle, jstring callback) {
 
     if (callback == NULL) {
-        if (ddlog_transaction_commit((ddlog_prog)handle) < 0) {
+        if (PROG_CALL(handle, ddlog_transaction_commit) < 0) {
             throwDDlogException(env, NULL);
             return;
         }
@@ -327,12 +635,12 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1commit_1dump_1
     if (cbinfo == NULL)
         return;
 
-    ddlog_delta *delta = ddlog_transaction_commit_dump_changes((ddlog_prog)handle);
+    ddlog_delta *delta = PROG_CALL(handle, ddlog_transaction_commit_dump_changes);
     if (delta == NULL) {
         throwDDlogException(env, NULL);
     };
-    ddlog_delta_enumerate(delta, commit_dump_callback, (uintptr_t)cbinfo);
-    ddlog_free_delta(delta);
+    DDLOG(PROG(handle)->api, ddlog_delta_enumerate, delta, commit_dump_callback, (uintptr_t)cbinfo);
+    DDLOG(PROG(handle)->api, ddlog_free_delta, delta);
     free(cbinfo);
 }
 
@@ -340,7 +648,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_00024DDlogCommandVector_ddlog_1tra
     JNIEnv * env, jobject obj, jlong handle) {
     ddlog_record_update* updates;
     size_t count;
-    if (ddlog_transaction_commit_dump_changes_as_array((ddlog_prog)handle, &updates, &count) < 0) {
+    if (PROG_CALL(handle, ddlog_transaction_commit_dump_changes_as_array, &updates, &count) < 0) {
         throwDDlogException(env, NULL);
         return;
     }
@@ -378,12 +686,14 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_00024DDlogCommandVector_ddlog_1tra
 }
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_00024DDlogCommandVector_ddlog_1batch_1free(
-    JNIEnv * env, jclass cls, jlong handle, jint size) {
-    ddlog_free_record_updates((ddlog_record*)handle, size);
+    JNIEnv * env, jclass cls, jlong progHandle, jlong handle, jint size) {
+    DDLOG(PROG(progHandle)->api, ddlog_free_record_updates, (ddlog_record*)handle, size);
 }
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1commit_1dump_1changes_1to_1flatbuf(
     JNIEnv * env, jobject obj, jlong handle, jobject fbdescr) {
+    if (!CHECK_FLATBUF(env, PROG(handle)->api, ddlog_transaction_commit_dump_changes_to_flatbuf))
+        return;
     unsigned char *buf_addr = NULL;
     size_t buf_size         = 0;
     size_t buf_capacity     = 0;
@@ -398,8 +708,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1commit_1dump_1
         return;
     }
 
-    if (ddlog_transaction_commit_dump_changes_to_flatbuf(
-            (ddlog_prog)handle,
+    if (PROG_CALL(handle, ddlog_transaction_commit_dump_changes_to_flatbuf,
             &buf_addr,
             &buf_size,
             &buf_capacity,
@@ -417,12 +726,15 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1commit_1dump_1
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1flatbuf_1free(
     JNIEnv * env, jobject obj, jobject buf, jlong size, jlong offset)
 {
+    DDLOG_RECORDS(records);
+    if (!CHECK_FLATBUF(env, records, ddlog_flatbuf_free))
+        return;
     unsigned char* addr = (unsigned char*)(((size_t)(*env)->GetDirectBufferAddress(env, buf)) - offset);
     if (addr == NULL) {
         return;
     }
 
-    ddlog_flatbuf_free(
+    DDLOG(records, ddlog_flatbuf_free,
             addr,
             (size_t)size,
             ((size_t)(*env)->GetDirectBufferCapacity(env, buf)) + offset);
@@ -430,7 +742,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1flatbuf_1free(
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1transaction_1rollback(
     JNIEnv * env, jobject obj, jlong handle) {
-    if (ddlog_transaction_rollback((ddlog_prog)handle) < 0) {
+    if (PROG_CALL(handle, ddlog_transaction_rollback) < 0) {
         throwDDlogException(env, NULL);
     }
 }
@@ -446,7 +758,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1apply_1updates(
     }
     for (size_t i = 0; i < size; i++)
         updates[i] = (ddlog_cmd*)a[i];
-    if (ddlog_apply_updates((ddlog_prog)progHandle, updates, size) < 0) {
+    if (PROG_CALL(progHandle, ddlog_apply_updates, updates, size) < 0) {
         throwDDlogException(env, NULL);
     }
     (*env)->ReleaseLongArrayElements(env, commandHandles, a, 0);
@@ -455,11 +767,13 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1apply_1updates(
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1apply_1updates_1from_1flatbuf(
     JNIEnv *env, jclass obj, jlong progHandle, jbyteArray bytes, jint position) {
+    if (!CHECK_FLATBUF(env, PROG(progHandle)->api, ddlog_apply_updates_from_flatbuf))
+        return;
     jbyte *buf = (*env)->GetByteArrayElements(env, bytes, NULL);
     size_t size = (*env)->GetArrayLength(env, bytes);
 
-    if (ddlog_apply_updates_from_flatbuf(
-        (ddlog_prog)progHandle, ((const unsigned char *) buf) + position, size) < 0) {
+    if (PROG_CALL(progHandle, ddlog_apply_updates_from_flatbuf,
+            ((const unsigned char *) buf) + position, size) < 0) {
         throwDDlogException(env, NULL);
     };
 
@@ -468,6 +782,8 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1apply_1updates_1from_1flatb
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1query_1index_1from_1flatbuf(
     JNIEnv *env, jclass obj, jlong progHandle, jbyteArray bytes, jint position, jobject resfbdescr) {
+    if (!CHECK_FLATBUF(env, PROG(progHandle)->api, ddlog_query_index_from_flatbuf))
+        return;
     jbyte *buf = (*env)->GetByteArrayElements(env, bytes, NULL);
     size_t size = (*env)->GetArrayLength(env, bytes);
     unsigned char *resbuf_addr = NULL;
@@ -484,8 +800,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1query_1index_1from_1flatbuf
         return;
     }
 
-    if (ddlog_query_index_from_flatbuf(
-            (ddlog_prog)progHandle,
+    if (PROG_CALL(progHandle, ddlog_query_index_from_flatbuf,
             ((const unsigned char *) buf) + position,
             size,
             &resbuf_addr,
@@ -505,6 +820,8 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1query_1index_1from_1flatbuf
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1dump_1index_1to_1flatbuf(
     JNIEnv *env, jclass obj, jlong progHandle, jlong idxid, jobject resfbdescr) {
+    if (!CHECK_FLATBUF(env, PROG(progHandle)->api, ddlog_dump_index_to_flatbuf))
+        return;
     unsigned char *resbuf_addr = NULL;
     size_t resbuf_size         = 0;
     size_t resbuf_capacity     = 0;
@@ -519,8 +836,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1dump_1index_1to_1flatbuf(
         return;
     }
 
-    if (ddlog_dump_index_to_flatbuf(
-            (ddlog_prog)progHandle,
+    if (PROG_CALL(progHandle, ddlog_dump_index_to_flatbuf,
             (size_t)idxid,
             &resbuf_addr,
             &resbuf_size,
@@ -536,21 +852,21 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1dump_1index_1to_1flatbuf(
 }
 JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1clear_1relation(
     JNIEnv *env, jclass obj, jlong progHandle, jint relid) {
-    int result = ddlog_clear_relation((ddlog_prog)progHandle, relid);
+    int result = PROG_CALL(progHandle, ddlog_clear_relation, relid);
     return (jint)result;
 }
 
 JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1table_1id(
-    JNIEnv *env, jclass class, jstring table) {
+    JNIEnv *env, jclass class, jlong handle, jstring table) {
     const char* tbl = (*env)->GetStringUTFChars(env, table, NULL);
-    table_id id = ddlog_get_table_id(tbl);
+    table_id id = DDLOG(PROG(handle)->api, ddlog_get_table_id, tbl);
     (*env)->ReleaseStringUTFChars(env, table, tbl);
     return (jint)id;
 }
 
 JNIEXPORT jstring JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1table_1name(
-    JNIEnv *env, jclass class, jint id) {
-    const char* table = ddlog_get_table_name(id);
+    JNIEnv *env, jclass class, jlong handle, jint id) {
+    const char* table = DDLOG(PROG(handle)->api, ddlog_get_table_name, id);
     if (table == NULL) {
         throwDDlogException(env, "Unknown table id");
         return NULL;
@@ -560,16 +876,16 @@ JNIEXPORT jstring JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1table_1name(
 }
 
 JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1index_1id(
-    JNIEnv *env, jclass class, jstring index) {
+    JNIEnv *env, jclass class, jlong handle, jstring index) {
     const char* tbl = (*env)->GetStringUTFChars(env, index, NULL);
-    table_id id = ddlog_get_index_id(tbl);
+    table_id id = DDLOG(PROG(handle)->api, ddlog_get_index_id, tbl);
     (*env)->ReleaseStringUTFChars(env, index, tbl);
     return (jint)id;
 }
 
 JNIEXPORT jstring JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1index_1name(
-    JNIEnv *env, jclass class, jint id) {
-    const char* index = ddlog_get_index_name(id);
+    JNIEnv *env, jclass class, jlong handle, jint id) {
+    const char* index = DDLOG(PROG(handle)->api, ddlog_get_index_name, id);
     if (index == NULL) {
         throwDDlogException(env, "Unknown index id");
         return NULL;
@@ -592,7 +908,7 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_dump_1table(
     if (cbinfo == NULL)
         return;
     cbinfo->env = env;  // the dump_callback will be called on the same thread
-    if (ddlog_dump_table((ddlog_prog)progHandle, table, dump_callback, (uintptr_t)cbinfo) < 0) {
+    if (PROG_CALL(progHandle, ddlog_dump_table, table, dump_callback, (uintptr_t)cbinfo) < 0) {
         throwDDlogException(env, NULL);
     }
     free(cbinfo);
@@ -611,23 +927,40 @@ JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_dump_1index(
     if (cbinfo == NULL)
         return;
     cbinfo->env = env;  // the dump_callback will be called on the same thread
-    if (ddlog_dump_index((ddlog_prog)progHandle, index, dump_index_callback, (uintptr_t)cbinfo) < 0) {
+    if (PROG_CALL(progHandle, ddlog_dump_index, index, dump_index_callback, (uintptr_t)cbinfo) < 0) {
         throwDDlogException(env, NULL);
     }
     free(cbinfo);
 }
 
+JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_query_1index(
+    JNIEnv *env, jobject obj, jlong progHandle, jint index, jlong key, jstring callback) {
+    DDLOG_RECORDS(records);
+    struct CallbackInfo* cbinfo = createCallback(env, obj, callback, "(J)V");
+    if (cbinfo == NULL) {
+        DDLOG(records, ddlog_free, (ddlog_record*)key);
+        return;
+    }
+    cbinfo->env = env;  // the dump_index_callback will be called on the same thread
+    if (PROG_CALL(progHandle, ddlog_query_index, index, (ddlog_record*)key,
+                          dump_index_callback, (uintptr_t)cbinfo) < 0) {
+        throwDDlogException(env, NULL);
+    }
+    DDLOG(records, ddlog_free, (ddlog_record*)key);
+    free(cbinfo);
+}
+
 JNIEXPORT jstring JNICALL Java_ddlogapi_DDlogAPI_ddlog_1profile(
     JNIEnv *env, jobject obj, jlong progHandle) {
-    char* profile = ddlog_profile((ddlog_prog)progHandle);
+    char* profile = PROG_CALL(progHandle, ddlog_profile);
     jstring result = (*env)->NewStringUTF(env, profile);
-    ddlog_string_free(profile);
+    DDLOG(PROG(progHandle)->api, ddlog_string_free, profile);
     return result;
 }
 
 JNIEXPORT void JNICALL Java_ddlogapi_DDlogAPI_ddlog_1enable_1cpu_1profiling(
     JNIEnv *env, jobject obj, jlong progHandle, jboolean enable) {
-    if (ddlog_enable_cpu_profiling((ddlog_prog)progHandle, enable) < 0) {
+    if (PROG_CALL(progHandle, ddlog_enable_cpu_profiling, enable) < 0) {
         throwDDlogException(env, NULL);
     }
 }
@@ -645,13 +978,17 @@ void log_callback(uintptr_t callbackInfo, int level, const char *msg) {
  * then deallocates the old `CallbackInfo`, if any.
  *
  * Returns 0 if either `callback` is NULL or `callback` is not NULL and
- * installing the new callback fails.
+ * installing the new callback fails.  Throws a `DDlogException` and keeps the
+ * old callback if the configuration cannot be recorded.
  */
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1log_1replace_1callback(
     JNIEnv *env, jobject obj, jint module, jlong old_cbinfo, jobject callback, jint max_level) {
 
     if (callback == NULL) {
-        ddlog_log_set_callback(module, NULL, 0, max_level);
+        if (!set_module_log_config(module, NULL, 0, max_level)) {
+            throwOutOfMemException(env, "Could not allocate logging configuration.");
+            return old_cbinfo;
+        }
         deleteCallback((struct CallbackInfo*)old_cbinfo);
         return 0;
     }
@@ -662,7 +999,11 @@ JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1log_1replace_1callback(
         return 0;
     }
 
-    ddlog_log_set_callback(module, log_callback, (uintptr_t)cbinfo, max_level);
+    if (!set_module_log_config(module, log_callback, (uintptr_t)cbinfo, max_level)) {
+        deleteCallback(cbinfo);
+        throwOutOfMemException(env, "Could not allocate logging configuration.");
+        return old_cbinfo;
+    }
 
     deleteCallback((struct CallbackInfo*)old_cbinfo);
     return (jlong)cbinfo;
@@ -672,7 +1013,7 @@ JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1log_1replace_1default_1cal
     JNIEnv *env, jobject obj, jlong old_cbinfo, jobject callback, jint max_level) {
 
     if (callback == NULL) {
-        ddlog_log_set_default_callback(NULL, 0, max_level);
+        set_default_log_config(NULL, 0, max_level);
         deleteCallback((struct CallbackInfo*)old_cbinfo);
         return 0;
     }
@@ -683,7 +1024,7 @@ JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1log_1replace_1default_1cal
         return 0;
     }
 
-    ddlog_log_set_default_callback(log_callback, (uintptr_t)cbinfo, max_level);
+    set_default_log_config(log_callback, (uintptr_t)cbinfo, max_level);
 
     deleteCallback((struct CallbackInfo*)old_cbinfo);
     return (jlong)cbinfo;
@@ -691,38 +1032,44 @@ JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1log_1replace_1default_1cal
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1bool(
     JNIEnv *env, jclass obj, jboolean b) {
-    return (jlong)ddlog_bool(b);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_bool, b);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1float(
     JNIEnv *env, jclass obj, jfloat f) {
-    return (jlong)ddlog_float(f);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_float, f);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1double(
     JNIEnv *env, jclass obj, jdouble d) {
-    return (jlong)ddlog_double(d);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_double, d);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1i64(
     JNIEnv *env, jclass obj, jlong l) {
-    return (jlong)ddlog_i64(l);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_i64, l);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1int(
     JNIEnv *env, jclass obj, jbyteArray v) {
+    DDLOG_RECORDS(records, 0);
     jboolean isCopy;
     jbyte* b = (*env)->GetByteArrayElements(env, v, &isCopy);
     jsize size = (*env)->GetArrayLength(env, v);
-    jlong res = (jlong)ddlog_int((unsigned char*)b, size);
+    jlong res = (jlong)DDLOG(records, ddlog_int, (unsigned char*)b, size);
     (*env)->ReleaseByteArrayElements(env, v, b, JNI_ABORT);
     return res;
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1string(
     JNIEnv *env, jclass obj, jstring s) {
+    DDLOG_RECORDS(records, 0);
     const char* str = (*env)->GetStringUTFChars(env, s, NULL);
-    ddlog_record* result = ddlog_string(str);
+    ddlog_record* result = DDLOG(records, ddlog_string, str);
     (*env)->ReleaseStringUTFChars(env, s, str);
     return (jlong)result;
 }
@@ -748,31 +1095,37 @@ jlong create_from_vector(JNIEnv *env, jclass obj, jlongArray handles,
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1tuple(
     JNIEnv *env, jclass obj, jlongArray handles) {
-    return create_from_vector(env, obj, handles, ddlog_tuple);
+    DDLOG_RECORDS(records, 0);
+    return create_from_vector(env, obj, handles, DDLOG_FN(records, ddlog_tuple));
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1vector(
     JNIEnv *env, jclass obj, jlongArray handles) {
-    return create_from_vector(env, obj, handles, ddlog_vector);
+    DDLOG_RECORDS(records, 0);
+    return create_from_vector(env, obj, handles, DDLOG_FN(records, ddlog_vector));
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1set(
     JNIEnv *env, jclass obj, jlongArray handles) {
-    return create_from_vector(env, obj, handles, ddlog_set);
+    DDLOG_RECORDS(records, 0);
+    return create_from_vector(env, obj, handles, DDLOG_FN(records, ddlog_set));
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1map(
     JNIEnv *env, jclass obj, jlongArray handles) {
-    return create_from_vector(env, obj, handles, ddlog_map);
+    DDLOG_RECORDS(records, 0);
+    return create_from_vector(env, obj, handles, DDLOG_FN(records, ddlog_map));
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1pair(
     JNIEnv *env, jclass obj, jlong h1, jlong h2) {
-    return (jlong)ddlog_pair((ddlog_record*)h1, (ddlog_record*)h2);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_pair, (ddlog_record*)h1, (ddlog_record*)h2);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1struct(
     JNIEnv *env, jclass obj, jstring s, jlongArray handles) {
+    DDLOG_RECORDS(records, 0);
     const char* str = (*env)->GetStringUTFChars(env, s, NULL);
     jsize len = (*env)->GetArrayLength(env, handles);
     jlong *a = (*env)->GetLongArrayElements(env, handles, NULL);
@@ -785,7 +1138,7 @@ JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1struct(
     }
     for (size_t i = 0; i < len; i++)
         fields[i] = (ddlog_record*)a[i];
-    ddlog_record* result = ddlog_struct(str, fields, len);
+    ddlog_record* result = DDLOG(records, ddlog_struct, str, fields, len);
     (*env)->ReleaseLongArrayElements(env, handles, a, 0);
     free(fields);
     (*env)->ReleaseStringUTFChars(env, s, str);
@@ -794,62 +1147,72 @@ JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1struct(
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1bool(
     JNIEnv *env, jclass obj, jlong handle) {
-    return (jboolean)ddlog_is_bool((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_bool, (ddlog_record*)handle);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1bool(
     JNIEnv *env, jclass obj, jlong handle) {
-    return (jboolean)ddlog_get_bool((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_get_bool, (ddlog_record*)handle);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1float(
     JNIEnv *env, jclass obj, jlong handle) {
-    return (jboolean)ddlog_is_float((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_float, (ddlog_record*)handle);
 }
 
 JNIEXPORT jfloat JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1float(
     JNIEnv *env, jclass obj, jlong handle) {
-    return (jfloat)ddlog_get_float((ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    return (jfloat)DDLOG(records, ddlog_get_float, (ddlog_record*)handle);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1double(
     JNIEnv *env, jclass obj, jlong handle) {
-    return (jboolean)ddlog_is_double((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_double, (ddlog_record*)handle);
 }
 
 JNIEXPORT jdouble JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1double(
     JNIEnv *env, jclass obj, jlong handle) {
-    return (jdouble)ddlog_get_double((ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    return (jdouble)DDLOG(records, ddlog_get_double, (ddlog_record*)handle);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1int(
     JNIEnv *env, jclass obj, long handle) {
-    return (jboolean)ddlog_is_int((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_int, (ddlog_record*)handle);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1int(
     JNIEnv *env, jclass obj, long handle, jbyteArray buf) {
+    DDLOG_RECORDS(records, 0);
     jlong res;
     if (buf != NULL) {
         jboolean isCopy;
         jbyte* b = (*env)->GetByteArrayElements(env, buf, &isCopy);
         jsize capacity = (*env)->GetArrayLength(env, buf);
-        res = (jlong)ddlog_get_int((ddlog_record*)handle, (unsigned char*)b, capacity);
+        res = (jlong)DDLOG(records, ddlog_get_int, (ddlog_record*)handle, (unsigned char*)b, capacity);
         (*env)->ReleaseByteArrayElements(env, buf, b, 0);
     } else {
-        res = (jlong)ddlog_get_int((ddlog_record*)handle, NULL, 0);
+        res = (jlong)DDLOG(records, ddlog_get_int, (ddlog_record*)handle, NULL, 0);
     }
     return res;
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1i64(
     JNIEnv *env, jclass obj, long handle) {
-    return (jlong)ddlog_get_i64((ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_get_i64, (ddlog_record*)handle);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1string(
     JNIEnv *env, jclass obj, long handle) {
-    return (jboolean)ddlog_is_string((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_string, (ddlog_record*)handle);
 }
 
 const jstring toJString(JNIEnv* env, const char* nonNullStr, size_t size) {
@@ -866,107 +1229,127 @@ const jstring toJString(JNIEnv* env, const char* nonNullStr, size_t size) {
 
 JNIEXPORT jstring JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1str(
     JNIEnv *env, jclass obj, long handle) {
+    DDLOG_RECORDS(records, NULL);
     size_t size;
-    const char *s = ddlog_get_str_with_length((const ddlog_record*)handle, &size);
+    const char *s = DDLOG(records, ddlog_get_str_with_length, (const ddlog_record*)handle, &size);
     return toJString(env, s, size);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1tuple(
     JNIEnv *env, jclass obj, long handle) {
-    return (jboolean)ddlog_is_tuple((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_tuple, (ddlog_record*)handle);
 }
 
 JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1tuple_1size(
     JNIEnv *env, jclass obj, long handle) {
-    return (jint)ddlog_get_tuple_size((ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    return (jint)DDLOG(records, ddlog_get_tuple_size, (ddlog_record*)handle);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1tuple_1field(
     JNIEnv *env, jclass obj, jlong handle, jint index) {
-    return (jlong)ddlog_get_tuple_field((ddlog_record*)handle, (size_t)index);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_get_tuple_field, (ddlog_record*)handle, (size_t)index);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1vector(
     JNIEnv *env, jclass obj, long handle) {
-    return (jboolean)ddlog_is_vector((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_vector, (ddlog_record*)handle);
 }
 
 JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1vector_1size(
     JNIEnv *env, jclass obj, long handle) {
-    return (jint)ddlog_get_vector_size((ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    return (jint)DDLOG(records, ddlog_get_vector_size, (ddlog_record*)handle);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1vector_1elem(
     JNIEnv *env, jclass obj, jlong handle, jint index) {
-    return (jlong)ddlog_get_vector_elem((ddlog_record*)handle, (size_t)index);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_get_vector_elem, (ddlog_record*)handle, (size_t)index);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1set(
     JNIEnv *env, jclass obj, long handle) {
-    return (jboolean)ddlog_is_set((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_set, (ddlog_record*)handle);
 }
 
 JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1set_1size(
     JNIEnv *env, jclass obj, long handle) {
-    return (jint)ddlog_get_set_size((ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    return (jint)DDLOG(records, ddlog_get_set_size, (ddlog_record*)handle);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1set_1elem(
     JNIEnv *env, jclass obj, jlong handle, jint index) {
-    return (jlong)ddlog_get_set_elem((ddlog_record*)handle, (size_t)index);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_get_set_elem, (ddlog_record*)handle, (size_t)index);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1map(
     JNIEnv *env, jclass obj, long handle) {
-    return (jboolean)ddlog_is_map((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_map, (ddlog_record*)handle);
 }
 
 JNIEXPORT jint JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1map_1size(
     JNIEnv *env, jclass obj, long handle) {
-    return (jint)ddlog_get_map_size((ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    return (jint)DDLOG(records, ddlog_get_map_size, (ddlog_record*)handle);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1map_1key(
     JNIEnv *env, jclass obj, jlong handle, jint index) {
-    return (jlong)ddlog_get_map_key((ddlog_record*)handle, (size_t)index);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_get_map_key, (ddlog_record*)handle, (size_t)index);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1map_1val(
     JNIEnv *env, jclass obj, jlong handle, jint index) {
-    return (jlong)ddlog_get_map_val((ddlog_record*)handle, (size_t)index);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_get_map_val, (ddlog_record*)handle, (size_t)index);
 }
 
 JNIEXPORT jboolean JNICALL Java_ddlogapi_DDlogAPI_ddlog_1is_1struct(
     JNIEnv *env, jclass obj, jlong handle) {
-    return (jboolean)ddlog_is_struct((ddlog_record*)handle);
+    DDLOG_RECORDS(records, false);
+    return (jboolean)DDLOG(records, ddlog_is_struct, (ddlog_record*)handle);
 }
 
 JNIEXPORT jstring JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1constructor(
     JNIEnv *env, jclass obj, jlong handle) {
+    DDLOG_RECORDS(records, NULL);
     size_t size;
-    const char *s = ddlog_get_constructor_with_length((const ddlog_record*)handle, &size);
+    const char *s = DDLOG(records, ddlog_get_constructor_with_length, (const ddlog_record*)handle, &size);
     return toJString(env, s, size);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1get_1struct_1field(
     JNIEnv *env, jclass obj, jlong handle, jint index) {
-    return (jlong)ddlog_get_struct_field((ddlog_record*)handle, (size_t)index);
+    DDLOG_RECORDS(records, 0);
+    return (jlong)DDLOG(records, ddlog_get_struct_field, (ddlog_record*)handle, (size_t)index);
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1insert_1cmd(
     JNIEnv *env, jclass obj, jint table, jlong handle) {
-    ddlog_cmd* result = ddlog_insert_cmd(table, (ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    ddlog_cmd* result = DDLOG(records, ddlog_insert_cmd, table, (ddlog_record*)handle);
     return (jlong)result;
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1delete_1val_1cmd(
     JNIEnv *env, jclass obj, jint table, jlong handle) {
-    ddlog_cmd* result = ddlog_delete_val_cmd(table, (ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    ddlog_cmd* result = DDLOG(records, ddlog_delete_val_cmd, table, (ddlog_record*)handle);
     return (jlong)result;
 }
 
 JNIEXPORT jlong JNICALL Java_ddlogapi_DDlogAPI_ddlog_1delete_1key_1cmd(
     JNIEnv *env, jclass obj, jint table, jlong handle) {
-    ddlog_cmd* result = ddlog_delete_key_cmd(table, (ddlog_record*)handle);
+    DDLOG_RECORDS(records, 0);
+    ddlog_cmd* result = DDLOG(records, ddlog_delete_key_cmd, table, (ddlog_record*)handle);
     return (jlong)result;
 }
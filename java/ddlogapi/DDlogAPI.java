@@ -3,8 +3,18 @@ package ddlogapi;
 import java.util.*;
 import java.util.function.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.io.*;
 
 /**
@@ -17,12 +27,13 @@ public class DDlogAPI {
     /**
      * The C ddlog API
      */
-    native long ddlog_run(boolean storeData, int workers, String callbackName) throws DDlogException;
+    native long ddlog_run(String library, boolean storeData, int workers, String callbackName) throws DDlogException;
     static native int ddlog_record_commands(long hprog, String filename, boolean append) throws DDlogException, IOException;
     static native void ddlog_stop_recording(long hprog, int fd) throws DDlogException;
     static native void ddlog_dump_input_snapshot(long hprog, String filename, boolean append) throws DDlogException, IOException;
     native void dump_table(long hprog, int table, String callbackMethod) throws DDlogException;
     native void dump_index(long hprog, int index, String callbackMethod) throws DDlogException;
+    native void query_index(long hprog, int index, long key, String callbackMethod) throws DDlogException;
     static native void ddlog_stop(long hprog, long callbackHandle) throws DDlogException;
     static native void ddlog_transaction_start(long hprog) throws DDlogException;
     static native void ddlog_transaction_commit(long hprog) throws DDlogException;
@@ -58,10 +69,10 @@ public class DDlogAPI {
     static native long ddlog_pair(long handle1, long handle2);
     static native long ddlog_struct(String constructor, long[] handles) throws DDlogException;
     // Getters
-    static native int ddlog_get_table_id(String table);
-    static native String ddlog_get_table_name(int id);
-    static native int ddlog_get_index_id(String index);
-    static native String ddlog_get_index_name(int id);
+    static native int ddlog_get_table_id(long hprog, String table);
+    static native String ddlog_get_table_name(long hprog, int id);
+    static native int ddlog_get_index_id(long hprog, String index);
+    static native String ddlog_get_index_name(long hprog, int id);
     static native boolean ddlog_is_bool(long handle);
     static native boolean ddlog_get_bool(long handle);
     static native boolean ddlog_is_int(long handle);
@@ -151,7 +162,7 @@ public class DDlogAPI {
         this.tableId = new HashMap<String, Integer>();
         String onCommit = callback == null ? null : "onCommit";
         this.commitCallback = callback;
-        this.hprog = this.ddlog_run(storeData, workers, onCommit);
+        this.hprog = this.ddlog_run(null, storeData, workers, onCommit);
     }
 
     /**
@@ -173,13 +184,33 @@ public class DDlogAPI {
         this.tableId = new HashMap<String, Integer>();
         String onCommit = callback == null ? null : "onCommit";
         this.commitCallback = callback;
-        this.hprog = this.ddlog_run(storeData, workers, onCommit);
+        this.hprog = this.ddlog_run(null, storeData, workers, onCommit);
+    }
+
+    /**
+     * Create an API to access a DDlog program compiled as a dynamic library
+     * (<code>ddlog --dynlib</code>).  Unlike programs linked with the JNI library,
+     * any number of such programs, and any number of instances of each program, can
+     * run in the same JVM.  The JNI library (by default <code>ddlogjni</code>, which
+     * is not linked with any program) is loaded from the java.library.path.
+     * All programs must be compiled with the same version of DDlog, since they
+     * share the representation of DDlogRecords.
+     * @param program   Path to the dynamic library containing the program.
+     * Other parameters as in DDlogAPI(String, int, Consumer, boolean).
+     */
+    public DDlogAPI(Path program, int workers, Consumer<DDlogCommand<DDlogRecord>> callback, boolean storeData)
+            throws DDlogException {
+        ensureDllLoaded(jniLibrary);
+        this.tableId = new HashMap<String, Integer>();
+        String onCommit = callback == null ? null : "onCommit";
+        this.commitCallback = callback;
+        this.hprog = this.ddlog_run(program.toAbsolutePath().toString(), storeData, workers, onCommit);
     }
 
     static void ensureDllLoaded(String libname) {
-        /* Notice that, despite the fact that you can specify the library name,
-           you cannot really have more than 1 ddlog library loaded at the same time,
-           because there is no way to specify an entry point in the library for ddlog_run.
+        /* Only one JNI library is loaded: Java binds each native method to a single
+           library.  Programs linked with other JNI libraries cannot be used in the
+           same JVM; use DDlogAPI(Path, ...) to load several programs instead.
          */
         if (!nativeLibraryLoaded) {
             System.loadLibrary(libname);
@@ -211,7 +242,7 @@ public class DDlogAPI {
      */
     public int getTableId(String table) {
         if (!this.tableId.containsKey(table)) {
-            int id = ddlog_get_table_id(table);
+            int id = ddlog_get_table_id(this.hprog, table);
             this.tableId.put(table, id);
             return id;
         }
@@ -224,7 +255,7 @@ public class DDlogAPI {
      * See <code>ddlog.h: ddlog_get_table_name()</code>
      */
     public String getTableName(int id) {
-        return ddlog_get_table_name(id);
+        return ddlog_get_table_name(this.hprog, id);
     }
 
     /**
@@ -236,7 +267,7 @@ public class DDlogAPI {
      * See <code>ddlog.h: ddlog_get_index_id()</code>
      */
     public int getIndexId(String table) {
-        return ddlog_get_index_id(table);
+        return ddlog_get_index_id(this.hprog, table);
     }
 
     /**
@@ -245,7 +276,7 @@ public class DDlogAPI {
      * See <code>ddlog.h: ddlog_get_index_name()</code>
      */
     public String getIndexName(int id) {
-        return ddlog_get_index_name(id);
+        return ddlog_get_index_name(this.hprog, id);
     }
 
     /**
@@ -330,7 +361,7 @@ public class DDlogAPI {
      */
     public static class DDlogCommandVector {
         native void ddlog_transaction_batch_commit(long hprog) throws DDlogException;
-        native static void ddlog_batch_free(long pointer, int size);
+        native static void ddlog_batch_free(long hprog, long pointer, int size);
 
         private final long hprog;
 
@@ -387,7 +418,7 @@ public class DDlogAPI {
         private long pointer;
 
         public void dispose() {
-            ddlog_batch_free(this.pointer, this.size);
+            ddlog_batch_free(this.hprog, this.pointer, this.size);
             this.size = -1;
             this.pointer = 0;
         }
@@ -563,7 +594,7 @@ public class DDlogAPI {
         this.dump_table(this.hprog, id, onDump);
     }
 
-    /// Callback invoked from dumpIndex.
+    /// Callback invoked from dumpIndex and queryIndex.
     void dumpIndexCallback(long handle) {
         if (this.dumpIndexCallback != null) {
             DDlogRecord record = DDlogRecord.fromSharedHandle(handle);
@@ -588,6 +619,25 @@ public class DDlogAPI {
         this.dump_index(this.hprog, id, onDump);
     }
 
+    /**
+     * Query an index for the records that match a key.
+     * @param index     DDlog index name
+     * @param key       Key to look up: the value of the single index argument, or a tuple
+     *                  with one value per argument.  The key is consumed by this call.
+     * @param callback  Callback invoked with each record that matches the key.
+     * Note: this method is not thread-safe: once invoked it should not
+     * be invoked again until the previous invocation has returned.
+     */
+    public void queryIndex(String index, DDlogRecord key, Consumer<DDlogRecord> callback) throws DDlogException {
+        this.checkHandle();
+        int id = this.getIndexId(index);
+        if (id == -1)
+            throw new RuntimeException("Unknown index " + index);
+        String onDump = callback == null ? null : "dumpIndexCallback";
+        this.dumpIndexCallback = callback;
+        this.query_index(this.hprog, id, key.getHandleAndInvalidate(), onDump);
+    }
+
     /**
      * Returns DDlog program runtime profile as a string.
      *
@@ -663,6 +713,19 @@ public class DDlogAPI {
      * @return                The exit code of the process.
      */
     public static int runProcess(List<String> commands, String workdirectory, boolean verbose) {
+        return runProcess(commands, workdirectory, null, verbose);
+    }
+
+    /**
+     * Run an external process by executing the specified command.
+     * @param commands        Command and arguments.
+     * @param workdirectory   If not null the working directory.
+     * @param environment     If not null additional environment variables for the process.
+     * @param verbose         If true echo output and stderr of subprocess.
+     * @return                The exit code of the process.
+     */
+    public static int runProcess(List<String> commands, String workdirectory,
+                                 Map<String, String> environment, boolean verbose) {
         try {
             if (verbose)
                 System.out.println("Running " + String.join(" ", commands) +
@@ -673,6 +736,9 @@ public class DDlogAPI {
             if (workdirectory != null) {
                 pb.directory(new File(workdirectory));
             }
+            if (environment != null) {
+                pb.environment().putAll(environment);
+            }
             Process process = pb.start();
             int exitCode = process.waitFor();
             if (exitCode != 0)
@@ -686,6 +752,33 @@ public class DDlogAPI {
     }
 
     public static final String ddlogLibrary = "ddlogapi";
+    // JNI library that is not linked with a DDlog program; see DDlogAPI(Path, ...).
+    public static final String jniLibrary = "ddlogjni";
+
+    /**
+     * Directory holding the compilation cache; null if caching is disabled.
+     * Initialized from the DDLOG_COMPILE_CACHE environment variable.
+     */
+    private static String compilationCacheDirectory = System.getenv("DDLOG_COMPILE_CACHE");
+
+    /**
+     * Enable or disable the cache used by <code>compileDDlogProgram</code>.
+     * The cache stores a compiled library for each distinct combination of
+     * DDlog program, DDlog compiler version and DDlog libraries; compiling the
+     * same program again copies the cached library instead of invoking the
+     * compilers.  Programs with the same file name compiled with the cache
+     * enabled also share a Cargo target directory in the cache, so that
+     * programs that differ only slightly are compiled incrementally; builds
+     * that share a target directory run one at a time, also across processes.
+     * @param directory  Directory where compiled libraries are stored; null disables the cache.
+     */
+    public static void setCompilationCacheDirectory(String directory) {
+        compilationCacheDirectory = directory;
+    }
+
+    public static String getCompilationCacheDirectory() {
+        return compilationCacheDirectory;
+    }
 
     public static String libName(String lib) {
         String os = System.getProperty("os.name").toLowerCase();
@@ -759,10 +852,81 @@ public class DDlogAPI {
         String outLibName,
         boolean verbose,
         String... ddlogLibraryPath) throws DDlogException {
+        String cacheDirectory = compilationCacheDirectory;
+        Path cachedLibrary = null;
+        if (cacheDirectory != null) {
+            String key = compilationCacheKey(ddlogFile, ddlogInstallationPath(), ddlogLibraryPath);
+            if (key != null) {
+                cachedLibrary = Paths.get(cacheDirectory, key, libName(ddlogLibrary));
+                if (Files.exists(cachedLibrary)) {
+                    try {
+                        if (verbose)
+                            System.out.println("Using cached library " + cachedLibrary);
+                        Files.copy(cachedLibrary, Paths.get(outLibName), StandardCopyOption.REPLACE_EXISTING);
+                        return true;
+                    } catch (IOException ex) {
+                        System.err.println("Error reading compilation cache: " + ex.getMessage());
+                    }
+                }
+            }
+        }
+
         boolean success = compileDDlogProgramToRust(ddlogFile, verbose, ddlogLibraryPath);
         if (!success)
             return false;
 
+        int dot = ddlogFile.lastIndexOf('.');
+        String rustDir = ddlogFile;
+        if (dot >= 0)
+            rustDir = ddlogFile.substring(0, dot);
+        rustDir += "_ddlog";
+        String libRoot = Paths.get(rustDir).getFileName().toString();
+        if (cacheDirectory == null)
+            return buildLibrary(rustDir, rustDir + "/target", null, outLibName, null, verbose);
+
+        // Programs with the same name share a Cargo target directory, so that cargo can reuse
+        // previous compilation results; they also produce the same static library there.
+        // Hold a lock from cargo until the library is linked and published, so that a concurrent
+        // build of another program with the same name cannot replace the static library in between.
+        Path targetDir = Paths.get(cacheDirectory, "target", libRoot).toAbsolutePath();
+        Path lockFile = Paths.get(targetDir + ".lock");
+        Map<String, String> environment = new HashMap<String, String>();
+        environment.put("CARGO_TARGET_DIR", targetDir.toString());
+        synchronized (buildLock(lockFile)) {
+            try {
+                Files.createDirectories(targetDir);
+                try (FileChannel channel = FileChannel.open(lockFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    FileLock lock = channel.lock();
+                    try {
+                        return buildLibrary(rustDir, targetDir.toString(), environment, outLibName, cachedLibrary, verbose);
+                    } finally {
+                        lock.release();
+                    }
+                }
+            } catch (IOException ex) {
+                System.err.println("Error locking compilation cache: " + ex.getMessage());
+                return false;
+            }
+        }
+    }
+
+    // One lock object per cache lock file: a FileLock only excludes other processes.
+    private static final Map<Path, Object> buildLocks = new HashMap<Path, Object>();
+
+    private static Object buildLock(Path lockFile) {
+        synchronized (buildLocks) {
+            return buildLocks.computeIfAbsent(lockFile, f -> new Object());
+        }
+    }
+
+    /**
+     * Compile the Rust project of a DDlog program, link it with the JNI library,
+     * and store the result in the compilation cache if cachedLibrary is not null.
+     */
+    private static boolean buildLibrary(String rustDir, String targetDir, Map<String, String> environment,
+                                        String outLibName, Path cachedLibrary, boolean verbose)
+            throws DDlogException {
         String os = System.getProperty("os.name").toLowerCase();
         String ddlogInstallationPath = ddlogInstallationPath();
 
@@ -770,12 +934,7 @@ public class DDlogAPI {
         command.add("cargo");
         command.add("build");
         command.add("--release");
-        int dot = ddlogFile.lastIndexOf('.');
-        String rustDir = ddlogFile;
-        if (dot >= 0)
-            rustDir = ddlogFile.substring(0, dot);
-        rustDir += "_ddlog";
-        int exitCode = runProcess(command, rustDir, verbose);
+        int exitCode = runProcess(command, rustDir, environment, verbose);
         if (exitCode != 0)
             return false;
 
@@ -794,13 +953,99 @@ public class DDlogAPI {
         command.add("-I" + rustDir);
         command.add("-I" + ddlogInstallationPath + "/lib");
         command.add(ddlogInstallationPath + "/java/ddlogapi.c");
-        command.add("-L" + rustDir + "/target/release/");
+        command.add("-L" + targetDir + "/release/");
         String libRoot = Paths.get(rustDir).getFileName().toString();
         command.add("-l" + libRoot);
+        if (os.equals("linux"))
+            command.add("-ldl");
         command.add("-o");
         command.add(outLibName);
         exitCode = runProcess(command, null, verbose);
-        return exitCode == 0;
+        if (exitCode != 0)
+            return false;
+
+        if (cachedLibrary != null) {
+            try {
+                // Copy to a temporary file first, so that concurrent builds never see a partial library
+                Files.createDirectories(cachedLibrary.getParent());
+                Path tmp = Files.createTempFile(cachedLibrary.getParent(), "lib", ".tmp");
+                Files.copy(Paths.get(outLibName), tmp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp, cachedLibrary, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                System.err.println("Error writing compilation cache: " + ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the key under which the library compiled from a DDlog program is cached.
+     * The key is a hash of the program, of the DDlog compiler version, and of all
+     * DDlog libraries and C sources the compiled library depends on.
+     * @return  The key, or null if it cannot be computed (e.g., the compiler cannot be run).
+     */
+    static String compilationCacheKey(String ddlogFile, String ddlogInstallationPath,
+                                      String... ddlogLibraryPath) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String version = processOutput(Arrays.asList("ddlog", "--version"));
+            if (version == null)
+                return null;
+            digest.update(version.getBytes(StandardCharsets.UTF_8));
+            digest.update(System.getProperty("os.name").getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(Paths.get(ddlogFile)));
+            digest.update(Files.readAllBytes(Paths.get(ddlogInstallationPath, "java", "ddlogapi.c")));
+            List<Path> libraries = new ArrayList<Path>();
+            libraries.add(Paths.get(ddlogInstallationPath, "lib"));
+            for (String s: ddlogLibraryPath)
+                libraries.add(Paths.get(s));
+            for (Path library: libraries) {
+                Path dir = library.toAbsolutePath().normalize();
+                digest.update(dir.toString().getBytes(StandardCharsets.UTF_8));
+                if (!Files.isDirectory(dir))
+                    continue;
+                List<Path> files;
+                try (Stream<Path> stream = Files.walk(dir)) {
+                    files = stream.filter(f -> f.toString().endsWith(".dl") || f.toString().endsWith(".rs"))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path f: files) {
+                    digest.update(dir.relativize(f).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(f));
+                }
+            }
+            StringBuilder result = new StringBuilder();
+            for (byte b: digest.digest())
+                result.append(String.format("%02x", b));
+            return result.toString();
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            System.err.println("Cannot compute compilation cache key: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Run an external process and return its standard output,
+     * or null if the process cannot be run or fails.
+     */
+    static String processOutput(List<String> commands) {
+        try {
+            ProcessBuilder pb = new ProcessBuilder(commands);
+            pb.redirectErrorStream(true);
+            Process process = pb.start();
+            String output;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                output = reader.lines().collect(Collectors.joining("\n"));
+            }
+            if (process.waitFor() != 0)
+                return null;
+            return output;
+        } catch (Exception ex) {
+            return null;
+        }
     }
 
     static boolean loaded = false;
@@ -811,8 +1056,8 @@ public class DDlogAPI {
      */
     public static DDlogAPI loadDDlog() throws DDlogException {
         if (loaded)
-            throw new RuntimeException("Attempt to load a secon dddlog library. "
-                    + " Only one library can be loaded safely.");
+            throw new RuntimeException("Attempt to load a second ddlog library. "
+                    + " Only one linked library can be loaded; use DDlogAPI(Path, ...) for dynamic libraries.");
         loaded = true;
         final Path libraryPath = Paths.get(libName(ddlogLibrary)).toAbsolutePath();
         System.load(libraryPath.toString());
@@ -0,0 +1,308 @@
+package ddlogapi;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Runs a DDlog computation sharded across several local processes, each running a
+ * DDlog program (see DDlogNode), and presents it through an API similar to DDlogAPI.
+ *
+ * <p>
+ * Updates to an input relation are routed to the node(s) owning it, as described
+ * by a DDlogClusterConfig.  On commit the nodes are processed in the order given by
+ * the channels between them: nodes that do not depend on each other commit in
+ * parallel, and the changes of a relation feeding a channel are forwarded to the
+ * downstream node within the same cluster transaction.  All changes produced by
+ * all nodes are delivered to a single commit callback.
+ * </p>
+ *
+ * <p>
+ * Relation ids are assigned by the cluster and are unrelated to the relation ids
+ * of the programs running in the nodes.  DDlogRecords can only be built once a
+ * DDlog library is loaded in this JVM; the cluster loads the library of the first
+ * node, which must be on the java.library.path unless one is already loaded.
+ * </p>
+ */
+public class DDlogCluster {
+    private static class Node {
+        final DDlogClusterConfig.Node config;
+        final Process process;
+        final DataOutputStream to;
+        final DataInputStream from;
+        // Updates buffered for the next commit.
+        ByteArrayOutputStream pendingBytes;
+        DataOutputStream pending;
+        int pendingCount;
+        // Position of the node in the channel graph; a node only receives data from nodes with a lower level.
+        int level;
+
+        Node(DDlogClusterConfig.Node config, Process process) {
+            this.config = config;
+            this.process = process;
+            this.to = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.from = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            this.clearPending();
+        }
+
+        void clearPending() {
+            this.pendingBytes = new ByteArrayOutputStream();
+            this.pending = new DataOutputStream(this.pendingBytes);
+            this.pendingCount = 0;
+        }
+
+        void addPending(DDlogCommand.Kind kind, String relation, DDlogRecord record) throws IOException {
+            this.addPending(kind, relation, record, null);
+        }
+
+        /**
+         * Buffer an update; if constructor is not null the record is a struct
+         * that is sent with this constructor instead of its own.
+         */
+        void addPending(DDlogCommand.Kind kind, String relation, DDlogRecord record, String constructor)
+                throws IOException {
+            this.pending.writeByte(kind.ordinal());
+            this.pending.writeUTF(relation);
+            if (constructor == null)
+                record.write(this.pending);
+            else
+                record.writeAs(constructor, this.pending);
+            this.pendingCount++;
+        }
+
+        void sendPending() throws IOException {
+            this.to.writeByte(DDlogNode.COMMIT);
+            this.to.writeInt(this.pendingCount);
+            this.pending.flush();
+            this.pendingBytes.writeTo(this.to);
+            this.to.flush();
+            this.clearPending();
+        }
+
+        DDlogException error(String message) {
+            return new DDlogException("Node " + this.config.name + ": " + message);
+        }
+    }
+
+    private final DDlogClusterConfig config;
+    private final Map<String, Node> nodes;
+    private final Consumer<DDlogCommand<DDlogRecord>> commitCallback;
+    private final Map<String, Integer> tableId;
+    private final List<String> tableName;
+    private boolean inTransaction;
+
+    /**
+     * Start one process for each node in the configuration.
+     * @param callback  Invoked for each change produced by a commit; the record
+     *                  is only valid during the callback.  May be null.
+     */
+    public DDlogCluster(DDlogClusterConfig config, Consumer<DDlogCommand<DDlogRecord>> callback)
+            throws DDlogException, IOException {
+        if (config.nodes.isEmpty())
+            throw new DDlogException("Cluster has no nodes");
+        this.config = config;
+        this.commitCallback = callback;
+        this.tableId = new HashMap<String, Integer>();
+        this.tableName = new ArrayList<String>();
+        this.nodes = new LinkedHashMap<String, Node>();
+        DDlogClusterConfig.Node first = config.nodes.values().iterator().next();
+        DDlogAPI.ensureDllLoaded(first.library);
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        try {
+            for (DDlogClusterConfig.Node n: config.nodes.values()) {
+                ProcessBuilder builder = new ProcessBuilder(java,
+                        "-cp", System.getProperty("java.class.path"),
+                        "-Djava.library.path=" + n.libraryPath,
+                        DDlogNode.class.getName(), n.library, Integer.toString(n.workers));
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                this.nodes.put(n.name, new Node(n, builder.start()));
+            }
+            for (Node node: this.nodes.values())
+                this.readReply(node, null);
+            this.computeLevels();
+        } catch (DDlogException | IOException e) {
+            for (Node node: this.nodes.values())
+                node.process.destroy();
+            throw e;
+        }
+    }
+
+    private void computeLevels() throws DDlogException {
+        // Longest-path layering of the channel graph; more than |nodes| rounds means a cycle.
+        for (int round = 0; ; round++) {
+            boolean changed = false;
+            for (DDlogClusterConfig.Channel c: this.config.channels) {
+                Node from = this.nodes.get(c.fromNode);
+                Node to = this.nodes.get(c.toNode);
+                if (to.level <= from.level) {
+                    to.level = from.level + 1;
+                    changed = true;
+                }
+            }
+            if (!changed)
+                return;
+            if (round >= this.nodes.size())
+                throw new DDlogException("Channels between nodes form a cycle");
+        }
+    }
+
+    /**
+     * Cluster-wide id of a relation.  Ids are assigned on first use, so
+     * this never fails.
+     */
+    public synchronized int getTableId(String table) {
+        Integer id = this.tableId.get(table);
+        if (id == null) {
+            id = this.tableName.size();
+            this.tableName.add(table);
+            this.tableId.put(table, id);
+        }
+        return id;
+    }
+
+    public synchronized String getTableName(int id) {
+        if (id < 0 || id >= this.tableName.size())
+            return null;
+        return this.tableName.get(id);
+    }
+
+    public void transactionStart() throws DDlogException {
+        if (this.inTransaction)
+            throw new DDlogException("Transaction already in progress");
+        this.inTransaction = true;
+    }
+
+    /**
+     * Buffer updates to input relations; they are sent to the owning nodes on commit.
+     * Like DDlogAPI.applyUpdates, this takes ownership of the records.
+     */
+    public void applyUpdates(DDlogRecCommand[] commands) throws DDlogException, IOException {
+        if (!this.inTransaction)
+            throw new DDlogException("No transaction in progress");
+        for (DDlogRecCommand c: commands) {
+            String relation = this.getTableName(c.relid());
+            List<String> owners = this.config.getOwners(relation);
+            if (owners.isEmpty())
+                throw new DDlogException("Relation " + relation + " is not assigned to any node");
+            for (String owner: owners)
+                this.nodes.get(owner).addPending(c.kind(), relation, c.value());
+            c.value().release();
+        }
+    }
+
+    /**
+     * Discard the updates buffered since transactionStart.
+     */
+    public void transactionRollback() throws DDlogException {
+        if (!this.inTransaction)
+            throw new DDlogException("No transaction in progress");
+        for (Node node: this.nodes.values())
+            node.clearPending();
+        this.inTransaction = false;
+    }
+
+    /**
+     * Commit the buffered updates on all nodes, invoking the commit callback
+     * for every change.  If a node fails the nodes that have already committed
+     * are not rolled back.
+     */
+    public void transactionCommit() throws DDlogException, IOException {
+        if (!this.inTransaction)
+            throw new DDlogException("No transaction in progress");
+        this.inTransaction = false;
+        int maxLevel = 0;
+        for (Node node: this.nodes.values())
+            maxLevel = Math.max(maxLevel, node.level);
+        for (int level = 0; level <= maxLevel; level++) {
+            List<Node> ready = new ArrayList<Node>();
+            for (Node node: this.nodes.values())
+                if (node.level == level && node.pendingCount > 0)
+                    ready.add(node);
+            // Send all requests before reading any reply, so that the nodes work in parallel.
+            for (Node node: ready)
+                node.sendPending();
+            for (Node node: ready)
+                this.readReply(node, this::forward);
+        }
+    }
+
+    private interface ChangeHandler {
+        void accept(Node node, String relation, long weight, DDlogRecord record) throws IOException;
+    }
+
+    private void forward(Node node, String relation, long weight, DDlogRecord record) throws IOException {
+        if (this.commitCallback != null) {
+            DDlogCommand.Kind kind = weight > 0 ? DDlogCommand.Kind.Insert : DDlogCommand.Kind.DeleteVal;
+            this.commitCallback.accept(new DDlogRecCommand(
+                    kind, Math.abs(weight), this.getTableId(relation), record));
+        }
+        for (DDlogClusterConfig.Channel c: this.config.channels) {
+            if (!c.fromNode.equals(node.config.name) || !c.fromRelation.equals(relation))
+                continue;
+            // A relation declared with its fields has a struct type named after the
+            // relation; rebuild such records with the type of the target relation.
+            String constructor = null;
+            if (record.isStruct() && record.getStructName().equals(c.fromRelation))
+                constructor = c.toRelation;
+            // Input relations are sets, but forward the multiplicity for multiset inputs.
+            DDlogCommand.Kind kind = weight > 0 ? DDlogCommand.Kind.Insert : DDlogCommand.Kind.DeleteVal;
+            Node to = this.nodes.get(c.toNode);
+            for (long i = 0; i < Math.abs(weight); i++)
+                to.addPending(kind, c.toRelation, record, constructor);
+        }
+    }
+
+    private void readReply(Node node, ChangeHandler handler) throws DDlogException, IOException {
+        while (true) {
+            byte reply;
+            try {
+                reply = node.from.readByte();
+            } catch (EOFException e) {
+                throw node.error("process terminated");
+            }
+            switch (reply) {
+                case DDlogNode.DONE:
+                    return;
+                case DDlogNode.ERROR:
+                    throw node.error(node.from.readUTF());
+                case DDlogNode.CHANGE: {
+                    String relation = node.from.readUTF();
+                    long weight = node.from.readLong();
+                    DDlogRecord record = DDlogRecord.read(node.from);
+                    try {
+                        if (handler != null)
+                            handler.accept(node, relation, weight, record);
+                    } finally {
+                        record.release();
+                    }
+                    break;
+                }
+                default:
+                    throw node.error("unexpected reply " + reply);
+            }
+        }
+    }
+
+    /**
+     * Stop all nodes and wait for their processes to terminate.
+     */
+    public void stop() throws DDlogException, IOException {
+        for (Node node: this.nodes.values()) {
+            node.to.writeByte(DDlogNode.STOP);
+            node.to.flush();
+        }
+        for (Node node: this.nodes.values()) {
+            try {
+                int code = node.process.waitFor();
+                if (code != 0)
+                    throw node.error("exited with code " + code);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw node.error("interrupted while stopping");
+            }
+        }
+        this.nodes.clear();
+    }
+}
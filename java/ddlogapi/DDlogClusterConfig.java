@@ -0,0 +1,149 @@
+package ddlogapi;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Describes how a DDlog computation is sharded across the nodes of a DDlogCluster:
+ * the nodes, the node(s) owning each input relation, and the channels that feed
+ * an output relation of one node into an input relation of another node.
+ *
+ * <p>
+ * A configuration can also be read from a text file with one declaration per line;
+ * '#' starts a comment:
+ * </p>
+ * <pre>
+ * node    name library library_directory [workers]
+ * input   relation node
+ * channel node.output_relation node.input_relation
+ * </pre>
+ */
+public class DDlogClusterConfig {
+    public static class Node {
+        public final String name;
+        /** Name of the DDlog library, as passed to the DDlogAPI constructor. */
+        public final String library;
+        /** Directory containing the library. */
+        public final String libraryPath;
+        public final int workers;
+
+        Node(String name, String library, String libraryPath, int workers) {
+            this.name = name;
+            this.library = library;
+            this.libraryPath = libraryPath;
+            this.workers = workers;
+        }
+    }
+
+    public static class Channel {
+        public final String fromNode;
+        public final String fromRelation;
+        public final String toNode;
+        public final String toRelation;
+
+        Channel(String fromNode, String fromRelation, String toNode, String toRelation) {
+            this.fromNode = fromNode;
+            this.fromRelation = fromRelation;
+            this.toNode = toNode;
+            this.toRelation = toRelation;
+        }
+    }
+
+    final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+    final Map<String, List<String>> owners = new LinkedHashMap<String, List<String>>();
+    final List<Channel> channels = new ArrayList<Channel>();
+
+    private Node getNode(String name) {
+        Node node = this.nodes.get(name);
+        if (node == null)
+            throw new IllegalArgumentException("Unknown node " + name);
+        return node;
+    }
+
+    public DDlogClusterConfig addNode(String name, String library, String libraryPath, int workers) {
+        if (this.nodes.containsKey(name))
+            throw new IllegalArgumentException("Duplicate node " + name);
+        this.nodes.put(name, new Node(name, library, libraryPath, workers));
+        return this;
+    }
+
+    /**
+     * Route updates to an input relation to the specified node.
+     * A relation assigned to several nodes is replicated to all of them.
+     */
+    public DDlogClusterConfig assign(String relation, String node) {
+        this.getNode(node);
+        this.owners.computeIfAbsent(relation, r -> new ArrayList<String>()).add(node);
+        return this;
+    }
+
+    /**
+     * Feed the changes of an output relation of one node into an input relation
+     * of another node.
+     */
+    public DDlogClusterConfig connect(String fromNode, String fromRelation, String toNode, String toRelation) {
+        this.getNode(fromNode);
+        this.getNode(toNode);
+        this.channels.add(new Channel(fromNode, fromRelation, toNode, toRelation));
+        return this;
+    }
+
+    public Collection<Node> getNodes() {
+        return Collections.unmodifiableCollection(this.nodes.values());
+    }
+
+    public List<String> getOwners(String relation) {
+        return this.owners.getOrDefault(relation, Collections.emptyList());
+    }
+
+    public List<Channel> getChannels() {
+        return Collections.unmodifiableList(this.channels);
+    }
+
+    private static String[] splitRelation(String nodeRelation, int line) throws IOException {
+        int dot = nodeRelation.indexOf('.');
+        if (dot <= 0)
+            throw new IOException("Line " + line + ": expected node.relation, got " + nodeRelation);
+        return new String[] { nodeRelation.substring(0, dot), nodeRelation.substring(dot + 1) };
+    }
+
+    public static DDlogClusterConfig read(Reader reader) throws IOException {
+        DDlogClusterConfig result = new DDlogClusterConfig();
+        BufferedReader lines = new BufferedReader(reader);
+        int lineNo = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNo++;
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+            String[] words = line.split("\\s+");
+            try {
+                if (words[0].equals("node") && (words.length == 4 || words.length == 5)) {
+                    int workers = words.length == 5 ? Integer.parseInt(words[4]) : 1;
+                    result.addNode(words[1], words[2], words[3], workers);
+                } else if (words[0].equals("input") && words.length == 3) {
+                    result.assign(words[1], words[2]);
+                } else if (words[0].equals("channel") && words.length == 3) {
+                    String[] from = splitRelation(words[1], lineNo);
+                    String[] to = splitRelation(words[2], lineNo);
+                    result.connect(from[0], from[1], to[0], to[1]);
+                } else {
+                    throw new IOException("Line " + lineNo + ": cannot parse " + line);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNo + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    public static DDlogClusterConfig read(String filename) throws IOException {
+        try (Reader reader = new FileReader(filename)) {
+            return read(reader);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ddlogapi;
+
+import java.io.*;
+
+/**
+ * A DDlog program running in a separate process as one node of a DDlogCluster.
+ *
+ * <p>
+ * The node reads requests from its standard input and writes replies to its
+ * standard output; anything printed by the program goes to standard error.
+ * Each request starts with an opcode.  COMMIT is followed by a number of
+ * updates, each encoded as (kind, relation name, record); the node applies them
+ * in one transaction and replies with the changes produced, each encoded as
+ * (CHANGE, relation name, signed weight, record), followed by DONE, or with
+ * (ERROR, message).  STOP stops the program and exits.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>java -Djava.library.path=dir ddlogapi.DDlogNode library [workers]</code>
+ * </p>
+ */
+public class DDlogNode {
+    // Requests
+    static final byte STOP = 0;
+    static final byte COMMIT = 1;
+    // Replies
+    static final byte DONE = 0;
+    static final byte CHANGE = 1;
+    static final byte ERROR = 2;
+
+    private final DDlogAPI api;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    DDlogNode(DDlogAPI api, DataInputStream in, DataOutputStream out) {
+        this.api = api;
+        this.in = in;
+        this.out = out;
+    }
+
+    static void writeError(DataOutputStream out, Throwable error) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(String.valueOf(error.getMessage()));
+        out.flush();
+    }
+
+    private void commit() throws IOException {
+        int count = this.in.readInt();
+        DDlogRecCommand[] commands = new DDlogRecCommand[count];
+        // Read the whole request even if some relation is unknown, to stay in sync.
+        String unknown = null;
+        for (int i = 0; i < count; i++) {
+            DDlogCommand.Kind kind = DDlogCommand.Kind.values()[this.in.readByte()];
+            String relation = this.in.readUTF();
+            DDlogRecord record;
+            try {
+                record = DDlogRecord.read(this.in);
+            } catch (DDlogException e) {
+                throw new IOException(e);
+            }
+            int id = this.api.getTableId(relation);
+            if (id < 0)
+                unknown = relation;
+            commands[i] = new DDlogRecCommand(kind, id, record);
+        }
+
+        try {
+            if (unknown != null)
+                throw new DDlogException("Unknown relation " + unknown);
+            this.api.transactionStart();
+            try {
+                this.api.applyUpdates(commands);
+                this.api.transactionCommitDumpChanges(c -> {
+                    try {
+                        // The record is only valid during the callback, so serialize it here.
+                        this.out.writeByte(CHANGE);
+                        this.out.writeUTF(this.api.getTableName(c.relid()));
+                        long weight = c.kind() == DDlogCommand.Kind.Insert ? c.weight() : -c.weight();
+                        this.out.writeLong(weight);
+                        c.value().write(this.out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (DDlogException e) {
+                this.api.transactionRollback();
+                throw e;
+            }
+            this.out.writeByte(DONE);
+            this.out.flush();
+        } catch (DDlogException e) {
+            writeError(this.out, e);
+        } finally {
+            for (DDlogRecCommand c: commands)
+                c.value().release();
+        }
+    }
+
+    private void run() throws IOException, DDlogException {
+        while (true) {
+            byte op = this.in.readByte();
+            switch (op) {
+                case STOP:
+                    this.api.stop();
+                    return;
+                case COMMIT:
+                    this.commit();
+                    break;
+                default:
+                    throw new IOException("Unexpected request " + op);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, DDlogException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: DDlogNode library [workers]");
+            System.exit(1);
+        }
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(FileDescriptor.in)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out)));
+        // Standard output carries the protocol; keep everything else off it.
+        System.setOut(System.err);
+
+        DDlogAPI api;
+        try {
+            api = new DDlogAPI(args[0], workers, null, false);
+        } catch (DDlogException | UnsatisfiedLinkError e) {
+            writeError(out, e);
+            System.exit(1);
+            return;
+        }
+        out.writeByte(DONE);
+        out.flush();
+        new DDlogNode(api, in, out).run();
+    }
+}
@@ -1,8 +1,10 @@
 package ddlogapi;
 
+import java.io.*;
 import java.util.*;
 import java.lang.reflect.*;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Java wrapper around Differential Datalog C API that manipulates
@@ -76,6 +78,18 @@ public class DDlogRecord {
         return result;
     }
 
+    // Tags used by the binary serialization format; see write() and read().
+    private static final byte BOOL = 0;
+    private static final byte INT = 1;
+    private static final byte STRING = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte TUPLE = 5;
+    private static final byte VECTOR = 6;
+    private static final byte SET = 7;
+    private static final byte MAP = 8;
+    private static final byte STRUCT = 9;
+
     public DDlogRecord(boolean b) {
         this.handle = DDlogAPI.ddlog_bool(b);
         this.shared = false;
@@ -402,6 +416,142 @@ public class DDlogRecord {
         return DDlogRecord.makeStruct("std.Some", value);
     }
 
+    /**
+     * Serialize this record in a binary format that can be read back with read(),
+     * e.g., by a DDlog program running in another process.
+     */
+    public void write(DataOutput out) throws IOException {
+        write(this.checkHandle(), out);
+    }
+
+    /**
+     * Like write(), but serialize this struct with a different constructor; read()
+     * then builds a struct of another type with the same fields.
+     */
+    public void writeAs(String constructor, DataOutput out) throws IOException {
+        if (!this.isStruct())
+            throw new RuntimeException("Value is not a struct");
+        writeStruct(this.handle, checkNull(constructor), out);
+    }
+
+    private static void writeBytes(byte[] bytes, DataOutput out) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void write(long h, DataOutput out) throws IOException {
+        if (DDlogAPI.ddlog_is_bool(h)) {
+            out.writeByte(BOOL);
+            out.writeBoolean(DDlogAPI.ddlog_get_bool(h));
+        } else if (DDlogAPI.ddlog_is_float(h)) {
+            out.writeByte(FLOAT);
+            out.writeFloat(DDlogAPI.ddlog_get_float(h));
+        } else if (DDlogAPI.ddlog_is_double(h)) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(DDlogAPI.ddlog_get_double(h));
+        } else if (DDlogAPI.ddlog_is_int(h)) {
+            out.writeByte(INT);
+            writeBytes(fromSharedHandle(h).getInt().toByteArray(), out);
+        } else if (DDlogAPI.ddlog_is_string(h)) {
+            out.writeByte(STRING);
+            writeBytes(DDlogAPI.ddlog_get_str(h).getBytes(StandardCharsets.UTF_8), out);
+        } else if (DDlogAPI.ddlog_is_tuple(h)) {
+            int fields = DDlogAPI.ddlog_get_tuple_size(h);
+            out.writeByte(TUPLE);
+            out.writeInt(fields);
+            for (int i = 0; i < fields; i++)
+                write(DDlogAPI.ddlog_get_tuple_field(h, i), out);
+        } else if (DDlogAPI.ddlog_is_vector(h)) {
+            int fields = DDlogAPI.ddlog_get_vector_size(h);
+            out.writeByte(VECTOR);
+            out.writeInt(fields);
+            for (int i = 0; i < fields; i++)
+                write(DDlogAPI.ddlog_get_vector_elem(h, i), out);
+        } else if (DDlogAPI.ddlog_is_set(h)) {
+            int fields = DDlogAPI.ddlog_get_set_size(h);
+            out.writeByte(SET);
+            out.writeInt(fields);
+            for (int i = 0; i < fields; i++)
+                write(DDlogAPI.ddlog_get_set_elem(h, i), out);
+        } else if (DDlogAPI.ddlog_is_map(h)) {
+            int fields = DDlogAPI.ddlog_get_map_size(h);
+            out.writeByte(MAP);
+            out.writeInt(fields);
+            for (int i = 0; i < fields; i++) {
+                write(DDlogAPI.ddlog_get_map_key(h, i), out);
+                write(DDlogAPI.ddlog_get_map_val(h, i), out);
+            }
+        } else if (DDlogAPI.ddlog_is_struct(h)) {
+            writeStruct(h, DDlogAPI.ddlog_get_constructor(h), out);
+        } else {
+            throw new RuntimeException("Unhandled record type");
+        }
+    }
+
+    private static void writeStruct(long h, String constructor, DataOutput out) throws IOException {
+        int fields = 0;
+        while (DDlogAPI.ddlog_get_struct_field(h, fields) != 0)
+            fields++;
+        out.writeByte(STRUCT);
+        writeBytes(constructor.getBytes(StandardCharsets.UTF_8), out);
+        out.writeInt(fields);
+        for (int i = 0; i < fields; i++)
+            write(DDlogAPI.ddlog_get_struct_field(h, i), out);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static DDlogRecord[] readFields(int count, DataInput in)
+            throws IOException, DDlogException {
+        DDlogRecord[] fields = new DDlogRecord[count];
+        for (int i = 0; i < count; i++)
+            fields[i] = read(in);
+        return fields;
+    }
+
+    /**
+     * Deserialize a record written by write().
+     */
+    public static DDlogRecord read(DataInput in) throws IOException, DDlogException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case BOOL:
+                return new DDlogRecord(in.readBoolean());
+            case INT:
+                return new DDlogRecord(new BigInteger(readBytes(in)));
+            case STRING:
+                return new DDlogRecord(new String(readBytes(in), StandardCharsets.UTF_8));
+            case FLOAT:
+                return new DDlogRecord(in.readFloat());
+            case DOUBLE:
+                return new DDlogRecord(in.readDouble());
+            case TUPLE:
+                return makeTuple(readFields(in.readInt(), in));
+            case VECTOR:
+                return makeVector(readFields(in.readInt(), in));
+            case SET:
+                return makeSet(readFields(in.readInt(), in));
+            case MAP: {
+                DDlogRecord[] pairs = new DDlogRecord[in.readInt()];
+                for (int i = 0; i < pairs.length; i++) {
+                    DDlogRecord key = read(in);
+                    pairs[i] = new DDlogRecord(key, read(in));
+                }
+                return makeMap(pairs);
+            }
+            case STRUCT: {
+                String constructor = new String(readBytes(in), StandardCharsets.UTF_8);
+                return makeStruct(constructor, readFields(in.readInt(), in));
+            }
+            default:
+                throw new IOException("Unknown record tag " + tag);
+        }
+    }
+
     @Override
     public String toString() {
         this.checkHandle();
@@ -0,0 +1,43 @@
+import ddlogapi.*;
+
+public class Cluster {
+    private final DDlogCluster cluster;
+
+    Cluster(String config) throws Exception {
+        this.cluster = new DDlogCluster(DDlogClusterConfig.read(config), this::onCommit);
+    }
+
+    private void onCommit(DDlogCommand<DDlogRecord> command) {
+        System.out.println(command.kind() + " " + this.cluster.getTableName(command.relid()) +
+                " " + command.value());
+    }
+
+    private DDlogRecCommand command(DDlogCommand.Kind kind, String table, int value) throws DDlogException {
+        DDlogRecord r = DDlogRecord.makeStruct(table, new DDlogRecord(value));
+        return new DDlogRecCommand(kind, this.cluster.getTableId(table), r);
+    }
+
+    public void run() throws Exception {
+        this.cluster.transactionStart();
+        this.cluster.applyUpdates(new DDlogRecCommand[] {
+                this.command(DDlogCommand.Kind.Insert, "A", 1),
+                this.command(DDlogCommand.Kind.Insert, "A", 2) });
+        this.cluster.transactionCommit();
+        System.out.println("commit");
+
+        this.cluster.transactionStart();
+        this.cluster.applyUpdates(new DDlogRecCommand[] {
+                this.command(DDlogCommand.Kind.DeleteVal, "A", 1) });
+        this.cluster.transactionCommit();
+        System.out.println("commit");
+        this.cluster.stop();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 0) {
+            System.exit(-1);
+        }
+        Cluster c = new Cluster("cluster.conf");
+        c.run();
+    }
+}
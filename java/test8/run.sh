@@ -0,0 +1,13 @@
+#!/bin/bash
+
+set -ex
+
+source ../build_java.sh
+LIBDDLOG="libcluster.so" # the nodes load the library by this name
+compile cluster.dl Cluster.java debug
+java -Djava.library.path=. Cluster > cluster.dump
+diff cluster.dump cluster.dump.expected
+cleanup
+rm cluster.dump
+# Additional cleanup
+# rm -rf cluster_ddlog
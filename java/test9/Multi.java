@@ -0,0 +1,51 @@
+import ddlogapi.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs two different DDlog programs, and two instances of one of them, in the same JVM.
+ */
+public class Multi {
+    static Path library(String program) {
+        return Paths.get(program + "_ddlog", "target", "debug", DDlogAPI.libName(program + "_ddlog"));
+    }
+
+    static void insert(DDlogAPI api, String table, DDlogRecord... fields) throws DDlogException {
+        DDlogRecord r = DDlogRecord.makeStruct(table, fields);
+        api.applyUpdates(new DDlogRecCommand[] {
+                new DDlogRecCommand(DDlogCommand.Kind.Insert, api.getTableId(table), r) });
+    }
+
+    static void commit(String name, DDlogAPI api) throws DDlogException {
+        api.transactionCommitDumpChanges(c -> System.out.println(
+                name + ": " + c.kind() + " " + api.getTableName(c.relid()) + " " + c.value()));
+    }
+
+    public static void main(String[] args) throws DDlogException {
+        if (args.length != 0) {
+            System.exit(-1);
+        }
+        DDlogAPI counter1 = new DDlogAPI(library("counter"), 1, null, false);
+        DDlogAPI counter2 = new DDlogAPI(library("counter"), 1, null, false);
+        DDlogAPI reach = new DDlogAPI(library("reach"), 2, null, false);
+
+        counter1.transactionStart();
+        insert(counter1, "Event", new DDlogRecord(1));
+        insert(counter1, "Event", new DDlogRecord(2));
+        commit("counter1", counter1);
+
+        counter2.transactionStart();
+        insert(counter2, "Event", new DDlogRecord(3));
+        commit("counter2", counter2);
+
+        reach.transactionStart();
+        insert(reach, "Edge", new DDlogRecord(1), new DDlogRecord(2));
+        insert(reach, "Edge", new DDlogRecord(2), new DDlogRecord(3));
+        commit("reach", reach);
+
+        counter1.stop();
+        counter2.stop();
+        reach.stop();
+    }
+}
@@ -0,0 +1,13 @@
+#!/bin/bash
+
+set -ex
+
+source ../build_java.sh
+compile_dynlib counter.dl debug
+compile_dynlib reach.dl debug
+compile_jni Multi.java
+java -Djava.library.path=. Multi > multi.dump
+diff multi.dump multi.dump.expected
+rm -rf ./*.class libddlogjni.* multi.dump
+# Additional cleanup
+# rm -rf counter_ddlog reach_ddlog
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2018-2020 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2
+ */
+package com.vmware.ddlog;
+
+import ddlogapi.DDlogAPI;
+import ddlogapi.DDlogCommand;
+import ddlogapi.DDlogException;
+import ddlogapi.DDlogRecCommand;
+import ddlogapi.DDlogRecord;
+import org.jooq.Field;
+import org.jooq.Record;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * Loads rows into the base tables of a DDlogJooqProvider without going through SQL. Rows are converted
+ * directly into DDlog records and inserted in batches, all within a single DDlog transaction. For example:
+ *
+ *         final DDlogBulkLoader loader = new DDlogBulkLoader(provider);
+ *         loader.loadCsv("hosts", new FileReader("hosts.csv"), true);
+ *
+ * Each row must contain one value per column of the table, in the order in which the columns are declared
+ * in the "create table" statement. If an explicit transaction is open on the provider, the rows become part
+ * of that transaction; otherwise each load call is committed on its own.
+ */
+public class DDlogBulkLoader {
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+    private final DDlogJooqProvider provider;
+    private final int batchSize;
+
+    public DDlogBulkLoader(final DDlogJooqProvider provider) {
+        this(provider, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param provider   Provider whose tables are loaded.
+     * @param batchSize  Number of rows handed to DDlog in a single applyUpdates call.
+     */
+    public DDlogBulkLoader(final DDlogJooqProvider provider, final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.provider = provider;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Inserts rows into a table. Values are Java objects of the types used by jOOQ for the table's fields
+     * (e.g., Integer, Long, String, Boolean), or null for nullable columns.
+     * @param tableName  Table to load.
+     * @param rows       Rows to insert.
+     * @return           The number of rows inserted.
+     */
+    public long loadRows(final String tableName, final Iterator<Object[]> rows) throws DDlogException {
+        final List<Field<?>> fields = getFields(tableName);
+        final DDlogAPI dDlogAPI = provider.getDDlogAPI();
+        final int tableId = dDlogAPI.getTableId(DDlogJooqProvider.ddlogRelationName(tableName));
+        final String typeName = DDlogJooqProvider.ddlogTableTypeName(tableName);
+        final long[] count = new long[1];
+        provider.runInTransaction(() -> {
+            final List<DDlogRecCommand> batch = new ArrayList<>(batchSize);
+            while (rows.hasNext()) {
+                final Object[] row = rows.next();
+                if (row.length != fields.size()) {
+                    throw new RuntimeException(
+                            String.format("Incorrect row size %d for insertion into table %s", row.length, tableName));
+                }
+                final DDlogRecord[] recordsArray = new DDlogRecord[row.length];
+                for (int i = 0; i < row.length; i++) {
+                    recordsArray[i] = DDlogJooqProvider.valueToStruct(fields.get(i), row[i]);
+                }
+                final DDlogRecord record = DDlogRecord.makeStruct(typeName, recordsArray);
+                batch.add(new DDlogRecCommand(DDlogCommand.Kind.Insert, tableId, record));
+                if (batch.size() == batchSize) {
+                    count[0] += flush(dDlogAPI, batch);
+                }
+            }
+            count[0] += flush(dDlogAPI, batch);
+        });
+        return count[0];
+    }
+
+    /**
+     * Inserts jOOQ records into a table. The fields of each record must match the table's columns.
+     * @param tableName  Table to load.
+     * @param records    Records to insert.
+     * @return           The number of rows inserted.
+     */
+    public long loadRecords(final String tableName, final Iterable<? extends Record> records)
+            throws DDlogException {
+        final Iterator<? extends Record> iterator = records.iterator();
+        return loadRows(tableName, new Iterator<Object[]>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Object[] next() {
+                return iterator.next().intoArray();
+            }
+        });
+    }
+
+    /**
+     * Inserts rows read from CSV input into a table. Fields are separated by commas and may be enclosed in
+     * double quotes; a double quote inside a quoted field is written as two double quotes, and a quoted field
+     * may span several lines. An empty unquoted field is read as null. Boolean fields must be "true" or
+     * "false" (in any case); any other value is an error.
+     * @param tableName  Table to load.
+     * @param reader     CSV input; it is not closed by this method.
+     * @param hasHeader  If true the first line is a header and is skipped.
+     * @return           The number of rows inserted.
+     */
+    public long loadCsv(final String tableName, final Reader reader, final boolean hasHeader)
+            throws DDlogException, IOException {
+        final List<Field<?>> fields = getFields(tableName);
+        final CsvReader input = new CsvReader(reader instanceof BufferedReader ? (BufferedReader) reader
+                                                                              : new BufferedReader(reader));
+        if (hasHeader) {
+            input.next();
+        }
+        final Iterator<Object[]> rows = new Iterator<Object[]>() {
+            @Nullable
+            private List<String> nextValues = input.next();
+            private int nextLine = input.recordLine;
+
+            @Override
+            public boolean hasNext() {
+                return nextValues != null;
+            }
+
+            @Override
+            public Object[] next() {
+                assert nextValues != null;
+                final List<String> values = nextValues;
+                final int line = nextLine;
+                nextValues = input.next();
+                nextLine = input.recordLine;
+                final Object[] row = new Object[values.size()];
+                for (int i = 0; i < row.length && i < fields.size(); i++) {
+                    row[i] = parseValue(fields.get(i), values.get(i), line);
+                }
+                return row;
+            }
+        };
+        return loadRows(tableName, rows);
+    }
+
+    private List<Field<?>> getFields(final String tableName) {
+        final List<Field<?>> fields = provider.getFields(tableName);
+        if (fields == null) {
+            throw new RuntimeException("Unknown table " + tableName);
+        }
+        return fields;
+    }
+
+    private static int flush(final DDlogAPI dDlogAPI, final List<DDlogRecCommand> batch) throws DDlogException {
+        final int size = batch.size();
+        if (size > 0) {
+            dDlogAPI.applyUpdates(batch.toArray(new DDlogRecCommand[0]));
+            batch.clear();
+        }
+        return size;
+    }
+
+    /*
+     * Reads CSV records, which may span several physical lines when a quoted field contains a newline.
+     */
+    private static class CsvReader {
+        private final BufferedReader reader;
+        // Number of physical lines read so far.
+        private int lineNumber = 0;
+        // Line on which the last record returned by next() starts.
+        int recordLine = 0;
+
+        CsvReader(final BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Nullable
+        private String readLine() {
+            try {
+                final String line = reader.readLine();
+                if (line != null) {
+                    lineNumber++;
+                }
+                return line;
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /*
+         * Returns the fields of the next non-empty record, or null at the end of the input.
+         * Unquoted empty fields are returned as null.
+         */
+        @Nullable
+        List<String> next() {
+            String line;
+            do {
+                line = readLine();
+            } while (line != null && line.isEmpty());
+            if (line == null) {
+                return null;
+            }
+            recordLine = lineNumber;
+
+            final List<String> result = new ArrayList<>();
+            final StringBuilder current = new StringBuilder();
+            boolean inQuotes = false;
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == line.length()) {
+                    if (!inQuotes) {
+                        break;
+                    }
+                    // The quoted field continues on the next line
+                    line = readLine();
+                    if (line == null) {
+                        throw new RuntimeException("Unterminated quoted field in CSV record starting on line "
+                                + recordLine);
+                    }
+                    current.append('\n');
+                    i = 0;
+                    continue;
+                }
+                final char c = line.charAt(i);
+                if (inQuotes) {
+                    if (c == '"') {
+                        if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            current.append('"');
+                            i++;
+                        } else {
+                            inQuotes = false;
+                        }
+                    } else {
+                        current.append(c);
+                    }
+                } else if (c == '"') {
+                    inQuotes = true;
+                    quoted = true;
+                } else if (c == ',') {
+                    result.add(quoted || current.length() > 0 ? current.toString() : null);
+                    current.setLength(0);
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+                i++;
+            }
+            result.add(quoted || current.length() > 0 ? current.toString() : null);
+            return result;
+        }
+    }
+
+    @Nullable
+    private static Object parseValue(final Field<?> field, @Nullable final String value, final int line) {
+        if (value == null) {
+            return null;
+        }
+        final Class<?> cls = field.getType();
+        final String trimmed = value.trim();
+        if (cls == Boolean.class) {
+            if (trimmed.equalsIgnoreCase("true")) {
+                return true;
+            } else if (trimmed.equalsIgnoreCase("false")) {
+                return false;
+            }
+            throw new RuntimeException(String.format("Line %d: invalid boolean value '%s' for column %s",
+                    line, value, field.getName()));
+        } else if (cls == Integer.class || cls == Long.class) {
+            try {
+                return Long.parseLong(trimmed);
+            } catch (final NumberFormatException e) {
+                throw new RuntimeException(String.format("Line %d: invalid integer value '%s' for column %s",
+                        line, value, field.getName()));
+            }
+        }
+        return value;
+    }
+}
@@ -9,6 +9,7 @@ import com.facebook.presto.sql.parser.SqlParser;
 import com.facebook.presto.sql.tree.AllColumns;
 import com.facebook.presto.sql.tree.AstVisitor;
 import com.facebook.presto.sql.tree.BooleanLiteral;
+import com.facebook.presto.sql.tree.Commit;
 import com.facebook.presto.sql.tree.ComparisonExpression;
 import com.facebook.presto.sql.tree.Delete;
 import com.facebook.presto.sql.tree.Expression;
@@ -19,33 +20,56 @@ import com.facebook.presto.sql.tree.LogicalBinaryExpression;
 import com.facebook.presto.sql.tree.LongLiteral;
 import com.facebook.presto.sql.tree.Query;
 import com.facebook.presto.sql.tree.QuerySpecification;
+import com.facebook.presto.sql.tree.Rollback;
 import com.facebook.presto.sql.tree.Row;
 import com.facebook.presto.sql.tree.Select;
+import com.facebook.presto.sql.tree.StartTransaction;
 import com.facebook.presto.sql.tree.Statement;
 import com.facebook.presto.sql.tree.StringLiteral;
 import com.facebook.presto.sql.tree.Values;
+import com.vmware.ddlog.ir.DDlogField;
+import com.vmware.ddlog.ir.DDlogRelationDeclaration;
+import com.vmware.ddlog.ir.DDlogTBool;
+import com.vmware.ddlog.ir.DDlogTDouble;
+import com.vmware.ddlog.ir.DDlogTFloat;
+import com.vmware.ddlog.ir.DDlogTInt;
+import com.vmware.ddlog.ir.DDlogTSigned;
+import com.vmware.ddlog.ir.DDlogTString;
+import com.vmware.ddlog.ir.DDlogTStruct;
+import com.vmware.ddlog.ir.DDlogType;
+import com.vmware.ddlog.translator.SqlSemantics;
+import com.vmware.ddlog.translator.Translator;
+import com.vmware.ddlog.util.Linq;
 import ddlogapi.DDlogAPI;
 import ddlogapi.DDlogCommand;
 import ddlogapi.DDlogException;
 import ddlogapi.DDlogRecCommand;
 import ddlogapi.DDlogRecord;
 import org.jooq.DSLContext;
+import org.jooq.DataType;
 import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.Record1;
 import org.jooq.Result;
-import org.jooq.Table;
+import org.jooq.SQLDialect;
+import org.jooq.TransactionContext;
+import org.jooq.TransactionProvider;
+import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
 import org.jooq.tools.jdbc.MockDataProvider;
 import org.jooq.tools.jdbc.MockExecuteContext;
 import org.jooq.tools.jdbc.MockResult;
 
 import javax.annotation.Nullable;
 import java.sql.SQLException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 import static org.jooq.impl.DSL.field;
 
@@ -76,6 +100,25 @@ import static org.jooq.impl.DSL.field;
  *                                         primary key. That is, there should be a corresponding
  *                                        "create table T..." DDL statement that is passed to the DDlogJooqProvider
  *                                         where P1, P2... etc are columns in T's primary key.
+ *
+ * By default, every call to execute() (a single statement or a jOOQ batch) runs in its own DDlog transaction.
+ * To amortize the cost of a DDlog commit over many statements, an explicit transaction can be opened with
+ * "start transaction" (or "begin") and closed with "commit" or "rollback". Alternatively, the provider's
+ * {@link #transactionProvider()} can be installed in a jOOQ configuration so that DSLContext.transaction(...)
+ * blocks map to a single DDlog transaction:
+ *
+ *         DSLContext create = DSL.using(new DefaultConfiguration()
+ *                                           .set(new MockConnection(provider))
+ *                                           .set(provider.transactionProvider()));
+ *         create.transaction(configuration -> { ... });
+ *
+ * A rollback maps to a DDlog transaction rollback. Nested transactions are not supported. Reads inside an
+ * open transaction see the state of the views as of the last commit: updates made earlier in the same
+ * transaction only become visible once the transaction commits.
+ *
+ * Instead of re-reading a view to find out what changed, clients can register a listener with
+ * {@link #onViewChange}. On every commit, the listener receives the records inserted into or deleted
+ * from the view by that commit.
  */
 public class DDlogJooqProvider implements MockDataProvider {
     private static final String INTEGER_TYPE = "java.lang.Integer";
@@ -84,36 +127,45 @@ public class DDlogJooqProvider implements MockDataProvider {
     private static final String LONG_TYPE = "java.lang.Long";
     private static final String DDLOG_SOME = "ddlog_std::Some";
     private static final String DDLOG_NONE = "ddlog_std::None";
+    private static final Pattern BEGIN_STATEMENT =
+            Pattern.compile("^\\s*begin(\\s+(transaction|work))?\\s*;?\\s*$", Pattern.CASE_INSENSITIVE);
     private final DDlogAPI dDlogAPI;
     private final DSLContext dslContext;
     private final Field<Integer> updateCountField;
     private final Map<String, List<Field<?>>> tablesToFields = new HashMap<>();
     private final Map<String, List<? extends Field<?>>> tablesToPrimaryKeys = new HashMap<>();
+    // Listeners registered with onViewChange, indexed by DDlog relation name and then by the view name
+    // used to register them
+    private final Map<String, Map<String, List<Consumer<ViewDelta>>>> viewListeners = new HashMap<>();
     private final SqlParser parser = new SqlParser();
     private final ParsingOptions options = ParsingOptions.builder().build();
     private final QueryVisitor queryVisitor = new QueryVisitor();
     private final ParseLiterals parseLiterals = new ParseLiterals();
-    private final TranslateCreateTableDialect translateCreateTableDialect = new TranslateCreateTableDialect();
+    // True while a DDlog transaction is open
+    private boolean inDDlogTransaction = false;
+    // True while the open DDlog transaction was started explicitly by the client
+    private boolean inExplicitTransaction = false;
 
     public DDlogJooqProvider(final DDlogAPI dDlogAPI, final List<String> sqlStatements) {
         this.dDlogAPI = dDlogAPI;
-        this.dslContext = DSL.using("jdbc:h2:mem:");
+        this.dslContext = DSL.using(SQLDialect.DEFAULT);
         this.updateCountField = field("UPDATE_COUNT", Integer.class);
 
-        // We translate DDL statements from the Presto dialect to H2.
-        // We then execute these statements in a temporary database so that JOOQ can extract useful metadata
-        // that we will use later (for example, the record types for views).
-        for (final String sql : sqlStatements) {
-            final Statement statement = parser.createStatement(sql, options);
-            final String statementInH2Dialect = translateCreateTableDialect.process(statement, sql);
-            dslContext.execute(statementInH2Dialect);
-        }
-        for (final Table<?> table: dslContext.meta().getTables()) {
-            if (table.getSchema().getName().equals("PUBLIC")) { // H2-specific assumption
-                tablesToFields.put(table.getName(), Arrays.asList(table.fields()));
-                if (table.getPrimaryKey() != null) {
-                    tablesToPrimaryKeys.put(table.getName(), table.getPrimaryKey().getFields());
-                }
+        // We translate the DDL statements to DDlog to obtain the record types of tables and views,
+        // which we use later to convert between DDlog records and jOOQ records.
+        final Translator translator = new Translator(null);
+        sqlStatements.forEach(translator::translateSqlStatement);
+        for (final DDlogRelationDeclaration relation: translator.getDDlogProgram().relations) {
+            if (relation.getRole() == DDlogRelationDeclaration.Role.Internal) {
+                continue;
+            }
+            // Strip the prefix added by DDlogRelationDeclaration.relationName
+            final String tableName = relation.getName().substring(1).toUpperCase();
+            final DDlogTStruct type = translator.resolveType(relation.getType()).to(DDlogTStruct.class);
+            tablesToFields.put(tableName, Linq.map(type.getFields(), DDlogJooqProvider::ddlogFieldToJooqField));
+            if (!relation.getKeyColumns().isEmpty()) {
+                tablesToPrimaryKeys.put(tableName,
+                        Linq.map(relation.getKeyColumns(), DDlogJooqProvider::ddlogFieldToJooqField));
             }
         }
     }
@@ -122,23 +174,120 @@ public class DDlogJooqProvider implements MockDataProvider {
      * All executed SQL queries against a JOOQ connection are received here
      */
     @Override
-    public MockResult[] execute(final MockExecuteContext ctx) throws SQLException {
+    public synchronized MockResult[] execute(final MockExecuteContext ctx) throws SQLException {
         final String[] batchSql = ctx.batchSQL();
         final MockResult[] mock = new MockResult[batchSql.length];
         try {
-            dDlogAPI.transactionStart();
             for (int i = 0; i < batchSql.length; i++) {
                 mock[i] = executeOne(batchSql[i]);
             }
-            dDlogAPI.transactionCommit();
+            // Statements that are not part of an explicit transaction are committed together
+            if (inDDlogTransaction && !inExplicitTransaction) {
+                commitTransaction();
+            }
         } catch (final DDlogException e) {
+            abortImplicitTransaction(e);
             throw new RuntimeException(e);
+        } catch (final SQLException | RuntimeException e) {
+            abortImplicitTransaction(e);
+            throw e;
         }
         return mock;
     }
 
-    private MockResult executeOne(final String sql) throws SQLException {
+    /*
+     * A failed statement that is not part of an explicit transaction rolls back the statements executed
+     * before it in the same batch. Explicit transactions are left open for the client to roll back.
+     */
+    private void abortImplicitTransaction(final Exception cause) {
+        if (inDDlogTransaction && !inExplicitTransaction) {
+            try {
+                rollbackTransaction();
+            } catch (final DDlogException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Runs the body in the currently open explicit transaction, if any. Otherwise, the body runs
+     * in a DDlog transaction of its own, which is committed if the body succeeds and rolled back if it fails.
+     */
+    synchronized void runInTransaction(final TransactionBody body) throws DDlogException {
+        if (inExplicitTransaction) {
+            body.run();
+            return;
+        }
+        startTransaction();
+        try {
+            body.run();
+        } catch (final DDlogException | RuntimeException e) {
+            abortImplicitTransaction(e);
+            throw e;
+        }
+        commitTransaction();
+    }
+
+    interface TransactionBody {
+        void run() throws DDlogException;
+    }
+
+    /**
+     * The fields of a table or view, in the order of the columns of the corresponding DDlog struct.
+     * Returns null if there is no table or view with the given name.
+     */
+    @Nullable
+    List<Field<?>> getFields(final String tableName) {
+        return tablesToFields.get(tableName.toUpperCase());
+    }
+
+    DDlogAPI getDDlogAPI() {
+        return dDlogAPI;
+    }
+
+    /**
+     * Registers a listener that is invoked for every change to a view when a transaction commits.
+     * The listener is called synchronously during the commit, possibly from a DDlog worker thread,
+     * and must not call back into this provider.
+     * @param view      Name of a table or view, as used in SQL statements.
+     * @param listener  Receives one ViewDelta per inserted or deleted record.
+     */
+    public synchronized void onViewChange(final String view, final Consumer<ViewDelta> listener) {
+        if (!tablesToFields.containsKey(view.toUpperCase())) {
+            throw new RuntimeException("Unknown view " + view);
+        }
+        viewListeners.computeIfAbsent(ddlogRelationName(view), k -> new LinkedHashMap<>())
+                     .computeIfAbsent(view, k -> new ArrayList<>()).add(listener);
+    }
+
+    /**
+     * Returns a jOOQ TransactionProvider that maps jOOQ transactions to DDlog transactions.
+     */
+    public TransactionProvider transactionProvider() {
+        return new DDlogTransactionProvider();
+    }
+
+    private MockResult executeOne(final String sql) throws SQLException, DDlogException {
+        if (BEGIN_STATEMENT.matcher(sql).matches()) {
+            beginExplicitTransaction();
+            return updateCountResult(0);
+        }
         final Statement statement = parser.createStatement(sql, options);
+        if (statement instanceof StartTransaction) {
+            beginExplicitTransaction();
+            return updateCountResult(0);
+        }
+        if (statement instanceof Commit) {
+            commitExplicitTransaction();
+            return updateCountResult(0);
+        }
+        if (statement instanceof Rollback) {
+            rollbackExplicitTransaction();
+            return updateCountResult(0);
+        }
+        if (!inDDlogTransaction) {
+            startTransaction();
+        }
         final MockResult result = queryVisitor.process(statement, sql);
         if (result == null) {
             throw new SQLException("Could not execute SQL statement " + sql);
@@ -146,6 +295,124 @@ public class DDlogJooqProvider implements MockDataProvider {
         return result;
     }
 
+    private synchronized void beginExplicitTransaction() throws SQLException, DDlogException {
+        if (inExplicitTransaction) {
+            throw new SQLException("Nested transactions are not supported");
+        }
+        // Statements executed earlier in the same batch are committed first
+        if (inDDlogTransaction) {
+            commitTransaction();
+        }
+        startTransaction();
+        inExplicitTransaction = true;
+    }
+
+    private synchronized void commitExplicitTransaction() throws SQLException, DDlogException {
+        if (!inExplicitTransaction) {
+            throw new SQLException("No transaction in progress");
+        }
+        commitTransaction();
+    }
+
+    private synchronized void rollbackExplicitTransaction() throws SQLException, DDlogException {
+        if (!inExplicitTransaction) {
+            throw new SQLException("No transaction in progress");
+        }
+        rollbackTransaction();
+    }
+
+    private void startTransaction() throws DDlogException {
+        dDlogAPI.transactionStart();
+        inDDlogTransaction = true;
+    }
+
+    private void commitTransaction() throws DDlogException {
+        inDDlogTransaction = false;
+        inExplicitTransaction = false;
+        if (viewListeners.isEmpty()) {
+            dDlogAPI.transactionCommit();
+        } else {
+            dDlogAPI.transactionCommitDumpChanges(this::onDelta);
+        }
+    }
+
+    /*
+     * Converts a change reported by DDlog into a ViewDelta for the listeners of the corresponding view.
+     * The DDlog record is only valid during this call.
+     */
+    private void onDelta(final DDlogCommand<DDlogRecord> command) {
+        final String relationName = dDlogAPI.getTableName(command.relid());
+        final Map<String, List<Consumer<ViewDelta>>> listeners = viewListeners.get(relationName);
+        if (listeners == null) {
+            return;
+        }
+        // Strip the prefix added by the naming convention in ddlogRelationName
+        final String view = relationName.substring(1);
+        final Record record = toJooqRecord(tablesToFields.get(view.toUpperCase()), command.value());
+        final ViewDelta.Kind kind = command.kind() == DDlogCommand.Kind.Insert ? ViewDelta.Kind.Insert
+                                                                               : ViewDelta.Kind.Delete;
+        listeners.forEach((name, consumers) -> {
+            final ViewDelta delta = new ViewDelta(name, kind, command.weight(), record);
+            consumers.forEach(l -> l.accept(delta));
+        });
+    }
+
+    private Record toJooqRecord(final List<Field<?>> fields, final DDlogRecord record) {
+        final Record jooqRecord = dslContext.newRecord(fields);
+        final Object[] returnValue = new Object[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            returnValue[i] = structToValue(fields.get(i), record.getStructField(i));
+        }
+        jooqRecord.fromArray(returnValue);
+        return jooqRecord;
+    }
+
+    private void rollbackTransaction() throws DDlogException {
+        inDDlogTransaction = false;
+        inExplicitTransaction = false;
+        dDlogAPI.transactionRollback();
+    }
+
+    private MockResult updateCountResult(final int count) {
+        final Result<Record1<Integer>> result = dslContext.newResult(updateCountField);
+        final Record1<Integer> resultRecord = dslContext.newRecord(updateCountField);
+        resultRecord.setValue(updateCountField, count);
+        result.add(resultRecord);
+        return new MockResult(count, result);
+    }
+
+    /*
+     * Maps jOOQ transactions (e.g., DSLContext.transaction(...)) to DDlog transactions.
+     */
+    private class DDlogTransactionProvider implements TransactionProvider {
+        @Override
+        public void begin(final TransactionContext ctx) {
+            try {
+                beginExplicitTransaction();
+            } catch (final SQLException | DDlogException e) {
+                throw new DataAccessException("Could not start transaction", e);
+            }
+        }
+
+        @Override
+        public void commit(final TransactionContext ctx) {
+            try {
+                commitExplicitTransaction();
+            } catch (final SQLException | DDlogException e) {
+                throw new DataAccessException("Could not commit transaction", e);
+            }
+        }
+
+        @Override
+        public void rollback(final TransactionContext ctx) {
+            try {
+                rollbackExplicitTransaction();
+            } catch (final SQLException | DDlogException e) {
+                throw new DataAccessException("Could not roll back transaction", e);
+            }
+        }
+    }
+
     /*
      * Visits an SQL query and converts into a JOOQ MockResult type.
      */
@@ -167,14 +434,12 @@ public class DDlogJooqProvider implements MockDataProvider {
             }
             final Result<Record> result = dslContext.newResult(fields);
             try {
-                dDlogAPI.dumpTable(ddlogRelationName(tableName), (record, l) -> {
-                    final Record jooqRecord = dslContext.newRecord(fields);
-                    final Object[] returnValue = new Object[fields.size()];
-                    for (int i = 0; i < fields.size(); i++) {
-                        returnValue[i] = structToValue(fields.get(i), record.getStructField(i));
+                // Rows of multiset views are reported once, with their multiplicity as the weight
+                dDlogAPI.dumpTable(ddlogRelationName(tableName), (record, weight) -> {
+                    final Record jooqRecord = toJooqRecord(fields, record);
+                    for (long i = 0; i < weight; i++) {
+                        result.add(jooqRecord);
                     }
-                    jooqRecord.fromArray(returnValue);
-                    result.add(jooqRecord);
                 });
             } catch (final DDlogException e) {
                 throw new RuntimeException(e);
@@ -332,17 +597,42 @@ public class DDlogJooqProvider implements MockDataProvider {
     /*
      * This corresponds to the naming convention followed by the SQL -> DDlog compiler
      */
-    private static String ddlogTableTypeName(final String tableName) {
+    static String ddlogTableTypeName(final String tableName) {
         return "T" + tableName.toLowerCase();
     }
 
     /*
      * This corresponds to the naming convention followed by the SQL -> DDlog compiler
      */
-    private static String ddlogRelationName(final String tableName) {
+    static String ddlogRelationName(final String tableName) {
         return "R" + tableName.toLowerCase();
     }
 
+    /*
+     * Creates the jOOQ field corresponding to a column of a table or view, as translated by the
+     * SQL -> DDlog compiler.
+     */
+    private static Field<?> ddlogFieldToJooqField(final DDlogField field) {
+        final DDlogType type = field.getType();
+        final DataType<?> dataType;
+        if (type instanceof DDlogTBool) {
+            dataType = SQLDataType.BOOLEAN;
+        } else if (type instanceof DDlogTSigned) {
+            dataType = SQLDataType.INTEGER;
+        } else if (type instanceof DDlogTInt) {
+            dataType = SQLDataType.BIGINT;
+        } else if (type instanceof DDlogTString || SqlSemantics.isInterned(type)) {
+            dataType = SQLDataType.VARCHAR;
+        } else if (type instanceof DDlogTDouble) {
+            dataType = SQLDataType.DOUBLE;
+        } else if (type instanceof DDlogTFloat) {
+            dataType = SQLDataType.REAL;
+        } else {
+            dataType = SQLDataType.OTHER;
+        }
+        return field(DSL.name(field.getName()), dataType.nullable(type.mayBeNull));
+    }
+
     /*
      * The SQL -> DDlog compiler represents nullable fields as ddlog Option<> types. We therefore
      * wrap DDlogRecords if needed.
@@ -361,6 +651,37 @@ public class DDlogJooqProvider implements MockDataProvider {
         }
     }
 
+    /*
+     * Converts a Java value for the given field into the corresponding DDlogRecord, which is the inverse of
+     * structToValue().
+     */
+    static DDlogRecord valueToStruct(final Field<?> field, @Nullable final Object value) throws DDlogException {
+        final boolean isNullable = field.getDataType().nullable();
+        if (value == null) {
+            if (!isNullable) {
+                throw new RuntimeException("Null value for non-nullable field " + field.getName());
+            }
+            return DDlogRecord.makeStruct(DDLOG_NONE);
+        }
+        final Class<?> cls = field.getType();
+        final DDlogRecord record;
+        switch (cls.getName()) {
+            case BOOLEAN_TYPE:
+                record = new DDlogRecord((Boolean) value);
+                break;
+            case INTEGER_TYPE:
+            case LONG_TYPE:
+                record = new DDlogRecord(((Number) value).longValue());
+                break;
+            case STRING_TYPE:
+                record = new DDlogRecord(value.toString());
+                break;
+            default:
+                throw new RuntimeException("Unknown datatype " + cls.getName());
+        }
+        return maybeOption(isNullable, record);
+    }
+
     @Nullable
     private static Object structToValue(final Field<?> field, final DDlogRecord record) {
         final Class<?> cls = field.getType();
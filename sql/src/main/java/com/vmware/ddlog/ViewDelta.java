@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018-2020 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2
+ */
+package com.vmware.ddlog;
+
+import org.jooq.Record;
+
+/**
+ * A change to the contents of a view, produced when a DDlog transaction commits.
+ * See {@link DDlogJooqProvider#onViewChange}.
+ */
+public class ViewDelta {
+    public enum Kind {
+        Insert,
+        Delete
+    }
+
+    private final String view;
+    private final Kind kind;
+    private final long weight;
+    private final Record record;
+
+    ViewDelta(final String view, final Kind kind, final long weight, final Record record) {
+        this.view = view;
+        this.kind = kind;
+        this.weight = weight;
+        this.record = record;
+    }
+
+    /**
+     * The name of the view that changed, as passed to onViewChange.
+     */
+    public String getView() {
+        return view;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * The number of copies of the record that were inserted or deleted.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    public Record getRecord() {
+        return record;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + weight + " " + view + " " + record.valuesRow();
+    }
+}
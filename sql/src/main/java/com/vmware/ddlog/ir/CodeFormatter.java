@@ -1,21 +1,33 @@
 package com.vmware.ddlog.ir;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 
 /**
  * This class helps generating nicely indented code.
+ * The code is accumulated in a string, or written directly to a Writer.
  */
 public class CodeFormatter {
-    private final StringBuilder builder;
+    private final Appendable output;
     private int indent = 0;
     private final int indentAmount = 2;
 
     public CodeFormatter() {
-        builder = new StringBuilder();
+        this.output = new StringBuilder();
+    }
+
+    /**
+     * Create a formatter that writes the code to a writer instead of accumulating it.
+     * Errors of the writer are reported as UncheckedIOException.
+     */
+    public CodeFormatter(Writer writer) {
+        this.output = writer;
     }
 
     public CodeFormatter append(CodeFormatter other) {
-        this.builder.append(other.builder);
+        this.append(other.toString());
         return other;
     }
 
@@ -32,12 +44,31 @@ public class CodeFormatter {
     }
 
     public CodeFormatter append(String str) {
-        this.builder.append(str);
+        try {
+            this.output.append(str);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
         return this;
     }
 
+    /**
+     * Separate the code of a list of nodes with a string.
+     */
+    public CodeFormatter join(String separator, List<? extends DDlogIRNode> nodes) {
+        CodeFormatter result = this;
+        boolean first = true;
+        for (DDlogIRNode node: nodes) {
+            if (!first)
+                result = result.append(separator);
+            first = false;
+            result = node.format(result);
+        }
+        return result;
+    }
+
     public String toString() {
-        return this.builder.toString();
+        return this.output.toString();
     }
 
     public CodeFormatter space() {
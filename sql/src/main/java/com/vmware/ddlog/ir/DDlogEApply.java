@@ -28,6 +28,10 @@ public class DDlogEApply extends DDlogExpression {
         this.args = Arrays.asList(args);
     }
 
+    public String getFunction() { return this.func; }
+
+    public List<DDlogExpression> getArgs() { return this.args; }
+
     @Override
     public String toString() {
         return this.func + "(" +
@@ -47,7 +51,7 @@ public class DDlogEApply extends DDlogExpression {
         if (this.args.size() != other.args.size())
             return false;
         for (int i = 0; i < this.args.size(); i++) {
-            if (this.args.get(i).compare(other.args.get(i), policy))
+            if (!this.args.get(i).compare(other.args.get(i), policy))
                 return false;
         }
         return true;
@@ -24,6 +24,8 @@ public class DDlogEAs extends DDlogExpression {
         this.expr = expr;
     }
 
+    public DDlogExpression getExpr() { return this.expr; }
+
     @Override
     public String toString() {
         return this.expr.toString() + " as " +
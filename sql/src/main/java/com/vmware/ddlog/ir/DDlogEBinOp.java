@@ -156,6 +156,12 @@ public class DDlogEBinOp extends DDlogExpression {
         }
     }
 
+    public BOp getBop() { return this.bop; }
+
+    public DDlogExpression getLeft() { return this.left; }
+
+    public DDlogExpression getRight() { return this.right; }
+
     @Override
     public String toString() {
         return "(" + this.left.toString() + " " + this.bop.toString() +
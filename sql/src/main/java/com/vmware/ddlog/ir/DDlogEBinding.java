@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice (including the next paragraph) shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.vmware.ddlog.ir;
+
+import com.facebook.presto.sql.tree.Node;
+
+import javax.annotation.Nullable;
+
+/**
+ * A pattern that binds a variable to the whole matched value: var@pattern.
+ */
+public class DDlogEBinding extends DDlogExpression {
+    public final String var;
+    private final DDlogExpression pattern;
+
+    public DDlogEBinding(@Nullable Node node, String var, DDlogExpression pattern) {
+        super(node, pattern.getType());
+        this.var = var;
+        this.pattern = pattern;
+    }
+
+    public DDlogExpression getPattern() { return this.pattern; }
+
+    @Override
+    public boolean compare(DDlogExpression val, IComparePolicy policy) {
+        if (!super.compare(val, policy))
+            return false;
+        if (!val.is(DDlogEBinding.class))
+            return false;
+        DDlogEBinding other = val.to(DDlogEBinding.class);
+        if (!policy.compareIdentifier(this.var, other.var))
+            return false;
+        return this.pattern.compare(other.pattern, policy);
+    }
+
+    @Override
+    public String toString() {
+        return this.var + "@" + this.pattern.toString();
+    }
+}
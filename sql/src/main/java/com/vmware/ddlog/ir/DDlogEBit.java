@@ -24,7 +24,7 @@ public class DDlogEBit extends DDlogExpression {
     private final BigInteger ival;
 
     public DDlogEBit(@Nullable Node node, int width, BigInteger ival) {
-        super(node, new DDlogTBit(node, width, false));
+        super(node, DDlogType.intern(new DDlogTBit(null, width, false)));
         this.width = width;
         this.ival = ival;
     }
@@ -25,6 +25,10 @@ public class DDlogEField extends DDlogExpression {
         this.field = field;
     }
 
+    public DDlogExpression getStruct() { return this.struct; }
+
+    public String getField() { return this.field; }
+
     @Override
     public boolean compare(DDlogExpression val, IComparePolicy policy) {
         if (!super.compare(val, policy))
@@ -21,7 +21,7 @@ public class DDlogESigned extends DDlogExpression {
     private final BigInteger ival;
 
     public DDlogESigned(@Nullable Node node, int width, BigInteger ival) {
-        super(node, new DDlogTSigned(node, width, false));
+        super(node, DDlogType.intern(new DDlogTSigned(null, width, false)));
         this.width = width;
         this.ival = ival;
     }
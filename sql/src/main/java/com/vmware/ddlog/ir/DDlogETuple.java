@@ -21,7 +21,8 @@ public class DDlogETuple extends DDlogExpression {
     public final DDlogExpression[] tupFields;
 
     public DDlogETuple(@Nullable Node node, DDlogExpression... tupFields) {
-        super(node, new DDlogTTuple(node, Linq.map(tupFields, DDlogExpression::getType, DDlogType.class)));
+        super(node, DDlogType.intern(
+                new DDlogTTuple(null, Linq.map(tupFields, DDlogExpression::getType, DDlogType.class))));
         this.tupFields = tupFields;
     }
 
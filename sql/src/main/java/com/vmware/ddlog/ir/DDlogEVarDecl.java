@@ -23,6 +23,8 @@ public class DDlogEVarDecl extends DDlogExpression {
         this.vName = vName;
     }
 
+    public String getName() { return this.vName; }
+
     @Override
     public boolean compare(DDlogExpression val, IComparePolicy policy) {
         if (!super.compare(val, policy))
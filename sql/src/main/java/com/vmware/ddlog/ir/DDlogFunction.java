@@ -32,6 +32,10 @@ public class DDlogFunction extends DDlogNode {
         this.def = def;
     }
 
+    public String getName() {
+        return this.name;
+    }
+
     @Override
     public String toString() {
         String result = "";
@@ -21,6 +21,10 @@ public class DDlogImport extends DDlogNode {
         this.alias = alias;
     }
 
+    public String getModule() {
+        return this.module;
+    }
+
     @Override
     public String toString() {
         String result = "import " + this.module;
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice (including the next paragraph) shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.vmware.ddlog.ir;
+
+import com.facebook.presto.sql.tree.Node;
+import com.vmware.ddlog.util.Linq;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index on some columns of a relation whose rows are structs, e.g.:
+ * index Rt1_by_column1(column1:signed<64>) on Rt1(.column1 = column1)
+ * The columns that are not part of the key are omitted from the pattern.
+ */
+public class DDlogIndexDeclaration extends DDlogNode {
+    private final String name;
+    private final List<DDlogField> keys;
+    private final DDlogAtom atom;
+
+    public DDlogIndexDeclaration(@Nullable Node node, String name, List<DDlogField> keys, DDlogAtom atom) {
+        super(node);
+        this.name = this.checkNull(name);
+        this.keys = this.checkNull(keys);
+        this.atom = this.checkNull(atom);
+    }
+
+    /**
+     * Create an index on some columns of a relation.
+     * @param name      Name of the index.
+     * @param relation  Relation that is indexed.
+     * @param rowType   Type of the rows of the relation, with typedefs resolved.
+     * @param columns   Columns that form the key of the index.
+     */
+    public static DDlogIndexDeclaration create(@Nullable Node node, String name,
+                                               DDlogRelationDeclaration relation,
+                                               DDlogTStruct rowType, List<String> columns) {
+        List<DDlogField> keys = new ArrayList<DDlogField>();
+        List<DDlogEStruct.FieldValue> pattern = new ArrayList<DDlogEStruct.FieldValue>();
+        for (String c: columns) {
+            DDlogType type = rowType.getFieldType(c);
+            keys.add(new DDlogField(node, c, type));
+            pattern.add(new DDlogEStruct.FieldValue(c, new DDlogEVar(node, c, type)));
+        }
+        DDlogAtom atom = new DDlogAtom(node, relation.getName(),
+                new DDlogEStruct(node, rowType.getName(), relation.getType(), pattern));
+        return new DDlogIndexDeclaration(node, name, keys, atom);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * The name of the indexed relation.
+     */
+    public String getRelation() {
+        return this.atom.relation;
+    }
+
+    public List<DDlogField> getKeys() {
+        return this.keys;
+    }
+
+    public boolean compare(DDlogIndexDeclaration other, IComparePolicy policy) {
+        if (!this.name.equals(other.name))
+            return false;
+        if (this.keys.size() != other.keys.size())
+            return false;
+        for (int i = 0; i < this.keys.size(); i++)
+            if (!this.keys.get(i).compare(other.keys.get(i), policy))
+                return false;
+        return this.atom.compare(other.atom, policy);
+    }
+
+    @Override
+    public String toString() {
+        return "index " + this.name + "(" +
+                String.join(", ", Linq.map(this.keys, DDlogField::toString)) + ") on " +
+                this.atom.toString();
+    }
+}
@@ -11,45 +11,72 @@
 
 package com.vmware.ddlog.ir;
 
-import com.vmware.ddlog.util.Linq;
-
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 public class DDlogProgram extends DDlogNode {
+    /**
+     * Size of the buffer used when writing a program to a file.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
     // We are missing some of the fields that can never be generated from SQL
     public final List<DDlogTypeDef> typedefs;
     public final List<DDlogFunction> functions;
     public final List<DDlogRelationDeclaration> relations;
+    public final List<DDlogIndexDeclaration> indexes;
     public final List<DDlogRule> rules;
     public final List<DDlogImport> imports;
 
-    DDlogProgram(List<DDlogTypeDef> typedefs, List<DDlogFunction> functions, List<DDlogRelationDeclaration> relations, List<DDlogRule> rules, List<DDlogImport> imports) {
+    DDlogProgram(List<DDlogTypeDef> typedefs, List<DDlogFunction> functions, List<DDlogRelationDeclaration> relations,
+                 List<DDlogIndexDeclaration> indexes, List<DDlogRule> rules, List<DDlogImport> imports) {
         super(null);
         this.typedefs = typedefs;
         this.functions = functions;
         this.relations = relations;
+        this.indexes = indexes;
         this.rules = rules;
         this.imports = imports;
     }
 
     public DDlogProgram() {
         this(new ArrayList<DDlogTypeDef>(), new ArrayList<DDlogFunction>(),
-                new ArrayList<DDlogRelationDeclaration>(), new ArrayList<DDlogRule>(),
+                new ArrayList<DDlogRelationDeclaration>(), new ArrayList<DDlogIndexDeclaration>(),
+                new ArrayList<DDlogRule>(),
                 new ArrayList<DDlogImport>());
     }
 
     @Override
     public String toString() {
-        String[] parts = new String[5];
-        parts[0] = String.join("\n", Linq.map(this.imports, DDlogImport::toString)) + "\n";
-        parts[1] = String.join("\n", Linq.map(this.typedefs, DDlogTypeDef::toString));
-        parts[2] = String.join("\n", Linq.map(this.functions, DDlogFunction::toString));
-        parts[3] = String.join("\n", Linq.map(this.relations, DDlogRelationDeclaration::toString));
-        parts[4] = String.join("\n", Linq.map(this.rules, DDlogRule::toString));
-        return String.join("\n", parts);
+        return this.format(new CodeFormatter()).toString();
+    }
+
+    /**
+     * Emit the program one declaration at a time, so that it can be written
+     * without building the text of the whole program in memory.
+     */
+    @Override
+    public CodeFormatter format(CodeFormatter formatter) {
+        formatter = formatter.join("\n", this.imports).append("\n\n");
+        formatter = formatter.join("\n", this.typedefs).append("\n");
+        formatter = formatter.join("\n", this.functions).append("\n");
+        formatter = formatter.join("\n", this.relations);
+        if (!this.indexes.isEmpty())
+            formatter = formatter.append("\n").join("\n", this.indexes);
+        formatter = formatter.append("\n");
+        return formatter.join("\n", this.rules);
+    }
+
+    /**
+     * Write the program to a writer.  The writer is not closed.
+     */
+    public void write(Writer writer) throws IOException {
+        try {
+            this.format(new CodeFormatter(writer));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
     }
 
     public boolean compare(DDlogProgram other, IComparePolicy policy) {
@@ -59,6 +86,8 @@ public class DDlogProgram extends DDlogNode {
             return false;
         if (this.relations.size() != other.relations.size())
             return false;
+        if (this.indexes.size() != other.indexes.size())
+            return false;
         if (this.rules.size() != other.rules.size())
             return false;
         if (this.imports.size() != other.imports.size())
@@ -72,6 +101,9 @@ public class DDlogProgram extends DDlogNode {
         for (int i = 0; i < this.relations.size(); i++)
             if (!this.relations.get(i).compare(other.relations.get(i), policy))
                 return false;
+        for (int i = 0; i < this.indexes.size(); i++)
+            if (!this.indexes.get(i).compare(other.indexes.get(i), policy))
+                return false;
         for (int i = 0; i < this.rules.size(); i++)
             if (!this.rules.get(i).compare(other.rules.get(i), policy))
                 return false;
@@ -82,8 +114,10 @@ public class DDlogProgram extends DDlogNode {
     }
 
     public void toFile(String filename) throws FileNotFoundException {
-        try (PrintWriter out = new PrintWriter(filename)) {
-            out.println(this.toString());
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            this.format(new CodeFormatter(out));
+            out.println();
         }
     }
 }
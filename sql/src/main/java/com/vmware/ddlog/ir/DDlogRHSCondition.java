@@ -23,6 +23,8 @@ public class DDlogRHSCondition extends DDlogRuleRHS {
         this.expr = this.checkNull(expr);
     }
 
+    public DDlogExpression getExpr() { return this.expr; }
+
     @Override
     public String toString() {
         return this.expr.toString();
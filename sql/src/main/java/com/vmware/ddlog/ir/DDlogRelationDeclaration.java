@@ -15,6 +15,7 @@ import com.facebook.presto.sql.tree.Node;
 import com.vmware.ddlog.util.Linq;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 
 public class DDlogRelationDeclaration extends DDlogNode {
@@ -40,26 +41,41 @@ public class DDlogRelationDeclaration extends DDlogNode {
     private final Role role;
     private final String name;
     private final DDlogType type;
+    /**
+     * If true the relation keeps the multiplicity of each row (bag semantics);
+     * otherwise DDlog removes duplicates.
+     */
+    private final boolean multiset;
     private final String primaryKeyVariable = "row";
     @Nullable
     private DDlogExpression keyExpression = null;
+    private List<DDlogField> keyColumns = new ArrayList<DDlogField>();
 
     public DDlogRelationDeclaration(@Nullable Node node, Role role, String name,
                                     DDlogType type) {
+        this(node, role, name, type, false);
+    }
+
+    public DDlogRelationDeclaration(@Nullable Node node, Role role, String name,
+                                    DDlogType type, boolean multiset) {
         super(node);
         this.role = role;
         this.name = this.checkNull(name);
         this.type = this.checkNull(type);
+        this.multiset = multiset;
     }
 
     public DDlogRelationDeclaration setPrimaryKey(List<DDlogField> columns, String typeName) {
         if (this.role != Role.Input)
             throw new RuntimeException("Only input relations can have primary keys");
+        if (this.multiset)
+            throw new RuntimeException("Multiset relations cannot have primary keys");
         DDlogTStruct ts = new DDlogTStruct(null, typeName, columns);
         DDlogRelationDeclaration result = new DDlogRelationDeclaration(this.node, this.role, this.name, this.type);
         DDlogExpression row = new DDlogEVar(null, primaryKeyVariable, ts);
         result.keyExpression = new DDlogETuple(null, Linq.map(columns,
                 c -> new DDlogEField(null, row, c.getName(), c.getType())));
+        result.keyColumns = columns;
         return result;
     }
 
@@ -67,16 +83,31 @@ public class DDlogRelationDeclaration extends DDlogNode {
         return this.name;
     }
 
+    public Role getRole() {
+        return this.role;
+    }
+
+    /**
+     * Columns of the primary key, in declaration order; empty if the relation has no primary key.
+     */
+    public List<DDlogField> getKeyColumns() {
+        return this.keyColumns;
+    }
+
     public DDlogType getType() {
         return this.type;
     }
 
+    public boolean isMultiset() {
+        return this.multiset;
+    }
+
     public static String relationName(String name) {
         return "R" + name;
     }
 
     public boolean compare(DDlogRelationDeclaration other, IComparePolicy policy) {
-        if (this.role != other.role)
+        if (this.role != other.role || this.multiset != other.multiset)
             return false;
         if (!policy.compareRelation(this.name, other.name))
             return false;
@@ -88,6 +119,8 @@ public class DDlogRelationDeclaration extends DDlogNode {
         String result = this.role.toString();
         if (!result.isEmpty())
             result += " ";
+        if (this.multiset)
+            result += "multiset ";
         result += "relation " + this.name
                 + "[" + this.type.toString() + "]";
         if (this.keyExpression != null)
@@ -54,6 +54,32 @@ public class DDlogRule extends DDlogNode {
         return result;
     }
 
+    /**
+     * Removes the assignments var x = e whose variable is not used by the rest of the rule.
+     * A join builds a row with all the columns of its inputs; when the query only needs
+     * some of them the row is dead, and removing it lets DDlog carry through the join
+     * only the variables that are actually used.
+     */
+    public void removeDeadAssignments() {
+        VariableUses uses = new VariableUses();
+        uses.add(this.lhs);
+        for (int i = this.rhs.size() - 1; i >= 0; i--) {
+            DDlogRuleRHS r = this.rhs.get(i);
+            if (r.is(DDlogRHSCondition.class)) {
+                DDlogExpression expr = r.to(DDlogRHSCondition.class).getExpr();
+                if (expr.is(DDlogESet.class)) {
+                    DDlogESet set = expr.to(DDlogESet.class);
+                    if (set.lval.is(DDlogEVarDecl.class) &&
+                            !uses.uses(set.lval.to(DDlogEVarDecl.class).getName())) {
+                        this.rhs.remove(i);
+                        continue;
+                    }
+                }
+            }
+            uses.add(r);
+        }
+    }
+
     public boolean compare(DDlogRule other, IComparePolicy policy) {
         if (!this.lhs.compare(other.lhs, policy))
             return false;
@@ -15,7 +15,7 @@ package com.vmware.ddlog.ir;
  * The type of the _ expression: any type.
  */
 public class DDlogTAny extends DDlogType {
-    public static DDlogType instance = new DDlogTAny();
+    public static DDlogType instance = intern(new DDlogTAny());
 
     private DDlogTAny() {
         super(true);
@@ -31,7 +31,7 @@ public class DDlogTAny extends DDlogType {
     public DDlogType setMayBeNull(boolean mayBeNull) {
         if (this.mayBeNull == mayBeNull)
             return this;
-        return new DDlogTAny(mayBeNull);
+        return intern(new DDlogTAny(mayBeNull));
     }
 
     @Override
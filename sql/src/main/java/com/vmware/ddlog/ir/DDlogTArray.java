@@ -22,6 +22,20 @@ public class DDlogTArray extends DDlogType {
 
     @Override
     public DDlogType setMayBeNull(boolean mayBeNull) {
-        return new DDlogTArray(this.getNode(), this.elemType, mayBeNull);
+        return intern(new DDlogTArray(this.getNode(), this.elemType, mayBeNull));
+    }
+
+    @Override
+    public boolean compare(DDlogType type, IComparePolicy policy) {
+        if (!super.compare(type, policy))
+            return false;
+        if (!type.is(DDlogTArray.class))
+            return false;
+        return this.elemType.compare(type.to(DDlogTArray.class).elemType, policy);
+    }
+
+    @Override
+    public boolean containsUnknown() {
+        return this.elemType.containsUnknown();
     }
 }
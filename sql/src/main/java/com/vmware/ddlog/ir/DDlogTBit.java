@@ -20,6 +20,8 @@ public class DDlogTBit extends DDlogType
         implements IsNumericType, IBoundedNumericType, IDDlogBaseType {
     private final int width;
 
+    public static final DDlogTBit bit64 = intern(new DDlogTBit(null, 64, false));
+
     DDlogTBit(@Nullable Node node, int width, boolean mayBeNull) {
         super(node, mayBeNull);
         this.width = width;
@@ -32,7 +34,7 @@ public class DDlogTBit extends DDlogType
 
     @Override
     public DDlogType setMayBeNull(boolean mayBeNull) {
-        return new DDlogTBit(this.getNode(), this.width, mayBeNull);
+        return intern(new DDlogTBit(this.getNode(), this.width, mayBeNull));
     }
 
     @Override
@@ -67,6 +69,6 @@ public class DDlogTBit extends DDlogType
 
     @Override
     public IBoundedNumericType getWithWidth(int width) {
-        return new DDlogTBit(this.getNode(), width, this.mayBeNull);
+        return intern(new DDlogTBit(this.getNode(), width, this.mayBeNull));
     }
 }
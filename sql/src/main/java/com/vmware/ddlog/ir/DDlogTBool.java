@@ -25,7 +25,7 @@ public class DDlogTBool extends DDlogType implements IDDlogBaseType {
     public DDlogType setMayBeNull(boolean mayBeNull) {
         if (this.mayBeNull == mayBeNull)
             return this;
-        return new DDlogTBool(this.getNode(), mayBeNull);
+        return intern(new DDlogTBool(this.getNode(), mayBeNull));
     }
 
     @Override
@@ -35,5 +35,5 @@ public class DDlogTBool extends DDlogType implements IDDlogBaseType {
         return type.is(DDlogTBool.class);
     }
 
-    public static DDlogTBool instance = new DDlogTBool(null, false);
+    public static DDlogTBool instance = intern(new DDlogTBool(null, false));
 }
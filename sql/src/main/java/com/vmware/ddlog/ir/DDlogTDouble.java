@@ -25,11 +25,11 @@ public class DDlogTDouble extends DDlogType implements IsNumericType, IDDlogBase
     public DDlogType setMayBeNull(boolean mayBeNull) {
         if (this.mayBeNull == mayBeNull)
             return this;
-        return new DDlogTDouble(this.getNode(), mayBeNull);
+        return intern(new DDlogTDouble(this.getNode(), mayBeNull));
     }
 
 
-    public static DDlogTDouble instance = new DDlogTDouble(null,false);
+    public static DDlogTDouble instance = intern(new DDlogTDouble(null,false));
 
     @Override
     public boolean compare(DDlogType type, IComparePolicy policy) {
@@ -25,10 +25,10 @@ public class DDlogTFloat extends DDlogType implements IsNumericType, IDDlogBaseT
     public DDlogType setMayBeNull(boolean mayBeNull) {
         if (this.mayBeNull == mayBeNull)
             return this;
-        return new DDlogTFloat(this.getNode(), mayBeNull);
+        return intern(new DDlogTFloat(this.getNode(), mayBeNull));
     }
 
-    public static DDlogTFloat instance = new DDlogTFloat(null,false);
+    public static DDlogTFloat instance = intern(new DDlogTFloat(null,false));
 
     @Override
     public boolean compare(DDlogType type, IComparePolicy policy) {
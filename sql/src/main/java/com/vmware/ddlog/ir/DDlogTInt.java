@@ -18,7 +18,7 @@ import javax.annotation.Nullable;
 public class DDlogTInt extends DDlogType implements IsNumericType, IDDlogBaseType {
     private DDlogTInt(@Nullable Node node, boolean mayBeNull) { super(node, mayBeNull); }
 
-    public static DDlogTInt instance = new DDlogTInt(null,false);
+    public static DDlogTInt instance = intern(new DDlogTInt(null,false));
 
     @Override
     public String toString() { return this.wrapOption("bigint"); }
@@ -27,7 +27,7 @@ public class DDlogTInt extends DDlogType implements IsNumericType, IDDlogBaseTyp
     public DDlogType setMayBeNull(boolean mayBeNull) {
         if (this.mayBeNull == mayBeNull)
             return this;
-        return new DDlogTInt(this.getNode(), mayBeNull);
+        return intern(new DDlogTInt(this.getNode(), mayBeNull));
     }
 
     @Override
@@ -20,8 +20,10 @@ import java.util.Objects;
 public class DDlogTSigned extends DDlogType
         implements IsNumericType, IBoundedNumericType, IDDlogBaseType {
     private final int width;
-    public static final DDlogTSigned signed32 = new DDlogTSigned(null, 32, false);
-    public static final DDlogTSigned signed64 = new DDlogTSigned(null, 64, false);
+    public static final DDlogTSigned signed8 = intern(new DDlogTSigned(null, 8, false));
+    public static final DDlogTSigned signed16 = intern(new DDlogTSigned(null, 16, false));
+    public static final DDlogTSigned signed32 = intern(new DDlogTSigned(null, 32, false));
+    public static final DDlogTSigned signed64 = intern(new DDlogTSigned(null, 64, false));
 
     public DDlogTSigned(@Nullable Node node, int width, boolean mayBeNull) {
         super(node, mayBeNull);
@@ -38,7 +40,7 @@ public class DDlogTSigned extends DDlogType
 
     @Override
     public DDlogType setMayBeNull(boolean mayBeNull) {
-        return new DDlogTSigned(this.getNode(), this.width, mayBeNull);
+        return intern(new DDlogTSigned(this.getNode(), this.width, mayBeNull));
     }
 
     @Override
@@ -73,6 +75,6 @@ public class DDlogTSigned extends DDlogType
 
     @Override
     public IBoundedNumericType getWithWidth(int width) {
-        return new DDlogTSigned(this.getNode(), width, this.mayBeNull);
+        return intern(new DDlogTSigned(this.getNode(), width, this.mayBeNull));
     }
 }
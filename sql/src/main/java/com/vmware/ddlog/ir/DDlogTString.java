@@ -16,7 +16,7 @@ import com.facebook.presto.sql.tree.Node;
 import javax.annotation.Nullable;
 
 public class DDlogTString extends DDlogType implements IDDlogBaseType {
-    public static DDlogTString instance = new DDlogTString(null,false);
+    public static DDlogTString instance = intern(new DDlogTString(null,false));
 
     private DDlogTString(@Nullable Node node, boolean mayBeNull) { super(node, mayBeNull); }
 
@@ -27,7 +27,7 @@ public class DDlogTString extends DDlogType implements IDDlogBaseType {
     public DDlogType setMayBeNull(boolean mayBeNull) {
         if (this.mayBeNull == mayBeNull)
             return this;
-        return new DDlogTString(this.getNode(), mayBeNull);
+        return intern(new DDlogTString(this.getNode(), mayBeNull));
     }
     @Override
     public boolean compare(DDlogType type, IComparePolicy policy) {
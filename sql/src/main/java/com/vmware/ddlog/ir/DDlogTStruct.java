@@ -73,6 +73,14 @@ public class DDlogTStruct extends DDlogType {
         return true;
     }
 
+    @Override
+    public boolean containsUnknown() {
+        for (DDlogField f: this.args)
+            if (f.getType().containsUnknown())
+                return true;
+        return false;
+    }
+
     public DDlogType getFieldType(String col) {
         for (DDlogField f : this.getFields()) {
             if (f.getName().equals(col))
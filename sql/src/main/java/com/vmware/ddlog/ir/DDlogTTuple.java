@@ -52,7 +52,7 @@ public class DDlogTTuple extends DDlogType {
     public DDlogType setMayBeNull(boolean mayBeNull) {
         if (mayBeNull == this.mayBeNull)
             return this;
-        return new DDlogTTuple(this.getNode(), mayBeNull, this.tupArgs);
+        return intern(new DDlogTTuple(this.getNode(), mayBeNull, this.tupArgs));
     }
 
     @Override
@@ -83,6 +83,14 @@ public class DDlogTTuple extends DDlogType {
         return true;
     }
 
+    @Override
+    public boolean containsUnknown() {
+        for (DDlogType t: this.tupArgs)
+            if (t.containsUnknown())
+                return true;
+        return false;
+    }
+
     public DDlogType component(int index) {
         return this.tupArgs[index];
     }
@@ -21,6 +21,11 @@ public class DDlogTUnknown extends DDlogType implements IDDlogBaseType {
         return new DDlogTUnknown(mayBeNull);
     }
 
+    @Override
+    public boolean containsUnknown() {
+        return true;
+    }
+
     @Override
     public boolean compare(DDlogType type, IComparePolicy policy) {
         return true;
@@ -49,7 +49,7 @@ public class DDlogTUser extends DDlogType {
     public DDlogType setMayBeNull(boolean mayBeNull) {
         if (this.mayBeNull == mayBeNull)
             return this;
-        return new DDlogTUser(this.getNode(), this.name, mayBeNull, this.typeArgs);
+        return intern(new DDlogTUser(this.getNode(), this.name, mayBeNull, this.typeArgs));
     }
 
     @Override
@@ -78,6 +78,14 @@ public class DDlogTUser extends DDlogType {
         return true;
     }
 
+    @Override
+    public boolean containsUnknown() {
+        for (DDlogType t: this.typeArgs)
+            if (t.containsUnknown())
+                return true;
+        return false;
+    }
+
     @Override
     public int hashCode() {
         int result = Objects.hash(name);
@@ -46,6 +46,15 @@ public class DDlogTVar extends DDlogType {
         return this;
     }
 
+    @Override
+    public boolean compare(DDlogType type, IComparePolicy policy) {
+        if (!super.compare(type, policy))
+            return false;
+        if (!type.is(DDlogTVar.class))
+            return false;
+        return policy.compareIdentifier(this.name, type.to(DDlogTVar.class).name);
+    }
+
     @Override
     public int hashCode() {
         int result = Objects.hash(name);
@@ -16,13 +16,73 @@ import com.vmware.ddlog.translator.TranslationException;
 import com.vmware.ddlog.util.Linq;
 
 import javax.annotation.Nullable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class DDlogType extends DDlogNode {
     /**
      * True if this type may include null values.
      */
     public final boolean mayBeNull;
+    /**
+     * Hash of the structure of the type; computed on demand, 0 if not yet computed.
+     */
+    private int structuralHash;
+    /**
+     * If not null, the canonical instance of the type, set by intern: types with the same
+     * canonical instance are the same.
+     */
+    @Nullable
+    private volatile DDlogType canonical;
+
+    /**
+     * Types are immutable, so identical types can share one instance.  Maps each interned type
+     * to its canonical instance.  The map holds the canonical instances weakly, so it does not
+     * grow with the number of types that were ever interned.
+     */
+    private static final ConcurrentHashMap<InternKey, InternKey> internedTypes =
+            new ConcurrentHashMap<InternKey, InternKey>();
+    /**
+     * Keys of the canonical instances that were garbage-collected.
+     */
+    private static final ReferenceQueue<DDlogType> collectedTypes = new ReferenceQueue<DDlogType>();
+
+    /**
+     * Weak reference that compares types structurally.
+     */
+    private static final class InternKey extends WeakReference<DDlogType> {
+        private final int hash;
+
+        InternKey(DDlogType type) {
+            super(type, collectedTypes);
+            this.hash = type.structuralHash();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof InternKey))
+                return false;
+            InternKey other = (InternKey)o;
+            DDlogType type = this.get();
+            DDlogType otherType = other.get();
+            // Keys of collected types are only equal to themselves
+            return type != null && otherType != null &&
+                    this.hash == other.hash &&
+                    type.getClass() == otherType.getClass() &&
+                    type.compare(otherType, new Identical());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
 
     protected DDlogType(@Nullable Node node, boolean mayBeNull) {
         super(node);
@@ -105,7 +165,68 @@ public abstract class DDlogType extends DDlogNode {
             type0.error("Types have different nullabilities: " + type0 + " and " + type1);
     }
 
+    /**
+     * Return the canonical instance of a type, so that identical types share one instance.
+     * A type that is associated with a SQL node is returned unchanged, since the node is used
+     * to report errors, but it is linked to the canonical instance, so same is fast for it too.
+     * Types that contain unknown types are returned unchanged, since unknown types are the same
+     * as all types.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends DDlogType> T intern(T type) {
+        DDlogType t = type;
+        if (t.canonical != null || t.containsUnknown())
+            return type;
+        Reference<? extends DDlogType> collected;
+        while ((collected = collectedTypes.poll()) != null)
+            internedTypes.remove(collected);
+        InternKey key = new InternKey(t);
+        DDlogType canonical;
+        do {
+            InternKey existing = internedTypes.putIfAbsent(key, key);
+            if (existing == null)
+                canonical = t;
+            else {
+                canonical = existing.get();
+                if (canonical == null)
+                    // Collected after the queue was polled
+                    internedTypes.remove(existing, existing);
+            }
+        } while (canonical == null);
+        t.canonical = canonical;
+        if (canonical.getNode() != t.getNode())
+            return type;
+        return (T)canonical;
+    }
+
+    /**
+     * True if this type is or contains an unknown type.
+     */
+    public boolean containsUnknown() {
+        return false;
+    }
+
+    /**
+     * A hash of the structure of the type: types that are the same have the same hash.
+     */
+    public int structuralHash() {
+        int hash = this.structuralHash;
+        if (hash == 0) {
+            hash = Objects.hash(this.getClass(), this.mayBeNull, this.toString());
+            if (hash == 0)
+                hash = 1;
+            this.structuralHash = hash;
+        }
+        return hash;
+    }
+
     public boolean same(DDlogType other) {
+        if (this == other)
+            return true;
+        DDlogType canonical = this.canonical;
+        DDlogType otherCanonical = other.canonical;
+        if (canonical != null && otherCanonical != null)
+            return canonical == otherCanonical;
         return this.compare(other, new Identical());
     }
 
@@ -26,12 +26,17 @@ public class RelationRHS extends DDlogNode {
     private final String rowVariable;
     private final DDlogType type;
     private final List<DDlogRuleRHS> definitions;
+    /**
+     * If true the rows are a multiset: the number of times a row is produced is significant.
+     */
+    private boolean multiset;
 
     public RelationRHS(@Nullable Node node, String rowVariable, DDlogType type) {
         super(node);
         this.rowVariable = rowVariable;
         this.type = this.checkNull(type);
         this.definitions = new ArrayList<DDlogRuleRHS>();
+        this.multiset = false;
     }
 
     public RelationRHS addDefinition(DDlogExpression expression) {
@@ -54,6 +59,13 @@ public class RelationRHS extends DDlogNode {
 
     public DDlogType getType() { return this.type; }
 
+    public boolean isMultiset() { return this.multiset; }
+
+    public RelationRHS setMultiset(boolean multiset) {
+        this.multiset = multiset;
+        return this;
+    }
+
     public List<DDlogRuleRHS> getDefinitions() {
         return this.definitions; }
 
@@ -0,0 +1,57 @@
+package com.vmware.ddlog.ir;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the variables used and declared by program elements.
+ * Works by comparing each element with itself: every variable reference is reported
+ * through compareIdentifier, every declaration through compareLocal, and all
+ * comparisons succeed.
+ */
+public class VariableUses implements IComparePolicy {
+    public final Set<String> used;
+    public final Set<String> declared;
+
+    public VariableUses() {
+        this.used = new HashSet<String>();
+        this.declared = new HashSet<String>();
+    }
+
+    public void add(DDlogExpression expression) {
+        expression.compare(expression, this);
+    }
+
+    public void add(DDlogRuleRHS rhs) {
+        rhs.compare(rhs, this);
+    }
+
+    public void add(DDlogAtom atom) {
+        atom.compare(atom, this);
+    }
+
+    public boolean uses(String var) {
+        return this.used.contains(var);
+    }
+
+    @Override
+    public boolean compareRelation(String relation, String other) {
+        return true;
+    }
+
+    @Override
+    public boolean compareLocal(String varName, String other) {
+        this.declared.add(varName);
+        return true;
+    }
+
+    @Override
+    public void exitScope(String varName, String other) {
+    }
+
+    @Override
+    public boolean compareIdentifier(String var, String other) {
+        this.used.add(var);
+        return true;
+    }
+}
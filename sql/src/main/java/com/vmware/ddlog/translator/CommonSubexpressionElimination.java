@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice (including the next paragraph) shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.vmware.ddlog.translator;
+
+import com.vmware.ddlog.ir.*;
+import com.vmware.ddlog.util.Linq;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Program-level pass that finds rules whose bodies start with the same joins and filters
+ * and computes each such common prefix only once.  The prefix is moved into a rule
+ * defining a shared internal relation, whose rows are tuples of the rows bound by the
+ * prefix; the original rules read the shared relation instead.  For example
+ *
+ * Rv0[v2] :- Rt1[v],Rt2[v0@Tt2{.column1 = v.column1}],true,var v1 = ...
+ * Rv1[v5] :- Rt1[v3],Rt2[v4@Tt2{.column1 = v3.column1}],true,var v6 = ...
+ *
+ * becomes
+ *
+ * Rshared[(v, v0)] :- Rt1[v],Rt2[v0@Tt2{.column1 = v.column1}],true.
+ * Rv0[v2] :- Rshared[(v, v0)],var v1 = ...
+ * Rv1[v5] :- Rshared[(v3, v4)],var v6 = ...
+ */
+class CommonSubexpressionElimination {
+    /**
+     * Rule bodies are equivalent if they are the same up to a renaming of the local variables.
+     */
+    static class SameRelations extends Alpha {
+        @Override
+        public boolean compareRelation(String relation, String other) {
+            return relation.equals(other);
+        }
+    }
+
+    private final TranslationContext context;
+    /**
+     * Rules defining the shared relations created so far, indexed by relation name.
+     */
+    private final Map<String, DDlogRule> shared;
+
+    CommonSubexpressionElimination(TranslationContext context) {
+        this.context = context;
+        this.shared = new HashMap<String, DDlogRule>();
+    }
+
+    /**
+     * Length of the longest prefix of a rule body that can be shared: a sequence of
+     * positive literals and of conditions that define no variables.
+     */
+    private static int shareablePrefix(DDlogRule rule) {
+        int length = 0;
+        for (DDlogRuleRHS rhs : rule.rhs) {
+            if (rhs.is(DDlogRHSLiteral.class)) {
+                DDlogRHSLiteral literal = rhs.to(DDlogRHSLiteral.class);
+                if (!literal.polarity)
+                    break;
+                DDlogExpression val = literal.atom.val;
+                if (!val.is(DDlogEVar.class) && !val.is(DDlogEBinding.class))
+                    break;
+            } else if (rhs.is(DDlogRHSCondition.class)) {
+                if (rhs.to(DDlogRHSCondition.class).getExpr().is(DDlogESet.class))
+                    break;
+            } else {
+                break;
+            }
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * A prefix is worth sharing if it joins several relations or filters one.
+     */
+    private static boolean worthSharing(List<DDlogRuleRHS> prefix) {
+        int literals = 0;
+        boolean filters = false;
+        for (DDlogRuleRHS rhs : prefix) {
+            if (rhs.is(DDlogRHSLiteral.class)) {
+                literals++;
+                if (rhs.to(DDlogRHSLiteral.class).atom.val.is(DDlogEBinding.class))
+                    filters = true;
+            } else {
+                DDlogExpression expr = rhs.to(DDlogRHSCondition.class).getExpr();
+                if (!expr.compare(new DDlogEBool(null, true), new Identical()))
+                    filters = true;
+            }
+        }
+        return literals > 1 || (literals == 1 && filters);
+    }
+
+    private static boolean samePrefix(DDlogRule rule, DDlogRule other, int length) {
+        IComparePolicy policy = new SameRelations();
+        for (int i = 0; i < length; i++)
+            if (!rule.rhs.get(i).compare(other.rhs.get(i), policy))
+                return false;
+        return true;
+    }
+
+    /**
+     * The row variables bound by the first length elements of the rule body.
+     */
+    private static List<DDlogExpression> boundRows(DDlogRule rule, int length) {
+        List<DDlogExpression> result = new ArrayList<DDlogExpression>();
+        for (DDlogRuleRHS rhs : rule.rhs.subList(0, length)) {
+            if (!rhs.is(DDlogRHSLiteral.class))
+                continue;
+            DDlogExpression val = rhs.to(DDlogRHSLiteral.class).atom.val;
+            String var = val.is(DDlogEVar.class) ? val.to(DDlogEVar.class).var : val.to(DDlogEBinding.class).var;
+            result.add(new DDlogEVar(val.getNode(), var, val.getType()));
+        }
+        return result;
+    }
+
+    /**
+     * The value scanned from a shared relation: the bound row if there is only one, else a tuple.
+     */
+    private static DDlogExpression sharedRow(DDlogRule rule, int length) {
+        List<DDlogExpression> rows = boundRows(rule, length);
+        if (rows.size() == 1)
+            return rows.get(0);
+        return new DDlogETuple(rule.getNode(), rows);
+    }
+
+    /**
+     * Find groups of rules with the same prefix and replace each prefix with a scan of a
+     * shared relation.  Longer prefixes are shared first.  Rules that read a shared relation
+     * created by a previous invocation participate like all other rules, so the pass can be
+     * run again after more statements have been translated.
+     */
+    void run() {
+        DDlogProgram program = this.context.getProgram();
+        Set<DDlogRule> done = Collections.newSetFromMap(new IdentityHashMap<DDlogRule, Boolean>());
+        int longest = 0;
+        for (DDlogRule rule : program.rules)
+            longest = Math.max(longest, shareablePrefix(rule));
+        for (int length = longest; length > 0; length--) {
+            List<List<DDlogRule>> groups = new ArrayList<List<DDlogRule>>();
+            for (DDlogRule rule : program.rules) {
+                if (done.contains(rule) || shareablePrefix(rule) < length ||
+                        !worthSharing(rule.rhs.subList(0, length)))
+                    continue;
+                List<DDlogRule> group = null;
+                for (List<DDlogRule> g : groups) {
+                    if (samePrefix(g.get(0), rule, length)) {
+                        group = g;
+                        break;
+                    }
+                }
+                if (group == null) {
+                    group = new ArrayList<DDlogRule>();
+                    groups.add(group);
+                }
+                group.add(rule);
+            }
+            for (List<DDlogRule> group : groups) {
+                if (group.size() < 2)
+                    continue;
+                done.add(this.share(program, group, length));
+                done.addAll(group);
+            }
+        }
+    }
+
+    /**
+     * Replace the common prefix of all rules in a group with a scan of a shared relation.
+     * @return  The rule defining the shared relation.
+     */
+    private DDlogRule share(DDlogProgram program, List<DDlogRule> group, int length) {
+        DDlogRule definition = null;
+        for (DDlogRule rule : group) {
+            if (this.shared.containsKey(rule.lhs.relation) && rule.rhs.size() == length) {
+                definition = rule;
+                break;
+            }
+        }
+        if (definition == null) {
+            DDlogRule first = group.get(0);
+            DDlogExpression row = sharedRow(first, length);
+            String relName = this.context.freshRelationName("shared");
+            // Keep the multiplicity of the shared rows if some rule produces a multiset.
+            boolean multiset = Linq.any(group, r -> {
+                DDlogRelationDeclaration decl = this.context.getRelation(r.lhs.relation);
+                return decl != null && decl.isMultiset();
+            });
+            DDlogRelationDeclaration relDecl = new DDlogRelationDeclaration(
+                    first.getNode(), DDlogRelationDeclaration.Role.Internal, relName, row.getType(), multiset);
+            this.context.add(relDecl);
+            definition = new DDlogRule(first.getNode(),
+                    new DDlogAtom(first.getNode(), relName, row),
+                    new ArrayList<DDlogRuleRHS>(first.rhs.subList(0, length)));
+            definition.addComment(new DDlogComment(first.getNode()));
+            program.rules.add(program.rules.indexOf(first), definition);
+            this.shared.put(relName, definition);
+        }
+
+        for (DDlogRule rule : group) {
+            if (rule == definition)
+                continue;
+            List<DDlogRuleRHS> rhs = new ArrayList<DDlogRuleRHS>();
+            rhs.add(new DDlogRHSLiteral(rule.getNode(), true, new DDlogAtom(rule.getNode(),
+                    definition.lhs.relation, sharedRow(rule, length))));
+            rhs.addAll(rule.rhs.subList(length, rule.rhs.size()));
+            DDlogRule replacement = new DDlogRule(rule.getNode(), rule.lhs, rhs);
+            replacement.addComment(new DDlogComment(rule.getNode()));
+            int index = program.rules.indexOf(rule);
+            program.rules.set(index, replacement);
+            if (this.shared.containsKey(rule.lhs.relation))
+                this.shared.put(rule.lhs.relation, replacement);
+        }
+        return definition;
+    }
+}
@@ -63,7 +63,69 @@ public class ExpressionTranslationVisitor extends AstVisitor<DDlogExpression, Tr
                 new DDlogEStruct.FieldValue("x", expr));
     }
 
+    /**
+     * Columns may be stored in narrower types than the ones used in expressions
+     * (see SqlSemantics.createColumnType).  Convert a stored value to the type used
+     * in expressions: narrow integers to signed<64>, and interned strings to strings.
+     */
+    static DDlogExpression widen(DDlogExpression expr) {
+        DDlogType type = expr.getType();
+        Node node = expr.getNode();
+        if (type.is(DDlogTSigned.class) && type.to(DDlogTSigned.class).getWidth() < 64) {
+            DDlogType wide = DDlogTSigned.signed64;
+            return wrapInMatch(expr, wide.setMayBeNull(type.mayBeNull), ex -> new WidenedInteger(node, ex, wide));
+        }
+        if (SqlSemantics.isInterned(type)) {
+            DDlogType wide = DDlogTString.instance;
+            return wrapInMatch(expr, wide.setMayBeNull(type.mayBeNull), ex -> new WidenedString(node, wide, ex));
+        }
+        return expr;
+    }
+
+    /**
+     * Conversion of a narrow integer inserted by widen.  Unlike a cast written
+     * by the user it can be removed without changing the value.
+     */
+    private static class WidenedInteger extends DDlogEAs {
+        WidenedInteger(@Nullable Node node, DDlogExpression expr, DDlogType type) {
+            super(node, expr, type);
+        }
+    }
+
+    /**
+     * Conversion of an interned string inserted by widen.
+     */
+    private static class WidenedString extends DDlogEApply {
+        WidenedString(@Nullable Node node, DDlogType type, DDlogExpression arg) {
+            super(node, "ival", type, arg);
+        }
+    }
+
+    /**
+     * If the expression was produced by widen from a non-null value return the stored value.
+     */
+    @Nullable
+    private static DDlogExpression stored(DDlogExpression expr) {
+        if (expr.is(WidenedInteger.class)) {
+            DDlogExpression inner = expr.to(WidenedInteger.class).getExpr();
+            if (!inner.getType().mayBeNull)
+                return inner;
+        } else if (expr.is(WidenedString.class)) {
+            DDlogExpression inner = expr.to(WidenedString.class).getArgs().get(0);
+            if (!inner.getType().mayBeNull)
+                return inner;
+        }
+        return null;
+    }
+
     public static DDlogExpression operationCall(Node node, DDlogEBinOp.BOp op, DDlogExpression left, DDlogExpression right) {
+        if (op == DDlogEBinOp.BOp.Eq || op == DDlogEBinOp.BOp.Neq) {
+            // Compare stored values directly if they have the same type
+            DDlogExpression storedLeft = stored(left);
+            DDlogExpression storedRight = stored(right);
+            if (storedLeft != null && storedRight != null && storedLeft.getType().same(storedRight.getType()))
+                return new DDlogEBinOp(node, op, storedLeft, storedRight);
+        }
         String function = SqlSemantics.semantics.getFunction(node, op, left.getType(), right.getType());
         DDlogType type = DDlogType.reduceType(left.getType(), right.getType());
         DDlogType outputType = type;
@@ -109,6 +171,12 @@ public class ExpressionTranslationVisitor extends AstVisitor<DDlogExpression, Tr
     @Override
     protected DDlogExpression visitCast(Cast node, TranslationContext context) {
         DDlogExpression e = this.process(node.getExpression(), context);
+        // Casts to smallint or tinyint truncate to the narrow type, but
+        // expressions compute on signed<64>.
+        return widen(this.cast(node, e));
+    }
+
+    private DDlogExpression cast(Cast node, DDlogExpression e) {
         DDlogType eType = e.getType();
         DDlogType destType = SqlSemantics.createType(node, node.getType(), e.getType().mayBeNull);
         if (destType.is(DDlogTString.class)) {
@@ -334,7 +402,9 @@ public class ExpressionTranslationVisitor extends AstVisitor<DDlogExpression, Tr
         DDlogExpression expr = context.lookupIdentifier(id.getValue());
         if (expr == null)
             throw new TranslationException("Could not resolve identifier", id);
-        return expr;
+        if (expr.is(DDlogScope.class))
+            return expr;
+        return widen(expr);
     }
 
     @Override
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice (including the next paragraph) shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.vmware.ddlog.translator;
+
+import com.facebook.presto.sql.tree.*;
+import com.vmware.ddlog.ir.DDlogField;
+import com.vmware.ddlog.ir.DDlogRelationDeclaration;
+import com.vmware.ddlog.ir.DDlogTStruct;
+import com.vmware.ddlog.util.Linq;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Chooses the order in which the tables of a multi-way inner join are joined.  The translation
+ * of a join is a left-deep chain of DDlog joins, in which each relation is joined with the result
+ * of the previous joins, so the order determines the size of the intermediate results.
+ * The tables are ordered greedily, starting with the table with the fewest rows; the next table
+ * is one that is joined on an equality with the tables already chosen, preferably on all the
+ * columns of its primary key, so that each row of the intermediate result matches at most one row;
+ * ties are broken by the number of rows and then by the order in the FROM clause.  Tables without
+ * a known number of rows (see Translator.setCardinality) are assumed to be larger than all others.
+ * The join conditions are moved to the first join where all the tables they use are available.
+ */
+class JoinOrder {
+    /**
+     * A table joined.
+     */
+    static class Leaf {
+        final Relation relation;
+        /**
+         * Name used to refer to the table in expressions: the alias or the table name.
+         */
+        final String name;
+        final DDlogTStruct type;
+        final Set<String> keyColumns;
+        final long cardinality;
+
+        Leaf(Relation relation, String name, DDlogTStruct type, Set<String> keyColumns, long cardinality) {
+            this.relation = relation;
+            this.name = name;
+            this.type = type;
+            this.keyColumns = keyColumns;
+            this.cardinality = cardinality;
+        }
+    }
+
+    /**
+     * A conjunct of a join condition, with the tables it uses.
+     */
+    static class Condition {
+        final Expression expression;
+        final BitSet uses;
+        /**
+         * If the condition is an equality between columns of two tables,
+         * the two tables and the compared columns.
+         */
+        @Nullable
+        final int[] tables;
+        @Nullable
+        final String[] columns;
+
+        Condition(Expression expression, BitSet uses, @Nullable int[] tables, @Nullable String[] columns) {
+            this.expression = expression;
+            this.uses = uses;
+            this.tables = tables;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * The tables joined, in the order of the FROM clause.
+     */
+    final List<Leaf> leaves;
+    private final List<Condition> conditions;
+    /**
+     * Indexes of the leaves in the order chosen.
+     */
+    final List<Integer> order;
+
+    private JoinOrder(List<Leaf> leaves, List<Condition> conditions) {
+        this.leaves = leaves;
+        this.conditions = conditions;
+        this.order = this.chooseOrder();
+    }
+
+    /**
+     * Analyze a join.
+     * @return  null if the join cannot be reordered: it is not a chain of inner joins with ON conditions
+     *          and cross joins between tables.
+     */
+    @Nullable
+    static JoinOrder analyze(Join join, TranslationContext context) {
+        List<Relation> relations = new ArrayList<Relation>();
+        List<Expression> criteria = new ArrayList<Expression>();
+        Relation current = join;
+        while (current instanceof Join) {
+            Join j = (Join)current;
+            switch (j.getType()) {
+                case INNER:
+                    if (!j.getCriteria().isPresent())
+                        break;
+                    if (!(j.getCriteria().get() instanceof JoinOn))
+                        return null;
+                    criteria.add(((JoinOn)j.getCriteria().get()).getExpression());
+                    break;
+                case CROSS:
+                case IMPLICIT:
+                    break;
+                default:
+                    return null;
+            }
+            relations.add(0, j.getRight());
+            current = j.getLeft();
+        }
+        relations.add(0, current);
+        if (relations.size() < 3)
+            // Nothing to choose: DDlog indexes the right relation.
+            return null;
+
+        List<Leaf> leaves = new ArrayList<Leaf>();
+        for (Relation relation: relations) {
+            Leaf leaf = createLeaf(relation, context);
+            if (leaf == null)
+                return null;
+            leaves.add(leaf);
+        }
+        List<Condition> conditions = new ArrayList<Condition>();
+        for (Expression expression: criteria)
+            for (Expression conjunct: conjuncts(expression))
+                conditions.add(analyzeCondition(conjunct, leaves));
+        return new JoinOrder(leaves, conditions);
+    }
+
+    @Nullable
+    private static Leaf createLeaf(Relation relation, TranslationContext context) {
+        String name;
+        Relation table = relation;
+        if (relation instanceof AliasedRelation) {
+            AliasedRelation aliased = (AliasedRelation)relation;
+            if (aliased.getColumnNames() != null && !aliased.getColumnNames().isEmpty())
+                return null;
+            name = aliased.getAlias().getValue();
+            table = aliased.getRelation();
+        } else {
+            name = null;
+        }
+        if (!(table instanceof Table))
+            return null;
+        String tableName = TranslationVisitor.convertQualifiedName(((Table)table).getName());
+        if (name == null)
+            name = tableName;
+        DDlogRelationDeclaration decl = context.getCommonTableExpression(tableName);
+        if (decl == null)
+            decl = context.getRelation(DDlogRelationDeclaration.relationName(tableName));
+        if (decl == null)
+            return null;
+        DDlogTStruct type = context.resolveType(decl.getType()).to(DDlogTStruct.class);
+        Set<String> keyColumns = new HashSet<String>(Linq.map(decl.getKeyColumns(), DDlogField::getName));
+        Long cardinality = context.getCardinality(decl.getName());
+        return new Leaf(relation, name, type, keyColumns, cardinality == null ? Long.MAX_VALUE : cardinality);
+    }
+
+    private static List<Expression> conjuncts(Expression expression) {
+        List<Expression> result = new ArrayList<Expression>();
+        if (expression instanceof LogicalBinaryExpression &&
+                ((LogicalBinaryExpression)expression).getOperator() == LogicalBinaryExpression.Operator.AND) {
+            result.addAll(conjuncts(((LogicalBinaryExpression)expression).getLeft()));
+            result.addAll(conjuncts(((LogicalBinaryExpression)expression).getRight()));
+        } else {
+            result.add(expression);
+        }
+        return result;
+    }
+
+    /**
+     * The leaf a column reference belongs to, or -1 if this cannot be determined.
+     */
+    private static int leafOf(Expression column, List<Leaf> leaves) {
+        String table = null;
+        String name;
+        if (column instanceof Identifier) {
+            name = ((Identifier)column).getValue();
+        } else if (column instanceof DereferenceExpression &&
+                ((DereferenceExpression)column).getBase() instanceof Identifier) {
+            DereferenceExpression deref = (DereferenceExpression)column;
+            table = ((Identifier)deref.getBase()).getValue();
+            name = deref.getField().getValue();
+        } else {
+            return -1;
+        }
+        int result = -1;
+        for (int i = 0; i < leaves.size(); i++) {
+            Leaf leaf = leaves.get(i);
+            if (table != null && !table.equals(leaf.name))
+                continue;
+            if (!Linq.any(leaf.type.getFields(), f -> f.getName().equals(name)))
+                continue;
+            if (result >= 0)
+                // ambiguous
+                return -1;
+            result = i;
+        }
+        return result;
+    }
+
+    private static Condition analyzeCondition(Expression conjunct, List<Leaf> leaves) {
+        BitSet uses = new BitSet();
+        boolean[] resolved = new boolean[] { true };
+        new DefaultTraversalVisitor<Void, Void>() {
+            @Override
+            protected Void visitIdentifier(Identifier node, Void unused) {
+                this.use(node);
+                return null;
+            }
+
+            @Override
+            protected Void visitDereferenceExpression(DereferenceExpression node, Void unused) {
+                if (!(node.getBase() instanceof Identifier))
+                    return super.visitDereferenceExpression(node, unused);
+                this.use(node);
+                return null;
+            }
+
+            @Override
+            protected Void visitSubqueryExpression(SubqueryExpression node, Void unused) {
+                resolved[0] = false;
+                return null;
+            }
+
+            void use(Expression column) {
+                int leaf = leafOf(column, leaves);
+                if (leaf < 0)
+                    resolved[0] = false;
+                else
+                    uses.set(leaf);
+            }
+        }.process(conjunct, null);
+        if (!resolved[0]) {
+            // Keep the condition after all the tables.
+            uses.set(0, leaves.size());
+            return new Condition(conjunct, uses, null, null);
+        }
+        if (conjunct instanceof ComparisonExpression &&
+                ((ComparisonExpression)conjunct).getOperator() == ComparisonExpression.Operator.EQUAL) {
+            ComparisonExpression comparison = (ComparisonExpression)conjunct;
+            int left = leafOf(comparison.getLeft(), leaves);
+            int right = leafOf(comparison.getRight(), leaves);
+            if (left >= 0 && right >= 0 && left != right)
+                return new Condition(conjunct, uses, new int[] { left, right },
+                        new String[] { columnName(comparison.getLeft()), columnName(comparison.getRight()) });
+        }
+        return new Condition(conjunct, uses, null, null);
+    }
+
+    private static String columnName(Expression column) {
+        if (column instanceof Identifier)
+            return ((Identifier)column).getValue();
+        return ((DereferenceExpression)column).getField().getValue();
+    }
+
+    /**
+     * True if some equality condition joins the leaf with the chosen leaves.
+     * @param keyColumns  If not null, the columns of the leaf that are compared
+     *                    with the chosen leaves are removed from the set.
+     */
+    private boolean joined(int leaf, BitSet chosen, @Nullable Set<String> keyColumns) {
+        boolean result = false;
+        for (Condition c: this.conditions) {
+            if (c.tables == null)
+                continue;
+            assert c.columns != null;
+            for (int side = 0; side < 2; side++) {
+                if (c.tables[side] == leaf && chosen.get(c.tables[1 - side])) {
+                    result = true;
+                    if (keyColumns != null)
+                        keyColumns.remove(c.columns[side]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<Integer> chooseOrder() {
+        List<Integer> result = new ArrayList<Integer>();
+        BitSet chosen = new BitSet();
+        int first = 0;
+        for (int i = 1; i < this.leaves.size(); i++)
+            if (this.leaves.get(i).cardinality < this.leaves.get(first).cardinality)
+                first = i;
+        result.add(first);
+        chosen.set(first);
+        while (result.size() < this.leaves.size()) {
+            int best = -1;
+            int bestRank = 0;
+            for (int i = 0; i < this.leaves.size(); i++) {
+                if (chosen.get(i))
+                    continue;
+                Leaf leaf = this.leaves.get(i);
+                Set<String> unmatchedKey = new HashSet<String>(leaf.keyColumns);
+                boolean joined = this.joined(i, chosen, unmatchedKey);
+                // 0: joined on its whole key, 1: joined, 2: cross product
+                int rank = joined ? (!leaf.keyColumns.isEmpty() && unmatchedKey.isEmpty() ? 0 : 1) : 2;
+                if (best < 0 || rank < bestRank ||
+                        (rank == bestRank && leaf.cardinality < this.leaves.get(best).cardinality)) {
+                    best = i;
+                    bestRank = rank;
+                }
+            }
+            result.add(best);
+            chosen.set(best);
+        }
+        return result;
+    }
+
+    /**
+     * True if the chosen order is the order of the FROM clause.
+     */
+    boolean isSyntactic() {
+        for (int i = 0; i < this.order.size(); i++)
+            if (this.order.get(i) != i)
+                return false;
+        return true;
+    }
+
+    /**
+     * A join of the tables in the chosen order; each condition is placed in the
+     * first join where all the tables it uses are available.
+     */
+    Join reorderedJoin() {
+        BitSet available = new BitSet();
+        Set<Condition> placed = new HashSet<Condition>();
+        Relation result = this.leaves.get(this.order.get(0)).relation;
+        available.set(this.order.get(0));
+        for (int i = 1; i < this.order.size(); i++) {
+            int leaf = this.order.get(i);
+            available.set(leaf);
+            Expression on = null;
+            for (Condition c: this.conditions) {
+                if (placed.contains(c))
+                    continue;
+                BitSet missing = (BitSet)c.uses.clone();
+                missing.andNot(available);
+                if (!missing.isEmpty())
+                    continue;
+                placed.add(c);
+                on = on == null ? c.expression : LogicalBinaryExpression.and(on, c.expression);
+            }
+            Relation right = this.leaves.get(leaf).relation;
+            if (on == null)
+                result = new Join(Join.Type.CROSS, result, right, Optional.empty());
+            else
+                result = new Join(Join.Type.INNER, result, right, Optional.of(new JoinOn(on)));
+        }
+        return (Join)result;
+    }
+}
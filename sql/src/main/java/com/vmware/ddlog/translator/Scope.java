@@ -15,9 +15,11 @@ import com.facebook.presto.sql.tree.Node;
 import com.vmware.ddlog.ir.*;
 
 import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Scope {
-    static int idGen = 0;
+    // Scopes may be created concurrently by parallel translations
+    static final AtomicInteger idGen = new AtomicInteger();
     public final int id;
     public final Node node;
     final String scopeName;
@@ -25,7 +27,7 @@ public class Scope {
     public final DDlogType type;
 
     Scope(Node node, String scopeName, String rowVariable, DDlogType type) {
-        this.id = idGen++;
+        this.id = idGen.getAndIncrement();
         this.node = node;
         this.scopeName = scopeName;
         this.rowVariable = rowVariable;
@@ -62,6 +62,10 @@ public class SqlSemantics {
 
     public static SqlSemantics semantics = new SqlSemantics();
     static final Pattern arrayType = Pattern.compile("ARRAY\\((.+)\\)");
+    /**
+     * Type of interned strings, defined in the internment library.
+     */
+    static final String internedString = "istring";
 
     public static DDlogType createType(Node node, String sqltype, boolean mayBeNull) {
         DDlogType type = null;
@@ -69,6 +73,10 @@ public class SqlSemantics {
             type = DDlogTBool.instance;
         } else if (sqltype.equals("integer") || sqltype.equals("int")) {
             type = DDlogTSigned.signed64;
+        } else if (sqltype.equals("smallint")) {
+            type = DDlogTSigned.signed16;
+        } else if (sqltype.equals("tinyint")) {
+            type = DDlogTSigned.signed8;
         } else if (sqltype.startsWith("varchar")) {
             type = DDlogTString.instance;
         } else if (sqltype.equals("bigint")) {
@@ -80,7 +88,7 @@ public class SqlSemantics {
         } else if (sqltype.equals("date")) {
             type = new DDlogTUser(node, "Date", false);
         } else if (sqltype.equals("time")) {
-            type = new DDlogTUser(null, "Time", false);
+            type = DDlogType.intern(new DDlogTUser(null, "Time", false));
         } else if (sqltype.equals("datetime") || sqltype.equals("timestamp")) {
             type = new DDlogTUser(node, "DateTime", false);
         } else {
@@ -96,6 +104,26 @@ public class SqlSemantics {
         return type.setMayBeNull(mayBeNull);
     }
 
+    /**
+     * The type used to store a column of a table.  This may be narrower than the type
+     * produced by createType; ExpressionTranslationVisitor.widen converts stored values
+     * to the type used in expressions.
+     * @param narrowIntegers  If true integer columns are stored in signed<32>.
+     * @param internStrings   If true varchar columns are stored as interned strings.
+     */
+    public static DDlogType createColumnType(Node node, String sqltype, boolean mayBeNull,
+                                             boolean narrowIntegers, boolean internStrings) {
+        if (narrowIntegers && (sqltype.equals("integer") || sqltype.equals("int")))
+            return DDlogTSigned.signed32.setMayBeNull(mayBeNull);
+        if (internStrings && sqltype.startsWith("varchar"))
+            return new DDlogTUser(node, internedString, mayBeNull);
+        return createType(node, sqltype, mayBeNull);
+    }
+
+    public static boolean isInterned(DDlogType type) {
+        return type.is(DDlogTUser.class) && type.to(DDlogTUser.class).getName().equals(internedString);
+    }
+
     public boolean isAggregateFunction(String functionName) {
         return this.aggregateFunctions.contains(functionName);
     }
@@ -120,7 +148,7 @@ public class SqlSemantics {
                     } else if (op.isBoolean()) {
                         raw = DDlogTBool.instance;
                     } else {
-                        raw = new DDlogTSigned(null,64, false);
+                        raw = DDlogTSigned.signed64;
                     }
                     withNull = raw.setMayBeNull(true);
                     DDlogExpression leftMatch = new DDlogEVarDecl(null,"l", raw);
@@ -1,6 +1,8 @@
 package com.vmware.ddlog.translator;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
 
 /**
  * A very simple symbol table; currently maintains just names.
@@ -19,6 +21,26 @@ public class SymbolTable {
         this.names.add(name);
     }
 
+    public boolean contains(String name) {
+        return this.names.contains(name);
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(this.names);
+    }
+
+    public void removeName(String name) {
+        this.names.remove(name);
+    }
+
+    public int getCounter() {
+        return this.counter;
+    }
+
+    public void setCounter(int counter) {
+        this.counter = counter;
+    }
+
     public String freshName(String prefix) {
         String name = prefix;
         while (true) {
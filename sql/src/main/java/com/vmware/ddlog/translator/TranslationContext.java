@@ -40,12 +40,25 @@ class TranslationContext {
     private final TranslationState translationState;
     // True if the view that is being compiled should produce an output relation.
     public boolean viewIsOutput;
+    /**
+     * If not null, for each row variable the set of its columns referenced
+     * by the expressions translated.
+     */
+    @Nullable
+    private Map<String, Set<String>> columnReferences;
+    /**
+     * Relations holding the common table expressions (WITH queries) visible
+     * in the query that is being translated, indexed by name.
+     */
+    private Map<String, DDlogRelationDeclaration> commonTableExpressions;
 
-    private TranslationContext(@Nullable TranslationState state) {
+    TranslationContext(@Nullable TranslationState state) {
         this.viewIsOutput = true;
         this.substitutions = new HashMap<Node, DDlogExpression>();
         this.translationScope = new ArrayList<Scope>();
         this.searchScopeName = false;
+        this.columnReferences = null;
+        this.commonTableExpressions = new HashMap<String, DDlogRelationDeclaration>();
         if (state != null)
             this.translationState = state;
         else
@@ -69,6 +82,7 @@ class TranslationContext {
         Utilities.copyMap(result.substitutions, this.substitutions);
         result.viewIsOutput = this.viewIsOutput;
         result.translationScope.addAll(this.translationScope);
+        Utilities.copyMap(result.commonTableExpressions, this.commonTableExpressions);
         return result;
     }
 
@@ -184,7 +198,7 @@ class TranslationContext {
      */
     public DDlogTUser createStruct(
             @Nullable Node node, List<DDlogField> fields, String suggestedName) {
-        for (DDlogTypeDef td: this.getProgram().typedefs) {
+        for (DDlogTypeDef td: this.translationState.getTypedefs()) {
             DDlogType type = td.getType();
             if (type == null)
                 // extern type.
@@ -241,12 +255,36 @@ class TranslationContext {
             } else {
                 @Nullable
                 DDlogExpression expr = scope.lookupColumn(scope.node, identifier, this);
-                if (expr != null) return expr;
+                if (expr != null) {
+                    if (this.columnReferences != null)
+                        this.columnReferences.computeIfAbsent(scope.rowVariable, k -> new HashSet<String>())
+                                .add(identifier);
+                    return expr;
+                }
             }
         }
         return null;
     }
 
+    /**
+     * Start recording the columns referenced by the expressions translated.
+     */
+    void recordColumnReferences() {
+        this.columnReferences = new HashMap<String, Set<String>>();
+    }
+
+    /**
+     * Stop recording column references.
+     * @return  For each row variable the set of its columns referenced since
+     *          recordColumnReferences was called.
+     */
+    Map<String, Set<String>> stopRecordingColumnReferences() {
+        Map<String, Set<String>> result = this.columnReferences;
+        assert result != null;
+        this.columnReferences = null;
+        return result;
+    }
+
     void enterScope(Scope scope) {
         this.translationScope.add(scope);
     }
@@ -267,6 +305,27 @@ class TranslationContext {
         return this.translationState.etv.process(expr, this);
     }
 
+    void defineCommonTableExpression(String name, DDlogRelationDeclaration relation) {
+        this.commonTableExpressions.put(name, relation);
+    }
+
+    @Nullable
+    DDlogRelationDeclaration getCommonTableExpression(String name) {
+        return this.commonTableExpressions.get(name);
+    }
+
+    /**
+     * The common table expressions currently visible; they can be restored
+     * with restoreCommonTableExpressions when leaving the query that defines them.
+     */
+    Map<String, DDlogRelationDeclaration> saveCommonTableExpressions() {
+        return new HashMap<String, DDlogRelationDeclaration>(this.commonTableExpressions);
+    }
+
+    void restoreCommonTableExpressions(Map<String, DDlogRelationDeclaration> saved) {
+        this.commonTableExpressions = saved;
+    }
+
     void add(DDlogRelationDeclaration relation) {
         this.translationState.add(relation);
     }
@@ -288,14 +347,44 @@ class TranslationContext {
         this.viewIsOutput = true;
     }
 
+    /**
+     * Called when a statement was translated successfully.
+     */
+    void finishTranslation() {
+        this.translationState.removeUnusedTypedefs();
+    }
+
+    /**
+     * Called also when the translation fails, so the context can translate other statements.
+     */
     void endTranslation() {
         this.exitAllScopes();
+        this.commonTableExpressions.clear();
+        this.substitutions.clear();
+        this.searchScopeName = false;
+        this.columnReferences = null;
+    }
+
+    void addImport(String module) {
+        this.translationState.addImport(module);
     }
 
     void add(DDlogRule rule) {
         this.translationState.add(rule);
     }
 
+    /**
+     * Create an index on some columns of a relation and add it to the program.
+     * The index is named after the relation and the columns, e.g., Rt1_by_column1.
+     */
+    DDlogIndexDeclaration createIndex(@Nullable Node node, DDlogRelationDeclaration relation, List<String> columns) {
+        DDlogTStruct rowType = this.resolveType(relation.getType()).to(DDlogTStruct.class);
+        String name = this.freshGlobalName(relation.getName() + "_by_" + String.join("_", columns));
+        DDlogIndexDeclaration index = DDlogIndexDeclaration.create(node, name, relation, rowType, columns);
+        this.translationState.add(index);
+        return index;
+    }
+
     void add(DDlogTypeDef tdef) {
         this.translationState.add(tdef);
     }
@@ -309,6 +398,46 @@ class TranslationContext {
         return this.translationState.getProgram();
     }
 
+    /**
+     * The estimated number of rows of a relation, or null if it is not known.
+     */
+    @Nullable
+    Long getCardinality(String relation) {
+        return this.translationState.getCardinality(relation);
+    }
+
+    void setCardinality(String relation, long rows) {
+        this.translationState.setCardinality(relation, rows);
+    }
+
+    int getAggregationBuckets() {
+        return this.translationState.getAggregationBuckets();
+    }
+
+    void setAggregationBuckets(int buckets) {
+        this.translationState.setAggregationBuckets(buckets);
+    }
+
+    boolean getNarrowIntegers() {
+        return this.translationState.getNarrowIntegers();
+    }
+
+    void setNarrowIntegers(boolean narrowIntegers) {
+        this.translationState.setNarrowIntegers(narrowIntegers);
+    }
+
+    boolean getInternStrings() {
+        return this.translationState.getInternStrings();
+    }
+
+    void setInternStrings(boolean internStrings) {
+        this.translationState.setInternStrings(internStrings);
+    }
+
+    TranslationState getTranslationState() {
+        return this.translationState;
+    }
+
     void reserveGlobalName(String name) {
         this.translationState.globalSymbols.addName(name);
     }
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice (including the next paragraph) shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.vmware.ddlog.translator;
+
+import com.facebook.presto.sql.tree.CreateTable;
+import com.facebook.presto.sql.tree.CreateView;
+import com.facebook.presto.sql.tree.DropTable;
+import com.facebook.presto.sql.tree.DropView;
+import com.facebook.presto.sql.tree.Statement;
+import com.vmware.ddlog.ir.*;
+import com.vmware.ddlog.util.Linq;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A translation session keeps a translated program up to date while tables and views are
+ * created and dropped.  Each statement translates only the table or view it defines, and
+ * dropping a table or view removes only the relations, rules, indexes and functions that
+ * were produced for it; the rest of the program is left unchanged.  Each call reports the
+ * changes it made to the program.
+ *
+ * The state of a session can be saved and restored; restoring executes again, in order,
+ * the statements that changed the program, so the restored program is identical to the
+ * saved one, including the names of its relations, functions and types.  The saved state
+ * thus grows with the number of statements executed.
+ * Typedefs are never removed, since they may be shared by several tables and views.
+ */
+public class TranslationSession {
+    /**
+     * The changes made to the program by one statement.
+     */
+    public static class Change {
+        private final List<DDlogRelationDeclaration> addedRelations;
+        private final List<DDlogRelationDeclaration> removedRelations;
+        private final List<DDlogRule> addedRules;
+        private final List<DDlogRule> removedRules;
+
+        Change() {
+            this.addedRelations = new ArrayList<DDlogRelationDeclaration>();
+            this.removedRelations = new ArrayList<DDlogRelationDeclaration>();
+            this.addedRules = new ArrayList<DDlogRule>();
+            this.removedRules = new ArrayList<DDlogRule>();
+        }
+
+        public List<DDlogRelationDeclaration> getAddedRelations() {
+            return this.addedRelations;
+        }
+
+        public List<DDlogRelationDeclaration> getRemovedRelations() {
+            return this.removedRelations;
+        }
+
+        public List<DDlogRule> getAddedRules() {
+            return this.addedRules;
+        }
+
+        public List<DDlogRule> getRemovedRules() {
+            return this.removedRules;
+        }
+
+        public boolean isEmpty() {
+            return this.addedRelations.isEmpty() && this.removedRelations.isEmpty() &&
+                    this.addedRules.isEmpty() && this.removedRules.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "+" + Linq.map(this.addedRelations, DDlogRelationDeclaration::getName) +
+                    " -" + Linq.map(this.removedRelations, DDlogRelationDeclaration::getName);
+        }
+    }
+
+    /**
+     * A statement and the options it was executed with.
+     */
+    private static class Executed {
+        final String sql;
+        final int aggregationBuckets;
+        final boolean narrowIntegers;
+        final boolean internStrings;
+
+        Executed(String sql, TranslationContext context) {
+            this.sql = sql;
+            this.aggregationBuckets = context.getAggregationBuckets();
+            this.narrowIntegers = context.getNarrowIntegers();
+            this.internStrings = context.getInternStrings();
+        }
+    }
+
+    /**
+     * A table or view, the options it was translated with, and what its translation added to the program.
+     */
+    private static class Definition {
+        final String name;
+        final boolean isTable;
+        final String sql;
+        final int aggregationBuckets;
+        final boolean narrowIntegers;
+        final boolean internStrings;
+        /**
+         * Global names allocated by the translation, indexed by the prefix requested.
+         */
+        final Map<String, List<String>> names = new HashMap<String, List<String>>();
+        final List<DDlogTypeDef> typedefs = new ArrayList<DDlogTypeDef>();
+        final List<DDlogFunction> functions = new ArrayList<DDlogFunction>();
+        final List<DDlogRelationDeclaration> relations = new ArrayList<DDlogRelationDeclaration>();
+        final List<DDlogIndexDeclaration> indexes = new ArrayList<DDlogIndexDeclaration>();
+        final List<DDlogRule> rules = new ArrayList<DDlogRule>();
+
+        Definition(String name, boolean isTable, String sql, TranslationContext context) {
+            this.name = name;
+            this.isTable = isTable;
+            this.sql = sql;
+            this.aggregationBuckets = context.getAggregationBuckets();
+            this.narrowIntegers = context.getNarrowIntegers();
+            this.internStrings = context.getInternStrings();
+        }
+
+        /**
+         * The relations read by the rules of this definition.
+         */
+        Set<String> relationsRead() {
+            Set<String> result = new HashSet<String>();
+            for (DDlogRule rule: this.rules) {
+                for (DDlogRuleRHS rhs: rule.rhs) {
+                    if (rhs.is(DDlogRHSLiteral.class))
+                        result.add(rhs.to(DDlogRHSLiteral.class).atom.relation);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final int FORMAT_VERSION = 2;
+    private final Translator translator;
+    /**
+     * Live tables and views indexed by name, in the order in which they were created.
+     */
+    private final LinkedHashMap<String, Definition> definitions;
+    /**
+     * Statements that changed the program, in the order in which they were executed.
+     */
+    private final List<Executed> history;
+
+    public TranslationSession() {
+        this.translator = new Translator(null);
+        this.definitions = new LinkedHashMap<String, Definition>();
+        this.history = new ArrayList<Executed>();
+    }
+
+    public DDlogProgram getProgram() {
+        return this.translator.getDDlogProgram();
+    }
+
+    /**
+     * See Translator.setAggregationBuckets; affects the statements executed after this call.
+     */
+    public void setAggregationBuckets(final int buckets) {
+        this.translator.setAggregationBuckets(buckets);
+    }
+
+    /**
+     * See Translator.setNarrowIntegers; affects the statements executed after this call.
+     */
+    public void setNarrowIntegers(final boolean narrowIntegers) {
+        this.translator.setNarrowIntegers(narrowIntegers);
+    }
+
+    /**
+     * See Translator.setInternStrings; affects the statements executed after this call.
+     */
+    public void setInternStrings(final boolean internStrings) {
+        this.translator.setInternStrings(internStrings);
+    }
+
+    /**
+     * The names of the live tables and views, in the order in which they were created.
+     */
+    public List<String> getDefinitions() {
+        return new ArrayList<String>(this.definitions.keySet());
+    }
+
+    /**
+     * Execute a statement that creates or drops a table or a view:
+     * create table, create [or replace] view, drop table [if exists] or drop view [if exists].
+     * If the statement fails the program is left unchanged.
+     * @param sql  Statement to execute.
+     * @return     The changes made to the program.
+     */
+    public Change execute(final String sql) {
+        final Executed executed = new Executed(sql, this.translator.getTranslationContext());
+        final Change change = this.execute(sql, this.translator.parse(sql));
+        if (!change.isEmpty())
+            this.history.add(executed);
+        return change;
+    }
+
+    private Change execute(final String sql, final Statement statement) {
+        if (statement instanceof CreateTable) {
+            final String name = TranslationVisitor.convertQualifiedName(((CreateTable)statement).getName());
+            return this.create(name, true, sql, statement, null);
+        } else if (statement instanceof CreateView) {
+            final CreateView view = (CreateView)statement;
+            final String name = TranslationVisitor.convertQualifiedName(view.getName());
+            final Definition previous = this.definitions.get(name);
+            if (!view.isReplace() || previous == null || previous.isTable)
+                return this.create(name, false, sql, statement, null);
+            final Change change = new Change();
+            this.drop(previous, change);
+            try {
+                final Change created = this.create(name, false, sql, statement, null);
+                change.addedRelations.addAll(created.addedRelations);
+                change.addedRules.addAll(created.addedRules);
+            } catch (RuntimeException ex) {
+                this.recreate(previous);
+                throw ex;
+            }
+            return change;
+        } else if (statement instanceof DropTable) {
+            final DropTable drop = (DropTable)statement;
+            return this.drop(TranslationVisitor.convertQualifiedName(drop.getTableName()), true, drop.isExists());
+        } else if (statement instanceof DropView) {
+            final DropView drop = (DropView)statement;
+            return this.drop(TranslationVisitor.convertQualifiedName(drop.getName()), false, drop.isExists());
+        }
+        throw new TranslationException("Only statements that create or drop tables and views are supported",
+                statement);
+    }
+
+    /**
+     * Translate a statement that creates a table or view.
+     * @param names  If not null, global names to give to the translation, as logged in Definition.names.
+     */
+    private Change create(final String name, final boolean isTable, final String sql, final Statement statement,
+                          @Nullable final Map<String, List<String>> names) {
+        if (this.definitions.containsKey(name))
+            throw new TranslationException("Table or view " + name + " already exists", statement);
+        final TranslationContext context = this.translator.getTranslationContext();
+        final DDlogProgram program = context.getProgram();
+        final Definition definition = new Definition(name, isTable, sql, context);
+        final Set<DDlogNode> before = Collections.newSetFromMap(new IdentityHashMap<DDlogNode, Boolean>());
+        before.addAll(program.typedefs);
+        before.addAll(program.functions);
+        before.addAll(program.relations);
+        before.addAll(program.indexes);
+        before.addAll(program.rules);
+        final TranslationState state = context.getTranslationState();
+        final int counter = state.globalSymbols.getCounter();
+        state.setNameLog(definition.names, names);
+        try {
+            this.translator.translate(statement);
+        } catch (RuntimeException ex) {
+            // Remove the partial translation, so the names it allocated can be allocated again
+            this.collectNew(before, definition);
+            this.remove(definition, true);
+            for (List<String> allocated: definition.names.values())
+                for (String n: allocated)
+                    state.globalSymbols.removeName(n);
+            state.globalSymbols.setCounter(counter);
+            throw ex;
+        } finally {
+            state.setNameLog(null, null);
+        }
+        this.collectNew(before, definition);
+        this.definitions.put(name, definition);
+        final Change change = new Change();
+        change.addedRelations.addAll(definition.relations);
+        change.addedRules.addAll(definition.rules);
+        return change;
+    }
+
+    /**
+     * Translate again a definition that was dropped, with the options and names it was translated with.
+     */
+    private void recreate(final Definition definition) {
+        final TranslationContext context = this.translator.getTranslationContext();
+        final int aggregationBuckets = context.getAggregationBuckets();
+        final boolean narrowIntegers = context.getNarrowIntegers();
+        final boolean internStrings = context.getInternStrings();
+        context.setAggregationBuckets(definition.aggregationBuckets);
+        context.setNarrowIntegers(definition.narrowIntegers);
+        context.setInternStrings(definition.internStrings);
+        try {
+            this.create(definition.name, definition.isTable, definition.sql,
+                    this.translator.parse(definition.sql), definition.names);
+        } finally {
+            context.setAggregationBuckets(aggregationBuckets);
+            context.setNarrowIntegers(narrowIntegers);
+            context.setInternStrings(internStrings);
+        }
+    }
+
+    /**
+     * Add to the definition the parts of the program that are not in the before set.
+     */
+    private void collectNew(final Set<DDlogNode> before, final Definition definition) {
+        final DDlogProgram program = this.translator.getDDlogProgram();
+        addNew(program.typedefs, before, definition.typedefs);
+        addNew(program.functions, before, definition.functions);
+        addNew(program.relations, before, definition.relations);
+        addNew(program.indexes, before, definition.indexes);
+        addNew(program.rules, before, definition.rules);
+    }
+
+    private static <T extends DDlogNode> void addNew(List<T> all, Set<DDlogNode> before, List<T> result) {
+        for (T node: all)
+            if (!before.contains(node))
+                result.add(node);
+    }
+
+    private Change drop(final String name, final boolean isTable, final boolean ifExists) {
+        final Change change = new Change();
+        final Definition definition = this.definitions.get(name);
+        if (definition == null || definition.isTable != isTable) {
+            if (ifExists)
+                return change;
+            throw new IllegalArgumentException("Unknown " + (isTable ? "table " : "view ") + name);
+        }
+        this.drop(definition, change);
+        return change;
+    }
+
+    /**
+     * Remove a definition from the program; fails if other definitions read its relations.
+     * @param change  The removed relations and rules are added here.
+     */
+    private void drop(final Definition definition, final Change change) {
+        final Set<String> relations = new HashSet<String>(Linq.map(definition.relations, DDlogRelationDeclaration::getName));
+        for (Definition other: this.definitions.values()) {
+            if (other == definition)
+                continue;
+            if (Linq.any(other.relationsRead(), relations::contains))
+                throw new IllegalArgumentException("Cannot drop " + definition.name + ": it is used by " + other.name);
+        }
+        this.definitions.remove(definition.name);
+        this.remove(definition, false);
+        change.removedRelations.addAll(definition.relations);
+        change.removedRules.addAll(definition.rules);
+    }
+
+    private void remove(final Definition definition, final boolean withTypedefs) {
+        final TranslationState state = this.translator.getTranslationContext().getTranslationState();
+        for (DDlogRule rule: definition.rules)
+            state.remove(rule);
+        for (DDlogIndexDeclaration index: definition.indexes)
+            state.remove(index);
+        for (DDlogRelationDeclaration relation: definition.relations)
+            state.remove(relation);
+        for (DDlogFunction function: definition.functions)
+            state.remove(function);
+        if (withTypedefs)
+            for (DDlogTypeDef typedef: definition.typedefs)
+                state.remove(typedef);
+    }
+
+    /**
+     * Save the state of the session.
+     * @param stream  Stream where the state is written; it is not closed.
+     */
+    public void save(final OutputStream stream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(this.history.size());
+        for (Executed executed: this.history) {
+            final byte[] sql = executed.sql.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(sql.length);
+            out.write(sql);
+            out.writeInt(executed.aggregationBuckets);
+            out.writeBoolean(executed.narrowIntegers);
+            out.writeBoolean(executed.internStrings);
+        }
+        out.flush();
+    }
+
+    /**
+     * Restore a session saved with save.
+     * @param stream  Stream where the state is read from; it is not closed.
+     */
+    public static TranslationSession restore(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        final int version = in.readInt();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported translation session format " + version);
+        final TranslationSession result = new TranslationSession();
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            final byte[] sql = new byte[in.readInt()];
+            in.readFully(sql);
+            result.setAggregationBuckets(in.readInt());
+            result.setNarrowIntegers(in.readBoolean());
+            result.setInternStrings(in.readBoolean());
+            result.execute(new String(sql, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+}
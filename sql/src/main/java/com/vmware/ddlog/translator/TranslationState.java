@@ -1,9 +1,21 @@
 package com.vmware.ddlog.translator;
 
 import com.vmware.ddlog.ir.*;
+import com.vmware.ddlog.util.Utilities;
 
 import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Part of the TranslationContext that is shared between multiple
@@ -23,6 +35,50 @@ public class TranslationState {
      */
     @Nullable
     private SymbolTable localSymbols;
+    /**
+     * Number of buckets used for two-level aggregation; 0 disables it.
+     */
+    private int aggregationBuckets;
+    /**
+     * If true integer columns are stored as signed<32>.
+     */
+    private boolean narrowIntegers;
+    /**
+     * If true varchar columns are stored as interned strings.
+     */
+    private boolean internStrings;
+    /**
+     * Estimated number of rows of some relations, indexed by relation name; used to order joins.
+     */
+    private final Map<String, Long> cardinalities;
+    /**
+     * If not null this state holds the translation of a single statement that is translated
+     * in parallel with other statements; it can read, but not change, the parent state.
+     * The result is added to the parent by merge.
+     */
+    @Nullable
+    private final TranslationState parent;
+    /**
+     * Suffix of the global names allocated when the state has a parent.
+     */
+    private final String nameSuffix;
+    /**
+     * If not null the global names allocated are added here, indexed by the prefix requested.
+     */
+    @Nullable
+    private Map<String, List<String>> nameLog;
+    /**
+     * If not null global names are taken from here, indexed by the prefix requested,
+     * instead of being allocated.
+     */
+    @Nullable
+    private Map<String, Iterator<String>> nameReplay;
+    /**
+     * Size of the lists of the program when the translation of the current statement began;
+     * translating a statement only appends to them.
+     */
+    private int firstTypedef, firstFunction, firstRelation, firstIndex, firstRule;
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
 
     public TranslationState() {
         this.program = new DDlogProgram();
@@ -34,6 +90,32 @@ public class TranslationState {
         this.etv = new ExpressionTranslationVisitor();
         this.localSymbols = null;
         this.globalSymbols = new SymbolTable();
+        this.aggregationBuckets = 0;
+        this.narrowIntegers = false;
+        this.internStrings = false;
+        this.cardinalities = new HashMap<String, Long>();
+        this.parent = null;
+        this.nameSuffix = "";
+    }
+
+    /**
+     * Create a state for translating one statement in parallel with others.
+     * @param parent      State holding the statements translated before; it is not changed.
+     * @param nameSuffix  Suffix of global names allocated by the translation; it makes the
+     *                    names independent of the statements translated concurrently.
+     */
+    TranslationState(TranslationState parent, String nameSuffix) {
+        this.program = new DDlogProgram();
+        this.relations = new HashMap<String, DDlogRelationDeclaration>();
+        this.etv = new ExpressionTranslationVisitor();
+        this.localSymbols = null;
+        this.globalSymbols = new SymbolTable();
+        this.aggregationBuckets = parent.aggregationBuckets;
+        this.narrowIntegers = parent.narrowIntegers;
+        this.internStrings = parent.internStrings;
+        this.cardinalities = parent.cardinalities;
+        this.parent = parent;
+        this.nameSuffix = nameSuffix.replaceAll("\\W", "_");
     }
 
     @Nullable
@@ -42,16 +124,137 @@ public class TranslationState {
             if (t.getName().equals(type.getName()))
                 return t.getType();
         }
+        if (this.parent != null)
+            return this.parent.resolveTypeDef(type);
         return null;
     }
 
+    /**
+     * All typedefs visible in this state, including the ones of the parent.
+     */
+    List<DDlogTypeDef> getTypedefs() {
+        if (this.parent == null)
+            return this.program.typedefs;
+        return Utilities.concatenate(this.parent.getTypedefs(), this.program.typedefs);
+    }
+
+    private boolean isGlobalName(String name) {
+        return this.globalSymbols.contains(name) || this.relations.containsKey(name) ||
+                (this.parent != null && this.parent.isGlobalName(name));
+    }
+
+    /**
+     * Add the translation held by a state created for parallel translation to this state.
+     * @param child  State whose parent is this state.
+     * @return       False if some global names of the child are already used in this state;
+     *               in this case nothing is added.
+     */
+    boolean merge(TranslationState child) {
+        assert child.parent == this;
+        Set<String> names = child.relations.keySet();
+        for (String name: child.globalSymbols.getNames())
+            if (this.isGlobalName(name))
+                return false;
+        for (String name: names)
+            if (this.isGlobalName(name))
+                return false;
+        for (DDlogImport imp: child.program.imports)
+            this.addImport(imp.getModule());
+        this.program.typedefs.addAll(child.program.typedefs);
+        this.program.functions.addAll(child.program.functions);
+        this.program.relations.addAll(child.program.relations);
+        this.program.indexes.addAll(child.program.indexes);
+        this.program.rules.addAll(child.program.rules);
+        this.relations.putAll(child.relations);
+        for (String name: child.globalSymbols.getNames())
+            this.globalSymbols.addName(name);
+        for (String name: names)
+            if (!this.globalSymbols.contains(name))
+                this.globalSymbols.addName(name);
+        return true;
+    }
+
     void add(DDlogRelationDeclaration relation) {
         this.program.relations.add(relation);
         this.relations.put(relation.getName(), relation);
     }
 
+    /**
+     * Remove a relation from the program and release its name.
+     */
+    void remove(DDlogRelationDeclaration relation) {
+        this.program.relations.remove(relation);
+        this.relations.remove(relation.getName());
+        this.globalSymbols.removeName(relation.getName());
+    }
+
+    void remove(DDlogRule rule) {
+        this.program.rules.remove(rule);
+    }
+
+    void remove(DDlogIndexDeclaration index) {
+        this.program.indexes.remove(index);
+        this.globalSymbols.removeName(index.getName());
+    }
+
+    void remove(DDlogFunction function) {
+        this.program.functions.remove(function);
+        this.globalSymbols.removeName(function.getName());
+    }
+
+    void remove(DDlogTypeDef tdef) {
+        this.program.typedefs.remove(tdef);
+        this.globalSymbols.removeName(tdef.getName());
+    }
+
+    /**
+     * Record the global names allocated from now on.
+     * @param log     If not null the names allocated are added here, indexed by prefix.
+     * @param replay  If not null names are taken from here, so that a translation gets the
+     *                names it got when its names were logged.  Names are matched by prefix,
+     *                since a translation may not allocate all the names it allocated before,
+     *                e.g., when it reuses a typedef.
+     */
+    void setNameLog(@Nullable Map<String, List<String>> log, @Nullable Map<String, List<String>> replay) {
+        this.nameLog = log;
+        this.nameReplay = null;
+        if (replay != null) {
+            this.nameReplay = new HashMap<String, Iterator<String>>();
+            for (Map.Entry<String, List<String>> e: replay.entrySet())
+                this.nameReplay.put(e.getKey(), e.getValue().iterator());
+        }
+    }
+
     String freshGlobalName(String prefix) {
-        return this.globalSymbols.freshName(prefix);
+        String name = null;
+        if (this.nameReplay != null) {
+            Iterator<String> names = this.nameReplay.get(prefix);
+            if (names != null && names.hasNext()) {
+                name = names.next();
+                if (this.isGlobalName(name))
+                    name = null;
+                else
+                    this.globalSymbols.addName(name);
+            }
+        }
+        if (name == null)
+            name = this.allocateGlobalName(prefix);
+        if (this.nameLog != null)
+            this.nameLog.computeIfAbsent(prefix, k -> new ArrayList<String>()).add(name);
+        return name;
+    }
+
+    private String allocateGlobalName(String prefix) {
+        if (this.parent == null)
+            return this.globalSymbols.freshName(prefix);
+        String suffix = "_" + this.nameSuffix;
+        // Names derived from names allocated before, e.g., TRtmp_v from Rtmp_v, already have the suffix
+        String base = prefix.endsWith(suffix) ? prefix : prefix + suffix;
+        String name = base;
+        for (int i = 0; this.isGlobalName(name); i++)
+            name = base + i;
+        this.globalSymbols.addName(name);
+        return name;
     }
 
     String freshLocalName(String prefix) {
@@ -61,22 +264,119 @@ public class TranslationState {
 
     void beginTranslation() {
         this.localSymbols = new SymbolTable();
+        this.firstTypedef = this.program.typedefs.size();
+        this.firstFunction = this.program.functions.size();
+        this.firstRelation = this.program.relations.size();
+        this.firstIndex = this.program.indexes.size();
+        this.firstRule = this.program.rules.size();
+    }
+
+    /**
+     * Remove the typedefs added by the translation of the current statement that are not used
+     * by the rest of the program, e.g., the row type of a join whose rows are dead (see
+     * DDlogRule.removeDeadAssignments).  Declarations translated before cannot use these
+     * typedefs, so only the declarations added by the current statement are searched.
+     */
+    void removeUnusedTypedefs() {
+        List<DDlogTypeDef> added = new ArrayList<DDlogTypeDef>(
+                this.program.typedefs.subList(this.firstTypedef, this.program.typedefs.size()));
+        if (added.isEmpty())
+            return;
+        Map<String, DDlogTypeDef> byName = new HashMap<String, DDlogTypeDef>();
+        for (DDlogTypeDef tdef: added)
+            byName.put(tdef.getName(), tdef);
+        List<DDlogNode> users = new ArrayList<DDlogNode>();
+        users.addAll(this.program.functions.subList(this.firstFunction, this.program.functions.size()));
+        users.addAll(this.program.relations.subList(this.firstRelation, this.program.relations.size()));
+        users.addAll(this.program.indexes.subList(this.firstIndex, this.program.indexes.size()));
+        users.addAll(this.program.rules.subList(this.firstRule, this.program.rules.size()));
+        Deque<String> work = new ArrayDeque<String>();
+        for (DDlogNode node: users)
+            addIdentifiers(node.toString(), work);
+        // Typedefs can use other typedefs
+        Set<String> used = new HashSet<String>();
+        while (!work.isEmpty()) {
+            String name = work.remove();
+            DDlogTypeDef tdef = byName.get(name);
+            if (tdef != null && used.add(name))
+                addIdentifiers(tdef.toString(), work);
+        }
+        // The names stay allocated, so they do not change the names of later declarations
+        for (DDlogTypeDef tdef: added)
+            if (!used.contains(tdef.getName()))
+                this.program.typedefs.remove(tdef);
+    }
+
+    private static void addIdentifiers(String text, Collection<String> result) {
+        Matcher matcher = IDENTIFIER.matcher(text);
+        while (matcher.find())
+            result.add(matcher.group());
+    }
+
+    /**
+     * Import a module in the program, unless it is already imported.
+     */
+    void addImport(String module) {
+        for (DDlogImport imp: this.program.imports)
+            if (imp.getModule().equals(module))
+                return;
+        this.program.imports.add(new DDlogImport(module, ""));
     }
 
     void add(DDlogRule rule) {
         this.program.rules.add(rule);
     }
 
+    void add(DDlogIndexDeclaration index) {
+        this.program.indexes.add(index);
+    }
+
     void add(DDlogTypeDef tdef) {
         this.program.typedefs.add(tdef);
     }
 
     @Nullable
     DDlogRelationDeclaration getRelation(String name) {
-        return this.relations.get(name);
+        DDlogRelationDeclaration result = this.relations.get(name);
+        if (result == null && this.parent != null)
+            return this.parent.getRelation(name);
+        return result;
     }
 
     DDlogProgram getProgram() {
         return this.program;
     }
+
+    @Nullable
+    Long getCardinality(String relation) {
+        return this.cardinalities.get(relation);
+    }
+
+    void setCardinality(String relation, long rows) {
+        this.cardinalities.put(relation, rows);
+    }
+
+    int getAggregationBuckets() {
+        return this.aggregationBuckets;
+    }
+
+    void setAggregationBuckets(int buckets) {
+        this.aggregationBuckets = buckets;
+    }
+
+    boolean getNarrowIntegers() {
+        return this.narrowIntegers;
+    }
+
+    void setNarrowIntegers(boolean narrowIntegers) {
+        this.narrowIntegers = narrowIntegers;
+    }
+
+    boolean getInternStrings() {
+        return this.internStrings;
+    }
+
+    void setInternStrings(boolean internStrings) {
+        this.internStrings = internStrings;
+    }
 }
@@ -19,6 +19,7 @@ import com.vmware.ddlog.util.Ternary;
 import com.vmware.ddlog.util.Utilities;
 
 import javax.annotation.Nullable;
+import java.math.BigInteger;
 import java.util.*;
 
 import static com.facebook.presto.sql.tree.Join.Type.LEFT;
@@ -94,6 +95,8 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
             rel = rel.setPrimaryKey(keyColumns, context.freshLocalName("TKey"));
         }
         context.add(rel);
+        if (keyColumns.size() > 0)
+            context.createIndex(node, rel, Linq.map(keyColumns, DDlogField::getName));
         return rel;
     }
 
@@ -108,17 +111,31 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
     protected DDlogRule createRule(@Nullable Node node, String relName, RelationRHS rhs,
                                    DDlogRelationDeclaration.Role role,
                                    TranslationContext context) {
+        DDlogRelationDeclaration relDecl = new DDlogRelationDeclaration(
+                node, role, relName, rhs.getType(), rhs.isMultiset());
+        context.add(relDecl);
+        return this.addRule(node, relDecl, rhs, context);
+    }
+
+    /**
+     * Creates a rule that adds the tuples of rhs to an existing relation; adds it to the program.
+     * @param node     SQL node that is being translated.
+     * @param relation Relation that receives the tuples; must have the same type as rhs.
+     * @param rhs      Right-hand side that defines the tuples added.
+     * @param context  Translation context; the rule is added there.
+     */
+    private DDlogRule addRule(@Nullable Node node, DDlogRelationDeclaration relation, RelationRHS rhs,
+                              TranslationContext context) {
         String outVarName = context.freshLocalName("v");
         DDlogExpression outRowVarDecl = new DDlogEVarDecl(node, outVarName, rhs.getType());
-        DDlogRelationDeclaration relDecl = new DDlogRelationDeclaration(node, role, relName, rhs.getType());
-        DDlogAtom lhs = new DDlogAtom(node, relName, new DDlogEVar(node, outVarName, relDecl.getType()));
+        DDlogAtom lhs = new DDlogAtom(node, relation.getName(), new DDlogEVar(node, outVarName, relation.getType()));
         List<DDlogRuleRHS> definitions = rhs.getDefinitions();
         DDlogExpression inRowVar = rhs.getRowVariable();
         DDlogESet set = new DDlogESet(node, outRowVarDecl, inRowVar);
         definitions.add(new DDlogRHSCondition(node, set));
         DDlogRule rule = new DDlogRule(node, lhs, definitions);
+        rule.removeDeadAssignments();
         rule.addComment(new DDlogComment(node));
-        context.add(relDecl);
         context.add(rule);
         return rule;
     }
@@ -139,10 +156,13 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
     protected DDlogIRNode visitTableSubquery(TableSubquery query, TranslationContext context) {
         DDlogIRNode subquery = this.process(query.getQuery(), context);
         RelationRHS rhs = subquery.to(RelationRHS.class);
+        if (!rhs.isMultiset())
+            // The enclosing query may read the rows as a multiset
+            rhs = this.distinct(rhs, context);
         String relName = context.freshRelationName("tmp");
         DDlogRule rule = this.createRule(query, relName, rhs, DDlogRelationDeclaration.Role.Internal, context);
         String lhsVar = getRuleVar(rule).var;
-        RelationRHS result = new RelationRHS(query, lhsVar, rhs.getType());
+        RelationRHS result = new RelationRHS(query, lhsVar, rhs.getType()).setMultiset(rhs.isMultiset());
         result.addDefinition(new DDlogRHSLiteral(query, true, new DDlogAtom(query, relName, rule.lhs.val)));
         Scope scope = new Scope(query, relName, lhsVar, rule.lhs.val.getType());
         context.enterScope(scope);
@@ -152,29 +172,236 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
 
     @Override
     protected DDlogIRNode visitQuery(Query query, TranslationContext context) {
-        if (query.getLimit().isPresent())
-            throw new TranslationException("LIMIT clauses not supported", query);
-        if (query.getOrderBy().isPresent())
-            throw new TranslationException("ORDER BY clauses not supported", query);
-        if (query.getWith().isPresent())
-            throw new TranslationException("WITH clauses not supported", query);
+        Map<String, DDlogRelationDeclaration> outer = context.saveCommonTableExpressions();
+        if (query.getWith().isPresent()) {
+            With with = query.getWith().get();
+            for (WithQuery withQuery: with.getQueries())
+                this.processWithQuery(withQuery, with.isRecursive(), context);
+        }
         DDlogIRNode result = this.process(query.getQueryBody(), context);
         if (result == null)
             throw new TranslationException("Not yet implemented", query);
+        if (query.getOrderBy().isPresent() || query.getLimit().isPresent())
+            result = this.processTopK(query, result.to(RelationRHS.class), query.getOrderBy(), query.getLimit(), context);
+        context.restoreCommonTableExpressions(outer);
+        return result;
+    }
+
+    /**
+     * Translate a common table expression: its rows are stored in an internal relation,
+     * computed once, which the rest of the query reads like a table.  A recursive WITH query
+     * that reads itself becomes a recursive DDlog relation; see processRecursiveQuery.
+     * @param withQuery  Query to translate.
+     * @param recursive  True if the WITH clause is RECURSIVE.
+     * @param context    Translation context; the relation is visible in it under the query name.
+     */
+    private void processWithQuery(WithQuery withQuery, boolean recursive, TranslationContext context) {
+        String name = withQuery.getName().getValue().toLowerCase();
+        String relName = context.freshRelationName(name);
+        @Nullable
+        List<String> columns = withQuery.getColumnNames().isPresent() ?
+                Linq.map(withQuery.getColumnNames().get(), i -> i.getValue().toLowerCase()) : null;
+        // The WITH query does not see the scopes of the enclosing query.
+        TranslationContext queryContext = context.clone();
+        queryContext.exitAllScopes();
+        queryContext.clearSubstitutions();
+        DDlogRelationDeclaration relation;
+        if (recursive && reads(withQuery.getQuery(), name)) {
+            relation = this.processRecursiveQuery(withQuery, name, relName, columns, queryContext);
+        } else {
+            RelationRHS rhs = this.process(withQuery.getQuery(), queryContext).to(RelationRHS.class);
+            if (columns != null)
+                rhs = this.renameColumns(withQuery, rhs, columns, context);
+            if (!rhs.isMultiset())
+                rhs = this.distinct(rhs, context);
+            this.createRule(withQuery, relName, rhs, DDlogRelationDeclaration.Role.Internal, context);
+            relation = context.getRelation(relName);
+            assert relation != null;
+        }
+        context.defineCommonTableExpression(name, relation);
+    }
+
+    /**
+     * Translate a recursive WITH query, which must be a UNION whose first terms do not read
+     * the query itself.  These terms determine the type of the relation; each term then becomes
+     * a rule that adds rows to the relation, and the terms that read the relation become
+     * recursive rules, which DDlog evaluates incrementally to a fixed point.
+     * The relation is a set: UNION ALL is evaluated like UNION, since the fixed point of a
+     * multiset may be infinite.
+     * @param withQuery  Query to translate.
+     * @param name       Name of the query.
+     * @param relName    Name of the relation created.
+     * @param columns    Column names, if specified.
+     * @param context    Context in which the terms are translated.
+     * @return           The declaration of the relation created.
+     */
+    private DDlogRelationDeclaration processRecursiveQuery(
+            WithQuery withQuery, String name, String relName,
+            @Nullable List<String> columns, TranslationContext context) {
+        Query query = withQuery.getQuery();
+        if (query.getWith().isPresent() || query.getOrderBy().isPresent() || query.getLimit().isPresent() ||
+                !(query.getQueryBody() instanceof Union))
+            throw new TranslationException("Recursive WITH query must be a UNION", query);
+        List<Relation> terms = ((Union)query.getQueryBody()).getRelations();
+        int baseTerms = 0;
+        while (baseTerms < terms.size() && !reads(terms.get(baseTerms), name))
+            baseTerms++;
+        if (baseTerms == 0)
+            throw new TranslationException("Recursive WITH query needs a non-recursive first term", query);
+
+        List<RelationRHS> convert = new ArrayList<RelationRHS>();
+        for (int i = 0; i < baseTerms; i++)
+            convert.add(this.process(terms.get(i), context.clone()).to(RelationRHS.class));
+        DDlogType type = context.meet(Linq.map(convert, RelationRHS::getType));
+        DDlogTStruct str = context.resolveType(type).to(DDlogTStruct.class);
+        if (columns == null)
+            columns = Linq.map(str.getFields(), DDlogField::getName);
+        else if (columns.size() != str.getFields().size())
+            throw new TranslationException("WITH query has " + str.getFields().size() + " columns but " +
+                    columns.size() + " column names", withQuery);
+        List<DDlogField> fields = new ArrayList<DDlogField>();
+        for (int i = 0; i < columns.size(); i++)
+            fields.add(new DDlogField(withQuery, columns.get(i), str.getFields().get(i).getType()));
+        DDlogTUser relationType = context.createStruct(withQuery, fields, name);
+        DDlogRelationDeclaration relation = new DDlogRelationDeclaration(
+                withQuery, DDlogRelationDeclaration.Role.Internal, relName, relationType);
+        context.add(relation);
+
+        // The recursive terms read the relation being defined.
+        context.defineCommonTableExpression(name, relation);
+        for (int i = baseTerms; i < terms.size(); i++)
+            convert.add(this.process(terms.get(i), context.clone()).to(RelationRHS.class));
+        for (int i = 0; i < terms.size(); i++) {
+            RelationRHS rhs = this.renameColumns(terms.get(i), convert.get(i), columns, context);
+            rhs = this.convertType(rhs, relationType, context).setMultiset(false);
+            this.addRule(terms.get(i), relation, rhs, context);
+        }
+        return relation;
+    }
+
+    /**
+     * True if a query reads a table or common table expression with the specified name.
+     */
+    private static boolean reads(Node query, String name) {
+        boolean[] found = new boolean[1];
+        new DefaultTraversalVisitor<Void, Void>() {
+            @Override
+            protected Void visitTable(Table node, Void context) {
+                if (convertQualifiedName(node.getName()).equals(name))
+                    found[0] = true;
+                return null;
+            }
+        }.process(query, null);
+        return found[0];
+    }
+
+    /**
+     * Give new names to the columns of a relation, keeping their order and types.
+     * @param node     SQL node that specifies the names.
+     * @param rhs      Relation whose columns are renamed.
+     * @param columns  New column names.
+     * @return         A relation with the same rows as rhs and the specified column names.
+     */
+    private RelationRHS renameColumns(Node node, RelationRHS rhs, List<String> columns, TranslationContext context) {
+        DDlogTStruct str = context.resolveType(rhs.getType()).to(DDlogTStruct.class);
+        if (str.getFields().size() != columns.size())
+            throw new TranslationException("Query has " + str.getFields().size() + " columns but " +
+                    columns.size() + " column names", node);
+        if (Linq.map(str.getFields(), DDlogField::getName).equals(columns))
+            return rhs;
+        List<DDlogField> fields = new ArrayList<DDlogField>();
+        List<DDlogEStruct.FieldValue> values = new ArrayList<DDlogEStruct.FieldValue>();
+        for (int i = 0; i < columns.size(); i++) {
+            DDlogField f = str.getFields().get(i);
+            fields.add(new DDlogField(node, columns.get(i), f.getType()));
+            values.add(new DDlogEStruct.FieldValue(columns.get(i),
+                    new DDlogEField(node, rhs.getRowVariable(), f.getName(), f.getType())));
+        }
+        DDlogTUser type = context.createStruct(node, fields, "tmp");
+        RelationRHS result = new RelationRHS(node, context.freshLocalName("v"), type).setMultiset(rhs.isMultiset());
+        for (DDlogRuleRHS definition: rhs.getDefinitions())
+            result.addDefinition(definition);
+        result.addDefinition(new DDlogESet(node, result.getRowVariable(true),
+                new DDlogEStruct(node, type.getName(), type, values)));
+        return result;
+    }
+
+    /**
+     * Translate ORDER BY ... LIMIT k: keep the first k rows of a relation.
+     * All rows are placed in one group; the library function sql_top_k scans the group
+     * keeping at most k rows in a heap, in O(n log k) for n rows, so DDlog produces output
+     * only when the set of the first k rows changes.  The sort keys can refer to the columns
+     * of the relation.
+     * @param node     Node with the ORDER BY and LIMIT clauses.
+     * @param input    Relation whose rows are sorted.
+     * @param orderBy  Sort keys.
+     * @param limit    Number of rows kept.
+     */
+    private RelationRHS processTopK(Node node, RelationRHS input, Optional<OrderBy> orderBy,
+                                    Optional<String> limit, TranslationContext context) {
+        if (!limit.isPresent() || limit.get().equalsIgnoreCase("all"))
+            // Relations are sets; without a limit the order does not matter.
+            return input;
+        long k;
+        try {
+            k = Long.parseLong(limit.get());
+        } catch (NumberFormatException ex) {
+            throw new TranslationException("Unsupported LIMIT " + limit.get(), node);
+        }
+        if (k < 0)
+            throw new TranslationException("Negative LIMIT", node);
+        if (input.isMultiset())
+            throw new TranslationException("LIMIT is only supported for SELECT DISTINCT", node);
+
+        String relName = context.freshRelationName("tmp");
+        DDlogRule rule = this.createRule(node, relName, input, DDlogRelationDeclaration.Role.Internal, context);
+        DDlogEVar row = getRuleVar(rule);
+        DDlogType rowType = row.getType();
+        Scope scope = new Scope(node, relName, row.var, rowType);
+        context.enterScope(scope);
+        context.clearSubstitutions();
+
+        List<SortItem> items = orderBy.isPresent() ? orderBy.get().getSortItems() : Collections.emptyList();
+        // Sort in descending order if all keys are descending; otherwise negate the descending keys.
+        boolean descending = !items.isEmpty() &&
+                !Linq.any(items, i -> i.getOrdering() != SortItem.Ordering.DESCENDING);
+        List<DDlogExpression> keys = new ArrayList<DDlogExpression>();
+        for (SortItem item: items)
+            keys.add(this.sortKey(item, descending, context));
+        DDlogExpression key = keys.size() == 1 ? keys.get(0) : new DDlogETuple(node, keys);
+        DDlogETuple item = new DDlogETuple(node, key, row);
+
+        // function topk(g: Group<(), (K, T)>): Vec<T> { sql_top_k(g, k, descending) }
+        String function = context.freshGlobalName("topk");
+        DDlogTUser groupType = new DDlogTUser(node, "Group", false, DDlogTTuple.emptyTupleType, item.getType());
+        DDlogTArray resultType = new DDlogTArray(node, rowType, false);
+        DDlogFuncArg param = new DDlogFuncArg(node, "g", false, groupType);
+        DDlogExpression body = new DDlogEApply(node, "sql_top_k", resultType,
+                new DDlogEVar(node, "g", groupType), new DDlogEBit(node, 64, BigInteger.valueOf(k)),
+                new DDlogEBool(node, descending));
+        context.getProgram().functions.add(new DDlogFunction(node, function, resultType, body, param));
+
+        String top = context.freshLocalName("top");
+        String var = context.freshLocalName("v");
+        RelationRHS result = new RelationRHS(node, var, rowType);
+        result.addDefinition(new DDlogRHSLiteral(node, true, new DDlogAtom(node, relName, row)));
+        result.addDefinition(new DDlogRHSAggregate(node, top, function, item));
+        result.addDefinition(new DDlogRHSFlatMap(node, var, new DDlogEVar(node, top, resultType)));
         return result;
     }
 
     @Override
     protected DDlogIRNode visitUnion(Union union, TranslationContext context) {
-        if (!union.isDistinct())
-            throw new TranslationException("UNION ALL not supported", union);
-
+        // UNION ALL produces a multiset: each rule adds its rows to the same multiset relation.
+        boolean multiset = !union.isDistinct();
         List<RelationRHS> convert = Linq.map(union.getRelations(), r -> this.process(r, context).to(RelationRHS.class));
         List<DDlogType> types = Linq.map(convert, RelationRHS::getType);
         DDlogType resultType = context.meet(types);
         DDlogRule rule = null;
         for (RelationRHS rhs: convert) {
-            rhs = this.convertType(rhs, resultType, context);
+            if (multiset && !rhs.isMultiset())
+                rhs = this.distinct(rhs, context);
+            rhs = this.convertType(rhs, resultType, context).setMultiset(multiset);
             if (rule == null) {
                 String ruleName = context.freshRelationName("union");
                 rule = this.createRule(union, ruleName, rhs, DDlogRelationDeclaration.Role.Internal, context);
@@ -192,6 +419,24 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         assert rule != null;
         RelationRHS result = new RelationRHS(union, getRuleVar(rule).var, rule.lhs.val.getType());
         result.addDefinition(new DDlogRHSLiteral(union, true, rule.lhs));
+        return result.setMultiset(multiset);
+    }
+
+    /**
+     * Remove the duplicates from the rows of a set.  The rule of a set may produce a row several
+     * times, and DDlog only removes the duplicates of output relations; the rows are therefore
+     * grouped by their value, and each group produces its row once:
+     * R[v1] :- ..., var v1 = Aggregate((v), group_key(v)).
+     * @param rhs  Rows of a set.
+     * @return     The same rows, each produced once.
+     */
+    private RelationRHS distinct(RelationRHS rhs, TranslationContext context) {
+        String var = context.freshLocalName("v");
+        RelationRHS result = new RelationRHS(rhs.getNode(), var, rhs.getType());
+        for (DDlogRuleRHS definition: rhs.getDefinitions())
+            result.addDefinition(definition);
+        result.addDefinition(new DDlogRHSAggregate(
+                rhs.getNode(), var, "group_key", rhs.getRowVariable(), rhs.getVarName()));
         return result;
     }
 
@@ -217,7 +462,7 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         String relName = context.freshRelationName("source");
         DDlogTStruct rhsStr = rhsType.to(DDlogTStruct.class);
         DDlogRule rule = this.createRule(rhs.getNode(), relName, rhs, DDlogRelationDeclaration.Role.Internal, context);
-        RelationRHS result = new RelationRHS(rhs.getNode(), rhs.getVarName(), type);
+        RelationRHS result = new RelationRHS(rhs.getNode(), rhs.getVarName(), type).setMultiset(rhs.isMultiset());
         result.addDefinition(new DDlogRHSLiteral(rhs.getNode(), true, rule.lhs));
         DDlogTStruct str = context.resolveType(type).to(DDlogTStruct.class);
         List<DDlogEStruct.FieldValue> fields = new ArrayList<DDlogEStruct.FieldValue>();
@@ -245,6 +490,9 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         right = this.convertType(right, type, context);
 
         String relName = context.freshRelationName("except");
+        // EXCEPT produces a set.
+        left.setMultiset(false);
+        right.setMultiset(false);
         DDlogRule rule = this.createRule(
                 except.getRight(), relName, right, DDlogRelationDeclaration.Role.Internal, context);
         left.addDefinition(new DDlogRHSCondition(
@@ -261,7 +509,8 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
 
         RelationRHS result = null;
         for (RelationRHS rhs: convert) {
-            rhs = this.convertType(rhs, resultType, context);
+            // INTERSECT produces a set.
+            rhs = this.convertType(rhs, resultType, context).setMultiset(false);
             String ruleName = context.freshRelationName("intersect");
             DDlogRule rule = this.createRule(intersect, ruleName, rhs, DDlogRelationDeclaration.Role.Internal, context);
             if (result == null)
@@ -288,14 +537,16 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
     @Override
     protected DDlogIRNode visitTable(Table table, TranslationContext context) {
         String name = convertQualifiedName(table.getName());
-        DDlogRelationDeclaration relation = context.getRelation(DDlogRelationDeclaration.relationName(name));
+        DDlogRelationDeclaration relation = context.getCommonTableExpression(name);
+        if (relation == null)
+            relation = context.getRelation(DDlogRelationDeclaration.relationName(name));
         if (relation == null)
             throw new TranslationException("Could not find relation", table);
         String var = context.freshLocalName("v");
         DDlogType type = relation.getType();
         Scope scope = new Scope(table, name, var, type);
         context.enterScope(scope);
-        RelationRHS result = new RelationRHS(table, var, type);
+        RelationRHS result = new RelationRHS(table, var, type).setMultiset(relation.isMultiset());
         result.addDefinition(new DDlogRHSLiteral(table,
                 true, new DDlogAtom(table, relation.getName(), result.getRowVariable())));
         return result;
@@ -381,6 +632,8 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
                 return aggregatedType;
             case "min":
             case "max":
+                if (aggregatedType.mayBeNull)
+                    return aggregatedType;
                 return new DDlogTTuple(node,
                         DDlogTBool.instance, // first
                         aggregatedType       // value
@@ -490,7 +743,7 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
                 String suffix;
                 DDlogType argType = value.getType();
                 DDlogTTuple tuple = argType.as(DDlogTTuple.class, "Expected a tuple");
-                DDlogType sumType = tuple.component(0);
+                DDlogType sumType = tuple.component(0).setMayBeNull(argType.mayBeNull);
                 if (argType.mayBeNull) {
                     suffix = "N";
                 } else {
@@ -501,6 +754,8 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
             }
             case "min":
             case "max":
+                if (value.getType().mayBeNull)
+                    return value;
                 return new DDlogETupField(node, value, 1);
             case "count_distinct": {
                 DDlogTUser set = value.getType().as(DDlogTUser.class, "expected a set");
@@ -548,10 +803,14 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
          */
         List<DDlogEStruct.FieldValue> functionResultFields = new ArrayList<DDlogEStruct.FieldValue>();
         /**
-         * Loop in the aggregation function.
+         * Statements in the loop of the aggregation function.
          */
-        @Nullable
-        DDlogExpression loopBody;
+        List<DDlogExpression> loopStatements = new ArrayList<DDlogExpression>();
+        /**
+         * True if some aggregate depends on the number of rows in a group, so rows
+         * passed to the aggregation function must remain distinct.
+         */
+        boolean needsRowIdentity;
         /**
          * For each field name in functionResultFields this holds the original expression
          * that produced it.
@@ -562,16 +821,27 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
          */
         @Nullable
         DDlogExpression functionBody;
+        /**
+         * If not null the aggregation is performed in two steps: partial results
+         * are computed for each bucket of a group and then merged.
+         */
+        @Nullable
+        List<PartialAggregate> partials;
 
         public SelectTranslationState(Select select, List<GroupByInfo> groupBy) {
             this.select = select;
-            this.loopBody = null;
+            this.needsRowIdentity = false;
             this.functionBody = null;
             this.groupBy = groupBy;
+            this.partials = null;
         }
 
         public void addLoopStatement(DDlogExpression expr) {
-            this.loopBody = DDlogESeq.seq(select, this.loopBody, expr);
+            this.loopStatements.add(expr);
+        }
+
+        public DDlogExpression getLoopBody() {
+            return DDlogESeq.seq(select, this.loopStatements.toArray(new DDlogExpression[0]));
         }
 
         public void addFunctionStatement(DDlogExpression expr) {
@@ -579,6 +849,171 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         }
     }
 
+    /**
+     * An aggregate computed per bucket and then merged across the buckets of a group.
+     */
+    static class PartialAggregate {
+        final FunctionCall call;
+        final String aggregate;
+        /**
+         * Variable holding the partial result; also the field name in the partial result struct.
+         */
+        final String partialName;
+        final DDlogType partialType;
+        /**
+         * Variable holding the merged result.
+         */
+        final String mergedName;
+        final DDlogType mergedType;
+        final DDlogExpression mergedInitializer;
+
+        PartialAggregate(FunctionCall call, String aggregate, String partialName, DDlogType partialType,
+                         String mergedName, DDlogType mergedType, DDlogExpression mergedInitializer) {
+            this.call = call;
+            this.aggregate = aggregate;
+            this.partialName = partialName;
+            this.partialType = partialType;
+            this.mergedName = mergedName;
+            this.mergedType = mergedType;
+            this.mergedInitializer = mergedInitializer;
+        }
+    }
+
+    /**
+     * Aggregates whose result does not depend on how many times a value occurs.
+     */
+    private static final Set<String> duplicateInsensitiveAggregates = Utilities.makeSet(
+            "min", "max", "any", "some", "every", "count_distinct", "sum_distinct", "avg_distinct");
+
+    /**
+     * The value passed to an aggregation function for a live row variable: the variable
+     * itself, or a struct with only the columns of the row used by the aggregation.
+     * @param var       Live row variable.
+     * @param relation  Relation the row belongs to.
+     * @param used      Columns of the row used by the aggregation.
+     * @param identity  If true the rows must remain distinct, so the key columns of the relation
+     *                  are kept as well; if the relation has no key the whole row is kept.
+     * @param agg       Name of the aggregation function, used to name the struct.
+     * @return          null if no column of the row is needed.
+     */
+    @Nullable
+    private DDlogExpression liveColumns(Node node, DDlogEVar var, String relation, Set<String> used,
+                                        boolean identity, String agg, TranslationContext context) {
+        DDlogType type = context.resolveType(var.getType());
+        if (!type.is(DDlogTStruct.class))
+            return var;
+        DDlogTStruct struct = type.to(DDlogTStruct.class);
+        Set<String> columns = new HashSet<String>(used);
+        if (identity) {
+            DDlogRelationDeclaration decl = context.getRelation(relation);
+            if (decl == null || decl.getKeyColumns().isEmpty())
+                return var;
+            for (DDlogField f: decl.getKeyColumns())
+                columns.add(f.getName());
+        }
+        if (columns.isEmpty())
+            return null;
+        List<DDlogField> fields = Linq.where(struct.getFields(), f -> columns.contains(f.getName()));
+        if (fields.size() == struct.getFields().size())
+            return var;
+        // Always a fresh type: reusing a table type with the same fields would make the
+        // aggregation look like it reads that table.
+        String typeName = context.freshGlobalName(DDlogType.typeName(agg + "_" + var.var));
+        DDlogTUser live = context.createTypedef(node, new DDlogTStruct(node, typeName, fields));
+        List<DDlogEStruct.FieldValue> values = Linq.map(fields, f -> new DDlogEStruct.FieldValue(
+                f.getName(), new DDlogEField(node, var, f.getName(), f.getType())));
+        return new DDlogEStruct(node, live.getName(), live, values);
+    }
+
+    /**
+     * Aggregates that can be computed by merging partial results.
+     */
+    private static final Set<String> mergeableAggregates = Utilities.makeSet(
+            "count", "sum", "avg", "min", "max", "any", "some", "every", "count_distinct", "sum_distinct");
+
+    /**
+     * Check whether all aggregates in a set of expressions can be computed by merging
+     * partial results.  DISTINCT aggregates are only mergeable if each value lands in
+     * a single bucket, so they must all have the same argument.
+     * @return  The aggregates, or null if they cannot all be merged.
+     */
+    @Nullable
+    private List<FunctionCall> mergeableAggregates(
+            List<Expression> expressions, List<GroupByInfo> groupBy, TranslationContext context) {
+        List<FunctionCall> result = new ArrayList<FunctionCall>();
+        Expression distinctArgument = null;
+        for (Expression e: expressions) {
+            AggregateVisitor aggv = new AggregateVisitor(groupBy, true);
+            aggv.process(e, context);
+            for (FunctionCall f: aggv.decomposition.aggregateNodes) {
+                String aggregate = ExpressionTranslationVisitor.functionName(f);
+                if (f.getWindow().isPresent() || !mergeableAggregates.contains(aggregate))
+                    return null;
+                if (aggregate.endsWith("_distinct")) {
+                    Expression argument = f.getArguments().get(0);
+                    if (distinctArgument != null && !distinctArgument.equals(argument))
+                        return null;
+                    distinctArgument = argument;
+                }
+                result.add(f);
+            }
+        }
+        if (result.isEmpty())
+            return null;
+        return result;
+    }
+
+    /**
+     * Type of the result obtained by merging partial aggregates.
+     * @param partialType  Type of a partial aggregate, as produced by intermediateType.
+     */
+    private DDlogType mergedType(String aggregate, DDlogType partialType) {
+        switch (aggregate) {
+            case "count_distinct":
+                return DDlogTSigned.signed64;
+            case "sum_distinct":
+                return partialType.as(DDlogTUser.class, "expected a set").getTypeArg(0);
+            default:
+                return partialType;
+        }
+    }
+
+    /**
+     * An expression that merges a partial aggregate into the merged result.
+     * @param aggregate  SQL aggregate function name.
+     * @param variable   Variable holding the merged result.
+     * @param partial    Partial aggregate for one bucket.
+     */
+    private DDlogExpression aggregateMerge(
+            Node node, String aggregate, DDlogEVar variable, DDlogExpression partial) {
+        DDlogType type = variable.getType();
+        String suffix = partial.getType().mayBeNull ? "N" : "R";
+        switch (aggregate) {
+            case "count":
+                return this.aggregateIncrement(node, "sum", type, variable, partial);
+            case "sum_distinct":
+                return this.aggregateIncrement(node, "sum", type, variable,
+                        this.aggregateComplete(node, aggregate, partial));
+            case "count_distinct":
+                return new DDlogESet(node, variable,
+                        new DDlogEApply(node, "merge_count_distinct", type, variable, partial));
+            case "min":
+            case "max":
+                if (partial.getType().mayBeNull)
+                    return this.aggregateIncrement(node, aggregate, type, variable, partial);
+                return new DDlogESet(node, variable,
+                        new DDlogEApply(node, "merge_" + aggregate + "_" + suffix, type, variable, partial));
+            case "avg": {
+                DDlogTTuple tuple = type.as(DDlogTTuple.class, "Expected a tuple");
+                IsNumericType num = tuple.component(0).toNumeric();
+                return new DDlogESet(node, variable,
+                        new DDlogEApply(node, "merge_avg_" + num.simpleName() + "_" + suffix, type, variable, partial));
+            }
+            default:
+                return this.aggregateIncrement(node, aggregate, type, variable, partial);
+        }
+    }
+
     private void
     processSelectExpression(Expression expression,
                             boolean inHaving,
@@ -612,6 +1047,8 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
                 continue;
 
             String aggregateFunction = ExpressionTranslationVisitor.functionName(f);
+            if (!duplicateInsensitiveAggregates.contains(aggregateFunction))
+                state.needsRowIdentity = true;
             DDlogExpression increment;
             if (f.getArguments().size() == 1) {
                 increment = context.translateExpression(f.getArguments().get(0));
@@ -631,12 +1068,29 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
             DDlogType intermediateType = this.intermediateType(f, aggregateFunction, aggregatedType);
             String aggVarName = context.freshLocalName(aggregateFunction);
             DDlogExpression aggVarDef = new DDlogEVarDecl(f, aggVarName, intermediateType);
-            // Replace all occurrences of f with varName when translating later.
-            context.addSubstitution(f, this.aggregateComplete(f,
-                    aggregateFunction, new DDlogEVar(f, aggVarName, intermediateType)));
-            state.addFunctionStatement(new DDlogESet(f,
-                    aggVarDef, this.aggregateInitializer(f, aggregateFunction, increment.getType()),
-                    true));
+            DDlogExpression initializer = this.aggregateInitializer(f, aggregateFunction, increment.getType());
+            if (state.partials == null) {
+                // Replace all occurrences of f with varName when translating later.
+                context.addSubstitution(f, this.aggregateComplete(f,
+                        aggregateFunction, new DDlogEVar(f, aggVarName, intermediateType)));
+            } else {
+                // The partial results are merged into a separate variable, which
+                // replaces all occurrences of f.
+                String mergedName = context.freshLocalName(aggregateFunction);
+                DDlogType partialType = initializer.getType();
+                DDlogType mergedType = this.mergedType(aggregateFunction, partialType);
+                DDlogEVar merged = new DDlogEVar(f, mergedName, mergedType);
+                DDlogExpression mergedInitializer = initializer;
+                if (aggregateFunction.endsWith("_distinct")) {
+                    mergedInitializer = mergedType.toNumeric().zero();
+                    context.addSubstitution(f, merged);
+                } else {
+                    context.addSubstitution(f, this.aggregateComplete(f, aggregateFunction, merged));
+                }
+                state.partials.add(new PartialAggregate(f, aggregateFunction, aggVarName, partialType,
+                        mergedName, mergedType, mergedInitializer));
+            }
+            state.addFunctionStatement(new DDlogESet(f, aggVarDef, initializer, true));
             DDlogEVar aggVar = new DDlogEVar(f, aggVarName, aggregatedType);
             DDlogExpression inc = this.aggregateIncrement(f,
                     aggregateFunction, intermediateType, aggVar, increment);
@@ -652,6 +1106,128 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         state.resultFieldOrigin.put(name, expression);
     }
 
+    /**
+     * Generate the first step of an aggregation performed in buckets: a relation holding
+     * for each group and bucket the partial results of all aggregates.
+     * @param tuple     Type of the live variables passed to the aggregation function.
+     * @param callArg   Live variables passed to the aggregation function.
+     * @param bucketBy  Expression whose value determines the bucket of a row; if null the whole row is used.
+     * @return          The relation holding the partial results.
+     */
+    private DDlogRelationDeclaration aggregatePartials(
+            Select select, @Nullable GroupBy gby, RelationRHS inputRelation,
+            SelectTranslationState state, String paramName, DDlogTTuple tuple, DDlogETuple callArg,
+            @Nullable Expression bucketBy, TranslationContext context) {
+        assert state.partials != null;
+        List<DDlogRuleRHS> definitions = new ArrayList<DDlogRuleRHS>(inputRelation.getDefinitions());
+        List<String> keyVars = new ArrayList<String>();
+        List<DDlogType> keyTypes = new ArrayList<DDlogType>();
+        List<DDlogField> rowFields = new ArrayList<DDlogField>();
+        List<DDlogEStruct.FieldValue> rowValues = new ArrayList<DDlogEStruct.FieldValue>();
+        for (GroupByInfo g : state.groupBy) {
+            DDlogType type = g.translation.getType();
+            DDlogESet groupByVarDef = new DDlogESet(g.groupBy,
+                    new DDlogEVarDecl(g.groupBy, g.varName, type), g.translation);
+            definitions.add(new DDlogRHSCondition(g.groupBy, groupByVarDef));
+            keyVars.add(g.varName);
+            keyTypes.add(type);
+            rowFields.add(new DDlogField(g.groupBy, g.varName, type));
+            rowValues.add(new DDlogEStruct.FieldValue(g.varName, g.getVariable()));
+            context.addSubstitution(g.groupBy, g.getVariable());
+        }
+
+        DDlogExpression buckets = new DDlogEBit(select, 64, BigInteger.valueOf(context.getAggregationBuckets()));
+        DDlogExpression hashed = bucketBy != null ? context.translateExpression(bucketBy) : callArg;
+        String bucketVar = context.freshLocalName("bucket");
+        DDlogESet bucketDef = new DDlogESet(select, new DDlogEVarDecl(select, bucketVar, buckets.getType()),
+                new DDlogEApply(select, "agg_bucket", buckets.getType(), hashed, buckets));
+        definitions.add(new DDlogRHSCondition(select, bucketDef));
+        keyVars.add(bucketVar);
+        keyTypes.add(buckets.getType());
+
+        // The function computing the partial aggregates of a bucket
+        String partialFunction = context.freshGlobalName("agg");
+        List<DDlogField> partialFields = Linq.map(state.partials,
+                p -> new DDlogField(p.call, p.partialName, p.partialType));
+        DDlogTUser tPartial = context.createStruct(select, partialFields, partialFunction);
+        List<DDlogEStruct.FieldValue> partialValues = Linq.map(state.partials,
+                p -> new DDlogEStruct.FieldValue(p.partialName, new DDlogEVar(p.call, p.partialName, p.partialType)));
+        state.addFunctionStatement(new DDlogEStruct(select, tPartial.getName(), tPartial, partialValues));
+        DDlogTUser paramType = new DDlogTUser(gby, "Group", false, new DDlogTTuple(select, keyTypes), tuple);
+        DDlogFuncArg param = new DDlogFuncArg(gby, paramName, false, paramType);
+        context.getProgram().functions.add(new DDlogFunction(select, partialFunction, tPartial, state.functionBody, param));
+        state.functionBody = null;
+
+        String partialVar = context.freshLocalName("aggResult");
+        definitions.add(new DDlogRHSAggregate(
+                select, partialVar, partialFunction, callArg, keyVars.toArray(new String[0])));
+        // Keep the bucket in the row: equal partial results of two buckets are distinct rows.
+        rowFields.add(new DDlogField(select, "bucket", buckets.getType()));
+        rowValues.add(new DDlogEStruct.FieldValue("bucket", new DDlogEVar(select, bucketVar, buckets.getType())));
+        rowFields.add(new DDlogField(select, "partial", tPartial));
+        rowValues.add(new DDlogEStruct.FieldValue("partial", new DDlogEVar(select, partialVar, tPartial)));
+        String relName = context.freshRelationName("tmp");
+        DDlogTUser tRow = context.createStruct(select, rowFields, relName);
+        String rowVar = context.freshLocalName("v");
+        DDlogESet row = new DDlogESet(select, new DDlogEVarDecl(select, rowVar, tRow),
+                new DDlogEStruct(select, tRow.getName(), tRow, rowValues));
+        definitions.add(new DDlogRHSCondition(select, row));
+        DDlogRelationDeclaration relDecl = new DDlogRelationDeclaration(
+                select, DDlogRelationDeclaration.Role.Internal, relName, tRow);
+        DDlogRule rule = new DDlogRule(select,
+                new DDlogAtom(select, relName, new DDlogEVar(select, rowVar, tRow)), definitions);
+        rule.addComment(new DDlogComment(select));
+        context.add(relDecl);
+        context.add(rule);
+        return relDecl;
+    }
+
+    /**
+     * Generate the second step of an aggregation performed in buckets: scan the relation
+     * with partial results and merge the partial results of each group.  Adds the scan to
+     * result and replaces the function body in state with the body of the merge function.
+     * @param partialRel  Relation holding the partial results.
+     * @param partialRow  Variable holding a row of partialRel.
+     * @param keyType     Type of the group key.
+     * @param getKeys     Statement extracting the group key in the merge function.
+     * @return            The parameter of the merge function.
+     */
+    private DDlogFuncArg mergePartials(
+            Select select, @Nullable GroupBy gby, DDlogRelationDeclaration partialRel, DDlogEVar partialRow,
+            SelectTranslationState state, DDlogTTuple keyType, @Nullable DDlogExpression getKeys,
+            String paramName, String iter, RelationRHS result, TranslationContext context) {
+        assert state.partials != null;
+        DDlogType rowType = partialRow.getType();
+        result.addDefinition(new DDlogRHSLiteral(select, true,
+                new DDlogAtom(select, partialRel.getName(), partialRow)));
+        for (GroupByInfo g : state.groupBy) {
+            DDlogType type = g.translation.getType();
+            DDlogESet groupByVarDef = new DDlogESet(g.groupBy,
+                    new DDlogEVarDecl(g.groupBy, g.varName, type),
+                    new DDlogEField(g.groupBy, partialRow, g.varName, type));
+            result.addDefinition(groupByVarDef);
+            context.addSubstitution(g.groupBy, g.getVariable());
+        }
+
+        DDlogTUser paramType = new DDlogTUser(gby, "Group", false, keyType, rowType);
+        DDlogType tPartial = context.resolveType(rowType).to(DDlogTStruct.class).getFieldType("partial");
+        String partialVar = context.freshLocalName("p");
+        DDlogEVar partial = new DDlogEVar(select, partialVar, tPartial);
+        DDlogExpression loopBody = new DDlogESet(select, new DDlogEVarDecl(select, partialVar, tPartial),
+                new DDlogEField(select, new DDlogEVar(select, iter, rowType), "partial", tPartial));
+        state.functionBody = getKeys;
+        for (PartialAggregate p: state.partials) {
+            state.addFunctionStatement(new DDlogESet(p.call,
+                    new DDlogEVarDecl(p.call, p.mergedName, p.mergedType), p.mergedInitializer, true));
+            DDlogExpression merge = this.aggregateMerge(p.call, p.aggregate,
+                    new DDlogEVar(p.call, p.mergedName, p.mergedType),
+                    new DDlogEField(p.call, partial, p.partialName, p.partialType));
+            loopBody = DDlogESeq.seq(select, loopBody, merge);
+        }
+        state.addFunctionStatement(new DDlogEFor(gby, iter, new DDlogEVar(gby, paramName, paramType), loopBody));
+        return new DDlogFuncArg(gby, paramName, false, paramType);
+    }
+
     private <T extends SelectItem> RelationRHS processSelectAggregate(
             Select select,
             RelationRHS inputRelation,
@@ -675,63 +1251,80 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
                 <increment aggregate>
              }
              result = <complete aggregate>(gb1, gb2, v)
+
+            When aggregating in buckets the aggregation function is split in two:
+            aggP computes partial aggregates for the rows in a bucket, and agg merges the
+            partial aggregates of all the buckets in a group.  A change to the input then
+            only rescans one bucket and the list of partial results of its group.
+
+            RP[vp] :- R[v], ..., var gb1 = ..., var bucket = agg_bucket(..., B),
+                      var aggResult = Aggregate( (gb1, gb2, ..., bucket), aggP(v)),
+                      var vp = TRP{.gb1 = gb1, ..., .partial = aggResult}.
+            R1[v1] :- RP[vp], var gb1 = vp.gb1, ..., var aggResult = Aggregate( (gb1, gb2, ...), agg(vp)), ...
          */
         SelectTranslationState state = new SelectTranslationState(select, groupBy);
         String outRelName = context.freshRelationName("tmp");
         String paramName = context.freshLocalName("g");
+        @Nullable Expression bucketBy = null;
+        if (context.getAggregationBuckets() > 0) {
+            List<Expression> expressions = new ArrayList<Expression>();
+            for (SelectItem s : selectArguments) {
+                if (s instanceof SingleColumn)
+                    expressions.add(((SingleColumn) s).getExpression());
+            }
+            if (having != null)
+                expressions.add(having);
+            List<FunctionCall> aggregates = this.mergeableAggregates(expressions, groupBy, context);
+            if (aggregates != null) {
+                state.partials = new ArrayList<PartialAggregate>();
+                for (FunctionCall f: aggregates) {
+                    // Rows with the same distinct value must land in the same bucket.
+                    if (ExpressionTranslationVisitor.functionName(f).endsWith("_distinct"))
+                        bucketBy = f.getArguments().get(0);
+                }
+            }
+        }
 
         // We will generate a custom function to perform the aggregation.
         // The parameter of the function is a Group<K, T> where K is the key type
         // and T is a tuple with all relations that are in scope.
         List<DDlogType> keyFields = Linq.map(groupBy, g -> g.translation.getType());
         DDlogTTuple keyType = new DDlogTTuple(select, keyFields);
+        @Nullable DDlogESet getKeys = null;
         if (keyFields.size() > 0) {
             List<DDlogExpression> keyVars =
                     Linq.map(groupBy, g -> new DDlogEVarDecl(g.groupBy, g.varName, g.translation.getType()));
-            DDlogESet getKeys = new DDlogESet(gby, new DDlogETuple(select, keyVars),
+            getKeys = new DDlogESet(gby, new DDlogETuple(select, keyVars),
                     new DDlogEApply(gby,"group_key", keyType, new DDlogEVar(select,paramName, keyType)));
-            state.addFunctionStatement(getKeys);
+            // When aggregating in buckets the keys are only needed when merging.
+            if (state.partials == null)
+                state.addFunctionStatement(getKeys);
         }
 
         String agg = context.freshGlobalName("agg");
-        List<DDlogType> tupleFields = new ArrayList<DDlogType>();
         List<DDlogEVar> tupleVars = new ArrayList<DDlogEVar>();
-        // This is a bit conservative: we pass to the aggregation function
-        // all variables that are currently "live".  The aggregation may
-        // not use all of them.
+        List<String> tupleRelations = new ArrayList<String>();
+        // Collect all variables that are currently "live"; only the columns
+        // that the aggregation uses are passed to the aggregation function.
         for (DDlogRuleRHS rhs: inputRelation.getDefinitions()) {
             if (!rhs.is(DDlogRHSLiteral.class))
                 continue;
             DDlogRHSLiteral lit = rhs.to(DDlogRHSLiteral.class);
             if (lit.atom.val.is(DDlogEVar.class)) {
-                tupleFields.add(lit.atom.val.getType());
                 tupleVars.add(lit.atom.val.to(DDlogEVar.class));
+                tupleRelations.add(lit.atom.relation);
+            } else if (lit.atom.val.is(DDlogEBinding.class)) {
+                // Keyed join: the variable is bound to the whole row
+                DDlogEBinding binding = lit.atom.val.to(DDlogEBinding.class);
+                tupleVars.add(new DDlogEVar(binding.getNode(), binding.var, binding.getType()));
+                tupleRelations.add(lit.atom.relation);
             }
         }
         for (GroupByInfo g: groupBy)
             context.addSubstitution(g.groupBy, g.getVariable());
 
-        DDlogTTuple tuple = new DDlogTTuple(select, tupleFields);
         String iter = context.freshLocalName("i");  // loop iteration variable
-        DDlogEVar iterVar = new DDlogEVar(select, iter, tuple);
-        // The loop iteration variable will have the type tuple
-        int index = 0;
-        for (DDlogEVar s: tupleVars) {
-            DDlogEVarDecl decl = new DDlogEVarDecl(gby, s.var, s.getType());
-            DDlogExpression project;
-            if (tuple.size() > 1) {
-                project = new DDlogETupField(gby, iterVar, index++);
-            } else {
-                project = iterVar;  // tuples with 1 element are not really tuples
-            }
-            DDlogESet set = new DDlogESet(gby, decl, project);
-            state.addLoopStatement(set);
-        }
-
-        DDlogTUser paramType = new DDlogTUser(gby, "Group", false, keyType, tuple);
-        DDlogFuncArg param = new DDlogFuncArg(gby, paramName, false, paramType);
-        DDlogETuple callArg = new DDlogETuple(select, tupleVars.toArray(new DDlogExpression[0]));
-
+        context.recordColumnReferences();
         for (SelectItem s : selectArguments) {
             if (s instanceof SingleColumn) {
                 SingleColumn sc = (SingleColumn) s;
@@ -755,29 +1348,75 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         // in the SELECT, so we treat it as an additional expression in SELECT
         if (having != null && context.getSubstitution(having) == null)
             this.processSelectExpression(having, true, null, state, context);
+        Map<String, Set<String>> used = context.stopRecordingColumnReferences();
 
         context.clearSubstitutions();
         DDlogTUser tUserResult = context.createStruct(select, state.resultTypeFields, outRelName);
         DDlogTUser tUserFunction = context.createStruct(select, state.functionResultTypeFields, agg);
-        String var = context.freshLocalName("v");
-        RelationRHS result = new RelationRHS(select, var, tUserResult);
-        for (DDlogRuleRHS rhs: inputRelation.getDefinitions())
-            result.addDefinition(rhs);
 
-        // For each expression that we group by add a new temporary variable
-        List<String> groupByVars = new ArrayList<String>();
-        for (GroupByInfo g : groupBy) {
-            DDlogESet groupByVarDef = new DDlogESet(g.groupBy,
-                    new DDlogEVarDecl(g.groupBy, g.varName, g.translation.getType()), g.translation);
-            result.addDefinition(groupByVarDef);
-            groupByVars.add(g.varName);
-            context.addSubstitution(g.groupBy, g.getVariable());
+        // Project each live variable on the columns used by the aggregation
+        List<DDlogExpression> tupleValues = new ArrayList<DDlogExpression>();
+        List<DDlogEVar> loopVars = new ArrayList<DDlogEVar>();
+        for (int i = 0; i < tupleVars.size(); i++) {
+            DDlogEVar v = tupleVars.get(i);
+            DDlogExpression value = this.liveColumns(select, v, tupleRelations.get(i),
+                    used.getOrDefault(v.var, Collections.emptySet()), state.needsRowIdentity, agg, context);
+            if (value == null)
+                continue;
+            tupleValues.add(value);
+            loopVars.add(new DDlogEVar(v.getNode(), v.var, value.getType()));
+        }
+        if (tupleValues.isEmpty() && !tupleVars.isEmpty()) {
+            // Nothing is used, but the group cannot be empty
+            tupleValues.add(tupleVars.get(0));
+            loopVars.add(tupleVars.get(0));
         }
+        DDlogTTuple tuple = new DDlogTTuple(select, Linq.map(tupleValues, DDlogExpression::getType));
+        DDlogEVar iterVar = new DDlogEVar(select, iter, tuple);
+        // The loop iteration variable will have the type tuple
+        List<DDlogExpression> loopDecls = new ArrayList<DDlogExpression>();
+        int index = 0;
+        for (DDlogEVar s: loopVars) {
+            DDlogEVarDecl decl = new DDlogEVarDecl(gby, s.var, s.getType());
+            DDlogExpression project;
+            if (tuple.size() > 1) {
+                project = new DDlogETupField(gby, iterVar, index++);
+            } else {
+                project = iterVar;  // tuples with 1 element are not really tuples
+            }
+            loopDecls.add(new DDlogESet(gby, decl, project));
+        }
+        state.loopStatements.addAll(0, loopDecls);
+
+        DDlogTUser paramType = new DDlogTUser(gby, "Group", false, keyType, tuple);
+        DDlogFuncArg param = new DDlogFuncArg(gby, paramName, false, paramType);
+        DDlogETuple callArg = new DDlogETuple(select, tupleValues);
+        String var = context.freshLocalName("v");
+        RelationRHS result = new RelationRHS(select, var, tUserResult);
 
-        assert state.loopBody != null;
-        DDlogEFor forLoop = new DDlogEFor(gby, iter, new DDlogEVar(gby, paramName, paramType), state.loopBody);
+        DDlogEFor forLoop = new DDlogEFor(gby, iter, new DDlogEVar(gby, paramName, paramType), state.getLoopBody());
         state.addFunctionStatement(forLoop);
+        List<String> groupByVars = Linq.map(groupBy, g -> g.varName);
         String[] vars = groupByVars.toArray(new String[0]);
+        if (state.partials == null) {
+            for (DDlogRuleRHS rhs: inputRelation.getDefinitions())
+                result.addDefinition(rhs);
+
+            // For each expression that we group by add a new temporary variable
+            for (GroupByInfo g : groupBy) {
+                DDlogESet groupByVarDef = new DDlogESet(g.groupBy,
+                        new DDlogEVarDecl(g.groupBy, g.varName, g.translation.getType()), g.translation);
+                result.addDefinition(groupByVarDef);
+                context.addSubstitution(g.groupBy, g.getVariable());
+            }
+        } else {
+            DDlogRelationDeclaration partialRel = this.aggregatePartials(
+                    select, gby, inputRelation, state, paramName, tuple, callArg, bucketBy, context);
+            DDlogEVar partialRow = new DDlogEVar(select, context.freshLocalName("v"), partialRel.getType());
+            param = this.mergePartials(
+                    select, gby, partialRel, partialRow, state, keyType, getKeys, paramName, iter, result, context);
+            callArg = new DDlogETuple(select, partialRow);
+        }
         String aggregateVarName = context.freshLocalName("aggResult");
         DDlogRHSAggregate aggregate = new DDlogRHSAggregate(select, aggregateVarName, agg, callArg, vars);
         result.addDefinition(aggregate);
@@ -842,10 +1481,12 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
 
     @Override
     protected DDlogIRNode visitQuerySpecification(QuerySpecification spec, TranslationContext context) {
-        if (spec.getLimit().isPresent())
-            throw new TranslationException("LIMIT clauses not supported", spec);
-        if (spec.getOrderBy().isPresent())
-            throw new TranslationException("ORDER BY clauses not supported", spec);
+        if (spec.getOrderBy().isPresent() || spec.getLimit().isPresent()) {
+            QuerySpecification unordered = new QuerySpecification(spec.getSelect(), spec.getFrom(),
+                    spec.getWhere(), spec.getGroupBy(), spec.getHaving(), Optional.empty(), Optional.empty());
+            DDlogIRNode result = this.process(unordered, context);
+            return this.processTopK(spec, result.to(RelationRHS.class), spec.getOrderBy(), spec.getLimit(), context);
+        }
         if (!spec.getFrom().isPresent())
             throw new TranslationException("FROM clause is required", spec);
 
@@ -912,17 +1553,22 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         if (debug) System.out.println("-----");
         if (foundAggregate && foundNonAggregate)
             throw new TranslationException("SELECT with a mix of aggregates and non-aggregates.", select);
-        if (!select.isDistinct() && !foundAggregate)
-            throw new TranslationException("Only SELECT DISTINCT currently supported", select);
 
         if (windowVisitor.windows.isEmpty()) {
             // No window computations: synthesize the query directly.
             RelationRHS relation = source.to(RelationRHS.class);
             if (spec.getWhere().isPresent()) {
                 Expression expr = spec.getWhere().get();
-                DDlogExpression ddexpr = context.translateExpression(expr);
-                ddexpr = ExpressionTranslationVisitor.unwrapBool(ddexpr);
-                relation = relation.addDefinition(ddexpr);
+                List<Expression> conjuncts = conjuncts(expr);
+                List<Expression> subqueries = Linq.where(conjuncts, TranslationVisitor::isSubqueryPredicate);
+                List<Expression> conditions = Linq.where(conjuncts, c -> !isSubqueryPredicate(c));
+                for (Expression condition: conditions) {
+                    DDlogExpression ddexpr = context.translateExpression(condition);
+                    ddexpr = ExpressionTranslationVisitor.unwrapBool(ddexpr);
+                    pushDownCondition(relation, ddexpr);
+                }
+                for (Expression predicate: subqueries)
+                    this.processSubqueryPredicate(predicate, relation, context);
             }
 
             Expression having = null;
@@ -932,12 +1578,18 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
             // If we have no window functions we can do everything in one step.
             RelationRHS selectTranslation;
             if (foundAggregate) {
+                if (relation.isMultiset())
+                    // DDlog groups contain each distinct row once
+                    throw new TranslationException(
+                            "Aggregation over a multiset is not supported; use SELECT DISTINCT in the input", select);
                 selectTranslation = this.processSelectAggregate(
                         select, relation, items, gb, groupBy, having, context);
             } else {
                 if (groupBy.size() > 0)
                     throw new TranslationException("Select without aggregation with GROUP BY", select);
                 selectTranslation = this.processSimpleSelect(select, relation, items, context);
+                // Without DISTINCT the projection keeps the duplicate rows
+                selectTranslation.setMultiset(!select.isDistinct());
             }
             return selectTranslation;
         }
@@ -945,6 +1597,277 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         return this.processWindows(spec, windowVisitor, windowItems, aggregateItems, nonAggregateItems, context);
     }
 
+    /**
+     * Add a WHERE condition to a relation right after the definition that binds the last
+     * of the variables it uses, so that the rows of an input are filtered before they are
+     * joined with the following inputs.  A variable is bound by a variable declaration or
+     * by its first occurrence in a positive literal.  The condition follows the other
+     * conditions at the same position.
+     */
+    private static void pushDownCondition(RelationRHS relation, DDlogExpression condition) {
+        VariableUses uses = new VariableUses();
+        uses.add(condition);
+        List<DDlogRuleRHS> definitions = relation.getDefinitions();
+        Set<String> bound = new HashSet<String>();
+        int position = -1;
+        for (int i = 0; i < definitions.size(); i++) {
+            DDlogRuleRHS rhs = definitions.get(i);
+            VariableUses defined = new VariableUses();
+            defined.add(rhs);
+            Set<String> introduced = new HashSet<String>(defined.declared);
+            if (rhs.is(DDlogRHSLiteral.class) && rhs.to(DDlogRHSLiteral.class).polarity)
+                introduced.addAll(defined.used);
+            introduced.removeAll(bound);
+            bound.addAll(introduced);
+            if (!Collections.disjoint(introduced, uses.used))
+                position = i + 1;
+        }
+        if (position < 0)
+            position = definitions.size();
+        // Keep the order of the conditions that filter the same rows
+        while (position < definitions.size() && definitions.get(position).is(DDlogRHSCondition.class) &&
+                !definitions.get(position).to(DDlogRHSCondition.class).getExpr().is(DDlogESet.class))
+            position++;
+        definitions.add(position, new DDlogRHSCondition(condition.getNode(), condition));
+    }
+
+    /**
+     * The conjuncts of a boolean expression: for a AND (b AND c) these are a, b, c.
+     */
+    private static List<Expression> conjuncts(Expression expr) {
+        List<Expression> result = new ArrayList<Expression>();
+        if (expr instanceof LogicalBinaryExpression &&
+                ((LogicalBinaryExpression)expr).getOperator() == LogicalBinaryExpression.Operator.AND) {
+            LogicalBinaryExpression and = (LogicalBinaryExpression)expr;
+            result.addAll(conjuncts(and.getLeft()));
+            result.addAll(conjuncts(and.getRight()));
+        } else {
+            result.add(expr);
+        }
+        return result;
+    }
+
+    /**
+     * True for the predicates translated by processSubqueryPredicate:
+     * [NOT] EXISTS (subquery) and e [NOT] IN (subquery).
+     */
+    private static boolean isSubqueryPredicate(Expression expr) {
+        if (expr instanceof NotExpression)
+            expr = ((NotExpression)expr).getValue();
+        return expr instanceof ExistsPredicate ||
+                (expr instanceof InPredicate && ((InPredicate)expr).getValueList() instanceof SubqueryExpression);
+    }
+
+    /**
+     * True if all the columns used by an expression can be found in the scopes of a context.
+     */
+    private static boolean resolves(Expression expr, TranslationContext context) {
+        boolean[] resolved = new boolean[] { true };
+        new DefaultTraversalVisitor<Void, Void>() {
+            @Override
+            protected Void visitIdentifier(Identifier node, Void unused) {
+                if (context.lookupIdentifier(node.getValue()) == null)
+                    resolved[0] = false;
+                return null;
+            }
+
+            @Override
+            protected Void visitDereferenceExpression(DereferenceExpression node, Void unused) {
+                if (!(node.getBase() instanceof Identifier))
+                    return super.visitDereferenceExpression(node, unused);
+                context.searchScope(true);
+                if (context.lookupIdentifier(((Identifier)node.getBase()).getValue()) == null)
+                    resolved[0] = false;
+                context.searchScope(false);
+                return null;
+            }
+
+            @Override
+            protected Void visitSubqueryExpression(SubqueryExpression node, Void unused) {
+                resolved[0] = false;
+                return null;
+            }
+        }.process(expr, null);
+        return resolved[0];
+    }
+
+    /**
+     * If a subquery is a select without aggregation, which may refer to the columns of
+     * the enclosing query in its WHERE clause, return it, else return null.
+     */
+    @Nullable
+    private static QuerySpecification correlatedSubquery(Query query, TranslationContext context) {
+        if (query.getWith().isPresent() || query.getOrderBy().isPresent() || query.getLimit().isPresent() ||
+                !(query.getQueryBody() instanceof QuerySpecification))
+            return null;
+        QuerySpecification spec = (QuerySpecification)query.getQueryBody();
+        if (!spec.getFrom().isPresent() || spec.getGroupBy().isPresent() || spec.getHaving().isPresent() ||
+                spec.getOrderBy().isPresent() || spec.getLimit().isPresent())
+            return null;
+        AggregateVisitor visitor = new AggregateVisitor(new ArrayList<GroupByInfo>());
+        for (SelectItem item: spec.getSelect().getSelectItems())
+            if (item instanceof SingleColumn &&
+                    visitor.process(((SingleColumn)item).getExpression(), context) == Ternary.Yes)
+                return null;
+        return spec;
+    }
+
+    /**
+     * Translate a predicate [NOT] EXISTS (subquery) or e [NOT] IN (subquery) in a WHERE clause
+     * into a semi-join or an anti-join.  The subquery computes a set of keys, stored in a relation:
+     * the value of its column for IN, and the columns of the subquery compared with columns of the
+     * enclosing query for a correlated subquery.  The enclosing query then reads this relation:
+     *
+     * Rsemi[v2] :- Rt2[v0], var v1 = TKey{.k = v0.column1}, var v2 = Aggregate((v1), group_key(v1)).
+     * Rv[...] :- Rt1[v], Rsemi[TKey{.k = v.column1}], ...
+     *
+     * with a negative literal (not Rsemi[...]) for NOT EXISTS and NOT IN.
+     * The keys of a semi-join are deduplicated, so that each row of the enclosing query is produced
+     * once, however many rows of the subquery it matches.
+     * Only the keys are stored, so the join of the query with the subquery is never computed.
+     * A correlated subquery can only use the columns of the enclosing query in conjuncts of its
+     * WHERE clause of the form inner = outer.
+     * @param predicate  Predicate to translate.
+     * @param relation   Relation filtered by the predicate; the literals are added to its definitions.
+     * @param context    Translation context of the enclosing query.
+     */
+    private void processSubqueryPredicate(Expression predicate, RelationRHS relation, TranslationContext context) {
+        boolean polarity = true;
+        Expression positive = predicate;
+        if (positive instanceof NotExpression) {
+            polarity = false;
+            positive = ((NotExpression)positive).getValue();
+        }
+        Query query;
+        @Nullable
+        Expression value = null;
+        if (positive instanceof ExistsPredicate) {
+            query = ((SubqueryExpression)((ExistsPredicate)positive).getSubquery()).getQuery();
+        } else {
+            InPredicate in = (InPredicate)positive;
+            value = in.getValue();
+            query = ((SubqueryExpression)in.getValueList()).getQuery();
+        }
+
+        // The subquery does not see the scopes of the enclosing query.
+        TranslationContext inner = context.clone();
+        inner.exitAllScopes();
+        inner.clearSubstitutions();
+        List<DDlogExpression> innerKeys = new ArrayList<DDlogExpression>();
+        List<DDlogExpression> outerKeys = new ArrayList<DDlogExpression>();
+        RelationRHS subquery;
+        @Nullable
+        QuerySpecification spec = correlatedSubquery(query, inner);
+        if (spec != null) {
+            subquery = this.process(spec.getFrom().get(), inner).to(RelationRHS.class);
+            List<Expression> conjuncts = spec.getWhere().isPresent() ?
+                    conjuncts(spec.getWhere().get()) : Collections.emptyList();
+            for (Expression c: conjuncts) {
+                if (resolves(c, inner)) {
+                    subquery.addDefinition(ExpressionTranslationVisitor.unwrapBool(inner.translateExpression(c)));
+                    continue;
+                }
+                if (c instanceof ComparisonExpression &&
+                        ((ComparisonExpression)c).getOperator() == ComparisonExpression.Operator.EQUAL) {
+                    ComparisonExpression comparison = (ComparisonExpression)c;
+                    Expression innerKey = comparison.getLeft();
+                    Expression outerKey = comparison.getRight();
+                    if (!resolves(innerKey, inner)) {
+                        innerKey = comparison.getRight();
+                        outerKey = comparison.getLeft();
+                    }
+                    if (resolves(innerKey, inner) && resolves(outerKey, context)) {
+                        DDlogExpression key = inner.translateExpression(innerKey);
+                        if (key.getType().mayBeNull)
+                            // NULL keys never compare equal
+                            subquery.addDefinition(ExpressionTranslationVisitor.unwrapBool(
+                                    inner.translateExpression(new IsNotNullPredicate(innerKey))));
+                        innerKeys.add(key);
+                        outerKeys.add(context.translateExpression(outerKey));
+                        continue;
+                    }
+                }
+                throw new TranslationException("Unsupported condition in correlated subquery", c);
+            }
+            if (value != null) {
+                List<SelectItem> items = spec.getSelect().getSelectItems();
+                if (items.size() != 1 || !(items.get(0) instanceof SingleColumn))
+                    throw new TranslationException("Subquery must produce one column", query);
+                innerKeys.add(inner.translateExpression(((SingleColumn)items.get(0)).getExpression()));
+            }
+        } else {
+            subquery = this.process(query, inner).to(RelationRHS.class);
+            if (value != null) {
+                DDlogTStruct type = context.resolveType(subquery.getType()).to(DDlogTStruct.class);
+                if (type.getFields().size() != 1)
+                    throw new TranslationException("Subquery must produce one column", query);
+                DDlogField f = type.getFields().get(0);
+                innerKeys.add(new DDlogEField(query, subquery.getRowVariable(), f.getName(), f.getType()));
+            }
+        }
+        if (value != null) {
+            DDlogExpression outerValue = context.translateExpression(value);
+            if (outerValue.getType().mayBeNull)
+                // NULL IN (...) and NULL NOT IN (...) are never true
+                relation.addDefinition(ExpressionTranslationVisitor.unwrapBool(
+                        context.translateExpression(new IsNotNullPredicate(value))));
+            outerKeys.add(outerValue);
+        }
+        if (innerKeys.isEmpty()) {
+            // Uncorrelated EXISTS: the relation is not empty.
+            innerKeys.add(new DDlogEBool(query, true));
+            outerKeys.add(new DDlogEBool(query, true));
+        }
+
+        List<DDlogField> fields = new ArrayList<DDlogField>();
+        List<DDlogEStruct.FieldValue> innerValues = new ArrayList<DDlogEStruct.FieldValue>();
+        List<DDlogEStruct.FieldValue> outerValues = new ArrayList<DDlogEStruct.FieldValue>();
+        for (int i = 0; i < innerKeys.size(); i++) {
+            DDlogExpression innerKey = innerKeys.get(i);
+            DDlogExpression outerKey = outerKeys.get(i);
+            DDlogType type = DDlogType.reduceType(innerKey.getType(), outerKey.getType());
+            if (type.mayBeNull && !innerKey.getType().mayBeNull)
+                innerKey = ExpressionTranslationVisitor.wrapSome(innerKey, type);
+            if (type.mayBeNull && !outerKey.getType().mayBeNull)
+                outerKey = ExpressionTranslationVisitor.wrapSome(outerKey, type);
+            String name = "k" + i;
+            fields.add(new DDlogField(query, name, type));
+            innerValues.add(new DDlogEStruct.FieldValue(name, innerKey));
+            outerValues.add(new DDlogEStruct.FieldValue(name, outerKey));
+        }
+        DDlogTUser keyType = context.createStruct(query, fields, "key");
+        RelationRHS keys = new RelationRHS(query, context.freshLocalName("v"), keyType);
+        for (DDlogRuleRHS definition: subquery.getDefinitions())
+            keys.addDefinition(definition);
+        keys.addDefinition(new DDlogESet(query, keys.getRowVariable(true),
+                new DDlogEStruct(query, keyType.getName(), keyType, innerValues)));
+        if (polarity)
+            keys = this.distinct(keys, context);
+        String relName = context.freshRelationName(polarity ? "semi" : "anti");
+        this.createRule(query, relName, keys, DDlogRelationDeclaration.Role.Internal, context);
+        relation.addDefinition(new DDlogRHSLiteral(predicate, polarity, new DDlogAtom(
+                predicate, relName, new DDlogEStruct(predicate, keyType.getName(), keyType, outerValues))));
+
+        int last = fields.size() - 1;
+        if (value != null && !polarity && innerKeys.get(last).getType().mayBeNull) {
+            // e NOT IN (subquery) is never true if the subquery produces a NULL.
+            DDlogType type = fields.get(last).getType();
+            outerValues.set(last, new DDlogEStruct.FieldValue(fields.get(last).getName(), type.getNone(predicate)));
+            relation.addDefinition(new DDlogRHSLiteral(predicate, false, new DDlogAtom(
+                    predicate, relName, new DDlogEStruct(predicate, keyType.getName(), keyType, outerValues))));
+        }
+    }
+
+    /**
+     * Translate a query with window functions.  The inputs of all windows are computed by a view
+     * OverInput.  Each window is then computed by an Aggregate over the partitions of OverInput, which
+     * returns each row of a partition extended with the value of the window function, and a FlatMap:
+     *
+     * R[v3] :- ROverInput[v], var gb = v.gb, var w = Aggregate((gb), over(v)), var v1 = FlatMap(w),
+     *          var v2 = TR{...v1...}, var v3 = v2.
+     *
+     * This reads the rows of OverInput once, instead of joining them with the result of each window.
+     */
     private DDlogIRNode processWindows(QuerySpecification query,
                                        WindowVisitor windowVisitor,
                                        List<SingleColumn> windowItems,
@@ -973,36 +1896,14 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         context.exitAllScopes();
         context.viewIsOutput = false;
         this.process(overInputView, context);
-        Table overInputTable = new Table(overInput);
-
-        Relation join = overInputTable;
-        for (WindowVisitor.WindowAggregation w: windowVisitor.windows) {
-            List<SelectItem> items = new ArrayList<SelectItem>();
-            //noinspection OptionalGetWithoutIsPresent
-            items.addAll(Linq.map(w.groupOn, s -> new SingleColumn(s.getAlias().get())));
-            items.addAll(w.windowResult);
-            Select selectI = new Select(false, items);
-            String overName = context.freshGlobalName("Over");
-            QualifiedName overQName = QualifiedName.of(overName);
-            GroupBy groupBy = w.getGroupBy();
-            Table overView = new Table(overQName);
-            QuerySpecification window = new QuerySpecification(
-                    selectI,
-                    Optional.of(overInputTable),
-                    Optional.empty(),
-                    Optional.of(groupBy),
-                    Optional.empty(),
-                    Optional.empty(),
-                    Optional.empty());
-            Query qi = new Query(Optional.empty(), window, Optional.empty(), Optional.empty());
-            CreateView over = new CreateView(overQName, qi, false);
-            if (debug) System.out.println(toString(over));
-            context.exitAllScopes();
-            context.viewIsOutput = false;
-            this.process(over, context);
-            JoinCriteria criteria = new NaturalJoin();
-            join = new Join(Join.Type.INNER, join, overView, Optional.of(criteria));
-        }
+        context.exitAllScopes();
+        RelationRHS rows = this.process(new Table(overInput), context).to(RelationRHS.class);
+        if (rows.isMultiset())
+            // DDlog groups contain each distinct row once
+            throw new TranslationException("Window functions over a multiset are not supported; use SELECT DISTINCT",
+                    query);
+        for (WindowVisitor.WindowAggregation w: windowVisitor.windows)
+            rows = this.processWindow(query, w, rows, overInputName, context);
 
         List<SelectItem> finalItems = new ArrayList<SelectItem>();
         SubstitutionRewriter rewriter = new SubstitutionRewriter(windowVisitor.substitutions);
@@ -1012,19 +1913,236 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
             Expression repl = subst.rewrite(sc.getExpression(), null);
             finalItems.add(new SingleColumn(repl, sc.getAlias()));
         }
-        Select selectFinal = new Select(true, finalItems);
-        QuerySpecification joins = new QuerySpecification(
-                selectFinal,
-                Optional.of(join),
-                Optional.empty(),
-                Optional.empty(),
-                Optional.empty(),
-                Optional.empty(),
-                Optional.empty());
-        if (debug) System.out.println(toString(joins));
+        Select selectFinal = new Select(query.getSelect().isDistinct(), finalItems);
         context.exitAllScopes();
-        context.viewIsOutput = false;
-        return this.process(joins, context);
+        context.enterScope(new Scope(query, overInputName, rows.getVarName(), rows.getType()));
+        RelationRHS result = this.processSimpleSelect(selectFinal, rows, finalItems, context);
+        return result.setMultiset(!selectFinal.isDistinct());
+    }
+
+    /**
+     * Extend each row with the value of a window function.
+     * @param window    Window to compute.
+     * @param input     Rows that are extended; the columns used by the window are fields of these rows.
+     * @param relation  Name of the relation holding the input rows.
+     * @return          The rows extended with a field holding the value of the window function.
+     */
+    private RelationRHS processWindow(QuerySpecification query, WindowVisitor.WindowAggregation window,
+                                      RelationRHS input, String relation, TranslationContext context) {
+        if (window.windowResult == null || !window.windowResult.getAlias().isPresent())
+            throw new TranslationException("Only aggregate window functions are supported", query);
+        DDlogType rowType = input.getType();
+        DDlogTStruct struct = context.resolveType(rowType).to(DDlogTStruct.class);
+        String rowVar = input.getVarName();
+        context.exitAllScopes();
+        context.enterScope(new Scope(query, relation, rowVar, rowType));
+
+        List<DDlogRuleRHS> definitions = new ArrayList<DDlogRuleRHS>(input.getDefinitions());
+        List<String> keyVars = new ArrayList<String>();
+        List<DDlogType> keyTypes = new ArrayList<DDlogType>();
+        for (SingleColumn s: window.groupOn) {
+            //noinspection OptionalGetWithoutIsPresent
+            DDlogExpression key = context.translateExpression(s.getAlias().get());
+            String var = context.freshLocalName("gb");
+            definitions.add(new DDlogRHSCondition(s, new DDlogESet(s,
+                    new DDlogEVarDecl(s, var, key.getType()), key)));
+            keyVars.add(var);
+            keyTypes.add(key.getType());
+        }
+
+        // The statements that compute the aggregate; they use the row variable
+        FunctionCall f = (FunctionCall)window.windowResult.getExpression();
+        String name = window.windowResult.getAlias().get().getValue();
+        String aggregate = ExpressionTranslationVisitor.functionName(f);
+        DDlogExpression increment;
+        if (f.getArguments().size() == 1)
+            increment = context.translateExpression(f.getArguments().get(0));
+        else if (f.getArguments().size() == 0)
+            // This is the translation of COUNT(*)
+            increment = new DDlogESigned(f, 1);
+        else
+            throw new TranslationException("Unexpected aggregate", f);
+        DDlogType aggregatedType = context.translateExpression(f).getType();
+        DDlogType intermediateType = this.intermediateType(f, aggregate, aggregatedType);
+        String accumulator = context.freshLocalName(aggregate);
+        DDlogExpression initialize = new DDlogESet(f, new DDlogEVarDecl(f, accumulator, intermediateType),
+                this.aggregateInitializer(f, aggregate, increment.getType()), true);
+        DDlogExpression increase = this.aggregateIncrement(f, aggregate, intermediateType,
+                new DDlogEVar(f, accumulator, aggregatedType), increment);
+        DDlogExpression value = this.aggregateComplete(f, aggregate, new DDlogEVar(f, accumulator, intermediateType));
+
+        List<DDlogField> fields = new ArrayList<DDlogField>(struct.getFields());
+        fields.add(new DDlogField(window.windowResult, name, value.getType()));
+        DDlogTUser outType = context.createStruct(query, fields, "tmp");
+        DDlogTArray resultType = new DDlogTArray(query, outType, false);
+        DDlogEVar result = new DDlogEVar(query, context.freshLocalName("result"), resultType);
+        String over = context.freshGlobalName("over");
+        String paramName = context.freshLocalName("g");
+        String iter = context.freshLocalName("i");
+        DDlogTTuple keyType = new DDlogTTuple(query, keyTypes);
+        DDlogExpression body;
+        DDlogExpression callArg;
+
+        WindowFrame.Type frameType = window.frame.isPresent() ? window.frame.get().getType() : WindowFrame.Type.RANGE;
+        long preceding = this.framePreceding(window, context);
+        if (window.orderBy.isEmpty() || preceding == Long.MAX_VALUE) {
+            // All rows of a partition are in the frame
+            if (frameType == WindowFrame.Type.ROWS && preceding != Long.MAX_VALUE)
+                throw new TranslationException("ROWS frames require ORDER BY", f);
+            DDlogTUser paramType = new DDlogTUser(query, "Group", false, keyType, rowType);
+            DDlogEVar group = new DDlogEVar(query, paramName, paramType);
+            DDlogEVar i = new DDlogEVar(query, iter, rowType);
+            body = DDlogESeq.seq(query,
+                    initialize,
+                    new DDlogEFor(query, iter, group, DDlogESeq.seq(query,
+                            new DDlogESet(query, new DDlogEVarDecl(query, rowVar, rowType), i), increase)),
+                    new DDlogESet(query, result.createDeclaration(), new DDlogEApply(query, "vec_with_capacity",
+                            resultType, new DDlogEApply(query, "group_count", DDlogTBit.bit64, group)), true),
+                    new DDlogEFor(query, iter, group,
+                            this.pushExtendedRow(query, result, outType, struct, i, name, value)),
+                    result);
+            callArg = input.getRowVariable();
+        } else {
+            // Rows sorted on the ORDER BY keys
+            List<DDlogExpression> keys = new ArrayList<DDlogExpression>();
+            for (SortItem item: window.orderBy)
+                keys.add(this.sortKey(item, false, context));
+            DDlogExpression key = keys.size() == 1 ? keys.get(0) : new DDlogETuple(query, keys);
+            DDlogTTuple itemType = new DDlogTTuple(query, key.getType(), rowType);
+            DDlogTUser paramType = new DDlogTUser(query, "Group", false, keyType, itemType);
+            DDlogTArray rowsType = new DDlogTArray(query, itemType, false);
+            DDlogEVar sorted = new DDlogEVar(query, context.freshLocalName("rows"), rowsType);
+            DDlogEVar r = new DDlogEVar(query, context.freshLocalName("r"), itemType);
+            DDlogExpression row = new DDlogETupField(query, r, 1);
+            DDlogExpression sortKey = new DDlogETupField(query, r, 0);
+            DDlogExpression declareRow = new DDlogESet(query, new DDlogEVarDecl(query, rowVar, rowType), row);
+            List<DDlogExpression> statements = new ArrayList<DDlogExpression>();
+            statements.add(new DDlogESet(query, sorted.createDeclaration(), new DDlogEApply(query, "sql_sort_group",
+                    rowsType, new DDlogEVar(query, paramName, paramType)), true));
+            statements.add(new DDlogESet(query, result.createDeclaration(), new DDlogEApply(query, "vec_with_capacity",
+                    resultType, new DDlogEApply(query, "vec_len", DDlogTBit.bit64, sorted)), true));
+            if (preceding < 0 && frameType == WindowFrame.Type.RANGE) {
+                // Running aggregate; rows with equal keys (peers) get the value of the last peer
+                DDlogTUser mapType = new DDlogTUser(query, "Map", false, key.getType(), value.getType());
+                DDlogEVar peers = new DDlogEVar(query, context.freshLocalName("peers"), mapType);
+                statements.add(initialize);
+                statements.add(new DDlogESet(query, peers.createDeclaration(),
+                        new DDlogEApply(query, "map_empty", mapType), true));
+                statements.add(new DDlogEFor(query, r.var, sorted, DDlogESeq.seq(query, declareRow, increase,
+                        new DDlogEApply(query, "map_insert", DDlogTTuple.emptyTupleType, peers, sortKey, value))));
+                DDlogExpression peerValue = new DDlogEApply(query, "option_unwrap_or_default", value.getType(),
+                        new DDlogEApply(query, "map_get", value.getType().setMayBeNull(true), peers, sortKey));
+                statements.add(new DDlogEFor(query, r.var, sorted,
+                        this.pushExtendedRow(query, result, outType, struct, row, name, peerValue)));
+            } else if (preceding < 0) {
+                // Running aggregate over the rows up to the current one
+                statements.add(initialize);
+                statements.add(new DDlogEFor(query, r.var, sorted, DDlogESeq.seq(query, declareRow, increase,
+                        this.pushExtendedRow(query, result, outType, struct, row, name, value))));
+            } else {
+                if (frameType != WindowFrame.Type.ROWS)
+                    throw new TranslationException("Only ROWS frames can have n PRECEDING bounds", f);
+                // Aggregate over the frame of each row
+                DDlogEVar index = new DDlogEVar(query, context.freshLocalName("index"), DDlogTBit.bit64);
+                DDlogEVar frameRow = new DDlogEVar(query, context.freshLocalName("f"), itemType);
+                DDlogExpression frame = new DDlogEApply(query, "sql_frame", rowsType, sorted, index,
+                        new DDlogEBit(query, 64, BigInteger.valueOf(preceding)));
+                DDlogExpression one = new DDlogEBit(query, 64, BigInteger.ONE);
+                statements.add(new DDlogESet(query, index.createDeclaration(),
+                        new DDlogEBit(query, 64, BigInteger.ZERO), true));
+                statements.add(new DDlogEFor(query, r.var, sorted, DDlogESeq.seq(query,
+                        initialize,
+                        new DDlogEFor(query, frameRow.var, frame, DDlogESeq.seq(query,
+                                new DDlogESet(query, new DDlogEVarDecl(query, rowVar, rowType),
+                                        new DDlogETupField(query, frameRow, 1)),
+                                increase)),
+                        this.pushExtendedRow(query, result, outType, struct, row, name, value),
+                        new DDlogESet(query, index, new DDlogEBinOp(query, DDlogEBinOp.BOp.Plus, index, one)))));
+            }
+            statements.add(result);
+            body = DDlogESeq.seq(query, statements.toArray(new DDlogExpression[0]));
+            callArg = new DDlogETuple(query, key, input.getRowVariable());
+        }
+        DDlogTUser paramType = new DDlogTUser(query, "Group", false, keyType, callArg.getType());
+        DDlogFunction function = new DDlogFunction(query, over, resultType, body,
+                new DDlogFuncArg(query, paramName, false, paramType));
+        context.getProgram().functions.add(function);
+
+        String windowVar = context.freshLocalName("w");
+        String outVar = context.freshLocalName("v");
+        RelationRHS output = new RelationRHS(query, outVar, outType);
+        for (DDlogRuleRHS rhs: definitions)
+            output.addDefinition(rhs);
+        output.addDefinition(new DDlogRHSAggregate(query, windowVar, over, callArg, keyVars.toArray(new String[0])));
+        output.addDefinition(new DDlogRHSFlatMap(query, outVar, new DDlogEVar(query, windowVar, resultType)));
+        return output;
+    }
+
+    /**
+     * The number of rows before the current row in the frame of a window:
+     * -1 if the frame starts with the first row, Long.MAX_VALUE if the frame is the whole partition.
+     */
+    private long framePreceding(WindowVisitor.WindowAggregation window, TranslationContext context) {
+        if (!window.frame.isPresent())
+            return -1;
+        WindowFrame frame = window.frame.get();
+        FrameBound start = frame.getStart();
+        FrameBound.Type end = frame.getEnd().isPresent() ? frame.getEnd().get().getType() : FrameBound.Type.CURRENT_ROW;
+        if (end == FrameBound.Type.UNBOUNDED_FOLLOWING && start.getType() == FrameBound.Type.UNBOUNDED_PRECEDING)
+            return Long.MAX_VALUE;
+        if (end != FrameBound.Type.CURRENT_ROW)
+            throw new TranslationException("Unsupported window frame", frame);
+        switch (start.getType()) {
+            case UNBOUNDED_PRECEDING:
+                return -1;
+            case CURRENT_ROW:
+                return 0;
+            case PRECEDING: {
+                //noinspection OptionalGetWithoutIsPresent
+                Expression value = start.getValue().get();
+                if (!(value instanceof LongLiteral))
+                    throw new TranslationException("Expected a constant", value);
+                long preceding = ((LongLiteral)value).getValue();
+                if (preceding < 0)
+                    throw new TranslationException("Negative frame bound", value);
+                return preceding;
+            }
+            default:
+                throw new TranslationException("Unsupported window frame", frame);
+        }
+    }
+
+    /**
+     * The DDlog expression that sorts like a SQL sort item.
+     * @param descending  True if the rows are sorted in descending order of the DDlog expression.
+     */
+    private DDlogExpression sortKey(SortItem item, boolean descending, TranslationContext context) {
+        DDlogExpression key = context.translateExpression(item.getSortKey());
+        if (!descending && item.getOrdering() == SortItem.Ordering.DESCENDING) {
+            if (!DDlogType.isNumeric(key.getType()))
+                throw new TranslationException(
+                        "ORDER BY with mixed directions is only supported for numeric descending keys", item);
+            key = context.translateExpression(ArithmeticUnaryExpression.negative(item.getSortKey()));
+        }
+        // None is smaller than all values
+        SortItem.NullOrdering nulls = descending ? SortItem.NullOrdering.LAST : SortItem.NullOrdering.FIRST;
+        if (key.getType().mayBeNull && item.getNullOrdering() != SortItem.NullOrdering.UNDEFINED &&
+                item.getNullOrdering() != nulls)
+            throw new TranslationException("Only NULLS " + nulls + " is supported for this key", item);
+        return key;
+    }
+
+    /**
+     * vec_push(result, T{.f0 = row.f0, ..., .fn = value})
+     */
+    private DDlogExpression pushExtendedRow(Node node, DDlogEVar result, DDlogTUser outType, DDlogTStruct rowType,
+                                            DDlogExpression row, String name, DDlogExpression value) {
+        List<DDlogEStruct.FieldValue> values = new ArrayList<DDlogEStruct.FieldValue>();
+        for (DDlogField f: rowType.getFields())
+            values.add(new DDlogEStruct.FieldValue(f.getName(), new DDlogEField(node, row, f.getName(), f.getType())));
+        values.add(new DDlogEStruct.FieldValue(name, value));
+        return new DDlogEApply(node, "vec_push", DDlogTTuple.emptyTupleType, result,
+                new DDlogEStruct(node, outType.getName(), outType, values));
     }
 
     @Override
@@ -1060,10 +2178,151 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         }
     }
 
+    /**
+     * If the relation is just a scan of a relation, return the literal that scans it.
+     */
+    @Nullable
+    private static DDlogRHSLiteral singleLiteral(RelationRHS rel) {
+        if (rel.getDefinitions().size() != 1)
+            return null;
+        DDlogRuleRHS def = rel.getDefinitions().get(0);
+        if (!def.is(DDlogRHSLiteral.class))
+            return null;
+        DDlogRHSLiteral lit = def.to(DDlogRHSLiteral.class);
+        if (!lit.polarity || !lit.atom.val.is(DDlogEVar.class))
+            return null;
+        if (!lit.atom.val.to(DDlogEVar.class).var.equals(rel.getVarName()))
+            return null;
+        return lit;
+    }
+
+    /**
+     * Split a Boolean expression into a list of expressions combined with 'and'.
+     */
+    private static void conjuncts(DDlogExpression expression, List<DDlogExpression> result) {
+        if (expression.is(DDlogEBinOp.class)) {
+            DDlogEBinOp binOp = expression.to(DDlogEBinOp.class);
+            if (binOp.getBop() == DDlogEBinOp.BOp.And && !binOp.getType().mayBeNull) {
+                conjuncts(binOp.getLeft(), result);
+                conjuncts(binOp.getRight(), result);
+                return;
+            }
+        }
+        result.add(expression);
+    }
+
+    /**
+     * Checks whether an expression is an equality test between a field of the right
+     * relation of a join and a field of a different relation.  Such tests can be
+     * implemented by an indexed join in DDlog.
+     * @param expression  Expression to analyze.
+     * @param rightVar    Variable that holds the rows of the right relation.
+     * @return            The field of the right relation and the value it is compared with,
+     *                    or null if the expression cannot be used as a join key.
+     */
+    @Nullable
+    private static DDlogEStruct.FieldValue joinKey(DDlogExpression expression, String rightVar) {
+        if (!expression.is(DDlogEBinOp.class))
+            return null;
+        DDlogEBinOp binOp = expression.to(DDlogEBinOp.class);
+        if (binOp.getBop() != DDlogEBinOp.BOp.Eq)
+            return null;
+        DDlogEField left = columnOf(binOp.getLeft());
+        DDlogEField right = columnOf(binOp.getRight());
+        if (left == null || right == null)
+            return null;
+        String leftVar = left.getStruct().to(DDlogEVar.class).var;
+        String rightVarUsed = right.getStruct().to(DDlogEVar.class).var;
+        if (leftVar.equals(rightVar) && !rightVarUsed.equals(rightVar)) {
+            DDlogEField tmp = left;
+            left = right;
+            right = tmp;
+        } else if (!rightVarUsed.equals(rightVar) || leftVar.equals(rightVar)) {
+            return null;
+        }
+        // SQL equality does not hold between null values, but pattern matching would succeed
+        if (left.getType().mayBeNull || !left.getType().same(right.getType()))
+            return null;
+        return new DDlogEStruct.FieldValue(right.getField(), left);
+    }
+
+    /**
+     * If the expression is a column of a row variable, return the expression.
+     */
+    @Nullable
+    private static DDlogEField columnOf(DDlogExpression expression) {
+        if (!expression.is(DDlogEField.class))
+            return null;
+        DDlogEField field = expression.to(DDlogEField.class);
+        if (!field.getStruct().is(DDlogEVar.class))
+            return null;
+        return field;
+    }
+
+    /**
+     * Translate a join.  The tables of a chain of inner joins are joined in the order chosen
+     * by JoinOrder; the result has the columns of the tables in the order of the FROM clause.
+     */
     @Override
     public DDlogIRNode visitJoin(Join join, TranslationContext context) {
+        JoinOrder order = JoinOrder.analyze(join, context);
+        if (order == null || order.isSyntactic())
+            return this.translateJoin(join, context);
+        RelationRHS joined = this.translateJoin(order.reorderedJoin(), context);
+        return this.restoreJoinLayout(join, order, joined, context);
+    }
+
+    /**
+     * The names of the columns of the tables in the result of a chain of joins:
+     * the column names of each table, renamed when they appear in a table joined before.
+     * @param leaves  Tables joined.
+     * @param order   Order in which the tables are joined.
+     * @return        For each table, the names of its columns in the result.
+     */
+    private static List<List<String>> joinColumnNames(List<JoinOrder.Leaf> leaves, List<Integer> order) {
+        List<List<String>> result = new ArrayList<List<String>>(Collections.nCopies(leaves.size(), null));
+        Set<String> names = new HashSet<String>();
+        for (int leaf: order)
+            result.set(leaf, Linq.map(leaves.get(leaf).type.getFields(), f -> freshName(f.getName(), names)));
+        return result;
+    }
+
+    /**
+     * Project the result of a reordered join on the columns that the join has when the tables
+     * are joined in the order of the FROM clause.
+     */
+    private RelationRHS restoreJoinLayout(Join join, JoinOrder order, RelationRHS joined, TranslationContext context) {
+        List<Integer> syntactic = new ArrayList<Integer>();
+        for (int i = 0; i < order.leaves.size(); i++)
+            syntactic.add(i);
+        List<List<String>> joinedNames = joinColumnNames(order.leaves, order.order);
+        List<List<String>> names = joinColumnNames(order.leaves, syntactic);
+        List<DDlogField> fields = new ArrayList<DDlogField>();
+        List<DDlogEStruct.FieldValue> values = new ArrayList<DDlogEStruct.FieldValue>();
+        for (int i = 0; i < order.leaves.size(); i++) {
+            List<DDlogField> leafFields = order.leaves.get(i).type.getFields();
+            for (int j = 0; j < leafFields.size(); j++) {
+                DDlogType type = leafFields.get(j).getType();
+                String name = names.get(i).get(j);
+                fields.add(new DDlogField(join, name, type));
+                values.add(new DDlogEStruct.FieldValue(name,
+                        new DDlogEField(join, joined.getRowVariable(), joinedNames.get(i).get(j), type)));
+            }
+        }
+        DDlogTUser tuser = context.createStruct(join, fields, "tmp");
+        RelationRHS result = new RelationRHS(join, context.freshLocalName("v"), tuser).setMultiset(joined.isMultiset());
+        for (DDlogRuleRHS r: joined.getDefinitions())
+            result.addDefinition(r);
+        result.addDefinition(new DDlogESet(join, result.getRowVariable(true),
+                new DDlogEStruct(join, tuser.getName(), tuser, values)));
+        return result;
+    }
+
+    private RelationRHS translateJoin(Join join, TranslationContext context) {
         TranslationContext rightContext = context.clone();
-        DDlogIRNode left = this.process(join.getLeft(), context);
+        // The left relation of a chain of joins is translated in the order given.
+        DDlogIRNode left = join.getLeft() instanceof Join ?
+                this.translateJoin((Join)join.getLeft(), context) : this.process(join.getLeft(), context);
         // Process the right relation in its own context.
         DDlogIRNode right = this.process(join.getRight(), rightContext);
         context.mergeWith(rightContext);
@@ -1076,6 +2335,11 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
         DDlogTStruct rst = rtype.to(DDlogTStruct.class);
         List<DDlogRuleRHS> rules = new ArrayList<DDlogRuleRHS>();
         rules.addAll(lrel.getDefinitions());
+        // Equality comparisons that become part of the key of the right relation
+        List<DDlogEStruct.FieldValue> keys = new ArrayList<DDlogEStruct.FieldValue>();
+        Set<String> keyColumns = new HashSet<String>();
+        DDlogRHSLiteral rightLiteral = singleLiteral(rrel);
+        int rightIndex = rules.size();
         rules.addAll(rrel.getDefinitions());
 
         boolean leftJoin = false;
@@ -1101,7 +2365,28 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
                     if (c instanceof JoinOn) {
                         JoinOn on = (JoinOn)c;
                         DDlogExpression onE = context.translateExpression(on.getExpression());
-                        rules.add(new DDlogRHSCondition(join, ExpressionTranslationVisitor.unwrapBool(onE)));
+                        if (rightLiteral != null) {
+                            List<DDlogExpression> conjuncts = new ArrayList<DDlogExpression>();
+                            conjuncts(onE, conjuncts);
+                            List<DDlogExpression> residual = new ArrayList<DDlogExpression>();
+                            for (DDlogExpression conjunct: conjuncts) {
+                                DDlogEStruct.FieldValue key = joinKey(conjunct, rrel.getVarName());
+                                if (key != null && !keyColumns.contains(key.getName())) {
+                                    keys.add(key);
+                                    keyColumns.add(key.getName());
+                                } else {
+                                    residual.add(conjunct);
+                                }
+                            }
+                            if (residual.isEmpty())
+                                onE = null;
+                            else if (residual.size() < conjuncts.size())
+                                onE = residual.stream()
+                                        .reduce((a, b) -> new DDlogEBinOp(join, DDlogEBinOp.BOp.And, a, b))
+                                        .get();
+                        }
+                        if (onE != null)
+                            rules.add(new DDlogRHSCondition(join, ExpressionTranslationVisitor.unwrapBool(onE)));
                     } else if (c instanceof JoinUsing) {
                         JoinUsing using = (JoinUsing)c;
                         joinColumns = new HashSet<String>(Linq.map(using.getColumns(), Identifier::getValue));
@@ -1124,12 +2409,27 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
 
         DDlogExpression condition = new DDlogEBool(join, true);
         for (String col: joinColumns) {
+            DDlogType leftType = lst.getFieldType(col);
+            if (rightLiteral != null && !keyColumns.contains(col) &&
+                    !leftType.mayBeNull && leftType.same(rst.getFieldType(col))) {
+                keys.add(new DDlogEStruct.FieldValue(col,
+                        new DDlogEField(join, lrel.getRowVariable(), col, leftType)));
+                keyColumns.add(col);
+                continue;
+            }
             DDlogExpression e = context.operationCall(join, DDlogEBinOp.BOp.Eq,
                     new DDlogEField(join, lrel.getRowVariable(), col, lst.getFieldType(col)),
                     new DDlogEField(join, rrel.getRowVariable(), col, rst.getFieldType(col)));
             condition = context.operationCall(join, DDlogEBinOp.BOp.And, condition, e);
         }
         rules.add(new DDlogRHSCondition(join, ExpressionTranslationVisitor.unwrapBool(condition)));
+        if (!keys.isEmpty()) {
+            assert rightLiteral != null;
+            DDlogExpression pattern = new DDlogEBinding(join, rrel.getVarName(),
+                    new DDlogEStruct(join, rst.getName(), rrel.getType(), keys));
+            rules.set(rightIndex, new DDlogRHSLiteral(rightLiteral.getNode(), true,
+                    new DDlogAtom(rightLiteral.getNode(), rightLiteral.atom.relation, pattern)));
+        }
 
         // For the result we take all fields from the left and right but we skip
         // the joinColumn fields from the right.
@@ -1160,7 +2460,7 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
                 new DDlogEStruct(join, tuser.name, tuser, fields));
         rules.add(new DDlogRHSCondition(join, e));
 
-        RelationRHS result = new RelationRHS(join, var, tuser);
+        RelationRHS result = new RelationRHS(join, var, tuser).setMultiset(lrel.isMultiset() || rrel.isMultiset());
         for (DDlogRuleRHS r: rules)
             result.addDefinition(r);
         return result;
@@ -1170,7 +2470,10 @@ class TranslationVisitor extends AstVisitor<DDlogIRNode, TranslationContext> {
     protected DDlogIRNode visitColumnDefinition(ColumnDefinition definition, TranslationContext context) {
         String name = definition.getName().getValue();
         String type = definition.getType();
-        DDlogType ddtype = SqlSemantics.createType(definition, type, definition.isNullable());
+        DDlogType ddtype = SqlSemantics.createColumnType(definition, type, definition.isNullable(),
+                context.getNarrowIntegers(), context.getInternStrings());
+        if (SqlSemantics.isInterned(ddtype))
+            context.addImport("internment");
         return new DDlogField(definition, name, ddtype);
     }
 }
@@ -13,17 +13,31 @@ package com.vmware.ddlog.translator;
 
 import com.facebook.presto.sql.parser.ParsingOptions;
 import com.facebook.presto.sql.parser.SqlParser;
+import com.facebook.presto.sql.tree.CreateTable;
+import com.facebook.presto.sql.tree.CreateView;
+import com.facebook.presto.sql.tree.DefaultTraversalVisitor;
 import com.facebook.presto.sql.tree.Expression;
 import com.facebook.presto.sql.tree.Statement;
+import com.facebook.presto.sql.tree.Table;
 
 // If these are missing you have not run the sql/install-ddlog-jar.sh script
 import com.vmware.ddlog.ir.DDlogIRNode;
 import com.vmware.ddlog.ir.DDlogProgram;
+import com.vmware.ddlog.ir.DDlogRelationDeclaration;
+import com.vmware.ddlog.ir.DDlogTStruct;
+import com.vmware.ddlog.ir.DDlogType;
+import com.vmware.ddlog.util.Linq;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 
@@ -40,6 +54,7 @@ public class Translator {
     private final DSLContext dynamicContext;
     private final TranslationContext translationContext;
     private final TranslationVisitor visitor;
+    private final CommonSubexpressionElimination cse;
     private final ParsingOptions options = ParsingOptions.builder().build();
 
     public Translator(@Nullable final DSLContext dynamicContext) {
@@ -47,6 +62,7 @@ public class Translator {
         this.dynamicContext = dynamicContext;
         this.translationContext = new TranslationContext();
         this.visitor = new TranslationVisitor();
+        this.cse = new CommonSubexpressionElimination(this.translationContext);
     }
 
     public final DDlogProgram getDDlogProgram() {
@@ -58,12 +74,250 @@ public class Translator {
      * @param sql  Statement to translate.
      */
     public DDlogIRNode translateSqlStatement(final String sql) {
+        return this.translate(this.parse(sql));
+    }
+
+    /**
+     * Translate a list of SQL statements, using several threads.  Tables are translated first,
+     * then the views, in waves: the views in a wave read only tables and views of earlier waves,
+     * and they are translated in parallel.  Global names allocated for a view, such as the names
+     * of intermediate relations and types, are suffixed with the view name, so the resulting program
+     * is the same for any number of threads (but it may differ from the program produced by
+     * translating the statements one by one).
+     * @param sql          Statements to translate.
+     * @param parallelism  Number of threads to use.
+     * @return             The translation of each statement.
+     */
+    public List<DDlogIRNode> translateAll(final List<String> sql, final int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final List<Statement> statements = runIn(pool,
+                    () -> sql.parallelStream().map(this::parse).collect(Collectors.toList()));
+            final DDlogIRNode[] results = new DDlogIRNode[statements.size()];
+            final List<List<Integer>> waves = new ArrayList<List<Integer>>();
+            final Map<String, Integer> defined = new HashMap<String, Integer>();
+            final int[] wave = new int[statements.size()];
+            for (int i = 0; i < statements.size(); i++) {
+                final Statement statement = statements.get(i);
+                if (statement instanceof CreateTable) {
+                    // Tables do not depend on anything; translate them in order.
+                    results[i] = this.translate(statement);
+                    defined.put(TranslationVisitor.convertQualifiedName(((CreateTable)statement).getName()), i);
+                    wave[i] = -1;
+                    continue;
+                }
+                final Set<String> read = new HashSet<String>();
+                new RelationsRead().process(statement, read);
+                int w = 0;
+                for (final String name: read) {
+                    final Integer def = defined.get(name);
+                    if (def != null)
+                        w = Math.max(w, wave[def] + 1);
+                }
+                wave[i] = w;
+                if (waves.size() == w)
+                    waves.add(new ArrayList<Integer>());
+                waves.get(w).add(i);
+                if (statement instanceof CreateView)
+                    defined.put(TranslationVisitor.convertQualifiedName(((CreateView)statement).getName()), i);
+            }
+
+            final TranslationState state = this.translationContext.getTranslationState();
+            for (final List<Integer> indexes: waves) {
+                final List<TranslationState> translated = runIn(pool,
+                        () -> indexes.parallelStream().map(i -> {
+                            final TranslationState child = new TranslationState(state, statementName(statements.get(i), i));
+                            results[i] = this.translate(statements.get(i), child);
+                            return child;
+                        }).collect(Collectors.toList()));
+                for (int j = 0; j < indexes.size(); j++) {
+                    if (state.merge(translated.get(j)))
+                        continue;
+                    // Some name is already used: translate again after the previous statements were merged.
+                    final int i = indexes.get(j);
+                    final TranslationState child = new TranslationState(state, statementName(statements.get(i), i));
+                    results[i] = this.translate(statements.get(i), child);
+                    if (!state.merge(child))
+                        throw new TranslationException("Duplicate relation name", statements.get(i));
+                }
+            }
+            return Arrays.asList(results);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Collects the names of the tables and views read by a statement.
+     */
+    private static class RelationsRead extends DefaultTraversalVisitor<Void, Set<String>> {
+        @Override
+        protected Void visitTable(final Table node, final Set<String> names) {
+            names.add(TranslationVisitor.convertQualifiedName(node.getName()));
+            return null;
+        }
+    }
+
+    private static String statementName(final Statement statement, final int index) {
+        if (statement instanceof CreateView)
+            return TranslationVisitor.convertQualifiedName(((CreateView)statement).getName());
+        return Integer.toString(index);
+    }
+
+    private static <T> T runIn(final ForkJoinPool pool, final Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private DDlogIRNode translate(final Statement statement, final TranslationState state) {
+        final TranslationContext context = new TranslationContext(state);
+        context.beginTranslation();
+        final DDlogIRNode result = this.visitor.process(statement, context);
+        context.finishTranslation();
+        context.endTranslation();
+        return result;
+    }
+
+    Statement parse(final String sql) {
+        return this.parser.createStatement(sql, this.options);
+    }
+
+    DDlogIRNode translate(final Statement statement) {
         this.translationContext.beginTranslation();
-        Statement statement = this.parser.createStatement(sql, this.options);
         //System.out.println("Translating: " + statement.toString());
-        DDlogIRNode result = this.visitor.process(statement, this.translationContext);
-        this.translationContext.endTranslation();
-        return result;
+        try {
+            DDlogIRNode result = this.visitor.process(statement, this.translationContext);
+            this.translationContext.finishTranslation();
+            return result;
+        } finally {
+            this.translationContext.endTranslation();
+        }
+    }
+
+    /**
+     * Resolve a type that may be a reference to a typedef in the translated program.
+     * @param type  Type to resolve.
+     * @return      The type the typedef refers to, or the type itself if it is not a typedef.
+     */
+    public DDlogType resolveType(final DDlogType type) {
+        return this.translationContext.resolveType(type);
+    }
+
+    /**
+     * Enable two-level aggregation for queries whose aggregates can be merged from partial results
+     * (count, sum, avg, min, max, any, every, and the distinct versions of count and sum).
+     * Each group is split into buckets; a change to a group recomputes only its bucket and then merges
+     * the per-bucket results, instead of scanning the whole group.
+     * @param buckets  Number of buckets per group; 0 disables two-level aggregation (the default).
+     */
+    public void setAggregationBuckets(final int buckets) {
+        if (buckets < 0)
+            throw new IllegalArgumentException("Negative number of buckets: " + buckets);
+        this.translationContext.setAggregationBuckets(buckets);
+    }
+
+    /**
+     * Store columns declared as integer or int in signed<32> values instead of signed<64>.
+     * Columns declared as smallint and tinyint are always stored in signed<16> and signed<8>.
+     * Narrow values are converted to signed<64> when they are used in expressions.
+     * Affects only the tables created after this call.
+     */
+    public void setNarrowIntegers(final boolean narrowIntegers) {
+        this.translationContext.setNarrowIntegers(narrowIntegers);
+    }
+
+    /**
+     * Store varchar columns as interned strings (istring).  Interned strings use less memory
+     * when the same strings appear many times, and are compared without looking at their characters.
+     * They are converted to strings when they are used in expressions, except in equality
+     * comparisons between two interned columns.  Affects only the tables created after this call.
+     */
+    public void setInternStrings(final boolean internStrings) {
+        this.translationContext.setInternStrings(internStrings);
+    }
+
+    /**
+     * Give the estimated number of rows of a table or view.  Multi-way joins are translated
+     * joining the smaller tables first; tables without an estimate are assumed to be large.
+     * Affects only the statements translated after this call.
+     * @param name  Name of the table or view.
+     * @param rows  Estimated number of rows.
+     */
+    public void setCardinality(final String name, final long rows) {
+        if (rows < 0)
+            throw new IllegalArgumentException("Negative number of rows: " + rows);
+        this.translationContext.setCardinality(DDlogRelationDeclaration.relationName(name), rows);
+    }
+
+    /**
+     * Read the estimated number of rows of tables and views, as for setCardinality.
+     * Each line contains a name and a number of rows separated by white space or a comma,
+     * e.g., measured on a running program; empty lines and lines starting with # are ignored.
+     * @param reader  Input; it is not closed by this method.
+     */
+    public void loadStatistics(final Reader reader) throws IOException {
+        final BufferedReader input = new BufferedReader(reader);
+        String line;
+        while ((line = input.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            final String[] parts = line.split("[\\s,]+");
+            if (parts.length != 2)
+                throw new IllegalArgumentException("Expected a name and a number of rows: " + line);
+            try {
+                this.setCardinality(parts[0], Long.parseLong(parts[1]));
+            } catch (final NumberFormatException ex) {
+                throw new IllegalArgumentException("Expected a name and a number of rows: " + line);
+            }
+        }
+    }
+
+    /**
+     * Find rules of the translated program whose bodies start with the same joins and filters,
+     * e.g., views defined over the same join, and compute each common prefix only once, in a
+     * shared internal relation.  Statements translated later are not affected until this
+     * method is called again.
+     */
+    public void shareCommonSubexpressions() {
+        this.cse.run();
+    }
+
+    /**
+     * Add an index on some columns of a table or view to the program.  Tables with a primary key
+     * are indexed on the key when they are created; this is for lookups on other columns.
+     * The index can be queried with DDlogAPI.queryIndex.
+     * @param name     Name of the table or view.
+     * @param columns  Columns that form the key of the index.
+     * @return         The name of the index.
+     */
+    public String createIndex(final String name, final String... columns) {
+        final DDlogRelationDeclaration relation =
+                this.translationContext.getRelation(DDlogRelationDeclaration.relationName(name));
+        if (relation == null)
+            throw new IllegalArgumentException("Unknown table or view " + name);
+        if (columns.length == 0)
+            throw new IllegalArgumentException("No columns to index in " + name);
+        final DDlogTStruct rowType = this.translationContext.resolveType(relation.getType()).to(DDlogTStruct.class);
+        for (final String column: columns) {
+            if (!Linq.any(rowType.getFields(), f -> f.getName().equals(column)))
+                throw new IllegalArgumentException("Unknown column " + column + " in " + name);
+        }
+        return this.translationContext.createIndex(null, relation, Arrays.asList(columns)).getName();
+    }
+
+    TranslationContext getTranslationContext() {
+        return this.translationContext;
     }
 
     public DDlogIRNode translateExpression(final String sql) {
@@ -1,9 +1,9 @@
 package com.vmware.ddlog.translator;
 
 import com.facebook.presto.sql.tree.*;
-import com.vmware.ddlog.util.Linq;
 import com.vmware.ddlog.util.Ternary;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 /**
@@ -18,26 +18,23 @@ public class WindowVisitor
     /*
         Consider this query:
 
-        SELECT c1, 3 + count(c3 + 1) OVER (PARTITION BY c2) FROM T
+        SELECT c1, 3 + count(c3 + 1) OVER (PARTITION BY c2 ORDER BY c4) FROM T
 
-        This can be executed as multiple queries:
+        This is executed in steps:
         - Prepare the input for the windowed computation.
           (This query could even involve WHERE/GROUP BY/AGGREGAT/HAVING if the original
            query contained them).
 
           CREATE VIEW OverInput AS
-          SELECT c3 + 1 as tmp, c2 AS gb FROM T
+          SELECT c3 + 1 as tmp, c4 as tmp1, c2 AS gb, c1 FROM T
 
-        - Compute the aggregation (one for each window):
+        - Compute each window with an aggregation over the partitions of OverInput
+          that returns every row of a partition extended with the value count(tmp) as tmp2
+          for the frame of the row, where the rows of a partition are sorted on tmp1.
 
-          CREATE VIEW Over AS
-          SELECT count(tmp) as tmp2, gb FROM OverInput
-          GROUP BY gb
+        - Apply the computations to combine the results:
 
-        - join the original table with the aggregations and
-          apply the computations to combine the results:
-
-          SELECT T.c1, 3 + Over.tmp2 FROM T JOIN Over ON T.c2 = Over.c2
+          SELECT c1, 3 + tmp2
      */
 
     /**
@@ -50,29 +47,35 @@ public class WindowVisitor
          */
         public final List<SingleColumn> groupOn;
         /**
-         * Values computed by each window.
+         * Order of the rows in a partition; the sort keys are temporary
+         * variables, e.g., tmp1 in the previous example.
+         */
+        public final List<SortItem> orderBy;
+        /**
+         * Frame of the window, if specified.
+         */
+        public final Optional<WindowFrame> frame;
+        /**
+         * Value computed by the window.
          * E.g., count(tmp) in the previous example.
-         * These will depend on temporary variables that
-         * show up in the inputSelectItems below.
+         * This will depend on temporary variables that
+         * show up in the firstSelect below.
          */
-        public final List<SingleColumn> windowResult;
+        @Nullable
+        public SingleColumn windowResult;
 
-        public GroupBy getGroupBy() {
-            //noinspection OptionalGetWithoutIsPresent
-            return new GroupBy(false,
-                    Collections.singletonList(
-                        new SimpleGroupBy(Linq.map(this.groupOn, s -> s.getAlias().get()))));
-        }
-
-        WindowAggregation() {
+        WindowAggregation(Optional<WindowFrame> frame) {
             this.groupOn = new ArrayList<SingleColumn>();
-            this.windowResult = new ArrayList<SingleColumn>();
+            this.orderBy = new ArrayList<SortItem>();
+            this.frame = frame;
+            this.windowResult = null;
         }
 
         @Override
         public String toString() {
             return "GroupOn: " + this.groupOn.toString() + "\n" +
-                    "Aggregated: " + this.windowResult.toString() + "\n";
+                    "OrderBy: " + this.orderBy.toString() + "\n" +
+                    "Aggregated: " + this.windowResult + "\n";
         }
     }
 
@@ -105,18 +108,22 @@ public class WindowVisitor
         if (!fc.getWindow().isPresent())
             return Ternary.No;
 
-        WindowAggregation wag = new WindowAggregation();
-        this.windows.add(wag);
         Window win = fc.getWindow().get();
-        if (win.getOrderBy().isPresent())
-            throw new TranslationException("group-by not supported", fc);
-        if (win.getFrame().isPresent())
-            throw new TranslationException("frames not yet supported", fc);
+        WindowAggregation wag = new WindowAggregation(win.getFrame());
+        this.windows.add(wag);
         List<Expression> partitions = win.getPartitionBy();
         for (Expression e: partitions) {
             String gb = context.freshLocalName("gb");
             wag.groupOn.add(new SingleColumn(e, new Identifier(gb)));
         }
+        if (win.getOrderBy().isPresent()) {
+            for (SortItem item: win.getOrderBy().get().getSortItems()) {
+                // temporary name for a sort key
+                Identifier key = new Identifier(context.freshLocalName("tmp"));
+                this.firstSelect.add(new SingleColumn(item.getSortKey(), key));
+                wag.orderBy.add(new SortItem(key, item.getOrdering(), item.getNullOrdering()));
+            }
+        }
         String name = TranslationVisitor.convertQualifiedName(fc.getName());
         Ternary result = Ternary.Maybe;
         boolean isAggregate = SqlSemantics.semantics.isAggregateFunction(name);
@@ -137,7 +144,7 @@ public class WindowVisitor
             Identifier agg = new Identifier(var);
             FunctionCall noWindow = new FunctionCall(fc.getName(), Optional.empty(), fc.getFilter(),
                     fc.getOrderBy(), fc.isDistinct(), newArguments);
-            wag.windowResult.add(new SingleColumn(noWindow, agg));
+            wag.windowResult = new SingleColumn(noWindow, agg);
             this.substitutions.add(fc, agg);
             return Ternary.Yes;
         }
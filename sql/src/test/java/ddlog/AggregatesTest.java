@@ -1,5 +1,6 @@
 package ddlog;
 
+import com.vmware.ddlog.translator.Translator;
 import org.junit.Test;
 
 import java.util.Arrays;
@@ -13,7 +14,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT ANY(column3) AS a FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{a:bool}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column3:bool}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var any = false: bool;\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -24,7 +26,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column3 = v.column3}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program);
     }
 
@@ -33,7 +35,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT ANY(column3) AS a FROM t1";
         String program = this.header(true) +
                 "typedef TRtmp = TRtmp{a:Option<bool>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column3:Option<bool>}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var any = Some{false}: Option<bool>;\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -44,7 +47,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(true) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column3 = v.column3}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program, true);
     }
 
@@ -53,7 +56,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT NOT ANY(column3) AS a FROM t1";
         String program = this.header(true) +
                 "typedef TRtmp = TRtmp{a:Option<bool>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column3:Option<bool>}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var any = Some{false}: Option<bool>;\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -64,7 +68,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(true) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column3 = v.column3}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program, true);
     }
 
@@ -73,7 +77,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT EVERY(column3) AS e FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{e:bool}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column3:bool}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var every = true: bool;\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -84,7 +89,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column3 = v.column3}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program);
     }
 
@@ -93,7 +98,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT COUNT(DISTINCT column1) AS ct FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{ct:signed<64>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column1:signed<64>}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var count_distinct = set_empty(): Set<signed<64>>;\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -104,7 +110,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column1 = v.column1}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program);
     }
 
@@ -113,7 +119,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT COUNT(DISTINCT column1) AS ct FROM t1";
         String program = this.header(true) +
                 "typedef TRtmp = TRtmp{ct:signed<64>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column1:Option<signed<64>>}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var count_distinct = set_empty(): Set<signed<64>>;\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -124,7 +131,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(true) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column1 = v.column1}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program, true);
     }
 
@@ -133,7 +140,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT SUM(DISTINCT column1) AS sum FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{sum:signed<64>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column1:signed<64>}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var sum_distinct = set_empty(): Set<signed<64>>;\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -144,7 +152,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column1 = v.column1}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program);
     }
 
@@ -153,7 +161,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT MIN(DISTINCT column1) AS min FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{min:signed<64>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column1:signed<64>}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var min = (true, 64'sd0): (bool, signed<64>);\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -164,7 +173,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column1 = v.column1}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program);
     }
 
@@ -173,7 +182,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT MIN(column1) + MAX(column1) AS total FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{total:signed<64>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column1:signed<64>}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var min = (true, 64'sd0): (bool, signed<64>);\n" +
                 "(var max = (true, 64'sd0): (bool, signed<64>));\n" +
                 "(for (i in g) {\n" +
@@ -187,7 +197,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v2] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v1 = aggResult,var v2 = v1.";
+                "Rv0[v2] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column1 = v.column1}))),var v1 = aggResult,var v2 = v1.";
         this.testTranslation(query, program);
     }
 
@@ -196,7 +206,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT MIN(column2) AS min FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{min:string}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column2:string}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var min = (true, \"\"): (bool, string);\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -207,7 +218,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column2 = v.column2}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program);
     }
 
@@ -426,7 +437,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT MAX(CASE WHEN column2 = 'foo' THEN column1 ELSE 0 END) AS m FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{m:signed<64>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column1:signed<64>, column2:string}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var max = (true, 64'sd0): (bool, signed<64>);\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -439,7 +451,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column1 = v.column1,.column2 = v.column2}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program);
     }
 
@@ -448,7 +460,8 @@ public class AggregatesTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT MAX(column1) AS m FROM t1";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{m:signed<64>}\n" +
-                "function agg(g: Group<(), Tt1>):TRtmp {\n" +
+                "typedef Tagg_v = Tagg_v{column1:signed<64>}\n" +
+                "function agg(g: Group<(), Tagg_v>):TRtmp {\n" +
                 "var max = (true, 64'sd0): (bool, signed<64>);\n" +
                 "(for (i in g) {\n" +
                 "var v = i;\n" +
@@ -459,7 +472,7 @@ public class AggregatesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v0 = aggResult,var v1 = v0.";
+                "Rv0[v1] :- Rt1[v],var aggResult = Aggregate((), agg((Tagg_v{.column1 = v.column1}))),var v0 = aggResult,var v1 = v0.";
         this.testTranslation(query, program);
     }
 
@@ -483,4 +496,161 @@ public class AggregatesTest extends BaseQueriesTest {
                 "Rv1[v2] :- Rt1[v],var aggResult = Aggregate((), agg((v))),var v1 = aggResult,var v2 = v1.";
         this.testTranslation(query, program);
     }
+
+    @Test
+    public void bucketTest() {
+        String query = "create view v0 as SELECT column2, COUNT(*) AS ct, SUM(column1) AS s, " +
+                "AVG(column1) AS a, MIN(column1) AS mi FROM t1 GROUP BY column2";
+        Translator t = this.createInputTables(false);
+        t.setAggregationBuckets(16);
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column2:string, ct:signed<64>, s:signed<64>, a:signed<64>, mi:signed<64>}\n" +
+                "typedef Tagg = Tagg{ct:signed<64>, s:signed<64>, a:signed<64>, mi:signed<64>}\n" +
+                "typedef Tagg0 = Tagg0{count:signed<64>, sum:signed<64>, avg:(signed<64>, signed<64>), min:(bool, signed<64>)}\n" +
+                "typedef TRtmp1 = TRtmp1{gb:string, bucket:bit<64>, partial:Tagg0}\n" +
+                "function agg0(g: Group<(string, bit<64>), Tt1>):Tagg0 {\n" +
+                "var count = 64'sd0: signed<64>;\n" +
+                "(var sum = 64'sd0: signed<64>);\n" +
+                "(var avg = (64'sd0, 64'sd0): (signed<64>, signed<64>));\n" +
+                "(var min = (true, 64'sd0): (bool, signed<64>));\n" +
+                "(for (i in g) {\n" +
+                "var v = i;\n" +
+                "(count = agg_count_R(count, 64'sd1));\n" +
+                "(var incr = v.column1);\n" +
+                "(sum = agg_sum_signed_R(sum, incr));\n" +
+                "(var incr2 = v.column1);\n" +
+                "(avg = agg_avg_signed_R(avg, incr2));\n" +
+                "(var incr4 = v.column1);\n" +
+                "(min = agg_min_R(min, incr4))}\n" +
+                ");\n" +
+                "(Tagg0{.count = count,.sum = sum,.avg = avg,.min = min})\n" +
+                "}\n" +
+                "\n" +
+                "function agg(g: Group<string, TRtmp1>):Tagg {\n" +
+                "(var gb) = group_key(g);\n" +
+                "(var count0 = 64'sd0: signed<64>);\n" +
+                "(var sum1 = 64'sd0: signed<64>);\n" +
+                "(var avg3 = (64'sd0, 64'sd0): (signed<64>, signed<64>));\n" +
+                "(var min5 = (true, 64'sd0): (bool, signed<64>));\n" +
+                "(for (i in g) {\n" +
+                "var p = i.partial;\n" +
+                "(count0 = agg_sum_signed_R(count0, p.count));\n" +
+                "(sum1 = agg_sum_signed_R(sum1, p.sum));\n" +
+                "(avg3 = merge_avg_signed_R(avg3, p.avg));\n" +
+                "(min5 = merge_min_R(min5, p.min))}\n" +
+                ");\n" +
+                "(Tagg{.ct = count0,.s = sum1,.a = avg_signed_R(avg3),.mi = min5.1})\n" +
+                "}\n" +
+                this.relations(false) +
+                "relation Rtmp1[TRtmp1]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rtmp1[v7] :- Rt1[v],var gb = v.column2,var bucket = agg_bucket((v), 64'd16),var aggResult = Aggregate((gb, bucket), agg0((v))),var v7 = TRtmp1{.gb = gb,.bucket = bucket,.partial = aggResult}.\n" +
+                "Rv0[v10] :- Rtmp1[v8],var gb = v8.gb,var aggResult9 = Aggregate((gb), agg((v8))),var v6 = TRtmp{.column2 = gb,.ct = aggResult9.ct,.s = aggResult9.s,.a = aggResult9.a,.mi = aggResult9.mi},var v10 = v6.";
+        this.testTranslation(t, query, program);
+    }
+
+    @Test
+    public void bucketWNullTest() {
+        String query = "create view v0 as SELECT COUNT(column1) AS ct, SUM(column1) AS s, " +
+                "AVG(column1) AS a, MAX(column1) AS ma FROM t1 GROUP BY column2 HAVING ANY(column3)";
+        Translator t = this.createInputTables(true);
+        t.setAggregationBuckets(16);
+        String program = this.header(true) +
+                "typedef TRtmp = TRtmp{ct:Option<signed<64>>, s:Option<signed<64>>, a:Option<signed<64>>, ma:Option<signed<64>>}\n" +
+                "typedef Tagg = Tagg{ct:Option<signed<64>>, s:Option<signed<64>>, a:Option<signed<64>>, ma:Option<signed<64>>, col:Option<bool>}\n" +
+                "typedef Tagg0 = Tagg0{count:Option<signed<64>>, sum:Option<signed<64>>, avg:Option<(signed<64>, signed<64>)>, max:Option<signed<64>>, any:Option<bool>}\n" +
+                "typedef TRtmp1 = TRtmp1{gb:Option<string>, bucket:bit<64>, partial:Tagg0}\n" +
+                "function agg0(g: Group<(Option<string>, bit<64>), Tt1>):Tagg0 {\n" +
+                "var count = None{}: Option<signed<64>>;\n" +
+                "(var sum = None{}: Option<signed<64>>);\n" +
+                "(var avg = None{}: Option<(signed<64>, signed<64>)>);\n" +
+                "(var max = None{}: Option<signed<64>>);\n" +
+                "(var any = Some{false}: Option<bool>);\n" +
+                "(for (i in g) {\n" +
+                "var v = i;\n" +
+                "(var incr = v.column1);\n" +
+                "(count = agg_count_N(count, incr));\n" +
+                "(var incr1 = v.column1);\n" +
+                "(sum = agg_sum_signed_N(sum, incr1));\n" +
+                "(var incr3 = v.column1);\n" +
+                "(avg = agg_avg_signed_N(avg, incr3));\n" +
+                "(var incr5 = v.column1);\n" +
+                "(max = agg_max_N(max, incr5));\n" +
+                "(var incr7 = v.column3);\n" +
+                "(any = agg_any_N(any, incr7))}\n" +
+                ");\n" +
+                "(Tagg0{.count = count,.sum = sum,.avg = avg,.max = max,.any = any})\n" +
+                "}\n" +
+                "\n" +
+                "function agg(g: Group<Option<string>, TRtmp1>):Tagg {\n" +
+                "(var gb) = group_key(g);\n" +
+                "(var count0 = None{}: Option<signed<64>>);\n" +
+                "(var sum2 = None{}: Option<signed<64>>);\n" +
+                "(var avg4 = None{}: Option<(signed<64>, signed<64>)>);\n" +
+                "(var max6 = None{}: Option<signed<64>>);\n" +
+                "(var any8 = Some{false}: Option<bool>);\n" +
+                "(for (i in g) {\n" +
+                "var p = i.partial;\n" +
+                "(count0 = agg_sum_signed_N(count0, p.count));\n" +
+                "(sum2 = agg_sum_signed_N(sum2, p.sum));\n" +
+                "(avg4 = merge_avg_signed_N(avg4, p.avg));\n" +
+                "(max6 = agg_max_N(max6, p.max));\n" +
+                "(any8 = agg_any_N(any8, p.any))}\n" +
+                ");\n" +
+                "(Tagg{.ct = count0,.s = sum2,.a = avg_signed_N(avg4),.ma = max6,.col = any8})\n" +
+                "}\n" +
+                this.relations(true) +
+                "relation Rtmp1[TRtmp1]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rtmp1[v10] :- Rt1[v],var gb = v.column2,var bucket = agg_bucket((v), 64'd16),var aggResult = Aggregate((gb, bucket), agg0((v))),var v10 = TRtmp1{.gb = gb,.bucket = bucket,.partial = aggResult}.\n" +
+                "Rv0[v13] :- Rtmp1[v11],var gb = v11.gb,var aggResult12 = Aggregate((gb), agg((v11))),var v9 = TRtmp{.ct = aggResult12.ct,.s = aggResult12.s,.a = aggResult12.a,.ma = aggResult12.ma},unwrapBool(aggResult12.col),var v13 = v9.";
+        this.testTranslation(t, query, program);
+    }
+
+    @Test
+    public void bucketDistinctTest() {
+        String query = "create view v0 as SELECT column2, COUNT(DISTINCT column1) AS ct, " +
+                "SUM(DISTINCT column1) AS s FROM t1 GROUP BY column2";
+        Translator t = this.createInputTables(false);
+        t.setAggregationBuckets(16);
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column2:string, ct:signed<64>, s:signed<64>}\n" +
+                "typedef Tagg = Tagg{ct:signed<64>, s:signed<64>}\n" +
+                "typedef Tagg_v = Tagg_v{column1:signed<64>}\n" +
+                "typedef Tagg0 = Tagg0{count_distinct:Set<signed<64>>, sum_distinct:Set<signed<64>>}\n" +
+                "typedef TRtmp1 = TRtmp1{gb:string, bucket:bit<64>, partial:Tagg0}\n" +
+                "function agg0(g: Group<(string, bit<64>), Tagg_v>):Tagg0 {\n" +
+                "var count_distinct = set_empty(): Set<signed<64>>;\n" +
+                "(var sum_distinct = set_empty(): Set<signed<64>>);\n" +
+                "(for (i in g) {\n" +
+                "var v = i;\n" +
+                "(var incr = v.column1);\n" +
+                "(set_insert(count_distinct, incr));\n" +
+                "(var incr1 = v.column1);\n" +
+                "(set_insert(sum_distinct, incr1))}\n" +
+                ");\n" +
+                "(Tagg0{.count_distinct = count_distinct,.sum_distinct = sum_distinct})\n" +
+                "}\n" +
+                "\n" +
+                "function agg(g: Group<string, TRtmp1>):Tagg {\n" +
+                "(var gb) = group_key(g);\n" +
+                "(var count_distinct0 = 64'sd0: signed<64>);\n" +
+                "(var sum_distinct2 = 64'sd0: signed<64>);\n" +
+                "(for (i in g) {\n" +
+                "var p = i.partial;\n" +
+                "(count_distinct0 = merge_count_distinct(count_distinct0, p.count_distinct));\n" +
+                "(sum_distinct2 = agg_sum_signed_R(sum_distinct2, set_signed_sum(p.sum_distinct)))}\n" +
+                ");\n" +
+                "(Tagg{.ct = count_distinct0,.s = sum_distinct2})\n" +
+                "}\n" +
+                this.relations(false) +
+                "relation Rtmp1[TRtmp1]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rtmp1[v4] :- Rt1[v],var gb = v.column2,var bucket = agg_bucket(v.column1, 64'd16),var aggResult = Aggregate((gb, bucket), agg0((Tagg_v{.column1 = v.column1}))),var v4 = TRtmp1{.gb = gb,.bucket = bucket,.partial = aggResult}.\n" +
+                "Rv0[v7] :- Rtmp1[v5],var gb = v5.gb,var aggResult6 = Aggregate((gb), agg((v5))),var v3 = TRtmp{.column2 = gb,.ct = aggResult6.ct,.s = aggResult6.s},var v7 = v3.";
+        this.testTranslation(t, query, program);
+    }
 }
@@ -140,6 +140,10 @@ public class BaseQueriesTest {
 
     protected void testTranslation(String query, String program, boolean withNulls) {
         Translator t = this.createInputTables(withNulls);
+        this.testTranslation(t, query, program);
+    }
+
+    protected void testTranslation(Translator t, String query, String program) {
         DDlogIRNode view = t.translateSqlStatement(query);
         Assert.assertNotNull(view);
         String s = view.toString();
@@ -201,8 +205,8 @@ public class BaseQueriesTest {
             semiColonSeparated // remove SQL comments
                     .forEach(t::translateSqlStatement);
             final DDlogProgram dDlogProgram = t.getDDlogProgram();
-            final String ddlogProgramAsString = dDlogProgram.toString();
-            File tmp = this.writeProgramToFile(ddlogProgramAsString);
+            File tmp = new File("program.dl");
+            dDlogProgram.toFile(tmp.toString());
             boolean success = DDlogAPI.compileDDlogProgram(tmp.toString(), false,"..", "lib");
             Assert.assertTrue(success);
         } catch (IOException | DDlogException e) {
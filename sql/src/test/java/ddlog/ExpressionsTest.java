@@ -3,8 +3,20 @@ package ddlog;
 import com.facebook.presto.sql.SqlFormatter;
 import com.facebook.presto.sql.parser.ParsingOptions;
 import com.facebook.presto.sql.parser.SqlParser;
+import com.facebook.presto.sql.tree.Identifier;
+import com.facebook.presto.sql.tree.Node;
 import com.facebook.presto.sql.tree.Statement;
+import com.vmware.ddlog.ir.DDlogESigned;
+import com.vmware.ddlog.ir.DDlogETuple;
+import com.vmware.ddlog.ir.DDlogEString;
 import com.vmware.ddlog.ir.DDlogIRNode;
+import com.vmware.ddlog.ir.DDlogTArray;
+import com.vmware.ddlog.ir.DDlogTBool;
+import com.vmware.ddlog.ir.DDlogTSigned;
+import com.vmware.ddlog.ir.DDlogTString;
+import com.vmware.ddlog.ir.DDlogTTuple;
+import com.vmware.ddlog.ir.DDlogTUnknown;
+import com.vmware.ddlog.ir.DDlogType;
 import com.vmware.ddlog.translator.Translator;
 import org.junit.Assert;
 import org.junit.Test;
@@ -12,6 +24,32 @@ import org.junit.Test;
 import java.util.Optional;
 
 public class ExpressionsTest {
+    @Test
+    public void testInternedTypes() {
+        DDlogType nullable = DDlogTSigned.signed64.setMayBeNull(true);
+        Assert.assertSame(nullable, DDlogTSigned.signed64.setMayBeNull(true));
+        Assert.assertSame(DDlogTSigned.signed64, nullable.setMayBeNull(false));
+        Assert.assertSame(DDlogTSigned.signed64, new DDlogESigned(null, 10).getType());
+        DDlogETuple t0 = new DDlogETuple(null, new DDlogESigned(null, 1), new DDlogEString(null, "a"));
+        DDlogETuple t1 = new DDlogETuple(null, new DDlogESigned(null, 2), new DDlogEString(null, "b"));
+        Assert.assertSame(t0.getType(), t1.getType());
+        Assert.assertTrue(t0.getType().same(t1.getType()));
+        Assert.assertFalse(t0.getType().same(nullable));
+        Assert.assertEquals(t0.getType().structuralHash(), t1.getType().structuralHash());
+
+        // Types containing unknown types are the same as all types
+        DDlogType unknown = DDlogType.intern(new DDlogTTuple(null, DDlogTUnknown.instance, DDlogTString.instance));
+        Assert.assertTrue(unknown.same(t0.getType()));
+        // Types with a SQL node keep it
+        Node node = new Identifier("x");
+        DDlogType withNode = DDlogType.intern(new DDlogTTuple(node, DDlogTSigned.signed64, DDlogTString.instance));
+        Assert.assertSame(node, withNode.getNode());
+        Assert.assertTrue(withNode.same(t0.getType()));
+        Assert.assertFalse(withNode.same(DDlogType.intern(new DDlogTTuple(node, DDlogTSigned.signed64))));
+        Assert.assertFalse(DDlogType.intern(new DDlogTArray(null, DDlogTString.instance, false)).same(
+                DDlogType.intern(new DDlogTArray(null, DDlogTBool.instance, false))));
+    }
+
     @Test
     public void testFormat() {
         final String createStatement = "create table t1(column1 integer, column2 varchar(36), column3 boolean)";
@@ -1,13 +1,17 @@
 package ddlog;
 
+import com.vmware.ddlog.translator.Translator;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
+
 public class JoinTest extends BaseQueriesTest {
     @Test
     public void testCountJoin() {
         String query = "create view v0 as SELECT COUNT(t1.column2) as ct FROM t1 JOIN t2 ON t1.column1 = t2.column1";
         String program = this.header(false) +
-                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double, column10:signed<64>}\n" +
                 "typedef TRtmp = TRtmp{ct:signed<64>}\n" +
                 "function agg(g: Group<(), (Tt1, Tt2)>):TRtmp {\n" +
                 "var count = 64'sd0: signed<64>;\n" +
@@ -21,9 +25,7 @@ public class JoinTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v3] :- Rt1[v],Rt2[v0],(v.column1 == v0.column1),true," +
-                "var v1 = Ttmp{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3," +
-                ".column4 = v.column4,.column10 = v0.column1}," +
+                "Rv0[v3] :- Rt1[v],Rt2[v0@Tt2{.column1 = v.column1}],true," +
                 "var aggResult = Aggregate((), agg((v, v0))),var v2 = aggResult,var v3 = v2.";
         this.testTranslation(query, program);
     }
@@ -32,7 +34,8 @@ public class JoinTest extends BaseQueriesTest {
     public void testImplicitJoin() {
         String query = "create view v0 as SELECT DISTINCT * FROM t1, t2";
         String program = this.header(false) +
-                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double, column10:signed<64>}\n" +
+                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double," +
+                " column10:signed<64>}\n" +
                 this.relations(false) +
                 "output relation Rv0[Ttmp]\n" +
                 "Rv0[v2] :- Rt1[v],Rt2[v0],true," +
@@ -46,10 +49,25 @@ public class JoinTest extends BaseQueriesTest {
     public void testJoinStar() {
         String query = "create view v0 as SELECT DISTINCT * FROM t1 JOIN t2 ON t1.column1 = t2.column1";
         String program = this.header(false) +
-                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double, column10:signed<64>}\n" +
+                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double," +
+                " column10:signed<64>}\n" +
+                this.relations(false) +
+                "output relation Rv0[Ttmp]\n" +
+                "Rv0[v2] :- Rt1[v],Rt2[v0@Tt2{.column1 = v.column1}],true," +
+                "var v1 = Ttmp{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3," +
+                ".column4 = v.column4,.column10 = v0.column1},var v2 = v1.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testJoinResidual() {
+        String query = "create view v0 as SELECT DISTINCT * FROM t1 JOIN t2 ON t1.column1 = t2.column1 AND t1.column3";
+        String program = this.header(false) +
+                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double," +
+                " column10:signed<64>}\n" +
                 this.relations(false) +
                 "output relation Rv0[Ttmp]\n" +
-                "Rv0[v2] :- Rt1[v],Rt2[v0],(v.column1 == v0.column1),true," +
+                "Rv0[v2] :- Rt1[v],Rt2[v0@Tt2{.column1 = v.column1}],v.column3,true," +
                 "var v1 = Ttmp{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3," +
                 ".column4 = v.column4,.column10 = v0.column1},var v2 = v1.";
         this.testTranslation(query, program);
@@ -88,15 +106,11 @@ public class JoinTest extends BaseQueriesTest {
     public void testSelfJoin() {
         String query = "create view v0 as SELECT DISTINCT t1.column2, x.column3 FROM t1 JOIN (t1 AS x) ON t1.column1 = x.column1";
         String program = this.header(false) +
-                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double, " +
-                "column10:signed<64>, column20:string, column30:bool, column40:double}\n" +
                 "typedef TRtmp = TRtmp{column2:string, column3:bool}\n" +
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v3] :- Rt1[v],Rt1[v0],(v.column1 == v0.column1),true,var v1 = Ttmp{.column1 = v.column1," +
-                ".column2 = v.column2,.column3 = v.column3,.column4 = v.column4,.column10 = v0.column1," +
-                ".column20 = v0.column2,.column30 = v0.column3,.column40 = v0.column4}," +
+                "Rv0[v3] :- Rt1[v],Rt1[v0@Tt1{.column1 = v.column1}],true," +
                 "var v2 = TRtmp{.column2 = v.column2,.column3 = v0.column3},var v3 = v2.";
         this.testTranslation(query, program, false);
     }
@@ -107,8 +121,9 @@ public class JoinTest extends BaseQueriesTest {
         String program = this.header(false) +
                 this.relations(false) +
                 "output relation Rv0[Tt1]\n" +
-                "Rv0[v2] :- Rt1[v],Rt2[v0],(true and (v.column1 == v0.column1))," +
-                "var v1 = Tt1{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3,.column4 = v.column4},var v2 = v1.";
+                "Rv0[v2] :- Rt1[v],Rt2[v0@Tt2{.column1 = v.column1}],true," +
+                "var v1 = Tt1{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3," +
+                ".column4 = v.column4},var v2 = v1.";
         this.testTranslation(query, program);
     }
 
@@ -118,8 +133,23 @@ public class JoinTest extends BaseQueriesTest {
         String program = this.header(false) +
                 this.relations(false) +
                 "output relation Rv0[Tt1]\n" +
-                "Rv0[v2] :- Rt1[v],Rt2[v0],(true and (v.column1 == v0.column1))," +
-                "var v1 = Tt1{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3,.column4 = v.column4},v.column3,var v2 = v1.";
+                "Rv0[v2] :- Rt1[v],v.column3,Rt2[v0@Tt2{.column1 = v.column1}],true," +
+                "var v1 = Tt1{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3," +
+                ".column4 = v.column4},var v2 = v1.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testJoinWherePushdown() {
+        String query = "create view v0 as SELECT DISTINCT t1.column2 FROM t1 JOIN t2 ON t1.column1 = t2.column1 " +
+                "WHERE t2.column1 > 5 AND t1.column3 AND t1.column1 + t2.column1 > 2";
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column2:string}\n" +
+                this.relations(false) +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rv0[v3] :- Rt1[v],v.column3,Rt2[v0@Tt2{.column1 = v.column1}],true,(v0.column1 > 64'sd5)," +
+                "((v.column1 + v0.column1) > 64'sd2),var v2 = TRtmp{.column2 = v.column2},var v3 = v2.";
         this.testTranslation(query, program);
     }
 
@@ -127,15 +157,11 @@ public class JoinTest extends BaseQueriesTest {
     public void testJoin() {
         String query = "create view v0 as SELECT DISTINCT t0.column1, t1.column3 FROM t1 AS t0 JOIN t1 ON t0.column2 = t1.column2";
         String program = this.header(false) +
-                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double, " +
-                "column10:signed<64>, column20:string, column30:bool, column40:double}\n" +
                 "typedef TRtmp = TRtmp{column1:signed<64>, column3:bool}\n" +
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "output relation Rv0[TRtmp]\n" +
-                "Rv0[v3] :- Rt1[v],Rt1[v0],(v.column2 == v0.column2),true," +
-                "var v1 = Ttmp{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3,.column4 = v.column4," +
-                ".column10 = v0.column1,.column20 = v0.column2,.column30 = v0.column3,.column40 = v0.column4}," +
+                "Rv0[v3] :- Rt1[v],Rt1[v0@Tt1{.column2 = v.column2}],true," +
                 "var v2 = TRtmp{.column1 = v.column1,.column3 = v0.column3},var v3 = v2.";
         this.testTranslation(query, program);
     }
@@ -144,10 +170,12 @@ public class JoinTest extends BaseQueriesTest {
     public void testCrossJoin() {
         String query = "create view v0 as SELECT DISTINCT * FROM t1 CROSS JOIN t2";
         String program = this.header(false) +
-                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double, column10:signed<64>}\n" +
+                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double," +
+                " column10:signed<64>}\n" +
                 this.relations(false) +
                 "output relation Rv0[Ttmp]\n" +
-                "Rv0[v2] :- Rt1[v],Rt2[v0],true,var v1 = Ttmp{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3,.column4 = v.column4,.column10 = v0.column1}," +
+                "Rv0[v2] :- Rt1[v],Rt2[v0],true,var v1 = Ttmp{.column1 = v.column1,.column2 = v.column2," +
+                ".column3 = v.column3,.column4 = v.column4,.column10 = v0.column1}," +
                 "var v2 = v1.";
         this.testTranslation(query, program);
     }
@@ -156,10 +184,12 @@ public class JoinTest extends BaseQueriesTest {
     public void testCrossJoinWNull() {
         String query = "create view v0 as SELECT DISTINCT * FROM t1 CROSS JOIN t2";
         String program = this.header(true) +
-                "typedef Ttmp = Ttmp{column1:Option<signed<64>>, column2:Option<string>, column3:Option<bool>, column4:Option<double>, column10:Option<signed<64>>}\n" +
+                "typedef Ttmp = Ttmp{column1:Option<signed<64>>, column2:Option<string>," +
+                " column3:Option<bool>, column4:Option<double>, column10:Option<signed<64>>}\n" +
                 this.relations(true) +
                 "output relation Rv0[Ttmp]\n" +
-                "Rv0[v2] :- Rt1[v],Rt2[v0],true,var v1 = Ttmp{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3,.column4 = v.column4,.column10 = v0.column1}," +
+                "Rv0[v2] :- Rt1[v],Rt2[v0],true,var v1 = Ttmp{.column1 = v.column1,.column2 = v.column2," +
+                ".column3 = v.column3,.column4 = v.column4,.column10 = v0.column1}," +
                 "var v2 = v1.";
         this.testTranslation(query, program, true);
     }
@@ -169,18 +199,17 @@ public class JoinTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT DISTINCT t1.column1, X.c FROM t1 CROSS JOIN (SELECT DISTINCT column1 AS c FROM t2 AS X)";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{c:signed<64>}\n" +
-                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double, c:signed<64>}\n" +
                 "typedef TRtmp1 = TRtmp1{column1:signed<64>, c:signed<64>}\n" +
                 this.relations(true) +
                 "relation Rtmp[TRtmp]\n" +
                 "relation Rtmp0[TRtmp]\n" +
                 "relation Rtmp1[TRtmp1]\n" +
                 "output relation Rv0[TRtmp1]\n" +
-                "Rtmp0[v2] :- Rt2[v0],var v1 = TRtmp{.c = v0.column1},var v2 = v1.\n" +
-                "Rv0[v5] :- Rt1[v],Rtmp0[v2],true,var v3 = Ttmp{.column1 = v.column1,.column2 = v.column2," +
-                ".column3 = v.column3,.column4 = v.column4,.c = v2.c}," +
-                "var v4 = TRtmp1{.column1 = v.column1,.c = v2.c}," +
-                "var v5 = v4.";
+                "Rtmp0[v3] :- Rt2[v0],var v1 = TRtmp{.c = v0.column1}," +
+                "var v2 = Aggregate((v1), group_key(v1)),var v3 = v2.\n" +
+                "Rv0[v6] :- Rt1[v],Rtmp0[v3],true," +
+                "var v5 = TRtmp1{.column1 = v.column1,.c = v3.c}," +
+                "var v6 = v5.";
         this.testTranslation(query, program, false);
     }
 
@@ -193,11 +222,14 @@ public class JoinTest extends BaseQueriesTest {
                 "         (SELECT DISTINCT column3 AS d FROM t1) d";
         String program = this.header(false) +
                 "typedef TRtmp = TRtmp{a:signed<64>}\n" +
-                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double, a:signed<64>}\n" +
+                "typedef Ttmp = Ttmp{column1:signed<64>, column2:string, column3:bool, column4:double," +
+                " a:signed<64>}\n" +
                 "typedef TRtmp1 = TRtmp1{c:string}\n" +
-                "typedef Ttmp3 = Ttmp3{column1:signed<64>, column2:string, column3:bool, column4:double, a:signed<64>, c:string}\n" +
+                "typedef Ttmp3 = Ttmp3{column1:signed<64>, column2:string, column3:bool, column4:double," +
+                " a:signed<64>, c:string}\n" +
                 "typedef TRtmp4 = TRtmp4{d:bool}\n" +
-                "typedef Ttmp6 = Ttmp6{column1:signed<64>, column2:string, column3:bool, column4:double, a:signed<64>, c:string, d:bool}\n" +
+                "typedef Ttmp6 = Ttmp6{column1:signed<64>, column2:string, column3:bool, column4:double," +
+                " a:signed<64>, c:string, d:bool}\n" +
                 this.relations(false) +
                 "relation Rtmp[TRtmp]\n" +
                 "relation Rtmp0[TRtmp]\n" +
@@ -206,16 +238,196 @@ public class JoinTest extends BaseQueriesTest {
                 "relation Rtmp4[TRtmp4]\n" +
                 "relation Rtmp5[TRtmp4]\n" +
                 "output relation Rv0[Ttmp6]\n" +
-                "Rtmp0[v2] :- Rt1[v0],var v1 = TRtmp{.a = v0.column1},var v2 = v1.\n" +
-                "Rtmp2[v6] :- Rt1[v4],var v5 = TRtmp1{.c = v4.column2},var v6 = v5.\n" +
-                "Rtmp5[v10] :- Rt1[v8],var v9 = TRtmp4{.d = v8.column3},var v10 = v9.\n" +
-                "Rv0[v12] :- Rt1[v],Rtmp0[v2],true," +
-                "var v3 = Ttmp{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3,.column4 = v.column4,.a = v2.a}," +
-                "Rtmp2[v6],true," +
-                "var v7 = Ttmp3{.column1 = v3.column1,.column2 = v3.column2,.column3 = v3.column3,.column4 = v3.column4,.a = v3.a,.c = v6.c}," +
-                "Rtmp5[v10],true," +
-                "var v11 = Ttmp6{.column1 = v7.column1,.column2 = v7.column2,.column3 = v7.column3,.column4 = v7.column4,.a = v7.a,.c = v7.c,.d = v10.d}," +
-                "var v12 = v11.";
+                "Rtmp0[v3] :- Rt1[v0],var v1 = TRtmp{.a = v0.column1}," +
+                "var v2 = Aggregate((v1), group_key(v1)),var v3 = v2.\n" +
+                "Rtmp2[v8] :- Rt1[v5],var v6 = TRtmp1{.c = v5.column2}," +
+                "var v7 = Aggregate((v6), group_key(v6)),var v8 = v7.\n" +
+                "Rtmp5[v13] :- Rt1[v10],var v11 = TRtmp4{.d = v10.column3}," +
+                "var v12 = Aggregate((v11), group_key(v11)),var v13 = v12.\n" +
+                "Rv0[v15] :- Rt1[v],Rtmp0[v3],true," +
+                "var v4 = Ttmp{.column1 = v.column1,.column2 = v.column2,.column3 = v.column3," +
+                ".column4 = v.column4,.a = v3.a}," +
+                "Rtmp2[v8],true," +
+                "var v9 = Ttmp3{.column1 = v4.column1,.column2 = v4.column2,.column3 = v4.column3," +
+                ".column4 = v4.column4,.a = v4.a,.c = v8.c}," +
+                "Rtmp5[v13],true," +
+                "var v14 = Ttmp6{.column1 = v9.column1,.column2 = v9.column2,.column3 = v9.column3," +
+                ".column4 = v9.column4,.a = v9.a,.c = v9.c,.d = v13.d}," +
+                "var v15 = v14.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testSharedJoin() {
+        Translator t = this.createInputTables(false);
+        t.translateSqlStatement("create view v0 as SELECT DISTINCT t1.column2 FROM t1 JOIN t2 ON t1.column1 = t2.column1");
+        t.translateSqlStatement("create view v1 as SELECT DISTINCT t1.column4 FROM t1 JOIN t2 ON t1.column1 = t2.column1");
+        t.translateSqlStatement("create view v2 as SELECT DISTINCT column2 FROM t1 WHERE column3");
+        t.translateSqlStatement("create view v3 as SELECT DISTINCT column1 FROM t1 WHERE column3");
+        t.shareCommonSubexpressions();
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column2:string}\n" +
+                "typedef TRtmp1 = TRtmp1{column4:double}\n" +
+                this.relations(false) +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "relation Rtmp1[TRtmp1]\n" +
+                "output relation Rv1[TRtmp1]\n" +
+                "relation Rtmp2[TRtmp]\n" +
+                "output relation Rv2[TRtmp]\n" +
+                "relation Rtmp3[Tt2]\n" +
+                "output relation Rv3[Tt2]\n" +
+                "relation Rshared[(Tt1, Tt2)]\n" +
+                "relation Rshared4[Tt1]\n" +
+                "Rshared[(v, v0)] :- Rt1[v],Rt2[v0@Tt2{.column1 = v.column1}],true.\n" +
+                "Rv0[v3] :- Rshared[(v, v0)],var v2 = TRtmp{.column2 = v.column2},var v3 = v2.\n" +
+                "Rv1[v3] :- Rshared[(v, v0)],var v2 = TRtmp1{.column4 = v.column4},var v3 = v2.\n" +
+                "Rshared4[v] :- Rt1[v],v.column3.\n" +
+                "Rv2[v1] :- Rshared4[v],var v0 = TRtmp{.column2 = v.column2},var v1 = v0.\n" +
+                "Rv3[v1] :- Rshared4[v],var v0 = Tt2{.column1 = v.column1},var v1 = v0.";
+        String s = t.getDDlogProgram().toString();
+        Assert.assertEquals(program, s);
+        this.compiledDDlog(s);
+    }
+
+    @Test
+    public void testInSubquery() {
+        String query = "create view v0 as SELECT DISTINCT column2 FROM t1 WHERE column1 IN (SELECT column1 FROM t2)";
+        String program = this.header(false) +
+                "typedef Tkey = Tkey{k0:signed<64>}\n" +
+                "typedef TRtmp = TRtmp{column2:string}\n" +
+                this.relations(false) +
+                "relation Rsemi[Tkey]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rsemi[v3] :- Rt2[v0],var v1 = Tkey{.k0 = v0.column1}," +
+                "var v2 = Aggregate((v1), group_key(v1)),var v3 = v2.\n" +
+                "Rv0[v5] :- Rt1[v],Rsemi(.k0 = v.column1),var v4 = TRtmp{.column2 = v.column2},var v5 = v4.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testNotInSubqueryWNull() {
+        String query = "create view v0 as SELECT DISTINCT column2 FROM t1 WHERE column3 AND " +
+                "column1 NOT IN (SELECT column1 FROM t2)";
+        String program = this.header(true) +
+                "typedef Tkey = Tkey{k0:Option<signed<64>>}\n" +
+                "typedef TRtmp = TRtmp{column2:Option<string>}\n" +
+                this.relations(true) +
+                "relation Ranti[Tkey]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Ranti[v2] :- Rt2[v0],var v1 = Tkey{.k0 = v0.column1},var v2 = v1.\n" +
+                "Rv0[v4] :- Rt1[v],unwrapBool(v.column3),(not is_null(v.column1)),not Ranti(.k0 = v.column1)," +
+                "not Ranti(.k0 = None{}: Option<signed<64>>),var v3 = TRtmp{.column2 = v.column2}," +
+                "var v4 = v3.";
+        this.testTranslation(query, program, true);
+    }
+
+    @Test
+    public void testExists() {
+        String query = "create view v0 as SELECT DISTINCT column2 FROM t1 WHERE EXISTS " +
+                "(SELECT * FROM t4 WHERE t4.column2 = t1.column2 AND t4.column1 > 0)";
+        String program = this.header(false) +
+                "typedef Tkey = Tkey{k0:Option<string>}\n" +
+                "typedef TRtmp = TRtmp{column2:string}\n" +
+                this.relations(false) +
+                "relation Rsemi[Tkey]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rsemi[v3] :- Rt4[v0],(not is_null(v0.column2)),unwrapBool(a_gt_NR(v0.column1, 64'sd0))," +
+                "var v1 = Tkey{.k0 = v0.column2},var v2 = Aggregate((v1), group_key(v1)),var v3 = v2.\n" +
+                "Rv0[v5] :- Rt1[v],Rsemi(.k0 = Some{.x = v.column2}),var v4 = TRtmp{.column2 = v.column2},var v5 = v4.";
         this.testTranslation(query, program);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNotExists() {
+        String query = "create view v0 as SELECT DISTINCT column2 FROM t1 WHERE NOT EXISTS " +
+                "(SELECT column1 FROM t4 WHERE column2 = t1.column2)";
+        String program = this.header(false) +
+                "typedef Tkey = Tkey{k0:Option<string>}\n" +
+                "typedef TRtmp = TRtmp{column2:string}\n" +
+                this.relations(false) +
+                "relation Ranti[Tkey]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Ranti[v2] :- Rt4[v0],(not is_null(v0.column2)),var v1 = Tkey{.k0 = v0.column2},var v2 = v1.\n" +
+                "Rv0[v4] :- Rt1[v],not Ranti(.k0 = Some{.x = v.column2})," +
+                "var v3 = TRtmp{.column2 = v.column2},var v4 = v3.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testInAggregateSubquery() {
+        String query = "create view v0 as SELECT DISTINCT column2 FROM t1 WHERE column1 IN " +
+                "(SELECT MAX(column1) FROM t4 GROUP BY column2)";
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{col1:Option<signed<64>>}\n" +
+                "typedef Tagg_v0 = Tagg_v0{column1:Option<signed<64>>}\n" +
+                "typedef Tkey = Tkey{k0:Option<signed<64>>}\n" +
+                "typedef TRtmp0 = TRtmp0{column2:string}\n" +
+                "function agg(g: Group<Option<string>, Tagg_v0>):TRtmp {\n" +
+                "(var gb) = group_key(g);\n" +
+                "(var max = None{}: Option<signed<64>>);\n" +
+                "(for (i in g) {\n" +
+                "var v0 = i;\n" +
+                "(var incr = v0.column1);\n" +
+                "(max = agg_max_N(max, incr))}\n" +
+                ");\n" +
+                "(TRtmp{.col1 = max})\n" +
+                "}\n" +
+                this.relations(false) +
+                "relation Rtmp[TRtmp]\n" +
+                "relation Rsemi[Tkey]\n" +
+                "relation Rtmp0[TRtmp0]\n" +
+                "output relation Rv0[TRtmp0]\n" +
+                "Rsemi[v5] :- Rt4[v0],var gb = v0.column2,var aggResult = Aggregate((gb)," +
+                " agg((Tagg_v0{.column1 = v0.column1}))),var v2 = TRtmp{.col1 = aggResult.col1}," +
+                "var v3 = Tkey{.k0 = v2.col1},var v4 = Aggregate((v3), group_key(v3)),var v5 = v4.\n" +
+                "Rv0[v7] :- Rt1[v],Rsemi(.k0 = Some{.x = v.column1}),var v6 = TRtmp0{.column2 = v.column2}," +
+                "var v7 = v6.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testJoinOrderCardinality() {
+        Translator t = this.createInputTables(false);
+        t.setCardinality("t1", 1000000);
+        t.setCardinality("t2", 10);
+        t.setCardinality("t4", 1000);
+        String query = "create view v0 as SELECT DISTINCT t1.column2 FROM t1\n" +
+                "JOIN t4 ON t1.column2 = t4.column2\n" +
+                "JOIN t2 ON t1.column1 = t2.column1";
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column2:string}\n" +
+                this.relations(false) +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rv0[v6] :- Rt2[v],Rt1[v0@Tt1{.column1 = v.column1}],true," +
+                "Rt4[v2],unwrapBool(s_eq_RN(v0.column2, v2.column2)),true," +
+                "var v5 = TRtmp{.column2 = v0.column2},var v6 = v5.";
+        this.testTranslation(t, query, program);
+    }
+
+    @Test
+    public void testJoinOrderPrimaryKey() throws IOException {
+        Translator t = this.createInputTables(false);
+        t.translateSqlStatement("create table k(id integer not null with (primary_key = true), name varchar(36))");
+        t.loadStatistics(new StringReader("# rows\nt1 10\nt4,100\n"));
+        String query = "create view v0 as SELECT DISTINCT k.name FROM t1\n" +
+                "JOIN t4 ON t4.column2 = t1.column2\n" +
+                "JOIN k ON k.id = t1.column1";
+        String program = this.header(false) +
+                "typedef Tk = Tk{id:signed<64>, name:Option<string>}\n" +
+                "typedef TRtmp = TRtmp{name:Option<string>}\n" +
+                this.relations(false) +
+                "input relation Rk[Tk] primary key (row) (row.id)\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "index Rk_by_id(id:signed<64>) on Rk(.id = id)\n" +
+                "Rv0[v6] :- Rt1[v],Rk[v0@Tk{.id = v.column1}],true," +
+                "Rt4[v2],unwrapBool(s_eq_NR(v2.column2, v.column2)),true,var v5 = TRtmp{.name = v0.name},var v6 = v5.";
+        this.testTranslation(t, query, program);
+    }
+}
@@ -4,7 +4,9 @@
  */
 package ddlog;
 
+import com.vmware.ddlog.DDlogBulkLoader;
 import com.vmware.ddlog.DDlogJooqProvider;
+import com.vmware.ddlog.ViewDelta;
 import com.vmware.ddlog.ir.DDlogProgram;
 import com.vmware.ddlog.translator.Translator;
 import ddlogapi.DDlogAPI;
@@ -14,19 +16,23 @@ import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.Result;
 import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
 import org.jooq.tools.jdbc.MockConnection;
-import org.jooq.tools.jdbc.MockDataProvider;
 import org.junit.Test;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
 import static org.jooq.impl.DSL.field;
 
 public class JooqProviderTest {
@@ -44,11 +50,15 @@ public class JooqProviderTest {
         ddl.add(s1);
         ddl.add(v2);
         ddl.add(v1);
+        ddl.add("create view capacities as select distinct capacity from hosts " +
+                "union all select distinct capacity from hosts");
+        ddl.add("create view up_hosts as select x.up from (select distinct up from hosts) as x");
+        ddl.add("create view matching_hosts as select id from hosts where up in (select up from hosts)");
         compileAndLoad(ddl);
         final DDlogAPI dDlogAPI = new DDlogAPI(1, null, true);
 
         // Initialise the data provider
-        MockDataProvider provider = new DDlogJooqProvider(dDlogAPI, ddl);
+        DDlogJooqProvider provider = new DDlogJooqProvider(dDlogAPI, ddl);
         MockConnection connection = new MockConnection(provider);
 
         // Pass the mock connection to a jOOQ DSLContext:
@@ -103,6 +113,107 @@ public class JooqProviderTest {
         assertFalse(goodHostsResultsAfterDelete.contains(test1));
         assertFalse(goodHostsResultsAfterDelete.contains(test2));
         assertFalse(goodHostsResultsAfterDelete.contains(test3));
+
+        // Test 4: explicit transactions. Updates only become visible after a commit,
+        // and are discarded by a rollback.
+        create.execute("start transaction");
+        create.execute("insert into hosts values ('n9', 2, true)");
+        assertFalse(create.fetch("select * from hostsv").contains(test3));
+        create.execute("commit");
+        assertTrue(create.fetch("select * from hostsv").contains(test3));
+
+        create.execute("start transaction");
+        create.execute("delete from hosts where id = 'n9'");
+        create.execute("rollback");
+        assertTrue(create.fetch("select * from hostsv").contains(test3));
+
+        // Test 5: jOOQ transactions map to DDlog transactions
+        final DSLContext transactional = DSL.using(new DefaultConfiguration()
+                                                       .set(connection)
+                                                       .set(provider.transactionProvider()));
+        transactional.transaction(configuration -> {
+            DSL.using(configuration).execute("delete from hosts where id = 'n9'");
+            DSL.using(configuration).execute("delete from hosts where id = 'n54'");
+        });
+        final Result<Record> hostsvResultsAfterTransaction = create.fetch("select * from hostsv");
+        assertTrue(hostsvResultsAfterTransaction.contains(test1));
+        assertFalse(hostsvResultsAfterTransaction.contains(test2));
+        assertFalse(hostsvResultsAfterTransaction.contains(test3));
+
+        // Test 6: bulk loading from row iterators and CSV input
+        final DDlogBulkLoader loader = new DDlogBulkLoader(provider, 1);
+        final List<Object[]> rows = Arrays.asList(new Object[]{"n9", 2, true}, new Object[]{"n54", 18, false});
+        assertEquals(2, loader.loadRows("hosts", rows.iterator()));
+        final Result<Record> hostsvResultsAfterLoad = create.fetch("select * from hostsv");
+        assertTrue(hostsvResultsAfterLoad.contains(test2));
+        assertTrue(hostsvResultsAfterLoad.contains(test3));
+
+        final String csv = "id,capacity,up\n\"n,5\",5,true\nn6,,false\n";
+        assertEquals(2, loader.loadCsv("hosts", new StringReader(csv), true));
+        final Record test4 = create.newRecord(field1, field2, field3);
+        test4.setValue(field1, "n,5");
+        test4.setValue(field2, 5);
+        test4.setValue(field3, true);
+        final Record test5 = create.newRecord(field1, field2, field3);
+        test5.setValue(field1, "n6");
+        test5.setValue(field2, null);
+        test5.setValue(field3, false);
+        final Result<Record> goodHostsResultsAfterLoad = create.fetch("select * from good_hosts");
+        assertTrue(goodHostsResultsAfterLoad.contains(test4));
+        assertFalse(goodHostsResultsAfterLoad.contains(test5));
+        assertTrue(create.fetch("select * from hostsv").contains(test5));
+
+        // Quoted fields may span lines; malformed values are rejected instead of being loaded
+        assertEquals(1, loader.loadCsv("hosts", new StringReader("\"n\n10\",7,TRUE\n"), false));
+        final Record test6 = create.newRecord(field1, field2, field3);
+        test6.setValue(field1, "n\n10");
+        test6.setValue(field2, 7);
+        test6.setValue(field3, true);
+        assertTrue(create.fetch("select * from hostsv").contains(test6));
+        try {
+            loader.loadCsv("hosts", new StringReader("n11,3,true\nn12,3,yes\n"), false);
+            fail("Expected an invalid boolean to be rejected");
+        } catch (final RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Line 2:"));
+        }
+        try {
+            loader.loadCsv("hosts", new StringReader("\"n13,3,true\n"), false);
+            fail("Expected an unterminated quoted field to be rejected");
+        } catch (final RuntimeException e) {
+            assertTrue(e.getMessage().contains("line 1"));
+        }
+
+        // Test 7: view change listeners receive the deltas of each commit
+        final List<ViewDelta> deltas = new ArrayList<>();
+        provider.onViewChange("GOOD_HOSTS", deltas::add);
+        create.execute("insert into hosts values ('n7', 3, true)");
+        create.execute("insert into hosts values ('n8', 30, true)");
+        final Record test7 = create.newRecord(field1, field2, field3);
+        test7.setValue(field1, "n7");
+        test7.setValue(field2, 3);
+        test7.setValue(field3, true);
+        assertEquals(1, deltas.size());
+        assertEquals("GOOD_HOSTS", deltas.get(0).getView());
+        assertEquals(ViewDelta.Kind.Insert, deltas.get(0).getKind());
+        assertEquals(1, deltas.get(0).getWeight());
+        assertEquals(test7, deltas.get(0).getRecord());
+        deltas.clear();
+        create.execute("delete from hosts where id = 'n7'");
+        assertEquals(1, deltas.size());
+        assertEquals(ViewDelta.Kind.Delete, deltas.get(0).getKind());
+        assertEquals(test7, deltas.get(0).getRecord());
+
+        // Test 8: a set read as a multiset contributes each of its rows once
+        create.execute("insert into hosts values ('n10', 30, false)");
+        final Result<Record> capacities = create.fetch("select * from capacities");
+        assertEquals(2, capacities.stream().filter(r -> Integer.valueOf(30).equals(r.get(field2))).count());
+        final Result<Record> upHosts = create.fetch("select * from up_hosts");
+        assertEquals(1, upHosts.stream().filter(r -> Boolean.TRUE.equals(r.get(field3))).count());
+        assertEquals(1, upHosts.stream().filter(r -> Boolean.FALSE.equals(r.get(field3))).count());
+
+        // Test 9: a row matching several rows of an IN subquery is produced once
+        final Result<Record> matchingHosts = create.fetch("select * from matching_hosts");
+        assertEquals(1, matchingHosts.stream().filter(r -> "n1".equals(r.get(field1))).count());
     }
 
     public static void compileAndLoad(final List<String> ddl) throws IOException, DDlogException {
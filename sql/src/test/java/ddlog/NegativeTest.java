@@ -55,4 +55,18 @@ public class NegativeTest extends BaseQueriesTest {
         String query = "create view v0 as SELECT DISTINCT t1.column1 FROM t1 UNION ALL SELECT DISTINCT t2.column1 FROM t1";
         this.testTranslation(query, "");
     }
-}
\ No newline at end of file
+
+    @Test(expected = TranslationException.class)
+    public void multisetAggregateTest() {
+        // the subquery is a multiset
+        String query = "create view v0 as SELECT COUNT(*) FROM (SELECT column1 FROM t1)";
+        this.testTranslation(query, "");
+    }
+
+    @Test(expected = TranslationException.class)
+    public void recursiveWithoutUnionTest() {
+        String query = "create view v0 as WITH RECURSIVE r(x) AS (SELECT DISTINCT x + 1 FROM r)\n" +
+                "SELECT DISTINCT x FROM r";
+        this.testTranslation(query, "");
+    }
+}
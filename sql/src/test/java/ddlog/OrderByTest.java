@@ -0,0 +1,61 @@
+package ddlog;
+
+import org.junit.Test;
+
+public class OrderByTest extends BaseQueriesTest {
+    @Test
+    public void testTopK() {
+        String query = "create view v0 as SELECT DISTINCT column1, column2 FROM t1 ORDER BY column1 DESC LIMIT 3";
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column1:signed<64>, column2:string}\n" +
+                "function topk(g: Group<(), (signed<64>, TRtmp)>):Vec<TRtmp> {\n" +
+                "sql_top_k(g, 64'd3, true)\n}\n" +
+                this.relations(false) +
+                "relation Rtmp[TRtmp]\n" +
+                "relation Rtmp0[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rtmp0[v1] :- Rt1[v],var v0 = TRtmp{.column1 = v.column1,.column2 = v.column2},var v1 = v0.\n" +
+                "Rv0[v3] :- Rtmp0[v1],var top = Aggregate((), topk((v1.column1, v1)))," +
+                "var v2 = FlatMap(top),var v3 = v2.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testTopKGroupBy() {
+        String query = "create view v0 as SELECT column2, COUNT(*) AS c FROM t1 GROUP BY column2 " +
+                "ORDER BY c DESC, column2 LIMIT 2";
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column2:string, c:signed<64>}\n" +
+                "typedef Tagg = Tagg{c:signed<64>}\n" +
+                "function agg(g: Group<string, Tt1>):Tagg {\n" +
+                "(var gb) = group_key(g);\n" +
+                "(var count = 64'sd0: signed<64>);\n" +
+                "(for (i in g) {\n" +
+                "var v = i;\n" +
+                "(count = agg_count_R(count, 64'sd1))}\n" +
+                ");\n" +
+                "(Tagg{.c = count})\n}\n\n" +
+                "function topk(g: Group<(), ((signed<64>, string), TRtmp)>):Vec<TRtmp> {\n" +
+                "sql_top_k(g, 64'd2, false)\n}\n" +
+                this.relations(false) +
+                "relation Rtmp[TRtmp]\n" +
+                "relation Rtmp0[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rtmp0[v1] :- Rt1[v],var gb = v.column2,var aggResult = Aggregate((gb), agg((v)))," +
+                "var v0 = TRtmp{.column2 = gb,.c = aggResult.c},var v1 = v0.\n" +
+                "Rv0[v3] :- Rtmp0[v1],var top = Aggregate((), topk((((- v1.c), v1.column2), v1)))," +
+                "var v2 = FlatMap(top),var v3 = v2.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testOrderByWithoutLimit() {
+        String query = "create view v0 as SELECT DISTINCT column1 FROM t1 ORDER BY column1";
+        String program = this.header(false) +
+                this.relations(false) +
+                "relation Rtmp[Tt2]\n" +
+                "output relation Rv0[Tt2]\n" +
+                "Rv0[v1] :- Rt1[v],var v0 = Tt2{.column1 = v.column1},var v1 = v0.";
+        this.testTranslation(query, program);
+    }
+}
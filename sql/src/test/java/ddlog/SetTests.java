@@ -141,4 +141,50 @@ public class SetTests extends BaseQueriesTest {
                 "var v4 = v0,not Rexcept[v4],var v5 = v0.";
         this.testTranslation(query, program, false);
     }
-}
+
+    @Test
+    public void unionAllTest() {
+        String query = "create view v0 as SELECT column1 FROM t1 UNION ALL SELECT column1 FROM t2";
+        String program = this.header(false) +
+                this.relations(false) +
+                "relation Rtmp[Tt2]\n" +
+                "relation Rtmp0[Tt2]\n" +
+                "multiset relation Runion[Tt2]\n" +
+                "output multiset relation Rv0[Tt2]\n" +
+                "Runion[v3] :- Rt1[v],var v0 = Tt2{.column1 = v.column1},var v3 = v0.\n" +
+                "Runion[v3] :- Rt2[v1],var v2 = Tt2{.column1 = v1.column1},var v3 = v2.\n" +
+                "Rv0[v4] :- Runion[v3],var v4 = v3.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void unionAllDistinctTest() {
+        String query = "create view v0 as SELECT DISTINCT column1 FROM t1 UNION ALL SELECT column1 FROM t2";
+        String program = this.header(false) +
+                this.relations(false) +
+                "relation Rtmp[Tt2]\n" +
+                "relation Rtmp0[Tt2]\n" +
+                "multiset relation Runion[Tt2]\n" +
+                "output multiset relation Rv0[Tt2]\n" +
+                "Runion[v4] :- Rt1[v],var v0 = Tt2{.column1 = v.column1}," +
+                "var v3 = Aggregate((v0), group_key(v0)),var v4 = v3.\n" +
+                "Runion[v4] :- Rt2[v1],var v2 = Tt2{.column1 = v1.column1},var v4 = v2.\n" +
+                "Rv0[v5] :- Runion[v4],var v5 = v4.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void distinctSubqueryTest() {
+        String query = "create view v0 as SELECT x.column1 FROM (SELECT DISTINCT column1 FROM t1) AS x";
+        String program = this.header(false) +
+                this.relations(false) +
+                "relation Rtmp[Tt2]\n" +
+                "relation Rtmp0[Tt2]\n" +
+                "relation Rtmp1[Tt2]\n" +
+                "output multiset relation Rv0[Tt2]\n" +
+                "Rtmp0[v2] :- Rt1[v],var v0 = Tt2{.column1 = v.column1}," +
+                "var v1 = Aggregate((v0), group_key(v0)),var v2 = v1.\n" +
+                "Rv0[v4] :- Rtmp0[v2],var v3 = Tt2{.column1 = v2.column1},var v4 = v3.";
+        this.testTranslation(query, program);
+    }
+}
\ No newline at end of file
@@ -1,7 +1,12 @@
 package ddlog;
 
+import com.vmware.ddlog.ir.DDlogIRNode;
+import com.vmware.ddlog.translator.Translator;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.List;
 
@@ -48,10 +53,133 @@ public class SimpleQueriesTest extends BaseQueriesTest {
                 "input relation Rt2[Tt2]\n" +
                 "input relation Rt3[Tt3]\n" +
                 "input relation Rt4[Tt4]\n" +
-                "input relation Ra[Ta] primary key (row) (row.column1, row.column2, row.column3)\n";
+                "input relation Ra[Ta] primary key (row) (row.column1, row.column2, row.column3)\n" +
+                "index Ra_by_column1_column2_column3(column1:signed<64>, column2:signed<64>, column3:Vec<signed<64>>) " +
+                "on Ra(.column1 = column1,.column2 = column2,.column3 = column3)\n";
         this.testTranslation(query, program, false);
     }
 
+    @Test
+    public void writeTest() throws IOException {
+        Translator t = this.createInputTables(false);
+        t.translateSqlStatement("create view v0 as select distinct column1 from t1");
+        t.createIndex("v0", "column1");
+        StringWriter writer = new StringWriter();
+        t.getDDlogProgram().write(writer);
+        Assert.assertEquals(t.getDDlogProgram().toString(), writer.toString());
+    }
+
+    @Test
+    public void translateAllTest() {
+        List<String> statements = Arrays.asList(
+                "create table t1(column1 integer not null, column2 varchar(36) not null)",
+                "create view v0 as select distinct column1, column2 from t1 where column1 > 10",
+                "create view v1 as select distinct column2 from v0",
+                "create view v2 as select distinct column1 from t1");
+        String program = "import fp\n" +
+                "import time\n" +
+                "import sql\n" +
+                "import sqlop\n" +
+                "\n" +
+                "typedef Tt1 = Tt1{column1:signed<64>, column2:string}\n" +
+                "typedef TRtmp_v2 = TRtmp_v2{column1:signed<64>}\n" +
+                "typedef TRtmp_v1 = TRtmp_v1{column2:string}\n" +
+                "\n" +
+                "input relation Rt1[Tt1]\n" +
+                "relation Rtmp_v0[Tt1]\n" +
+                "output relation Rv0[Tt1]\n" +
+                "relation Rtmp_v2[TRtmp_v2]\n" +
+                "output relation Rv2[TRtmp_v2]\n" +
+                "relation Rtmp_v1[TRtmp_v1]\n" +
+                "output relation Rv1[TRtmp_v1]\n" +
+                "Rv0[v1] :- Rt1[v],(v.column1 > 64'sd10),var v0 = Tt1{.column1 = v.column1,.column2 = v.column2},var v1 = v0.\n" +
+                "Rv2[v1] :- Rt1[v],var v0 = TRtmp_v2{.column1 = v.column1},var v1 = v0.\n" +
+                "Rv1[v1] :- Rv0[v],var v0 = TRtmp_v1{.column2 = v.column2},var v1 = v0.";
+        for (int parallelism = 1; parallelism <= 4; parallelism++) {
+            Translator t = new Translator(null);
+            List<DDlogIRNode> results = t.translateAll(statements, parallelism);
+            Assert.assertEquals(statements.size(), results.size());
+            Assert.assertEquals(program, t.getDDlogProgram().toString());
+        }
+    }
+
+    @Test
+    public void narrowTypesTest() {
+        Translator t = new Translator(null);
+        t.setNarrowIntegers(true);
+        t.setInternStrings(true);
+        t.translateSqlStatement("create table n1(id integer not null, s smallint not null, b tinyint, name varchar(36) not null)");
+        t.translateSqlStatement("create table n2(id integer not null, name varchar(36) not null)");
+        t.translateSqlStatement("create view v0 as select distinct s + b as x, name from n1 where s > 2");
+        t.translateSqlStatement("create view v1 as select distinct n1.id, n2.name from n1 join n2 on n1.name = n2.name");
+        String program = "import fp\n" +
+                "import time\n" +
+                "import sql\n" +
+                "import sqlop\n" +
+                "import internment\n" +
+                "\n" +
+                "typedef Tn1 = Tn1{id:signed<32>, s:signed<16>, b:Option<signed<8>>, name:istring}\n" +
+                "typedef Tn2 = Tn2{id:signed<32>, name:istring}\n" +
+                "typedef TRtmp = TRtmp{x:Option<signed<64>>, name:string}\n" +
+                "typedef TRtmp0 = TRtmp0{id:signed<64>, name:string}\n" +
+                "\n" +
+                "input relation Rn1[Tn1]\n" +
+                "input relation Rn2[Tn2]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "relation Rtmp0[TRtmp0]\n" +
+                "output relation Rv1[TRtmp0]\n" +
+                "Rv0[v1] :- Rn1[v],(v.s as signed<64> > 64'sd2),var v0 = TRtmp{.x = a_plus_RN(v.s as signed<64>, match(v.b) {None{}: Option<signed<8>> -> None{}: Option<signed<64>>,\n" +
+                "Some{.x = var x} -> Some{.x = x as signed<64>}\n" +
+                "}),.name = ival(v.name)},var v1 = v0.\n" +
+                "Rv1[v3] :- Rn1[v],Rn2[v0@Tn2{.name = v.name}],true,var v2 = TRtmp0{.id = v.id as signed<64>,.name = ival(v0.name)},var v3 = v2.";
+        String s = t.getDDlogProgram().toString();
+        Assert.assertEquals(program, s);
+        this.compiledDDlog(s);
+    }
+
+    @Test
+    public void narrowCastTest() {
+        Translator t = new Translator(null);
+        t.translateSqlStatement("create table n1(id integer not null, s smallint not null)");
+        t.translateSqlStatement("create view v0 as select distinct cast(id as tinyint) + 1 as x from n1 " +
+                "where cast(id as tinyint) = cast(s as tinyint)");
+        String program = "import fp\n" +
+                "import time\n" +
+                "import sql\n" +
+                "import sqlop\n" +
+                "\n" +
+                "typedef Tn1 = Tn1{id:signed<64>, s:signed<16>}\n" +
+                "typedef TRtmp = TRtmp{x:signed<64>}\n" +
+                "\n" +
+                "input relation Rn1[Tn1]\n" +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "Rv0[v1] :- Rn1[v],(v.id as signed<64> as signed<8> == v.s as signed<64> as signed<64> as signed<8>)," +
+                "var v0 = TRtmp{.x = (v.id as signed<64> as signed<8> as signed<64> + 64'sd1)},var v1 = v0.";
+        String s = t.getDDlogProgram().toString();
+        Assert.assertEquals(program, s);
+        this.compiledDDlog(s);
+    }
+
+    @Test
+    public void indexTest() {
+        Translator t = this.createInputTables(false);
+        t.translateSqlStatement("create view v0 as select distinct column1, column2 from t1");
+        String index = t.createIndex("v0", "column2");
+        Assert.assertEquals("Rv0_by_column2", index);
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column1:signed<64>, column2:string}\n" +
+                this.relations(false) +
+                "relation Rtmp[TRtmp]\n" +
+                "output relation Rv0[TRtmp]\n" +
+                "index Rv0_by_column2(column2:string) on Rv0(.column2 = column2)\n" +
+                "Rv0[v1] :- Rt1[v],var v0 = TRtmp{.column1 = v.column1,.column2 = v.column2},var v1 = v0.";
+        String s = t.getDDlogProgram().toString();
+        Assert.assertEquals(program, s);
+        this.compiledDDlog(s);
+    }
+
     @Test
     public void inArrayTest() {
         List<String> queries = Arrays.asList(
@@ -172,7 +300,7 @@ public class SimpleQueriesTest extends BaseQueriesTest {
         String program = this.header(false) +
                 this.relations(false) +
                 "output relation Rv2[Tt1]\n" +
-                "Rv2[v0] :- Rt1[v],((v.column1 == 64'sd10) and (v.column2 == \"something\")),var v0 = v.";
+                "Rv2[v0] :- Rt1[v],(v.column1 == 64'sd10),(v.column2 == \"something\"),var v0 = v.";
         this.testTranslation(query, program);
     }
 
@@ -182,7 +310,7 @@ public class SimpleQueriesTest extends BaseQueriesTest {
         String program = this.header(true) +
             this.relations(true) +
             "output relation Rv2[Tt1]\n" +
-            "Rv2[v0] :- Rt1[v],unwrapBool(b_and_NN(a_eq_NR(v.column1, 64'sd10), s_eq_NR(v.column2, \"something\"))),var v0 = v.";
+            "Rv2[v0] :- Rt1[v],unwrapBool(a_eq_NR(v.column1, 64'sd10)),unwrapBool(s_eq_NR(v.column2, \"something\")),var v0 = v.";
         this.testTranslation(query, program, true);
     }
 
@@ -367,8 +495,9 @@ public class SimpleQueriesTest extends BaseQueriesTest {
                 this.relations(false) +
                 "relation Rtmp0[Tt1]\n" +
                 "output relation Rv3[Tt1]\n" +
-                "Rtmp0[v0] :- Rt1[v],(v.column1 == 64'sd10),var v0 = v.\n" +
-                "Rv3[v1] :- Rtmp0[v0],(v0.column2 == \"something\"),var v1 = v0.";
+                "Rtmp0[v1] :- Rt1[v],(v.column1 == 64'sd10)," +
+                "var v0 = Aggregate((v), group_key(v)),var v1 = v0.\n" +
+                "Rv3[v2] :- Rtmp0[v1],(v1.column2 == \"something\"),var v2 = v1.";
         this.testTranslation(query, program);
     }
 
@@ -407,8 +536,9 @@ public class SimpleQueriesTest extends BaseQueriesTest {
             this.relations(true) +
             "relation Rtmp0[Tt1]\n" +
             "output relation Rv3[Tt1]\n" +
-            "Rtmp0[v0] :- Rt1[v],unwrapBool(a_eq_NR(v.column1, 64'sd10)),var v0 = v.\n" +
-            "Rv3[v1] :- Rtmp0[v0],unwrapBool(s_eq_NR(v0.column2, \"something\")),var v1 = v0.";
+            "Rtmp0[v1] :- Rt1[v],unwrapBool(a_eq_NR(v.column1, 64'sd10))," +
+            "var v0 = Aggregate((v), group_key(v)),var v1 = v0.\n" +
+            "Rv3[v2] :- Rtmp0[v1],unwrapBool(s_eq_NR(v1.column2, \"something\")),var v2 = v1.";
         this.testTranslation(query, program, true);
     }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package ddlog;
+
+import com.vmware.ddlog.ir.DDlogRelationDeclaration;
+import com.vmware.ddlog.translator.Translator;
+import com.vmware.ddlog.translator.TranslationSession;
+import com.vmware.ddlog.util.Linq;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class TranslationSessionTest {
+    private static final String table = "create table t1(column1 integer not null with (primary_key = true), column2 varchar(36) not null)";
+    private static final String view0 = "create view v0 as select distinct column2 from t1 where column1 > 10";
+    private static final String view1 = "create view v1 as select count(column1) as c from t1 group by column2";
+
+    private static List<String> names(List<DDlogRelationDeclaration> relations) {
+        return Linq.map(relations, DDlogRelationDeclaration::getName);
+    }
+
+    private static String translate(String... statements) {
+        Translator t = new Translator(null);
+        for (String s: statements)
+            t.translateSqlStatement(s);
+        return t.getDDlogProgram().toString();
+    }
+
+    @Test
+    public void addAndDropTest() {
+        TranslationSession session = new TranslationSession();
+        TranslationSession.Change change = session.execute(table);
+        Assert.assertEquals(Arrays.asList("Rt1"), names(change.getAddedRelations()));
+        Assert.assertTrue(change.getAddedRules().isEmpty());
+        session.execute(view0);
+        change = session.execute(view1);
+        Assert.assertEquals(Arrays.asList("Rtmp0", "Rv1"), names(change.getAddedRelations()));
+        Assert.assertEquals(1, change.getAddedRules().size());
+        Assert.assertEquals(translate(table, view0, view1), session.getProgram().toString());
+
+        change = session.execute("drop view v0");
+        Assert.assertEquals(Arrays.asList("Rtmp", "Rv0"), names(change.getRemovedRelations()));
+        Assert.assertEquals(1, change.getRemovedRules().size());
+        Assert.assertTrue(change.getAddedRelations().isEmpty());
+        Assert.assertEquals(Arrays.asList("t1", "v1"), session.getDefinitions());
+        Assert.assertTrue(session.execute("drop view if exists v0").isEmpty());
+
+        // The view can be created again with the same relation names
+        change = session.execute(view0);
+        Assert.assertEquals(Arrays.asList("Rtmp", "Rv0"), names(change.getAddedRelations()));
+    }
+
+    @Test
+    public void replaceTest() {
+        TranslationSession session = new TranslationSession();
+        session.execute(table);
+        session.execute(view0);
+        TranslationSession.Change change = session.execute(
+                "create or replace view v0 as select distinct column1 from t1");
+        Assert.assertEquals(Arrays.asList("Rtmp", "Rv0"), names(change.getRemovedRelations()));
+        Assert.assertEquals(Arrays.asList("Rtmp", "Rv0"), names(change.getAddedRelations()));
+        Assert.assertTrue(session.getProgram().toString().endsWith(
+                "Rv0[v1] :- Rt1[v],var v0 = TRtmp0{.column1 = v.column1},var v1 = v0."));
+    }
+
+    @Test
+    public void errorsTest() {
+        TranslationSession session = new TranslationSession();
+        session.execute(table);
+        session.execute(view0);
+        String program = session.getProgram().toString();
+        try {
+            session.execute("drop table t1");
+            Assert.fail();
+        } catch (IllegalArgumentException ex) {
+            Assert.assertTrue(ex.getMessage().contains("used by v0"));
+        }
+        try {
+            session.execute("create view v2 as select distinct column5 from t1");
+            Assert.fail();
+        } catch (RuntimeException ex) {
+            // expected
+        }
+        try {
+            session.execute("create view v0 as select distinct column1 from t1");
+            Assert.fail();
+        } catch (RuntimeException ex) {
+            Assert.assertTrue(ex.getMessage().contains("already exists"));
+        }
+        Assert.assertEquals(program, session.getProgram().toString());
+        Assert.assertEquals(Arrays.asList("t1", "v0"), session.getDefinitions());
+    }
+
+    @Test
+    public void saveRestoreTest() throws IOException {
+        TranslationSession session = new TranslationSession();
+        session.execute(table);
+        session.setAggregationBuckets(4);
+        session.execute(view1);
+        session.setAggregationBuckets(0);
+        session.execute(view0);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        session.save(stream);
+        TranslationSession restored = TranslationSession.restore(new ByteArrayInputStream(stream.toByteArray()));
+        Assert.assertEquals(session.getProgram().toString(), restored.getProgram().toString());
+        Assert.assertEquals(session.getDefinitions(), restored.getDefinitions());
+    }
+
+    @Test
+    public void saveRestoreAfterDropTest() throws IOException {
+        TranslationSession session = new TranslationSession();
+        session.execute(table);
+        session.execute("create view v0 as select max(column1) as m from t1 group by column2");
+        session.execute("create view v1 as select min(column1) as m from t1 group by column2");
+        session.execute("drop view v0");
+        // Fails; leaves no trace
+        try {
+            session.execute("create view v2 as select max(column5) as m from t1 group by column2");
+            Assert.fail();
+        } catch (RuntimeException ex) {
+            // expected
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        session.save(stream);
+        TranslationSession restored = TranslationSession.restore(new ByteArrayInputStream(stream.toByteArray()));
+        String program = session.getProgram().toString();
+        Assert.assertTrue(program.contains("Rtmp0"));
+        Assert.assertEquals(program, restored.getProgram().toString());
+        Assert.assertEquals(session.getDefinitions(), restored.getDefinitions());
+
+        // Both sessions give the same names to new views
+        String view = "create view v3 as select count(column1) as c from t1 group by column2";
+        Assert.assertEquals(names(session.execute(view).getAddedRelations()),
+                names(restored.execute(view).getAddedRelations()));
+        Assert.assertEquals(session.getProgram().toString(), restored.getProgram().toString());
+    }
+}
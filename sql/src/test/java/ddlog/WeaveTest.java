@@ -508,126 +508,55 @@ public class WeaveTest extends BaseQueriesTest {
 
                 "typedef Tbatch_size = Tbatch_size{pendingPodsLimit:signed<64>}\n" +
 
-                "typedef Ttmp = Ttmp{pod_name:string, status:string, controllable__node_name:Option<string>, " +
-                "namespace:string, cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, " +
-                "pods_request:bigint, " +
-                "owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool, pod_name0:string, host_ip:string, host_port:signed<64>, " +
-                "host_protocol:string}\n" +
-
                 "typedef TRtmp1 = TRtmp1{controllable__node_name:Option<string>, host_port:signed<64>, host_ip:string, " +
                 "host_protocol:string}\n" +
 
-                "typedef Ttmp2 = Ttmp2{pod_name:string, status:string, controllable__node_name:Option<string>, " +
-                "namespace:string, cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, " +
-                "pods_request:bigint, " +
-                "owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool, pod_name0:string, term:signed<64>, match_expression:signed<64>, " +
-                "num_match_expressions:signed<64>, " +
-                "label_key:string, label_operator:string, label_value:Option<string>}\n" +
-
-                "typedef Ttmp3 = Ttmp3{pod_name:string, status:string, controllable__node_name:Option<string>, " +
-                "namespace:string, cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, " +
-                "pods_request:bigint, " +
-                "owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool, pod_name0:string, term:signed<64>, match_expression:signed<64>, " +
-                "num_match_expressions:signed<64>, " +
-                "label_key:string, label_operator:string, label_value:Option<string>, node_name:string, " +
-                "label_key0:string, label_value0:string}\n" +
-
                 "typedef TRtmp4 = TRtmp4{pod_name:string, node_name:string}\n" +
 
                 "typedef Tagg = Tagg{col:Option<bool>}\n" +
 
-                "typedef Ttmp5 = Ttmp5{pod_name:string, status:string, controllable__node_name:Option<string>, " +
-                "namespace:string, cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, " +
-                "pods_request:bigint, owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool, pod_name0:string, label_selector:signed<64>, " +
-                "match_expression:signed<64>, num_match_expressions:signed<64>, label_key:string, label_operator:string, " +
-                "label_value:string, topology_key:string}\n" +
+                "typedef Tagg_v0 = Tagg_v0{match_expression:signed<64>, label_key:string, label_value:Option<string>}\n" +
 
-                "typedef Ttmp6 = Ttmp6{pod_name:string, status:string, controllable__node_name:Option<string>, " +
-                "namespace:string, cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, " +
-                "pods_request:bigint, owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool, pod_name0:string, label_selector:signed<64>, " +
-                "match_expression:signed<64>, num_match_expressions:signed<64>, label_key:string, label_operator:string, " +
-                "label_value:string, topology_key:string, pod_name1:string, label_key0:string, label_value0:string}\n" +
-
-                "typedef Ttmp7 = Ttmp7{pod_name:string, status:string, controllable__node_name:Option<string>, " +
-                "namespace:string, cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, " +
-                "pods_request:bigint, owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool, pod_name0:string, label_selector:signed<64>, " +
-                "match_expression:signed<64>, " +
-                "num_match_expressions:signed<64>, label_key:string, label_operator:string, label_value:string, " +
-                "topology_key:string, pod_name1:string, label_key0:string, label_value0:string, pod_name2:string, " +
-                "status0:string, " +
-                "node_name:Option<string>, namespace0:string, cpu_request0:bigint, memory_request0:bigint, " +
-                "ephemeral_storage_request0:bigint, pods_request0:bigint, owner_name0:string, creation_timestamp0:string, " +
-                "priority:signed<64>, " +
-                "schedulerName:Option<string>, has_node_selector_labels0:bool, has_pod_affinity_requirements0:bool}\n" +
+                "typedef Tagg_v2 = Tagg_v2{label_key:string, label_value:string}\n" +
 
                 "typedef TRtmp8 = TRtmp8{pod_name:string, matches:string, node_name:Option<string>}\n" +
                 "typedef Tagg9 = Tagg9{col:bool}\n" +
+                "typedef Tagg9_v0 = Tagg9_v0{match_expression:signed<64>, label_key:string, label_value:string}\n" +
+                "typedef Tagg9_v2 = Tagg9_v2{label_key:string, label_value:string}\n" +
                 "typedef TRtmp10 = TRtmp10{gb:string, pod_name:string, matches:string, node_name:Option<string>}\n" +
-                "typedef TRtmp11 = TRtmp11{gb:string, count:signed<64>}\n" +
-                "typedef Tagg12 = Tagg12{count:signed<64>}\n" +
-                "typedef Ttmp13 = Ttmp13{gb:string, pod_name:string, matches:string, node_name:Option<string>, count:signed<64>}\n" +
-                "typedef TRtmp14 = TRtmp14{pod_name:string, matches:string, node_name:Option<string>, num_matches:signed<64>}\n" +
-
-                "typedef Ttmp15 = Ttmp15{name:string, unschedulable:bool, out_of_disk:bool, memory_pressure:bool, " +
-                "disk_pressure:bool, pid_pressure:bool, ready:bool, network_unavailable:bool, cpu_capacity:bigint, " +
-                "memory_capacity:bigint, ephemeral_storage_capacity:bigint, pods_capacity:bigint, cpu_allocatable:bigint, " +
-                "memory_allocatable:bigint, ephemeral_storage_allocatable:bigint, pods_allocatable:bigint, " +
-                "pod_name:string, status:string, node_name:Option<string>, namespace:string, cpu_request:bigint, " +
-                "memory_request:bigint, ephemeral_storage_request:bigint, pods_request:bigint, owner_name:string, " +
-                "creation_timestamp:string, priority:signed<64>, schedulerName:Option<string>, " +
-                "has_node_selector_labels:bool, has_pod_affinity_requirements:bool}\n" +
-
-                "typedef TRtmp16 = TRtmp16{name:string, cpu_remaining:signed<64>, memory_remaining:signed<64>, pods_remaining:signed<64>}\n" +
-
-                "typedef Tagg17 = Tagg17{cpu_remaining:signed<64>, memory_remaining:signed<64>, pods_remaining:signed<64>}\n" +
-
-                "typedef TRtmp18 = TRtmp18{node_name:string}\n" +
-
-                "typedef Ttmp19 = Ttmp19{pod_name:string, status:string, controllable__node_name:Option<string>," +
-                " namespace:string, cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, " +
-                "pods_request:bigint, owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool, pod_name0:string, tolerations_key:Option<string>, " +
-                "tolerations_value:Option<string>, tolerations_effect:Option<string>, " +
-                "tolerations_operator:Option<string>}\n" +
-
-                "typedef TRtmp21 = TRtmp21{gb:string, node_name:string, taint_key:string, taint_value:Option<string>, " +
-                "taint_effect:string}\n" +
-
-                "typedef Ttmp25 = Ttmp25{gb:string, node_name:string, taint_key:string, taint_value:Option<string>, " +
-                "taint_effect:string, count:signed<64>}\n" +
-
-                "typedef TRtmp26 = TRtmp26{node_name:string, taint_key:string, taint_value:Option<string>, " +
-                "taint_effect:string, num_taints:signed<64>}\n" +
-
-                "typedef Ttmp28 = Ttmp28{pod_name:string, status:string, controllable__node_name:Option<string>, " +
-                "namespace:string, cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, " +
-                "pods_request:bigint, owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool, pod_name0:string, tolerations_key:Option<string>, " +
-                "tolerations_value:Option<string>, tolerations_effect:Option<string>, " +
-                "tolerations_operator:Option<string>, node_name:string, taint_key:string, taint_value:Option<string>, " +
-                "taint_effect:string, num_taints:signed<64>}\n" +
-
-                "typedef TRtmp31 = TRtmp31{pod_name:string, status:string, node_name:Option<string>, namespace:string, " +
-                "cpu_request:bigint, memory_request:bigint, ephemeral_storage_request:bigint, pods_request:bigint, " +
-                "owner_name:string, creation_timestamp:string, has_node_selector_labels:bool, " +
-                "has_pod_affinity_requirements:bool}\n" +
+                "typedef Ttmp11 = Ttmp11{gb:string, pod_name:string, matches:string," +
+                " node_name:Option<string>, count:signed<64>}\n" +
+                "typedef TRtmp12 = TRtmp12{pod_name:string, matches:string, node_name:Option<string>," +
+                " num_matches:signed<64>}\n" +
+                "typedef TRtmp14 = TRtmp14{name:string, cpu_remaining:signed<64>," +
+                " memory_remaining:signed<64>, pods_remaining:signed<64>}\n" +
+                "typedef Tagg15 = Tagg15{cpu_remaining:signed<64>, memory_remaining:signed<64>," +
+                " pods_remaining:signed<64>}\n" +
+                "typedef Tagg15_v = Tagg15_v{name:string}\n" +
+                "typedef Tagg15_v0 = Tagg15_v0{pod_name:string, cpu_request:bigint, memory_request:bigint," +
+                " pods_request:bigint}\n" +
+                "typedef TRtmp16 = TRtmp16{node_name:string}\n" +
+                "typedef TRtmp19 = TRtmp19{gb:string, node_name:string, taint_key:string," +
+                " taint_value:Option<string>, taint_effect:string}\n" +
+                "typedef Ttmp20 = Ttmp20{gb:string, node_name:string, taint_key:string," +
+                " taint_value:Option<string>, taint_effect:string, count:signed<64>}\n" +
+                "typedef TRtmp22 = TRtmp22{node_name:string, taint_key:string, taint_value:Option<string>," +
+                " taint_effect:string, num_taints:signed<64>}\n" +
+                "typedef TRtmp27 = TRtmp27{pod_name:string, status:string, node_name:Option<string>," +
+                " namespace:string, cpu_request:bigint, memory_request:bigint," +
+                " ephemeral_storage_request:bigint, pods_request:bigint, owner_name:string," +
+                " creation_timestamp:string, has_node_selector_labels:bool," +
+                " has_pod_affinity_requirements:bool}\n" +
 
                 "function agg(g: Group<(string, string, signed<64>, string, signed<64>), " +
-                "(TRtmp, Tpod_node_selector_labels, Tnode_labels)>):Tagg {\n" +
+                "(Tagg_v0, Tagg_v2)>):Tagg {\n" +
                 "(var gb, var gb4, var gb5, var gb6, var gb7) = group_key(g);\n" +
                 "(var any = Some{false}: Option<bool>);\n" +
                 "(var any9 = false: bool);\n" +
                 "(var count_distinct = set_empty(): Set<signed<64>>);\n" +
                 "(for (i in g) {\n" +
-                "var v = i.0;\n" +
-                "(var v0 = i.1);\n" +
-                "(var v2 = i.2);\n" +
+                "var v0 = i.0;\n" +
+                "(var v2 = i.1);\n" +
                 "(var incr = b_and_RN((v0.label_key == v2.label_key), s_eq_NR(v0.label_value, v2.label_value)));\n" +
                 "(any = agg_any_N(any, incr));\n" +
                 "(var incr8 = (v0.label_key == v2.label_key));\n" +
@@ -642,16 +571,14 @@ public class WeaveTest extends BaseQueriesTest {
                 "Some{.x = (set_size(count_distinct) as signed<64> == gb7)}}}})\n}\n\n" +
 
                 "function agg9(g: Group<(string, string, signed<64>, string, string, signed<64>, Option<string>), " +
-                "(TRtmp, Tpod_affinity_match_expressions, Tpod_labels, Tpod_info)>):Tagg9 {\n" +
+                "(Tagg9_v0, Tagg9_v2)>):Tagg9 {\n" +
                 "(var gb, var gb6, var gb7, var gb8, var gb9, var gb10, var gb11) = group_key(g);\n" +
                 "(var any = false: bool);\n" +
                 "(var any13 = false: bool);\n" +
                 "(var count_distinct = set_empty(): Set<signed<64>>);\n" +
                 "(for (i in g) {\n" +
-                "var v = i.0;\n" +
-                "(var v0 = i.1);\n" +
-                "(var v2 = i.2);\n" +
-                "(var v4 = i.3);\n" +
+                "var v0 = i.0;\n" +
+                "(var v2 = i.1);\n" +
                 "(var incr = ((v0.label_key == v2.label_key) and (v0.label_value == v2.label_value)));\n" +
                 "(any = agg_any_R(any, incr));\n" +
                 "(var incr12 = (v0.label_key == v2.label_key));\n" +
@@ -664,18 +591,20 @@ public class WeaveTest extends BaseQueriesTest {
                 "if ((gb9 == \"DoesNotExist\")) {\n" +
                 "(not any13)} else {\n" +
                 "(set_size(count_distinct) as signed<64> == gb10)}}})\n}\n\n" +
-
-                "function agg12(g: Group<string, TRtmp10>):Tagg12 {\n" +
-                "(var gb4) = group_key(g);\n" +
-                "(var count5 = 64'sd0: signed<64>);\n" +
+                "function over(g: Group<string, TRtmp10>):Vec<Ttmp11> {\n" +
+                "var count5 = 64'sd0: signed<64>;\n" +
                 "(for (i in g) {\n" +
                 "var v3 = i;\n" +
                 "(count5 = agg_count_R(count5, 64'sd1))}\n" +
                 ");\n" +
-                "(Tagg12{.count = count5})\n" +
+                "(var result = vec_with_capacity(group_count(g)): Vec<Ttmp11>);\n" +
+                "(for (i in g) {\n" +
+                "vec_push(result, Ttmp11{.gb = i.gb,.pod_name = i.pod_name,.matches = i.matches," +
+                ".node_name = i.node_name,.count = count5})}\n" +
+                ");\n" +
+                "(result)\n" +
                 "}\n\n" +
-
-                "function agg17(g: Group<(string, bigint, bigint, bigint), (Tnode_info, Tpod_info)>):Tagg17 {\n" +
+                "function agg15(g: Group<(string, bigint, bigint, bigint), (Tagg15_v, Tagg15_v0)>):Tagg15 {\n" +
                 "(var gb, var gb2, var gb3, var gb4) = group_key(g);\n" +
                 "(var sum = 0: bigint);\n" +
                 "(var sum6 = 0: bigint);\n" +
@@ -690,31 +619,35 @@ public class WeaveTest extends BaseQueriesTest {
                 "(var incr7 = v0.pods_request);\n" +
                 "(sum8 = agg_sum_int_R(sum8, incr7))}\n" +
                 ");\n" +
-                "(Tagg17{.cpu_remaining = (gb2 - sum) as signed<64>,.memory_remaining = (gb3 - sum6) as signed<64>," +
-                ".pods_remaining = (gb4 - sum8) as signed<64>})" +
-                "\n}\n\n" +
-
-                "function agg24(g: Group<string, TRtmp21>):Tagg12 {\n" +
-                "(var gb7) = group_key(g);\n" +
-                "(var count8 = 64'sd0: signed<64>);\n" +
+                "(Tagg15{.cpu_remaining = (gb2 - sum) as signed<64>," +
+                ".memory_remaining = (gb3 - sum6) as signed<64>," +
+                ".pods_remaining = (gb4 - sum8) as signed<64>})\n" +
+                "}\n" +
+                "\n" +
+                "function over21(g: Group<string, TRtmp19>):Vec<Ttmp20> {\n" +
+                "var count8 = 64'sd0: signed<64>;\n" +
                 "(for (i in g) {\n" +
                 "var v6 = i;\n" +
                 "(count8 = agg_count_R(count8, 64'sd1))}\n" +
                 ");\n" +
-                "(Tagg12{.count = count8})\n" +
+                "(var result = vec_with_capacity(group_count(g)): Vec<Ttmp20>);\n" +
+                "(for (i in g) {\n" +
+                "vec_push(result, Ttmp20{.gb = i.gb,.node_name = i.node_name,.taint_key = i.taint_key," +
+                ".taint_value = i.taint_value,.taint_effect = i.taint_effect,.count = count8})}\n" +
+                ");\n" +
+                "(result)\n" +
                 "}\n\n" +
-
-                "function agg30(g20: Group<(string, string, signed<64>), " +
-                "(TRtmp, Tpod_tolerations, TRtmp26)>):Tagg9 {\n" +
-                "(var gb17, var gb18, var gb19) = group_key(g20);\n" +
-                "(var count22 = 64'sd0: signed<64>);\n" +
-                "(for (i21 in g20) {\n" +
-                "var v = i21.0;\n" +
-                "(var v0 = i21.1);\n" +
-                "(var v15 = i21.2);\n" +
-                "(count22 = agg_count_R(count22, 64'sd1))}\n" +
+                "function agg26(g17: Group<(string, string, signed<64>), (TRtmp, Tpod_tolerations," +
+                " TRtmp22)>):Tagg9 {\n" +
+                "(var gb14, var gb15, var gb16) = group_key(g17);\n" +
+                "(var count19 = 64'sd0: signed<64>);\n" +
+                "(for (i18 in g17) {\n" +
+                "var v = i18.0;\n" +
+                "(var v0 = i18.1);\n" +
+                "(var v12 = i18.2);\n" +
+                "(count19 = agg_count_R(count19, 64'sd1))}\n" +
                 ");\n" +
-                "(Tagg9{.col = (count22 == gb19)})\n" +
+                "(Tagg9{.col = (count19 == gb16)})\n" +
                 "}\n\n" +
 
                 "input relation Rnode_info[Tnode_info] primary key (row) (row.name)\n" +
@@ -747,195 +680,95 @@ public class WeaveTest extends BaseQueriesTest {
                 "output relation Rinter_pod_affinity_matches_inner[TRtmp8]\n" +
                 "relation Rtmp10[TRtmp10]\n" +
                 "relation Roverinput[TRtmp10]\n" +
-                "relation Rtmp11[TRtmp11]\n" +
-                "relation Rover[TRtmp11]\n" +
+                "relation Rtmp12[TRtmp12]\n" +
+                "output relation Rinter_pod_affinity_matches[TRtmp12]\n" +
                 "relation Rtmp14[TRtmp14]\n" +
-                "output relation Rinter_pod_affinity_matches[TRtmp14]\n" +
+                "output relation Rspare_capacity_per_node[TRtmp14]\n" +
                 "relation Rtmp16[TRtmp16]\n" +
-                "output relation Rspare_capacity_per_node[TRtmp16]\n" +
-                "relation Rtmp18[TRtmp18]\n" +
-                "output relation Rnodes_that_have_tolerations[TRtmp18]\n" +
-                "relation Rtmp21[TRtmp21]\n" +
-                "relation Roverinput20[TRtmp21]\n" +
-                "relation Rtmp23[TRtmp11]\n" +
-                "relation Rover22[TRtmp11]\n" +
-                "relation Rtmp26[TRtmp26]\n" +
-                "relation Rtmp27[TRtmp26]\n" +
-                "relation Rtmp29[TRtmp4]\n" +
+                "output relation Rnodes_that_have_tolerations[TRtmp16]\n" +
+                "relation Rtmp19[TRtmp19]\n" +
+                "relation Roverinput18[TRtmp19]\n" +
+                "relation Rtmp22[TRtmp22]\n" +
+                "relation Rtmp23[TRtmp22]\n" +
+                "relation Rtmp25[TRtmp4]\n" +
                 "output relation Rpods_that_tolerate_node_taints[TRtmp4]\n" +
-                "relation Rtmp31[TRtmp31]\n" +
-                "output relation Rassigned_pods[TRtmp31]\n" +
-
-                "Rpods_to_assign_no_limit[v1] :- Rpod_info[v],unwrapBool(b_and_RN(((v.status == \"Pending\") and is_null(v.node_name))," +
-                " s_eq_NR(v.schedulerName, \"dcm-scheduler\")))," +
-                "var v0 = TRtmp{.pod_name = v.pod_name,.status = v.status,.controllable__node_name = v.node_name," +
-                ".namespace = v.namespace,.cpu_request = v.cpu_request,.memory_request = v.memory_request," +
+                "relation Rtmp27[TRtmp27]\n" +
+                "output relation Rassigned_pods[TRtmp27]\n" +
+                "index Rnode_info_by_name(name:string) on Rnode_info(.name = name)\n" +
+                "index Rpod_info_by_pod_name(pod_name:string) on Rpod_info(.pod_name = pod_name)\n" +
+                "index Rbatch_size_by_pendingPodsLimit(pendingPodsLimit:signed<64>) " +
+                "on Rbatch_size(.pendingPodsLimit = pendingPodsLimit)\n" +
+                "Rpods_to_assign_no_limit[v1] :- Rpod_info[v],(v.status == \"Pending\"),is_null(v.node_name)," +
+                "unwrapBool(s_eq_NR(v.schedulerName, \"dcm-scheduler\")),var v0 = TRtmp{.pod_name = v.pod_name," +
+                ".status = v.status,.controllable__node_name = v.node_name,.namespace = v.namespace," +
+                ".cpu_request = v.cpu_request,.memory_request = v.memory_request," +
                 ".ephemeral_storage_request = v.ephemeral_storage_request,.pods_request = v.pods_request," +
                 ".owner_name = v.owner_name,.creation_timestamp = v.creation_timestamp," +
                 ".has_node_selector_labels = v.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v.has_pod_affinity_requirements}," +
-                "var v1 = v0.\n" +
+                ".has_pod_affinity_requirements = v.has_pod_affinity_requirements},var v1 = v0.\n" +
 
                 "Rpods_to_assign[v0] :- Rpods_to_assign_no_limit[v],var v0 = v.\n" +
-
-                "Rpods_with_port_requests[v3] :- Rpods_to_assign[v],Rpod_ports_request[v0]," +
-                "(v0.pod_name == v.pod_name),true,var v1 = Ttmp{.pod_name = v.pod_name,.status = v.status," +
-                ".controllable__node_name = v.controllable__node_name,.namespace = v.namespace," +
-                ".cpu_request = v.cpu_request,.memory_request = v.memory_request," +
-                ".ephemeral_storage_request = v.ephemeral_storage_request,.pods_request = v.pods_request," +
-                ".owner_name = v.owner_name,.creation_timestamp = v.creation_timestamp," +
-                ".has_node_selector_labels = v.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v.has_pod_affinity_requirements,.pod_name0 = v0.pod_name," +
-                ".host_ip = v0.host_ip,.host_port = v0.host_port,.host_protocol = v0.host_protocol}," +
+                "Rpods_with_port_requests[v3] :- Rpods_to_assign[v]," +
+                "Rpod_ports_request[v0@Tpod_ports_request{.pod_name = v.pod_name}],true," +
                 "var v2 = TRtmp1{.controllable__node_name = v.controllable__node_name,.host_port = v0.host_port," +
                 ".host_ip = v0.host_ip,.host_protocol = v0.host_protocol},var v3 = v2.\n" +
-
-                "Rpod_node_selector_matches[v12] :- Rpods_to_assign[v],Rpod_node_selector_labels[v0]," +
-                "(v.pod_name == v0.pod_name),true,var v1 = Ttmp2{.pod_name = v.pod_name,.status = v.status," +
-                ".controllable__node_name = v.controllable__node_name,.namespace = v.namespace," +
-                ".cpu_request = v.cpu_request,.memory_request = v.memory_request," +
-                ".ephemeral_storage_request = v.ephemeral_storage_request,.pods_request = v.pods_request," +
-                ".owner_name = v.owner_name,.creation_timestamp = v.creation_timestamp," +
-                ".has_node_selector_labels = v.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v.has_pod_affinity_requirements,.pod_name0 = v0.pod_name," +
-                ".term = v0.term,.match_expression = v0.match_expression,.num_match_expressions = v0.num_match_expressions," +
-                ".label_key = v0.label_key,.label_operator = v0.label_operator,.label_value = v0.label_value},Rnode_labels[v2]," +
+                "Rpod_node_selector_matches[v12] :- Rpods_to_assign[v]," +
+                "Rpod_node_selector_labels[v0@Tpod_node_selector_labels{.pod_name = v.pod_name}],true," +
+                "Rnode_labels[v2]," +
                 "unwrapBool(b_or_NR(b_or_NR(b_or_NR(b_and_RN(((v0.label_operator == \"In\") and (v0.label_key == v2.label_key))," +
-                " s_eq_NR(v0.label_value, v2.label_value)), ((v0.label_operator == \"Exists\") and (v0.label_key == v2.label_key)))," +
-                " (v0.label_operator == \"NotIn\"))," +
-                " (v0.label_operator == \"DoesNotExist\"))),true,var v3 = Ttmp3{.pod_name = v1.pod_name," +
-                ".status = v1.status,.controllable__node_name = v1.controllable__node_name,.namespace = v1.namespace," +
-                ".cpu_request = v1.cpu_request,.memory_request = v1.memory_request," +
-                ".ephemeral_storage_request = v1.ephemeral_storage_request,.pods_request = v1.pods_request," +
-                ".owner_name = v1.owner_name,.creation_timestamp = v1.creation_timestamp," +
-                ".has_node_selector_labels = v1.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v1.has_pod_affinity_requirements,.pod_name0 = v1.pod_name0," +
-                ".term = v1.term,.match_expression = v1.match_expression," +
-                ".num_match_expressions = v1.num_match_expressions,.label_key = v1.label_key," +
-                ".label_operator = v1.label_operator,.label_value = v1.label_value,.node_name = v2.node_name," +
-                ".label_key0 = v2.label_key,.label_value0 = v2.label_value},var gb = v.pod_name,var gb4 = v2.node_name" +
-                ",var gb5 = v0.term,var gb6 = v0.label_operator,var gb7 = v0.num_match_expressions," +
-                "var aggResult = Aggregate((gb, gb4, gb5, gb6, gb7), agg((v, v0, v2)))," +
+                " s_eq_NR(v0.label_value, v2.label_value))," +
+                " ((v0.label_operator == \"Exists\") and (v0.label_key == v2.label_key)))," +
+                " (v0.label_operator == \"NotIn\")), (v0.label_operator == \"DoesNotExist\"))),true," +
+                "var gb = v.pod_name,var gb4 = v2.node_name,var gb5 = v0.term,var gb6 = v0.label_operator," +
+                "var gb7 = v0.num_match_expressions,var aggResult = Aggregate((gb, gb4, gb5, gb6, gb7)," +
+                " agg((Tagg_v0{.match_expression = v0.match_expression,.label_key = v0.label_key," +
+                ".label_value = v0.label_value}, Tagg_v2{.label_key = v2.label_key,.label_value = v2.label_value})))," +
                 "var v11 = TRtmp4{.pod_name = gb,.node_name = gb4},unwrapBool(aggResult.col),var v12 = v11.\n" +
-
-                "Rinter_pod_affinity_matches_inner[v16] :- Rpods_to_assign[v],Rpod_affinity_match_expressions[v0]," +
-                "(v.pod_name == v0.pod_name),true,var v1 = Ttmp5{.pod_name = v.pod_name,.status = v.status," +
-                ".controllable__node_name = v.controllable__node_name,.namespace = v.namespace," +
-                ".cpu_request = v.cpu_request,.memory_request = v.memory_request," +
-                ".ephemeral_storage_request = v.ephemeral_storage_request,.pods_request = v.pods_request," +
-                ".owner_name = v.owner_name,.creation_timestamp = v.creation_timestamp," +
-                ".has_node_selector_labels = v.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v.has_pod_affinity_requirements,.pod_name0 = v0.pod_name," +
-                ".label_selector = v0.label_selector,.match_expression = v0.match_expression," +
-                ".num_match_expressions = v0.num_match_expressions," +
-                ".label_key = v0.label_key,.label_operator = v0.label_operator,.label_value = v0.label_value," +
-                ".topology_key = v0.topology_key},Rpod_labels[v2]," +
-                "((((((v0.label_operator == \"In\") and (v0.label_key == v2.label_key)) and " +
-                "(v0.label_value == v2.label_value)) or ((v0.label_operator == \"Exists\") and " +
-                "(v0.label_key == v2.label_key))) or (v0.label_operator == \"NotIn\")) " +
-                "or (v0.label_operator == \"DoesNotExist\")),true," +
-                "var v3 = Ttmp6{.pod_name = v1.pod_name,.status = v1.status,.controllable__node_name = v1.controllable__node_name," +
-                ".namespace = v1.namespace,.cpu_request = v1.cpu_request,.memory_request = v1.memory_request," +
-                ".ephemeral_storage_request = v1.ephemeral_storage_request,.pods_request = v1.pods_request," +
-                ".owner_name = v1.owner_name,.creation_timestamp = v1.creation_timestamp," +
-                ".has_node_selector_labels = v1.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v1.has_pod_affinity_requirements,.pod_name0 = v1.pod_name0," +
-                ".label_selector = v1.label_selector,.match_expression = v1.match_expression," +
-                ".num_match_expressions = v1.num_match_expressions," +
-                ".label_key = v1.label_key,.label_operator = v1.label_operator,.label_value = v1.label_value," +
-                ".topology_key = v1.topology_key,.pod_name1 = v2.pod_name,.label_key0 = v2.label_key," +
-                ".label_value0 = v2.label_value}," +
-                "Rpod_info[v4],(v2.pod_name == v4.pod_name),true,var v5 = Ttmp7{.pod_name = v3.pod_name,.status = v3.status," +
-                ".controllable__node_name = v3.controllable__node_name,.namespace = v3.namespace," +
-                ".cpu_request = v3.cpu_request," +
-                ".memory_request = v3.memory_request,.ephemeral_storage_request = v3.ephemeral_storage_request," +
-                ".pods_request = v3.pods_request,.owner_name = v3.owner_name,.creation_timestamp = v3.creation_timestamp," +
-                ".has_node_selector_labels = v3.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v3.has_pod_affinity_requirements,.pod_name0 = v3.pod_name0," +
-                ".label_selector = v3.label_selector,.match_expression = v3.match_expression," +
-                ".num_match_expressions = v3.num_match_expressions,.label_key = v3.label_key," +
-                ".label_operator = v3.label_operator,.label_value = v3.label_value,.topology_key = v3.topology_key," +
-                ".pod_name1 = v3.pod_name1,.label_key0 = v3.label_key0,.label_value0 = v3.label_value0," +
-                ".pod_name2 = v4.pod_name,.status0 = v4.status,.node_name = v4.node_name,.namespace0 = v4.namespace," +
-                ".cpu_request0 = v4.cpu_request," +
-                ".memory_request0 = v4.memory_request,.ephemeral_storage_request0 = v4.ephemeral_storage_request," +
-                ".pods_request0 = v4.pods_request,.owner_name0 = v4.owner_name,.creation_timestamp0 = v4.creation_timestamp," +
-                ".priority = v4.priority,.schedulerName = v4.schedulerName," +
-                ".has_node_selector_labels0 = v4.has_node_selector_labels," +
-                ".has_pod_affinity_requirements0 = v4.has_pod_affinity_requirements}," +
-                "var gb = v.pod_name,var gb6 = v2.pod_name,var gb7 = v0.label_selector,var gb8 = v0.topology_key," +
+                "Rinter_pod_affinity_matches_inner[v16] :- Rpods_to_assign[v]," +
+                "Rpod_affinity_match_expressions[v0@Tpod_affinity_match_expressions{.pod_name = v.pod_name}],true," +
+                "Rpod_labels[v2]," +
+                "((((((v0.label_operator == \"In\") and (v0.label_key == v2.label_key)) and (v0.label_value == v2.label_value)) or ((v0.label_operator == \"Exists\") and (v0.label_key == v2.label_key))) or (v0.label_operator == \"NotIn\")) or (v0.label_operator == \"DoesNotExist\"))," +
+                "true,Rpod_info[v4@Tpod_info{.pod_name = v2.pod_name}],true,var gb = v.pod_name," +
+                "var gb6 = v2.pod_name,var gb7 = v0.label_selector,var gb8 = v0.topology_key," +
                 "var gb9 = v0.label_operator,var gb10 = v0.num_match_expressions,var gb11 = v4.node_name," +
-                "var aggResult = Aggregate((gb, gb6, gb7, gb8, gb9, gb10, gb11), agg9((v, v0, v2, v4)))," +
+                "var aggResult = Aggregate((gb, gb6, gb7, gb8, gb9, gb10, gb11)," +
+                " agg9((Tagg9_v0{.match_expression = v0.match_expression,.label_key = v0.label_key," +
+                ".label_value = v0.label_value}, Tagg9_v2{.label_key = v2.label_key,.label_value = v2.label_value})))," +
                 "var v15 = TRtmp8{.pod_name = gb,.matches = gb6,.node_name = gb11},aggResult.col,var v16 = v15.\n" +
 
                 "Roverinput[v2] :- Rinter_pod_affinity_matches_inner[v0],var v1 = TRtmp10{.gb = v0.pod_name," +
                 ".pod_name = v0.pod_name,.matches = v0.matches,.node_name = v0.node_name},var v2 = v1.\n" +
-                "Rover[v7] :- Roverinput[v3],var gb4 = v3.gb,var aggResult = Aggregate((gb4), agg12((v3)))," +
-                "var v6 = TRtmp11{.gb = gb4,.count = aggResult.count},var v7 = v6.\n" +
-                "Rinter_pod_affinity_matches[v12] :- Roverinput[v8],Rover[v9],(true and (v8.gb == v9.gb))," +
-                "var v10 = Ttmp13{.gb = v8.gb,.pod_name = v8.pod_name,.matches = v8.matches,.node_name = v8.node_name," +
-                ".count = v9.count},var v11 = TRtmp14{.pod_name = v8.pod_name,.matches = v8.matches," +
-                ".node_name = v8.node_name,.num_matches = v9.count},var v12 = v11.\n" +
-
-                "Rspare_capacity_per_node[v10] :- Rnode_info[v],Rpod_info[v0],unwrapBool(b_and_NN(s_eq_NR(v0.node_name, v.name), " +
-                "s_neq_NR(v0.node_name, \"null\"))),true," +
-                "var v1 = Ttmp15{.name = v.name,.unschedulable = v.unschedulable,.out_of_disk = v.out_of_disk," +
-                ".memory_pressure = v.memory_pressure,.disk_pressure = v.disk_pressure,.pid_pressure = v.pid_pressure," +
-                ".ready = v.ready,.network_unavailable = v.network_unavailable,.cpu_capacity = v.cpu_capacity," +
-                ".memory_capacity = v.memory_capacity,.ephemeral_storage_capacity = v.ephemeral_storage_capacity," +
-                ".pods_capacity = v.pods_capacity,.cpu_allocatable = v.cpu_allocatable,.memory_allocatable = v.memory_allocatable," +
-                ".ephemeral_storage_allocatable = v.ephemeral_storage_allocatable,.pods_allocatable = v.pods_allocatable," +
-                ".pod_name = v0.pod_name,.status = v0.status,.node_name = v0.node_name,.namespace = v0.namespace," +
-                ".cpu_request = v0.cpu_request,.memory_request = v0.memory_request,.ephemeral_storage_request = v0.ephemeral_storage_request," +
-                ".pods_request = v0.pods_request,.owner_name = v0.owner_name,.creation_timestamp = v0.creation_timestamp," +
-                ".priority = v0.priority,.schedulerName = v0.schedulerName,.has_node_selector_labels = v0.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v0.has_pod_affinity_requirements}," +
-                "var gb = v.name,var gb2 = v.cpu_allocatable,var gb3 = v.memory_allocatable,var gb4 = v.pods_allocatable," +
-                "var aggResult = Aggregate((gb, gb2, gb3, gb4), agg17((v, v0)))," +
-                "var v9 = TRtmp16{.name = gb,.cpu_remaining = aggResult.cpu_remaining,.memory_remaining = aggResult.memory_remaining," +
+                "Rinter_pod_affinity_matches[v8] :- Roverinput[v3],var gb4 = v3.gb,var w = Aggregate((gb4)," +
+                " over(v3)),var v6 = FlatMap(w),var v7 = TRtmp12{.pod_name = v6.pod_name," +
+                ".matches = v6.matches,.node_name = v6.node_name,.num_matches = v6.count},var v8 = v7.\n" +
+                "Rspare_capacity_per_node[v10] :- Rnode_info[v],Rpod_info[v0]," +
+                "unwrapBool(b_and_NN(s_eq_NR(v0.node_name, v.name), s_neq_NR(v0.node_name, \"null\"))),true," +
+                "var gb = v.name,var gb2 = v.cpu_allocatable,var gb3 = v.memory_allocatable," +
+                "var gb4 = v.pods_allocatable,var aggResult = Aggregate((gb, gb2, gb3, gb4)," +
+                " agg15((Tagg15_v{.name = v.name}, Tagg15_v0{.pod_name = v0.pod_name,.cpu_request = v0.cpu_request," +
+                ".memory_request = v0.memory_request,.pods_request = v0.pods_request}))),var v9 = TRtmp14{.name = gb," +
+                ".cpu_remaining = aggResult.cpu_remaining,.memory_remaining = aggResult.memory_remaining," +
                 ".pods_remaining = aggResult.pods_remaining},var v10 = v9.\n" +
-                "Rnodes_that_have_tolerations[v1] :- Rnode_taints[v],var v0 = TRtmp18{.node_name = v.node_name},var v1 = v0.\n" +
-
-                "Roverinput20[v5] :- Rnode_taints[v3],var v4 = TRtmp21{.gb = v3.node_name," +
+                "Rnodes_that_have_tolerations[v1] :- Rnode_taints[v]," +
+                "var v0 = TRtmp16{.node_name = v.node_name},var v1 = v0.\n" +
+                "Roverinput18[v5] :- Rnode_taints[v3],var v4 = TRtmp19{.gb = v3.node_name," +
                 ".node_name = v3.node_name,.taint_key = v3.taint_key,.taint_value = v3.taint_value," +
                 ".taint_effect = v3.taint_effect},var v5 = v4.\n" +
-                "Rover22[v10] :- Roverinput20[v6],var gb7 = v6.gb,var aggResult = Aggregate((gb7), agg24((v6)))," +
-                "var v9 = TRtmp11{.gb = gb7,.count = aggResult.count},var v10 = v9.\n" +
-                "Rtmp27[v15] :- Roverinput20[v11],Rover22[v12],(true and (v11.gb == v12.gb))," +
-                "var v13 = Ttmp25{.gb = v11.gb,.node_name = v11.node_name,.taint_key = v11.taint_key," +
-                ".taint_value = v11.taint_value,.taint_effect = v11.taint_effect,.count = v12.count}," +
-                "var v14 = TRtmp26{.node_name = v11.node_name,.taint_key = v11.taint_key," +
-                ".taint_value = v11.taint_value,.taint_effect = v11.taint_effect,.num_taints = v12.count}," +
-                "var v15 = v14.\n" +
-                "Rpods_that_tolerate_node_taints[v25] :- Rpods_to_assign[v],Rpod_tolerations[v0]," +
-                "(v.pod_name == v0.pod_name),true,var v1 = Ttmp19{.pod_name = v.pod_name,.status = v.status," +
-                ".controllable__node_name = v.controllable__node_name,.namespace = v.namespace," +
-                ".cpu_request = v.cpu_request,.memory_request = v.memory_request," +
-                ".ephemeral_storage_request = v.ephemeral_storage_request,.pods_request = v.pods_request," +
-                ".owner_name = v.owner_name,.creation_timestamp = v.creation_timestamp," +
-                ".has_node_selector_labels = v.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v.has_pod_affinity_requirements,.pod_name0 = v0.pod_name," +
-                ".tolerations_key = v0.tolerations_key,.tolerations_value = v0.tolerations_value," +
-                ".tolerations_effect = v0.tolerations_effect,.tolerations_operator = v0.tolerations_operator}," +
-                "Rtmp27[v15],unwrapBool(b_and_NN(b_and_NN(s_eq_NR(v0.tolerations_key, v15.taint_key), " +
-                "b_or_NN(s_eq_NN(v0.tolerations_effect, None{}: Option<string>), " +
-                "s_eq_NR(v0.tolerations_effect, v15.taint_effect))), b_or_NN(s_eq_NR(v0.tolerations_operator, \"Exists\"), "+
-                "s_eq_NN(v0.tolerations_value, v15.taint_value)))),true,var v16 = Ttmp28{.pod_name = v1.pod_name," +
-                ".status = v1.status,.controllable__node_name = v1.controllable__node_name,.namespace = v1.namespace," +
-                ".cpu_request = v1.cpu_request,.memory_request = v1.memory_request," +
-                ".ephemeral_storage_request = v1.ephemeral_storage_request,.pods_request = v1.pods_request," +
-                ".owner_name = v1.owner_name,.creation_timestamp = v1.creation_timestamp," +
-                ".has_node_selector_labels = v1.has_node_selector_labels," +
-                ".has_pod_affinity_requirements = v1.has_pod_affinity_requirements,.pod_name0 = v1.pod_name0," +
-                ".tolerations_key = v1.tolerations_key,.tolerations_value = v1.tolerations_value," +
-                ".tolerations_effect = v1.tolerations_effect,.tolerations_operator = v1.tolerations_operator," +
-                ".node_name = v15.node_name,.taint_key = v15.taint_key,.taint_value = v15.taint_value," +
-                ".taint_effect = v15.taint_effect,.num_taints = v15.num_taints},var gb17 = v0.pod_name," +
-                "var gb18 = v15.node_name,var gb19 = v15.num_taints,var aggResult24 = Aggregate((gb17, gb18, gb19), " +
-                "agg30((v, v0, v15))),var v23 = TRtmp4{.pod_name = gb17,.node_name = gb18}," +
-                "aggResult24.col,var v25 = v23.\n" +
+                "Rtmp23[v12] :- Roverinput18[v6],var gb7 = v6.gb,var w = Aggregate((gb7), over21(v6))," +
+                "var v9 = FlatMap(w),var v10 = TRtmp22{.node_name = v9.node_name,.taint_key = v9.taint_key," +
+                ".taint_value = v9.taint_value,.taint_effect = v9.taint_effect,.num_taints = v9.count}," +
+                "var v11 = Aggregate((v10), group_key(v10)),var v12 = v11.\n" +
+                "Rpods_that_tolerate_node_taints[v21] :- Rpods_to_assign[v]," +
+                "Rpod_tolerations[v0@Tpod_tolerations{.pod_name = v.pod_name}],true,Rtmp23[v12]," +
+                "unwrapBool(b_and_NN(b_and_NN(s_eq_NR(v0.tolerations_key, v12.taint_key)," +
+                " b_or_NN(s_eq_NN(v0.tolerations_effect, None{}: Option<string>), s_eq_NR(v0.tolerations_effect," +
+                " v12.taint_effect))), b_or_NN(s_eq_NR(v0.tolerations_operator, \"Exists\")," +
+                " s_eq_NN(v0.tolerations_value, v12.taint_value)))),true,var gb14 = v0.pod_name," +
+                "var gb15 = v12.node_name,var gb16 = v12.num_taints,var aggResult = Aggregate((gb14, gb15, gb16)," +
+                " agg26((v, v0, v12))),var v20 = TRtmp4{.pod_name = gb14,.node_name = gb15},aggResult.col," +
+                "var v21 = v20.\n" +
                 "Rassigned_pods[v1] :- Rpod_info[v],(not is_null(v.node_name))," +
-                "var v0 = TRtmp31{.pod_name = v.pod_name,.status = v.status,.node_name = v.node_name," +
+                "var v0 = TRtmp27{.pod_name = v.pod_name,.status = v.status,.node_name = v.node_name," +
                 ".namespace = v.namespace,.cpu_request = v.cpu_request,.memory_request = v.memory_request," +
                 ".ephemeral_storage_request = v.ephemeral_storage_request,.pods_request = v.pods_request," +
                 ".owner_name = v.owner_name,.creation_timestamp = v.creation_timestamp," +
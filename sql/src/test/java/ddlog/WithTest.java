@@ -0,0 +1,70 @@
+package ddlog;
+
+import org.junit.Test;
+
+public class WithTest extends BaseQueriesTest {
+    @Test
+    public void testWith() {
+        String query = "create view v0 as WITH w AS (SELECT DISTINCT column1, column2 FROM t1 WHERE column3)\n" +
+                "SELECT DISTINCT column2 FROM w";
+        String program = this.header(false) +
+                "typedef TRtmp = TRtmp{column1:signed<64>, column2:string}\n" +
+                "typedef TRtmp0 = TRtmp0{column2:string}\n" +
+                this.relations(false) +
+                "relation Rtmp[TRtmp]\n" +
+                "relation Rw[TRtmp]\n" +
+                "relation Rtmp0[TRtmp0]\n" +
+                "output relation Rv0[TRtmp0]\n" +
+                "Rw[v2] :- Rt1[v],v.column3,var v0 = TRtmp{.column1 = v.column1,.column2 = v.column2}," +
+                "var v1 = Aggregate((v0), group_key(v0)),var v2 = v1.\n" +
+                "Rv0[v5] :- Rw[v3],var v4 = TRtmp0{.column2 = v3.column2},var v5 = v4.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testWithColumnNames() {
+        String query = "create view v0 as WITH w(a) AS (SELECT DISTINCT column1 FROM t2),\n" +
+                "w1 AS (SELECT DISTINCT a FROM w WHERE a > 0)\n" +
+                "SELECT DISTINCT w.a FROM w JOIN w1 ON w.a = w1.a + 1";
+        String program = this.header(false) +
+                "typedef Ttmp = Ttmp{a:signed<64>}\n" +
+                this.relations(false) +
+                "relation Rtmp[Tt2]\n" +
+                "relation Rw[Ttmp]\n" +
+                "relation Rtmp0[Ttmp]\n" +
+                "relation Rw1[Ttmp]\n" +
+                "relation Rtmp2[Ttmp]\n" +
+                "output relation Rv0[Ttmp]\n" +
+                "Rw[v3] :- Rt2[v],var v0 = Tt2{.column1 = v.column1},var v1 = Ttmp{.a = v0.column1}," +
+                "var v2 = Aggregate((v1), group_key(v1)),var v3 = v2.\n" +
+                "Rw1[v7] :- Rw[v4],(v4.a > 64'sd0),var v5 = Ttmp{.a = v4.a}," +
+                "var v6 = Aggregate((v5), group_key(v5)),var v7 = v6.\n" +
+                "Rv0[v12] :- Rw[v8],Rw1[v9],(v8.a == (v9.a + 64'sd1)),true," +
+                "var v11 = Ttmp{.a = v8.a},var v12 = v11.";
+        this.testTranslation(query, program);
+    }
+
+    @Test
+    public void testRecursive() {
+        String query = "create view v0 as WITH RECURSIVE reach(x) AS (\n" +
+                "SELECT DISTINCT column1 FROM t2\n" +
+                "UNION\n" +
+                "SELECT DISTINCT t1.column1 FROM t1 JOIN reach ON t1.column1 = reach.x + 1)\n" +
+                "SELECT DISTINCT x FROM reach";
+        String program = this.header(false) +
+                "typedef Treach = Treach{x:signed<64>}\n" +
+                this.relations(false) +
+                "relation Rtmp[Tt2]\n" +
+                "relation Rreach[Treach]\n" +
+                "relation Rtmp0[Tt2]\n" +
+                "relation Rtmp1[Treach]\n" +
+                "output relation Rv0[Treach]\n" +
+                "Rreach[v6] :- Rt2[v],var v0 = Tt2{.column1 = v.column1},var v5 = Treach{.x = v0.column1}," +
+                "var v6 = v5.\n" +
+                "Rreach[v8] :- Rt1[v1],Rreach[v2],(v1.column1 == (v2.x + 64'sd1)),true," +
+                "var v4 = Tt2{.column1 = v1.column1}," +
+                "var v7 = Treach{.x = v4.column1},var v8 = v7.\n" +
+                "Rv0[v11] :- Rreach[v9],var v10 = Treach{.x = v9.x},var v11 = v10.";
+        this.testTranslation(query, program);
+    }
+}
@@ -79,6 +79,8 @@ java=("java0:Java API test 0"
 #      "java5:Java API test 5"  # This test fails due to #372
 #      "java6:Java API test 6"  # This test coredumps
       "java7:Java API test 7"
+      "java8:Java cluster API test 8"
+      "java9:Java API test 9 (several programs in one JVM)"
       "flatbuf0:Java Flatbuf API test 0"
       "flatbuf1:Java Flatbuf API test 1")
 
@@ -226,6 +228,14 @@ java7() {
     (cd "${THIS_DIR}/java/test7" && ./run.sh)
 }
 
+java8() {
+    (cd "${THIS_DIR}/java/test8" && ./run.sh)
+}
+
+java9() {
+    (cd "${THIS_DIR}/java/test9" && ./run.sh)
+}
+
 flatbuf0() {
     (cd "${THIS_DIR}/java/test_flatbuf" && ./run.sh)
 }